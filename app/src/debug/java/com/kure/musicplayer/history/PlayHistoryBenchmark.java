@@ -0,0 +1,135 @@
+package com.kure.musicplayer.history;
+
+import java.util.Random;
+
+import android.content.Context;
+import android.util.Log;
+
+/**
+ * Fills a throw-away history database with lots of fake
+ * plays and measures how long the rankings take.
+ *
+ * Run it on a device (from a debugger or some developer
+ * screen) and check the log. It never touches the user's
+ * real history.
+ *
+ * @note Takes a while and runs on the caller's Thread.
+ * @note Only on debug builds (`src/debug`).
+ */
+public class PlayHistoryBenchmark {
+
+	// The tag we put on debug messages
+	private static final String TAG = "PlayHistoryBenchmark";
+
+	private static final String DATABASE = "history-benchmark.db";
+
+	/** How many plays we insert per transaction */
+	private static final int CHUNK = 10000;
+
+	/** How many times we repeat each query */
+	private static final int REPETITIONS = 10;
+
+	/**
+	 * Runs the benchmark.
+	 *
+	 * @param plays   How many plays to insert.
+	 * @param songs   How many different songs...
+	 * @param artists ...artists...
+	 * @param genres  ...and genres they'll have.
+	 * @param days    Over how many days (ending now) the
+	 *                plays will be spread.
+	 * @return A human-readable report (also sent to the log).
+	 */
+	public static String run(Context context, int plays, int songs, int artists, int genres, int days) {
+
+		context.deleteDatabase(DATABASE);
+		PlayHistory history = new PlayHistory(context, DATABASE);
+
+		StringBuilder report = new StringBuilder();
+		Random random = new Random(42);
+
+		long now   = System.currentTimeMillis();
+		long start = now - days * PlayHistoryDatabase.DAY;
+
+		// Loading, in chunks so we don't need
+		// everything in memory at once.
+		long loadStart = System.nanoTime();
+
+		for (int done = 0; done < plays; done += CHUNK) {
+			int size = Math.min(CHUNK, plays - done);
+
+			long[]   songIds  = new long[size];
+			String[] artistOf = new String[size];
+			String[] genreOf  = new String[size];
+			long[]   playedAt = new long[size];
+
+			for (int i = 0; i < size; i++) {
+				// Skewed, so some songs are way more popular
+				int song = (int)(songs * Math.pow(random.nextDouble(), 3));
+
+				songIds[i]  = song;
+				artistOf[i] = "Artist " + (song % artists);
+				genreOf[i]  = "Genre "  + (song % genres);
+
+				// Plays are in order, like in real life
+				playedAt[i] = start + (long)(done + i) * (now - start) / plays;
+			}
+			history.recordAll(songIds, artistOf, genreOf, playedAt);
+		}
+
+		report.append("Loaded ").append(plays).append(" plays in ")
+		      .append((System.nanoTime() - loadStart) / 1000000).append("ms\n");
+
+		// Half a day off, so the edges need
+		// the plays table as well.
+		long halfDay = PlayHistoryDatabase.DAY / 2;
+
+		measure(history, report, "last 7 days",   now - 7   * PlayHistoryDatabase.DAY - halfDay, now);
+		measure(history, report, "last 30 days",  now - 30  * PlayHistoryDatabase.DAY - halfDay, now);
+		measure(history, report, "last 365 days", now - 365 * PlayHistoryDatabase.DAY - halfDay, now);
+		measure(history, report, "all time",      0, now + 1);
+
+		long countsTime = 0;
+
+		for (int i = 0; i < REPETITIONS; i++) {
+			long time = System.nanoTime();
+			history.getPlayCounts();
+			countsTime += System.nanoTime() - time;
+		}
+
+		report.append("play counts: ").append(countsTime / REPETITIONS / 1000).append("us\n");
+
+		history.close();
+		context.deleteDatabase(DATABASE);
+
+		Log.d(TAG, report.toString());
+		return report.toString();
+	}
+
+	/**
+	 * Times top 10 tracks, artists and genres for a window.
+	 */
+	private static void measure(PlayHistory history, StringBuilder report, String name, long from, long to) {
+
+		long tracks = 0, artists = 0, genres = 0;
+
+		for (int i = 0; i < REPETITIONS; i++) {
+			long time = System.nanoTime();
+			history.topTracks(from, to, 10);
+			tracks += System.nanoTime() - time;
+
+			time = System.nanoTime();
+			history.topArtists(from, to, 10);
+			artists += System.nanoTime() - time;
+
+			time = System.nanoTime();
+			history.topGenres(from, to, 10);
+			genres += System.nanoTime() - time;
+		}
+
+		report.append(name)
+		      .append(": tracks ") .append(tracks  / REPETITIONS / 1000).append("us")
+		      .append(", artists ").append(artists / REPETITIONS / 1000).append("us")
+		      .append(", genres ") .append(genres  / REPETITIONS / 1000).append("us\n");
+	}
+}
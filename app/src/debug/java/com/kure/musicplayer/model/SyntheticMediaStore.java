@@ -0,0 +1,233 @@
+package com.kure.musicplayer.model;
+
+import java.util.List;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.provider.MediaStore;
+
+/**
+ * Pretends to be the system's media database, answering
+ * with songs from a `SyntheticLibrary`.
+ *
+ * This way we can run the very same scanning code
+ * (`MediaStoreLibrarySource`) over a big, repeatable library,
+ * on any device or under Robolectric:
+ *
+ *     SyntheticLibrary.Options options = SyntheticLibrary.Options.withSongs(100000);
+ *     options.nullRatio = 0.01;
+ *
+ *     kMP.songs.scanSongs(new MediaStoreLibrarySource(
+ *             new SyntheticMediaStore(new SyntheticLibrary(options)),
+ *             "external"));
+ *
+ * It understands the same URIs `MediaStoreLibrarySource` asks
+ * for (songs, genres, playlists and their members), ignoring
+ * selections and sort orders.
+ *
+ * @note Only on debug builds (`src/debug`), along with the
+ *       other tools for measuring the app.
+ */
+public class SyntheticMediaStore implements MediaStoreLibrarySource.Database {
+
+	private SyntheticLibrary library;
+
+	// Counters, so we can see how much the scanner asks
+	private int  queries = 0;
+	private long rows    = 0;
+
+	public SyntheticMediaStore(SyntheticLibrary library) {
+		this.library = library;
+	}
+
+	/**
+	 * Answers a query based on the URI path, which is
+	 * like `<volume>/audio/<table>[/<id>/members]`.
+	 */
+	@Override
+	public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+
+		List<String> path = uri.getPathSegments();
+
+		int audio = path.indexOf("audio");
+		if ((audio == -1) || (audio + 1 >= path.size()))
+			throw new IllegalArgumentException("Unknown URI: " + uri);
+
+		String table     = path.get(audio + 1);
+		boolean members  = (audio + 3 < path.size());
+		long id          = members ? Long.parseLong(path.get(audio + 2)) : -1;
+
+		MatrixCursor cursor;
+
+		if (table.equals("media"))
+			cursor = songs(projection);
+
+		else if (table.equals("genres"))
+			cursor = (members ? genreMembers(projection, id) : genres(projection));
+
+		else if (table.equals("playlists"))
+			cursor = (members ? playlistMembers(projection, id) : playlists(projection));
+
+		else
+			throw new IllegalArgumentException("Unknown URI: " + uri);
+
+		queries++;
+		rows += cursor.getCount();
+		return cursor;
+	}
+
+	private MatrixCursor songs(String[] projection) {
+		MatrixCursor cursor = new MatrixCursor(projection, library.size());
+
+		for (int i = 0; i < library.size(); i++) {
+			Object[] row = new Object[projection.length];
+
+			for (int c = 0; c < projection.length; c++)
+				row[c] = songColumn(projection[c], i);
+
+			cursor.addRow(row);
+		}
+		return cursor;
+	}
+
+	private Object songColumn(String column, int index) {
+
+		if (column.equals(MediaStore.Audio.Media._ID))
+			return library.songId(index);
+
+		if (column.equals(MediaStore.Audio.Media.TITLE))
+			return library.getTitle(index);
+
+		if (column.equals(MediaStore.Audio.Media.ARTIST))
+			return library.getArtist(index);
+
+		if (column.equals(MediaStore.Audio.Media.ALBUM))
+			return library.getAlbum(index);
+
+		if (column.equals(MediaStore.Audio.Media.YEAR)) {
+			int year = library.getYear(index);
+			return (year == SyntheticLibrary.NO_YEAR) ? null : Integer.valueOf(year);
+		}
+
+		if (column.equals(MediaStore.Audio.Media.TRACK))
+			return library.getTrackNumber(index);
+
+		if (column.equals(MediaStore.Audio.Media.DATA))
+			return library.getFilePath(index);
+
+		if (column.equals(MediaStore.Audio.Media.DURATION))
+			return library.getDuration(index);
+
+		if (column.equals(MediaStore.Audio.Media.IS_MUSIC))
+			return 1;
+
+		return null;
+	}
+
+	private MatrixCursor genres(String[] projection) {
+		MatrixCursor cursor = new MatrixCursor(projection, library.getGenreCount());
+
+		for (int genre = 0; genre < library.getGenreCount(); genre++) {
+			Object[] row = new Object[projection.length];
+
+			for (int c = 0; c < projection.length; c++) {
+				if (projection[c].equals(MediaStore.Audio.Genres._ID))
+					row[c] = library.genreId(genre);
+
+				else if (projection[c].equals(MediaStore.Audio.Genres.NAME))
+					row[c] = library.getGenreName(genre);
+			}
+			cursor.addRow(row);
+		}
+		return cursor;
+	}
+
+	/**
+	 * All songs of a genre.
+	 *
+	 * @note Like on Android, the song ID can be asked
+	 *       both as "_id" and "audio_id".
+	 */
+	private MatrixCursor genreMembers(String[] projection, long genreId) {
+		MatrixCursor cursor = new MatrixCursor(projection);
+
+		for (int i = 0; i < library.size(); i++) {
+			int genre = library.getGenre(i);
+
+			if ((genre == SyntheticLibrary.NO_GENRE) || (library.genreId(genre) != genreId))
+				continue;
+
+			Object[] row = new Object[projection.length];
+
+			for (int c = 0; c < projection.length; c++)
+				row[c] = memberColumn(projection[c], library.songId(i), genreId);
+
+			cursor.addRow(row);
+		}
+		return cursor;
+	}
+
+	private MatrixCursor playlists(String[] projection) {
+		MatrixCursor cursor = new MatrixCursor(projection, library.getPlaylistCount());
+
+		for (int p = 0; p < library.getPlaylistCount(); p++) {
+			Object[] row = new Object[projection.length];
+
+			for (int c = 0; c < projection.length; c++) {
+				if (projection[c].equals(MediaStore.Audio.Playlists._ID))
+					row[c] = library.playlistId(p);
+
+				else if (projection[c].equals(MediaStore.Audio.Playlists.NAME))
+					row[c] = library.getPlaylistName(p);
+			}
+			cursor.addRow(row);
+		}
+		return cursor;
+	}
+
+	private MatrixCursor playlistMembers(String[] projection, long playlistId) {
+		MatrixCursor cursor = new MatrixCursor(projection);
+
+		for (int p = 0; p < library.getPlaylistCount(); p++) {
+			if (library.playlistId(p) != playlistId)
+				continue;
+
+			for (long songId : library.getPlaylistMembers(p)) {
+				Object[] row = new Object[projection.length];
+
+				for (int c = 0; c < projection.length; c++)
+					row[c] = memberColumn(projection[c], songId, playlistId);
+
+				cursor.addRow(row);
+			}
+		}
+		return cursor;
+	}
+
+	private static Object memberColumn(String column, long songId, long parentId) {
+		if (column.equals(MediaStore.Audio.Media._ID) ||
+		    column.equals(MediaStore.Audio.Playlists.Members.AUDIO_ID))
+			return songId;
+
+		if (column.equals(MediaStore.Audio.Playlists.Members.PLAYLIST_ID) ||
+		    column.equals(MediaStore.Audio.Genres.Members.GENRE_ID))
+			return parentId;
+
+		return null;
+	}
+
+	/**
+	 * How many queries we've answered.
+	 */
+	public int getQueries() {
+		return queries;
+	}
+
+	/**
+	 * How many rows we've given in total.
+	 */
+	public long getRows() {
+		return rows;
+	}
+}
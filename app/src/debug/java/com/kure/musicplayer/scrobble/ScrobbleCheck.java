@@ -0,0 +1,325 @@
+package com.kure.musicplayer.scrobble;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+
+/**
+ * Runs the whole scrobbling pipeline against fake scrobblers
+ * and checks what they got.
+ *
+ * - `FakeScrobbler` is a receiver declared on the debug
+ *   AndroidManifest, following the SimpleLastfmScrobbler API -
+ *   so `BroadcastScrobbleSender` sees it like a real app;
+ * - `FakeSender` takes past plays, and fails when we ask, to
+ *   check batches, retries and what survives a crash.
+ *
+ * Run it on a device (from a debugger or some developer
+ * screen) and check the log. It only uses files of its own
+ * and never talks to the real scrobbler apps.
+ *
+ * @note Waits for broadcasts, so call it from a background
+ *       Thread (never the main one).
+ * @note Only on debug builds (`src/debug`).
+ */
+public class ScrobbleCheck {
+
+	// The tag we put on debug messages
+	private static final String TAG = "ScrobbleCheck";
+
+	/** What `FakeScrobbler` listens to */
+	public static final String ACTION_FAKE = "com.kure.musicplayer.debug.FAKE_SCROBBLER";
+
+	/** How long we wait for each broadcast, in seconds */
+	private static final int TIMEOUT = 5;
+
+	/**
+	 * Everything `FakeScrobbler` received, in order.
+	 */
+	private static final LinkedBlockingQueue<Intent> received = new LinkedBlockingQueue<Intent>();
+
+	/**
+	 * Pretends to be a scrobbler app.
+	 */
+	public static class FakeScrobbler extends BroadcastReceiver {
+		@Override
+		public void onReceive(Context context, Intent intent) {
+			received.add(intent);
+		}
+	}
+
+	/**
+	 * Pretends to be a scrobbler that takes past plays.
+	 */
+	private static class FakeSender implements ScrobbleSender {
+
+		/** Every batch delivered, in order */
+		ArrayList<List<Scrobble>> batches = new ArrayList<List<Scrobble>>();
+
+		/** If the next `send()` fails */
+		boolean failing = false;
+
+		@Override
+		public boolean isAvailable() {
+			return true;
+		}
+
+		@Override
+		public boolean sendState(int state, Scrobble song) {
+			return true;
+		}
+
+		@Override
+		public boolean canSendPlayed() {
+			return true;
+		}
+
+		@Override
+		public boolean send(List<Scrobble> scrobbles) {
+			if (failing)
+				return false;
+
+			batches.add(new ArrayList<Scrobble>(scrobbles));
+			return true;
+		}
+
+		int delivered() {
+			int count = 0;
+			for (List<Scrobble> batch : batches)
+				count += batch.size();
+
+			return count;
+		}
+	}
+
+	private StringBuilder report = new StringBuilder();
+
+	private int failures = 0;
+
+	/**
+	 * Runs all checks.
+	 *
+	 * @return A human-readable report (also sent to the log).
+	 */
+	public static String run(Context context) {
+		ScrobbleCheck check = new ScrobbleCheck();
+
+		try {
+			check.states(context);
+			check.batches(context);
+			check.crash(context);
+			check.damaged(context);
+			check.expired(context);
+		}
+		catch (IOException e) {
+			check.check(false, "no IOException (" + e + ")");
+		}
+		catch (InterruptedException e) {
+			check.check(false, "not interrupted");
+		}
+
+		check.report.append(check.failures).append(" failures");
+
+		Log.d(TAG, check.report.toString());
+		return check.report.toString();
+	}
+
+	/**
+	 * The scrobbler hears about every state, as it happens.
+	 */
+	private void states(Context context) throws InterruptedException {
+		received.clear();
+
+		BroadcastScrobbleSender sender = new BroadcastScrobbleSender(context, ACTION_FAKE, "kMP", context.getPackageName());
+
+		check(sender.isAvailable(), "fake scrobbler is available");
+
+		Scrobble song = scrobble(1, now());
+
+		int[] states = {
+			ScrobbleSender.STATE_START,
+			ScrobbleSender.STATE_PAUSE,
+			ScrobbleSender.STATE_RESUME,
+			ScrobbleSender.STATE_COMPLETE
+		};
+
+		for (int state : states)
+			check(sender.sendState(state, song), "state " + state + " sent");
+
+		// The SLS API uses the same numbers
+		for (int state : states) {
+			Intent intent = received.poll(TIMEOUT, TimeUnit.SECONDS);
+
+			if (intent == null) {
+				check(false, "state " + state + " received");
+				return;
+			}
+
+			check(intent.getIntExtra("state", -1) == state, "state " + state + " received in order");
+
+			check(song.title.equals(intent.getStringExtra("track")) &&
+			      song.artist.equals(intent.getStringExtra("artist")) &&
+			      (intent.getIntExtra("duration", -1) == song.duration),
+			      "state " + state + " has the song");
+		}
+
+		// Past plays can't go as broadcasts
+		ScrobbleQueue queue = new ScrobbleQueue(file(context, "states"), sender);
+
+		check(! queue.add(song), "plays the broadcast can't send aren't saved");
+		check(! queue.hasPending(), "nothing is left on disk");
+	}
+
+	/**
+	 * Plays go in batches, and stay until delivered.
+	 */
+	private void batches(Context context) {
+		FakeSender    sender = new FakeSender();
+		ScrobbleQueue queue  = new ScrobbleQueue(file(context, "batches"), sender);
+
+		long now = now();
+		int  how = (ScrobbleQueue.BATCH_SIZE * 2) + 20;
+
+		for (int i = 0; i < how; i++)
+			queue.add(scrobble(i, now + i));
+
+		sender.failing = true;
+		check(queue.flush() == 0, "nothing delivered while failing");
+		check(queue.hasPending(), "everything still on disk after failing");
+
+		sender.failing = false;
+		check(queue.flush() == how, "everything delivered after failing");
+		check(sender.batches.size() == 3, "delivered in 3 batches (got " + sender.batches.size() + ")");
+		check(! queue.hasPending(), "nothing left on disk");
+
+		int i = 0;
+		for (List<Scrobble> batch : sender.batches)
+			for (Scrobble scrobble : batch) {
+				if ((scrobble.songId != i) || (scrobble.timestamp != now + i)) {
+					check(false, "play " + i + " delivered in order, at the time it was played");
+					return;
+				}
+				i++;
+			}
+	}
+
+	/**
+	 * Dying after sending but before committing
+	 * sends it all again (at-least-once).
+	 */
+	private void crash(Context context) throws IOException {
+		File file = file(context, "crash");
+
+		ScrobbleLog log = new ScrobbleLog(file);
+		for (int i = 0; i < 3; i++)
+			log.append(scrobble(i, now()));
+
+		check(log.readPending(10).scrobbles.size() == 3, "3 plays read");
+
+		// "Crashing" - no commit
+		log = new ScrobbleLog(file);
+		ScrobbleLog.Batch batch = log.readPending(10);
+		check(batch.scrobbles.size() == 3, "3 plays read again after a crash");
+
+		log.commit(batch);
+		log = new ScrobbleLog(file);
+		check(! log.hasPending(), "nothing read again after committing");
+	}
+
+	/**
+	 * A damaged record doesn't hold the others back.
+	 */
+	private void damaged(Context context) throws IOException {
+		File file = file(context, "damaged");
+
+		ScrobbleLog log = new ScrobbleLog(file);
+
+		log.append(scrobble(1, now()));
+		long middle = file.length();
+		log.append(scrobble(2, now()));
+		log.append(scrobble(3, now()));
+
+		RandomAccessFile raw = new RandomAccessFile(file, "rw");
+		try {
+			raw.seek(middle + 10);
+			raw.write(raw.read() ^ 0xFF);
+		}
+		finally {
+			raw.close();
+		}
+
+		ScrobbleLog.Batch batch = log.readPending(10);
+
+		check((batch.scrobbles.size() == 2) &&
+		      (batch.scrobbles.get(0).songId == 1) &&
+		      (batch.scrobbles.get(1).songId == 3),
+		      "damaged play skipped, the others read");
+	}
+
+	/**
+	 * Old plays don't stay forever.
+	 */
+	private void expired(Context context) throws IOException {
+		FakeSender    sender = new FakeSender();
+		ScrobbleQueue queue  = new ScrobbleQueue(file(context, "expired"), sender);
+
+		queue.add(scrobble(1, now() - ScrobbleQueue.MAX_AGE - 60));
+		queue.add(scrobble(2, now()));
+
+		check((queue.flush() == 1) && (sender.batches.get(0).get(0).songId == 2), "too old play forgotten");
+		check(queue.getDropped() == 1, "forgotten play counted");
+
+		// Only the newest fit
+		File file = file(context, "bounded");
+
+		ScrobbleLog log = new ScrobbleLog(file);
+		for (int i = 0; i < 100; i++)
+			log.append(scrobble(i, now()));
+
+		long half = file.length() / 2;
+
+		int forgotten = log.compact(0, half);
+		ScrobbleLog.Batch batch = log.readPending(100);
+
+		check((forgotten > 0) && (file.length() <= half), "log bounded");
+		check((forgotten + batch.scrobbles.size() == 100) &&
+		      (batch.scrobbles.get(batch.scrobbles.size() - 1).songId == 99),
+		      "oldest plays forgotten first");
+	}
+
+	private void check(boolean ok, String what) {
+		if (! ok)
+			failures++;
+
+		report.append(ok ? "OK:     " : "FAILED: ").append(what).append('\n');
+	}
+
+	/**
+	 * A brand new log file, only ours.
+	 */
+	private static File file(Context context, String name) {
+		File file = new File(context.getCacheDir(), "scrobble-check-" + name + ".log");
+
+		file.delete();
+		new File(file.getPath() + ".cursor").delete();
+
+		return file;
+	}
+
+	private static Scrobble scrobble(long id, long timestamp) {
+		return new Scrobble(id, timestamp, 200, "Title " + id, "Artist " + id, "Album " + id);
+	}
+
+	private static long now() {
+		return System.currentTimeMillis() / 1000;
+	}
+}
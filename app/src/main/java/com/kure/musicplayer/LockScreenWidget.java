@@ -0,0 +1,331 @@
+package com.kure.musicplayer;
+
+import android.app.PendingIntent;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.media.AudioManager;
+import android.media.MediaMetadataRetriever;
+import android.media.RemoteControlClient;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.kure.musicplayer.external.RemoteControlClientCompat;
+import com.kure.musicplayer.external.RemoteControlHelper;
+import com.kure.musicplayer.model.Song;
+import com.kure.musicplayer.services.PlaybackPosition;
+
+/**
+ * Publishes the current song and playback state to the
+ * lock screen (the "Lock-Screen Widget").
+ *
+ * Talking to the lock screen is expensive - every call goes
+ * through reflection (see `RemoteControlClientCompat`) and
+ * then through IPC to the system.
+ *
+ * So this class:
+ *
+ * - Creates and registers the remote control client only once;
+ * - Sets the transport buttons only once;
+ * - Remembers what it sent last time and only sends the
+ *   metadata fields that changed;
+ * - Collapses updates that arrive within `COALESCE_WINDOW`
+ *   into a single one (like when the user keeps skipping songs);
+ * - Sends where the song is only when it stops moving along
+ *   with the clock (see `PlaybackPosition`) - the lock screen
+ *   moves its progress bar by itself.
+ */
+public class LockScreenWidget {
+
+	/**
+	 * Time window (in milliseconds) on which several updates
+	 * become a single one.
+	 */
+	public static final long COALESCE_WINDOW = 300;
+
+	// The tag we put on debug messages
+	private static final String TAG = "LockScreenWidget";
+
+	/**
+	 * All buttons the Lock-Screen Widget supports
+	 * (will be broadcasts).
+	 */
+	private static final int TRANSPORT_CONTROL_FLAGS =
+			RemoteControlClient.FLAG_KEY_MEDIA_PLAY     |
+			RemoteControlClient.FLAG_KEY_MEDIA_PAUSE    |
+			RemoteControlClient.FLAG_KEY_MEDIA_PREVIOUS |
+			RemoteControlClient.FLAG_KEY_MEDIA_NEXT;
+
+	private Context context;
+
+	private AudioManager audioManager;
+
+	/**
+	 * Component name of the receiver of media buttons.
+	 */
+	private ComponentName mediaButtonEventReceiver;
+
+	/**
+	 * Controller that communicates with the lock screen,
+	 * providing that fancy widget.
+	 */
+	private RemoteControlClientCompat controller = null;
+
+	// What we want to show on the next update...
+	private Song             song     = null;
+	private int              state    = RemoteControlClient.PLAYSTATE_STOPPED;
+	private PlaybackPosition position = null;
+
+	// ...and what the lock screen is showing right now.
+	private String sentTitle    = null;
+	private String sentArtist   = null;
+	private String sentAlbum    = null;
+	private long   sentDuration = -1;
+	private int    sentState    = -1;
+
+	private PlaybackPosition sentPosition = null;
+
+	/**
+	 * When we last talked to the lock screen.
+	 * (based on `SystemClock.elapsedRealtime()`)
+	 */
+	private long lastUpdateTime = 0;
+
+	private boolean updatePending = false;
+
+	private Handler handler = new Handler();
+
+	private final Runnable pendingUpdate = new Runnable() {
+		@Override
+		public void run() {
+			updatePending = false;
+			sendUpdate();
+		}
+	};
+
+	// Counters, so we can see how much we're saving.
+	private int metadataUpdates = 0;
+	private int stateUpdates    = 0;
+	private int skippedUpdates  = 0;
+
+	/**
+	 * Creates the widget, but doesn't show anything yet.
+	 *
+	 * @param context                  Service that owns the widget.
+	 * @param audioManager             Used to register the widget.
+	 * @param mediaButtonEventReceiver Class that will receive the
+	 *                                 buttons pressed on the widget.
+	 */
+	public LockScreenWidget(Context context, AudioManager audioManager, ComponentName mediaButtonEventReceiver) {
+		this.context                  = context;
+		this.audioManager             = audioManager;
+		this.mediaButtonEventReceiver = mediaButtonEventReceiver;
+	}
+
+	/**
+	 * Shows `song` with `state` on the lock screen.
+	 *
+	 * @param state One of `RemoteControlClient.PLAYSTATE_*`.
+	 *
+	 * @note Might take up to `COALESCE_WINDOW` to actually show.
+	 */
+	public void update(Song song, int state) {
+		this.song  = song;
+		this.state = state;
+
+		scheduleUpdate();
+	}
+
+	/**
+	 * Changes only the playback state, keeping the current song.
+	 *
+	 * @param state One of `RemoteControlClient.PLAYSTATE_*`.
+	 */
+	public void setPlaybackState(int state) {
+		this.state = state;
+
+		scheduleUpdate();
+	}
+
+	/**
+	 * Changes where the song is - call it only when it
+	 * stops moving along with the clock (see `PlaybackPosition`).
+	 */
+	public void setPosition(PlaybackPosition position) {
+		this.position = position;
+
+		scheduleUpdate();
+	}
+
+	/**
+	 * Sends the update right now or waits a little,
+	 * merging it with the ones that come next.
+	 */
+	private void scheduleUpdate() {
+
+		if (updatePending)
+			return;
+
+		long elapsed = SystemClock.elapsedRealtime() - lastUpdateTime;
+
+		if (elapsed >= COALESCE_WINDOW) {
+			sendUpdate();
+			return;
+		}
+
+		updatePending = true;
+		handler.postDelayed(pendingUpdate, COALESCE_WINDOW - elapsed);
+	}
+
+	/**
+	 * Actually sends to the lock screen whatever
+	 * changed since last time.
+	 */
+	private void sendUpdate() {
+
+		// The Lock-Screen widget was not created up until now.
+		if (controller == null)
+			create();
+
+		boolean sentSomething = false;
+
+		if ((state != sentState) || (position != sentPosition)) {
+			if (position == null)
+				controller.setPlaybackState(state);
+			else
+				controller.setPlaybackState(state,
+				                            position.getPosition(),
+				                            position.playing ? 1.0f : 0.0f);
+			sentState    = state;
+			sentPosition = position;
+
+			stateUpdates++;
+			sentSomething = true;
+		}
+
+		if (song != null) {
+
+			String title    = song.getTitle();
+			String artist   = song.getArtist();
+			String album    = song.getAlbum();
+			long   duration = song.getDuration();
+
+			boolean titleChanged    = ! stringEquals(title,  sentTitle);
+			boolean artistChanged   = ! stringEquals(artist, sentArtist);
+			boolean albumChanged    = ! stringEquals(album,  sentAlbum);
+			boolean durationChanged = (duration != sentDuration);
+
+			if (titleChanged || artistChanged || albumChanged || durationChanged) {
+
+				// Not starting empty - this way we only need to
+				// send the fields that are different.
+				RemoteControlClientCompat.MetadataEditorCompat editor =
+						controller.editMetadata(false);
+
+				if (artistChanged)
+					editor.putString(MediaMetadataRetriever.METADATA_KEY_ARTIST, artist);
+				if (albumChanged)
+					editor.putString(MediaMetadataRetriever.METADATA_KEY_ALBUM, album);
+				if (titleChanged)
+					editor.putString(MediaMetadataRetriever.METADATA_KEY_TITLE, title);
+				if (durationChanged)
+					editor.putLong(MediaMetadataRetriever.METADATA_KEY_DURATION, duration);
+
+				// TODO: fetch real item artwork
+				//.putBitmap(
+				//        RemoteControlClientCompat.MetadataEditorCompat.METADATA_KEY_ARTWORK,
+				//        mDummyAlbumArt)
+
+				// Saves (after #editMetadata())
+				editor.apply();
+
+				sentTitle    = title;
+				sentArtist   = artist;
+				sentAlbum    = album;
+				sentDuration = duration;
+
+				metadataUpdates++;
+				sentSomething = true;
+			}
+		}
+
+		if (sentSomething)
+			lastUpdateTime = SystemClock.elapsedRealtime();
+		else
+			skippedUpdates++;
+	}
+
+	/**
+	 * Creates the remote control client and registers it
+	 * with the system.
+	 */
+	private void create() {
+
+		Intent audioButtonIntent = new Intent(Intent.ACTION_MEDIA_BUTTON);
+		audioButtonIntent.setComponent(mediaButtonEventReceiver);
+
+		PendingIntent pending = PendingIntent.getBroadcast(context, 0, audioButtonIntent, 0);
+
+		controller = new RemoteControlClientCompat(pending);
+
+		RemoteControlHelper.registerRemoteControlClient(audioManager, controller);
+		audioManager.registerMediaButtonEventReceiver(mediaButtonEventReceiver);
+
+		// These never change, so we set them only once
+		controller.setTransportControlFlags(TRANSPORT_CONTROL_FLAGS);
+
+		Log.w(TAG, "created control compat");
+	}
+
+	/**
+	 * Removes the widget from the lock screen.
+	 *
+	 * @note You can still call `update()` after this;
+	 *       it'll create everything again.
+	 */
+	public void destroy() {
+		handler.removeCallbacks(pendingUpdate);
+		updatePending = false;
+
+		if ((audioManager != null) && (controller != null)) {
+			//RemoteControlHelper.unregisterRemoteControlClient(audioManager, controller);
+			controller = null;
+		}
+
+		if (audioManager != null)
+			audioManager.unregisterMediaButtonEventReceiver(mediaButtonEventReceiver);
+
+		sentTitle    = null;
+		sentArtist   = null;
+		sentAlbum    = null;
+		sentDuration = -1;
+		sentState    = -1;
+		sentPosition = null;
+	}
+
+	private static boolean stringEquals(String a, String b) {
+		return (a == null) ? (b == null) : a.equals(b);
+	}
+
+	/**
+	 * How many times we've sent song metadata.
+	 */
+	public int getMetadataUpdates() {
+		return metadataUpdates;
+	}
+
+	/**
+	 * How many times we've sent the playback state.
+	 */
+	public int getStateUpdates() {
+		return stateUpdates;
+	}
+
+	/**
+	 * How many updates had nothing new to send.
+	 */
+	public int getSkippedUpdates() {
+		return skippedUpdates;
+	}
+}
@@ -0,0 +1,98 @@
+package com.kure.musicplayer;
+
+import android.content.ComponentCallbacks2;
+import android.content.res.Configuration;
+import android.util.Log;
+
+import com.kure.musicplayer.model.CacheRegistry;
+import com.kure.musicplayer.tasks.TaskScheduler;
+
+/**
+ * Listens to the system telling we're using too much memory
+ * and trims the caches on `kMP.caches`.
+ *
+ * The worse it gets, the more we let go - from cheap things
+ * we can build again right away up to things we have to
+ * read from disk again (see `CacheRegistry` priorities).
+ *
+ * @note Registered on `kMP.initialize()`, for the whole
+ *       process (Activities and services alike).
+ */
+public class MemoryTrimmer implements ComponentCallbacks2 {
+
+	// The tag we put on debug messages
+	private static final String TAG = "MemoryTrimmer";
+
+	private final CacheRegistry caches;
+
+	/**
+	 * Where we trim - caches might be waiting for a scan
+	 * to finish, and the UI Thread can't wait.
+	 */
+	private final TaskScheduler tasks;
+
+	public MemoryTrimmer(CacheRegistry caches, TaskScheduler tasks) {
+		this.caches = caches;
+		this.tasks  = tasks;
+	}
+
+	/**
+	 * Which caches go away on each of the system's levels
+	 * (`ComponentCallbacks2.TRIM_MEMORY_*`).
+	 *
+	 * @return A `CacheRegistry.PRIORITY_*`, or -1 for none.
+	 */
+	private static int priorityFor(int level) {
+		switch (level) {
+		case TRIM_MEMORY_RUNNING_MODERATE:
+		case TRIM_MEMORY_UI_HIDDEN:
+			return CacheRegistry.PRIORITY_LOW;
+
+		case TRIM_MEMORY_RUNNING_LOW:
+		case TRIM_MEMORY_BACKGROUND:
+			return CacheRegistry.PRIORITY_NORMAL;
+
+		case TRIM_MEMORY_RUNNING_CRITICAL:
+		case TRIM_MEMORY_MODERATE:
+		case TRIM_MEMORY_COMPLETE:
+			return CacheRegistry.PRIORITY_HIGH;
+
+		default:
+			// Levels newer than us - better safe than sorry
+			return (level > TRIM_MEMORY_COMPLETE) ? CacheRegistry.PRIORITY_HIGH : -1;
+		}
+	}
+
+	@Override
+	public void onTrimMemory(int level) {
+		trim(priorityFor(level), "level " + level);
+	}
+
+	@Override
+	public void onLowMemory() {
+		trim(CacheRegistry.PRIORITY_HIGH, "low memory");
+	}
+
+	@Override
+	public void onConfigurationChanged(Configuration newConfig) {
+		// Nothing to do with us
+	}
+
+	private void trim(final int priority, final String reason) {
+		if (priority < 0)
+			return;
+
+		tasks.submit(TaskScheduler.PRIORITY_BACKGROUND, null, new Runnable() {
+			@Override
+			public void run() {
+				long start = System.currentTimeMillis();
+				long freed = caches.trim(priority);
+
+				Log.w(TAG, "Trimmed up to priority " + priority + " (" + reason + "): " +
+				      (freed / 1024) + "KB in " + (System.currentTimeMillis() - start) +
+				      "ms, " + (caches.getReclaimed() / 1024) + "KB on " +
+				      caches.getTrims() + " trims so far");
+			}
+		});
+	}
+}
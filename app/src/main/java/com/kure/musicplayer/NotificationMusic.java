@@ -7,10 +7,14 @@ import android.app.Service;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.os.Handler;
+import android.os.SystemClock;
 import android.widget.RemoteViews;
 
 import com.kure.musicplayer.activities.ActivityNowPlaying;
+import com.kure.musicplayer.events.PlayerEvent;
 import com.kure.musicplayer.model.Song;
+import com.kure.musicplayer.services.ServicePlayMusic;
 
 /**
  * Specific way to stick an on-going message on the system
@@ -20,6 +24,22 @@ import com.kure.musicplayer.model.Song;
  * it interacts with a great deal of the Android API.
  * Read with care.
  *
+ * How it works:
+ *
+ * Every time we talk to the NotificationManager (or call
+ * `startForeground`) we make an IPC call to the system.
+ * When the user skips lots of songs in a row that adds up.
+ *
+ * So we create all the `PendingIntent`s, the `RemoteViews`
+ * and the `Notification.Builder` only once.
+ * Then, when the song or the play/pause state changes, we
+ * only touch the fields that actually changed and send the
+ * same notification again.
+ *
+ * Updates are also rate-limited - if several of them come
+ * within `MINIMUM_UPDATE_INTERVAL` only the last one gets
+ * sent to the system.
+ *
  * Thanks:
  *
  * - Gave me a complete example on how to add a custom
@@ -28,6 +48,26 @@ import com.kure.musicplayer.model.Song;
  */
 public class NotificationMusic extends NotificationSimple {
 
+	/**
+	 * Minimum time (in milliseconds) between two updates
+	 * sent to the system.
+	 *
+	 * Anything that arrives faster than that gets merged
+	 * into a single update.
+	 */
+	public static final long MINIMUM_UPDATE_INTERVAL = 500;
+
+	/**
+	 * How many changes we apply to the same `RemoteViews`
+	 * before creating it again.
+	 *
+	 * @note Each `set*()` call on a RemoteViews appends an
+	 *       action to it, so it grows forever if we never
+	 *       recreate it.
+	 *       Recreating it is cheap (no IPC involved).
+	 */
+	private static final int MAXIMUM_VIEW_ACTIONS = 32;
+
 	/**
 	 * Reference to the context that notified.
 	 */
@@ -55,109 +95,307 @@ public class NotificationMusic extends NotificationSimple {
 	 */
 	NotificationManager notificationManager = null;
 
+	// These are created only once, on `setup()`.
+	private PendingIntent pendingIntent           = null;
+	private PendingIntent buttonPlayPendingIntent = null;
+	private PendingIntent buttonSkipPendingIntent = null;
+
 	/**
-	 * Sends a system notification with a song's information.
-	 *
-	 * If the user clicks the notification, will be redirected
-	 * to the "Now Playing" Activity.
+	 * How many actions we've put on `notificationView` so far.
 	 *
-	 * If the user clicks on any of the buttons inside it,
-	 * custom actions will be executed on the
-	 * `NotificationButtonHandler` class.
-	 *
-	 * @param context Activity that calls this function.
-	 * @param service Service that calls this function.
-	 *                Required so the Notification can
-	 *                run on the background.
-	 * @param song    Song which we'll display information.
+	 * @see MAXIMUM_VIEW_ACTIONS
+	 */
+	private int notificationViewActions = 0;
+
+	// What we want to display on the next update...
+	private String  title    = null;
+	private String  artist   = null;
+	private boolean isPaused = false;
+
+	// ...and what the system is currently displaying.
+	private String  sentTitle    = null;
+	private String  sentArtist   = null;
+	private boolean sentIsPaused = false;
+
+	/**
+	 * Tells if we're currently running on the foreground
+	 * (meaning `startForeground` was already called).
+	 */
+	private boolean isForeground = false;
+
+	/**
+	 * When we last sent something to the system.
+	 * (based on `SystemClock.elapsedRealtime()`)
+	 */
+	private long lastUpdateTime = 0;
+
+	/**
+	 * Flag that tells if there's an update waiting to be
+	 * sent by `handler`.
+	 */
+	private boolean updatePending = false;
+
+	/**
+	 * Used to delay updates that come too fast.
+	 */
+	private Handler handler = new Handler();
+
+	/**
+	 * Action that sends the delayed update.
+	 */
+	private final Runnable pendingUpdate = new Runnable() {
+		@Override
+		public void run() {
+			updatePending = false;
+			sendUpdate();
+		}
+	};
+
+	// Counters of how many times we've talked to the system.
+	// Useful for testing and profiling.
+	private int startForegroundCalls = 0;
+	private int notifyCalls          = 0;
+	private int skippedUpdates       = 0;
+
+	/**
+	 * Creates everything that never changes on the notification.
 	 *
-	 * @note By calling this function multiple times, it'll
-	 *       update the old notification.
+	 * @note Only does it once, no matter how many times you call it.
 	 */
-	public void notifySong(Context context, Service service, Song song) {
+	private void setup(Context context, Service service) {
 
 		if (this.context == null)
 			this.context = context;
 		if (this.service == null)
 			this.service = service;
 
-
+		if (notificationBuilder != null)
+			return;
 
 		// Intent that launches the "Now Playing" Activity
 		Intent notifyIntent = new Intent(context, ActivityNowPlaying.class);
 		notifyIntent.addFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP);
 
 		// Letting the Intent be executed later by other application.
-		PendingIntent pendingIntent = PendingIntent.getActivity
+		pendingIntent = PendingIntent.getActivity
 				(context,
 				 0,
 				 notifyIntent,
 				 PendingIntent.FLAG_UPDATE_CURRENT);
 
-
-
-		// Setting our custom appearance for the notification
-		notificationView = new RemoteViews(kMP.packageName, R.layout.notification);
-
-		// Manually settings the buttons and text
-		// (ignoring the defaults on the XML)
-		notificationView.setImageViewResource(R.id.notification_button_play, R.drawable.pause);
-		notificationView.setImageViewResource(R.id.notification_button_skip, R.drawable.skip);
-		notificationView.setTextViewText(R.id.notification_text_title, song.getTitle());
-		notificationView.setTextViewText(R.id.notification_text_artist, song.getArtist());
-
-
-
 		// On the notification we have two buttons - Play and Skip
 		// Here we make sure the class `NotificationButtonHandler`
 		// gets called when user selects one of those.
 		//
-		// First, building the play button and attaching it.
+		// First, building the play button...
 		Intent buttonPlayIntent = new Intent(context, NotificationPlayButtonHandler.class);
 		buttonPlayIntent.putExtra("action", "togglePause");
 
-		PendingIntent buttonPlayPendingIntent = PendingIntent.getBroadcast(context, 0, buttonPlayIntent, 0);
-		notificationView.setOnClickPendingIntent(R.id.notification_button_play, buttonPlayPendingIntent);
+		buttonPlayPendingIntent = PendingIntent.getBroadcast(context, 0, buttonPlayIntent, 0);
 
-		// And now, building and attaching the Skip button.
+		// ...and now, building the Skip button.
 		Intent buttonSkipIntent = new Intent(context, NotificationSkipButtonHandler.class);
 		buttonSkipIntent.putExtra("action", "skip");
 
-		PendingIntent buttonSkipPendingIntent = PendingIntent.getBroadcast(context, 0, buttonSkipIntent, 0);
-		notificationView.setOnClickPendingIntent(R.id.notification_button_skip, buttonSkipPendingIntent);
+		buttonSkipPendingIntent = PendingIntent.getBroadcast(context, 0, buttonSkipIntent, 0);
 
+		createView();
 
-
-		// Finally... Actually creating the Notification
 		notificationBuilder = new Notification.Builder(context);
 
 		notificationBuilder.setContentIntent(pendingIntent)
 		                   .setSmallIcon(R.drawable.ic_launcher_white)
-		                   .setTicker("kMP: Playing '" + song.getTitle() + "' from '" + song.getArtist() + "'")
 		                   .setOngoing(true)
-		                   .setContentTitle(song.getTitle())
-		                   .setContentText(song.getArtist())
 		                   .setContent(notificationView);
 
-		Notification notification = notificationBuilder.build();
+		notificationManager = (NotificationManager)context.getSystemService(Context.NOTIFICATION_SERVICE);
+	}
 
+	/**
+	 * (Re)Creates our custom appearance for the notification,
+	 * attaching the buttons to it.
+	 *
+	 * @note Fills it with whatever we've sent last time,
+	 *       so it doesn't get blank.
+	 */
+	private void createView() {
 
+		notificationView = new RemoteViews(kMP.packageName, R.layout.notification);
 
-		notificationManager = (NotificationManager)context.getSystemService(Context.NOTIFICATION_SERVICE);
-//		notificationManager.notify(NOTIFICATION_ID, notification);
+		notificationView.setOnClickPendingIntent(R.id.notification_button_play, buttonPlayPendingIntent);
+		notificationView.setOnClickPendingIntent(R.id.notification_button_skip, buttonSkipPendingIntent);
+
+		// Manually settings the buttons and text
+		// (ignoring the defaults on the XML)
+		notificationView.setImageViewResource(R.id.notification_button_play,
+		                                      (sentIsPaused ? R.drawable.play : R.drawable.pause));
+		notificationView.setImageViewResource(R.id.notification_button_skip, R.drawable.skip);
+
+		if (sentTitle != null) {
+			notificationView.setTextViewText(R.id.notification_text_title,  sentTitle);
+			notificationView.setTextViewText(R.id.notification_text_artist, sentArtist);
+		}
+
+		notificationViewActions = 0;
+
+		if (notificationBuilder != null)
+			notificationBuilder.setContent(notificationView);
+	}
+
+	/**
+	 * Sends a system notification with a song's information.
+	 *
+	 * If the user clicks the notification, will be redirected
+	 * to the "Now Playing" Activity.
+	 *
+	 * If the user clicks on any of the buttons inside it,
+	 * custom actions will be executed on the
+	 * `NotificationButtonHandler` class.
+	 *
+	 * @param context Activity that calls this function.
+	 * @param service Service that calls this function.
+	 *                Required so the Notification can
+	 *                run on the background.
+	 * @param song    Song which we'll display information.
+	 *
+	 * @note By calling this function multiple times, it'll
+	 *       update the old notification.
+	 *       If called too fast, only the last song will
+	 *       get displayed.
+	 */
+	public void notifySong(Context context, Service service, Song song) {
+
+		setup(context, service);
+
+		title    = song.getTitle();
+		artist   = song.getArtist();
 
-		// Sets the notification to run on the foreground.
-		// (why not the former commented line?)
-		service.startForeground(NOTIFICATION_ID, notification);
+		// A new song always starts playing
+		isPaused = false;
+
+		scheduleUpdate();
+	}
+
+	/**
+	 * Updates the Notification icon if the music is paused.
+	 */
+	public void notifyPaused(boolean isPaused) {
+		if (notificationBuilder == null)
+			return;
+
+		this.isPaused = isPaused;
+
+		scheduleUpdate();
+	}
+
+	/**
+	 * Sends the update right now or later, making sure
+	 * we don't send more than one each
+	 * `MINIMUM_UPDATE_INTERVAL`.
+	 */
+	private void scheduleUpdate() {
+
+		// First time - must go to the foreground right away
+		if (! isForeground) {
+			handler.removeCallbacks(pendingUpdate);
+			updatePending = false;
+			sendUpdate();
+			return;
+		}
+
+		// Already waiting; it'll pick the latest values
+		if (updatePending)
+			return;
+
+		long elapsed = SystemClock.elapsedRealtime() - lastUpdateTime;
+
+		if (elapsed >= MINIMUM_UPDATE_INTERVAL) {
+			sendUpdate();
+			return;
+		}
+
+		updatePending = true;
+		handler.postDelayed(pendingUpdate, MINIMUM_UPDATE_INTERVAL - elapsed);
+	}
+
+	/**
+	 * Actually sends the notification to the system,
+	 * changing only what's different from last time.
+	 */
+	private void sendUpdate() {
+		if ((notificationBuilder == null) || (title == null))
+			return;
+
+		boolean songChanged  = (! title.equals(sentTitle)) || (! stringEquals(artist, sentArtist));
+		boolean pauseChanged = (isPaused != sentIsPaused);
+
+		// Nothing new to show
+		if (isForeground && (! songChanged) && (! pauseChanged)) {
+			skippedUpdates++;
+			return;
+		}
+
+		if (notificationViewActions >= MAXIMUM_VIEW_ACTIONS)
+			createView();
+
+		if (songChanged) {
+			notificationView.setTextViewText(R.id.notification_text_title,  title);
+			notificationView.setTextViewText(R.id.notification_text_artist, artist);
+			notificationViewActions += 2;
+
+			notificationBuilder.setTicker("kMP: Playing '" + title + "' from '" + artist + "'")
+			                   .setContentTitle(title)
+			                   .setContentText(artist);
+		}
+
+		if (pauseChanged || (! isForeground)) {
+			int iconID = ((isPaused)?
+			              R.drawable.play :
+			              R.drawable.pause);
+
+			notificationView.setImageViewResource(R.id.notification_button_play, iconID);
+			notificationViewActions++;
+		}
+
+		Notification notification = notificationBuilder.build();
+
+		if (isForeground) {
+			// Since it has the same ID, it only updates
+			// the notification we've already started.
+			notificationManager.notify(NOTIFICATION_ID, notification);
+			notifyCalls++;
+		}
+		else {
+			// Sets the notification to run on the foreground.
+			service.startForeground(NOTIFICATION_ID, notification);
+			startForegroundCalls++;
+			isForeground = true;
+		}
+
+		sentTitle      = title;
+		sentArtist     = artist;
+		sentIsPaused   = isPaused;
+		lastUpdateTime = SystemClock.elapsedRealtime();
+	}
+
+	private static boolean stringEquals(String a, String b) {
+		return (a == null) ? (b == null) : a.equals(b);
 	}
 
 	/**
 	 * Called when user clicks the "play/pause" button on the on-going system Notification.
+	 *
+	 * @note Runs on the app's main process - which might have
+	 *       just been started for this, with no `kMP.musicService`
+	 *       (see `ServicePlayMusic.sendCommand()`).
 	 */
 	public static class NotificationPlayButtonHandler extends BroadcastReceiver {
 		@Override
 		public void onReceive(Context context, Intent intent) {
-			kMP.musicService.togglePlayback();
+			if (kMP.musicService != null)
+				kMP.musicService.togglePlayback();
+			else
+				ServicePlayMusic.sendCommand(context, PlayerEvent.COMMAND_TOGGLE_PLAYBACK);
 		}
 	}
 
@@ -167,40 +405,61 @@ public class NotificationMusic extends NotificationSimple {
 	public static class NotificationSkipButtonHandler extends BroadcastReceiver {
 		@Override
 		public void onReceive(Context context, Intent intent) {
-			kMP.musicService.next(true);
-			kMP.musicService.playSong();
+			if (kMP.musicService != null) {
+				kMP.musicService.next(true);
+				kMP.musicService.playSong();
+			}
+			else
+				ServicePlayMusic.sendCommand(context, PlayerEvent.COMMAND_SKIP);
 		}
 	}
 
 	/**
-	 * Updates the Notification icon if the music is paused.
+	 * Cancels this notification.
 	 */
-	public void notifyPaused(boolean isPaused) {
-		if ((notificationView == null) || (notificationBuilder == null))
-			return;
+	public void cancel() {
+		handler.removeCallbacks(pendingUpdate);
+		updatePending = false;
 
-		int iconID = ((isPaused)?
-	                  R.drawable.play :
-	                  R.drawable.pause);
+		if (service != null)
+			service.stopForeground(true);
 
-		notificationView.setImageViewResource(R.id.notification_button_play, iconID);
+		if (notificationManager != null)
+			notificationManager.cancel(NOTIFICATION_ID);
 
-		notificationBuilder.setContent(notificationView);
+		isForeground = false;
+		sentTitle    = null;
+		sentArtist   = null;
+	}
 
-//		notificationManager.notify(NOTIFICATION_ID, notificationBuilder.build());
+	/**
+	 * How many times we've called `startForeground`.
+	 */
+	public int getStartForegroundCalls() {
+		return startForegroundCalls;
+	}
 
-		// Sets the notification to run on the foreground.
-		// (why not the former commented line?)
-		service.startForeground(NOTIFICATION_ID, notificationBuilder.build());
+	/**
+	 * How many times we've called `NotificationManager#notify`.
+	 */
+	public int getNotifyCalls() {
+		return notifyCalls;
 	}
 
 	/**
-	 * Cancels this notification.
+	 * Total of IPC calls we've made to the system to show
+	 * this notification.
 	 */
-	public void cancel() {
-		service.stopForeground(true);
+	public int getIpcCalls() {
+		return startForegroundCalls + notifyCalls;
+	}
 
-		notificationManager.cancel(NOTIFICATION_ID);
+	/**
+	 * How many updates we didn't send because there
+	 * was nothing new to show.
+	 */
+	public int getSkippedUpdates() {
+		return skippedUpdates;
 	}
 
 	/**
@@ -31,7 +31,28 @@ public class Settings {
 	public void load(Context c) {
         preferences = PreferenceManager.getDefaultSharedPreferences(c);
 	}
+
+	/**
+	 * Same as `load()`, but seeing changes made by other
+	 * processes (see `ServicePlaybackProcess`).
+	 *
+	 * @note Call it again to read the latest changes.
+	 */
+	@SuppressWarnings("deprecation")
+	public void loadShared(Context c) {
+		preferences = c.getSharedPreferences(c.getPackageName() + "_preferences",
+		                                     Context.MODE_MULTI_PROCESS);
+	}
 	
+	/**
+	 * Tells if `load()` or `loadShared()` was called - it
+	 * might not have been, on a process started just for a
+	 * receiver.
+	 */
+	public boolean isLoaded() {
+		return preferences != null;
+	}
+
 	/**
 	 * Resets all settings to default.
 	 */
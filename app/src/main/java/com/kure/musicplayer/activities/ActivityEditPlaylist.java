@@ -0,0 +1,234 @@
+package com.kure.musicplayer.activities;
+
+import java.util.ArrayList;
+
+import android.app.ActionBar;
+import android.app.AlertDialog;
+import android.content.DialogInterface;
+import android.os.Bundle;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.view.View;
+import android.widget.AdapterView;
+import android.widget.AdapterView.OnItemClickListener;
+import android.widget.ListView;
+import android.widget.Toast;
+
+import com.kure.musicplayer.R;
+import com.kure.musicplayer.kMP;
+import com.kure.musicplayer.adapters.AdapterSong;
+import com.kure.musicplayer.helpers.BackgroundTask;
+import com.kure.musicplayer.model.Playlist;
+import com.kure.musicplayer.model.Song;
+import com.kure.musicplayer.model.SongQuery;
+import com.kure.musicplayer.tasks.TaskScheduler;
+
+/**
+ * Lets the user reorder and remove songs of a Playlist.
+ *
+ * Touching a song shows what can be done with it.
+ * Nothing is saved until the user presses "Save" - then
+ * only what changed is sent to the media database
+ * (see `SongList.editPlaylist()`).
+ *
+ * Expects the extras:
+ * - "id":   ID of the Playlist;
+ * - "name": Its name.
+ *
+ * Songs are found again from the Playlist's ID (usually
+ * from the query cache, since the Playlist was just opened),
+ * so they're there even if Android recreated us.
+ *
+ * @note If the Playlist went away, we simply leave.
+ */
+public class ActivityEditPlaylist extends ActivityMaster
+	implements OnItemClickListener {
+
+	// Same order as `R.array.edit_playlist_song_actions`
+	private static final int MOVE_UP     = 0;
+	private static final int MOVE_DOWN   = 1;
+	private static final int MOVE_TOP    = 2;
+	private static final int MOVE_BOTTOM = 3;
+	private static final int REMOVE      = 4;
+
+	private long playlistId;
+
+	/**
+	 * Songs before the user touched anything.
+	 */
+	private long[] before;
+
+	/**
+	 * Songs as the user is editing them.
+	 */
+	private ArrayList<Song> songs;
+
+	private AdapterSong adapter;
+
+	/**
+	 * Finding `songs` when they weren't on the cache
+	 * (`null` if it's not running).
+	 */
+	private BackgroundTask<ArrayList<Song>> loading = null;
+
+	@Override
+	protected void onCreate(Bundle savedInstanceState) {
+		super.onCreate(savedInstanceState);
+		setContentView(R.layout.activity_list_songs);
+
+		// This enables the "Up" button on the top Action Bar
+		// Note that it returns to the parent Activity, specified
+		// on `AndroidManifest`
+		ActionBar actionBar = getActionBar();
+		if (actionBar != null)
+			actionBar.setDisplayHomeAsUpEnabled(true);
+
+		playlistId = getIntent().getLongExtra("id", -1);
+
+		setTitle(getString(R.string.edit_playlist_title, getIntent().getStringExtra("name")));
+
+		Playlist playlist = kMP.songs.getSnapshot().getPlaylistById(playlistId);
+
+		// Rescan took it away (or there was none yet)
+		if (playlist == null) {
+			finish();
+			return;
+		}
+
+		SongQuery query = SongQuery.byPlaylist(playlist.getName());
+
+		songs = kMP.songs.getCachedSongs(query);
+
+		if (songs != null)
+			showSongs();
+		else
+			load(query);
+	}
+
+	/**
+	 * Starts editing `songs`.
+	 */
+	private void showSongs() {
+		before = songIds();
+
+		adapter = new AdapterSong(this, songs);
+
+		ListView listView = (ListView)findViewById(R.id.activity_list_songs_list);
+
+		listView.setAdapter(adapter);
+		listView.setOnItemClickListener(this);
+	}
+
+	/**
+	 * Runs `query` in the background, letting the
+	 * user edit its songs when done.
+	 */
+	private void load(final SongQuery query) {
+		loading = new BackgroundTask<ArrayList<Song>>() {
+			@Override
+			protected ArrayList<Song> doInBackground() {
+				return kMP.songs.getSongs(query);
+			}
+
+			@Override
+			protected void onPostExecute(ArrayList<Song> result) {
+				loading = null;
+
+				songs = result;
+				showSongs();
+			}
+		}.execute(TaskScheduler.PRIORITY_UI, null);
+	}
+
+	@Override
+	protected void onDestroy() {
+		super.onDestroy();
+
+		if (loading != null)
+			loading.cancel();
+	}
+
+	@Override
+	public boolean onCreateOptionsMenu(Menu menu) {
+		getMenuInflater().inflate(R.menu.activity_edit_playlist, menu);
+
+		return super.onCreateOptionsMenu(menu);
+	}
+
+	@Override
+	public boolean onOptionsItemSelected(MenuItem item) {
+
+		if (item.getItemId() == R.id.edit_playlist_save) {
+			// Still loading - nothing to save
+			if (songs == null)
+				return true;
+
+			kMP.songs.editPlaylist(this, playlistId, before, songIds());
+
+			Toast.makeText(this, getString(R.string.edit_playlist_saved), Toast.LENGTH_SHORT).show();
+			finish();
+			return true;
+		}
+		return super.onOptionsItemSelected(item);
+	}
+
+	/**
+	 * Asks what to do with the song the user touched.
+	 */
+	@Override
+	public void onItemClick(AdapterView<?> parent, View view, final int position, long id) {
+
+		new AlertDialog.Builder(this)
+			.setTitle(songs.get(position).getTitle())
+			.setItems(R.array.edit_playlist_song_actions, new DialogInterface.OnClickListener() {
+
+				public void onClick(DialogInterface dialog, int which) {
+					edit(position, which);
+				}
+			})
+			.show();
+	}
+
+	/**
+	 * Applies `action` to the song at `position`.
+	 */
+	private void edit(int position, int action) {
+		Song song = songs.get(position);
+
+		switch (action) {
+		case MOVE_UP:
+			if (position > 0)
+				songs.add(position - 1, songs.remove(position));
+			break;
+
+		case MOVE_DOWN:
+			if (position < songs.size() - 1)
+				songs.add(position + 1, songs.remove(position));
+			break;
+
+		case MOVE_TOP:
+			songs.remove(position);
+			songs.add(0, song);
+			break;
+
+		case MOVE_BOTTOM:
+			songs.remove(position);
+			songs.add(song);
+			break;
+
+		case REMOVE:
+			songs.remove(position);
+			break;
+		}
+		adapter.notifyDataSetChanged();
+	}
+
+	private long[] songIds() {
+		long[] ids = new long[songs.size()];
+
+		for (int i = 0; i < ids.length; i++)
+			ids[i] = songs.get(i).getId();
+
+		return ids;
+	}
+}
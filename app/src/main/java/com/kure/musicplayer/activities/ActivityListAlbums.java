@@ -8,15 +8,20 @@ import android.os.Bundle;
 import android.view.View;
 import android.widget.AdapterView;
 import android.widget.AdapterView.OnItemClickListener;
+import android.widget.AdapterView.OnItemLongClickListener;
 import android.widget.ArrayAdapter;
 import android.widget.ListView;
 
 import com.kure.musicplayer.R;
 import com.kure.musicplayer.kMP;
+import com.kure.musicplayer.model.SongQuery;
 
 
 /**
  * Shows a list of albums from a specified artist.
+ *
+ * Pressing and holding an album (or "All Songs") adds
+ * its songs to the "Now Playing List".
  */
 public class ActivityListAlbums extends ActivityMaster
 	implements OnItemClickListener {
@@ -74,6 +79,24 @@ public class ActivityListAlbums extends ActivityMaster
 
 		songListView.setOnItemClickListener(this);
 
+		songListView.setOnItemLongClickListener(new OnItemLongClickListener() {
+
+			@Override
+			public boolean onItemLongClick(AdapterView<?> parent, View view, int position, long id) {
+
+				if (! kMP.songs.isInitialized())
+					return false;
+
+				// Same as `onItemClick()`, "All Songs" comes first
+				if (position == 0)
+					askEnqueue(currentArtist, kMP.songs.getSongsByArtist(currentArtist));
+				else
+					askEnqueue(items.get(position), kMP.songs.getSongsByAlbum(items.get(position)));
+
+				return true;
+			}
+		});
+
 		// This enables the "Up" button on the top Action Bar
 		// Note that it returns to the parent Activity, specified
 		// on `AndroidManifest`
@@ -94,23 +117,19 @@ public class ActivityListAlbums extends ActivityMaster
 			return;
 
 		// Let's switch to a song list.
-		Intent intent = new Intent(this, ActivityListSongs.class);
+		Intent intent;
 
 		// This is the special case - the user selected "All Albums".
 		// We'll show all songs from this artist, then.
 		if (position == 0) {
-			kMP.musicList = kMP.songs.getSongsByArtist(currentArtist);
-
-			intent.putExtra("title", currentArtist);
+			intent = ActivityListSongs.intentFor(this, SongQuery.byArtist(currentArtist), currentArtist);
 		}
 		// Regular case, user selected a specific album.
 		// Show all songs from that album.
 		else {
 			String selectedAlbum = items.get(position);
 
-			kMP.musicList = kMP.songs.getSongsByAlbum(selectedAlbum);
-
-			intent.putExtra("title", selectedAlbum);
+			intent = ActivityListSongs.intentFor(this, SongQuery.byAlbum(selectedAlbum), selectedAlbum);
 		}
 		startActivity(intent);
 	}
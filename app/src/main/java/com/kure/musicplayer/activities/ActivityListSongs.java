@@ -1,25 +1,48 @@
 package com.kure.musicplayer.activities;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import android.app.ActionBar;
+import android.app.AlertDialog;
+import android.content.Context;
+import android.content.DialogInterface;
 import android.content.Intent;
 import android.os.Bundle;
+import android.util.SparseBooleanArray;
+import android.view.ActionMode;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
+import android.widget.AbsListView.MultiChoiceModeListener;
 import android.widget.AdapterView;
 import android.widget.AdapterView.OnItemClickListener;
-import android.widget.AdapterView.OnItemLongClickListener;
 import android.widget.ListView;
+import android.widget.Toast;
 
 import com.kure.musicplayer.R;
 import com.kure.musicplayer.kMP;
 import com.kure.musicplayer.adapters.AdapterSong;
+import com.kure.musicplayer.helpers.BackgroundTask;
+import com.kure.musicplayer.model.Playlist;
+import com.kure.musicplayer.model.Song;
+import com.kure.musicplayer.model.SongQuery;
+import com.kure.musicplayer.tasks.TaskScheduler;
 
 
 /**
  * Shows a predefined list of songs, letting the user select
  * them to play.
  *
- * @note This class is a mess because, to decide which songs to
- *       display, it uses the member `kMP.musicList`.
+ * Pressing and holding starts selecting songs - then they
+ * can all be added to the "Now Playing List" (at the end or
+ * to play next) or to a Playlist at once.
+ *
+ * Songs come from the `SongQuery` on the Intent (see
+ * `intentFor()`), so they're found again - usually from
+ * the query cache on `kMP.songs` - instead of being passed around.
+ * If they're not there (say, the cache was trimmed while we
+ * were away), they're found in the background.
  */
 public class ActivityListSongs extends ActivityMaster
 	implements OnItemClickListener {
@@ -29,6 +52,31 @@ public class ActivityListSongs extends ActivityMaster
 	 */
 	private ListView songListView;
 
+	/**
+	 * The songs being shown.
+	 */
+	private ArrayList<Song> songs;
+
+	/**
+	 * Finding `songs` when they weren't on the cache
+	 * (`null` if it's not running).
+	 */
+	private BackgroundTask<ArrayList<Song>> loading = null;
+
+	/**
+	 * Creates an Intent to show the songs `query` finds,
+	 * with `title` on top.
+	 */
+	public static Intent intentFor(Context c, SongQuery query, String title) {
+		Intent intent = new Intent(c, ActivityListSongs.class);
+
+		intent.putExtra("title",       title);
+		intent.putExtra("query_type",  query.getType());
+		intent.putExtra("query_value", query.getValue());
+
+		return intent;
+	}
+
 	@Override
 	protected void onCreate(Bundle popcorn) {
 		super.onCreate(popcorn);
@@ -46,16 +94,26 @@ public class ActivityListSongs extends ActivityMaster
 		Intent intent = getIntent();
 		Bundle bundle = intent.getExtras();
 
-		if (bundle != null)
-			this.setTitle((String)bundle.get("title"));
+		if (bundle != null) {
+			if (bundle.get("title") != null)
+				this.setTitle((String)bundle.get("title"));
 
-		// Connects the song list to an adapter
-		// (thing that creates several Layouts from the song list)
-		if ((kMP.musicList != null) && (! kMP.musicList.isEmpty())) {
-			AdapterSong songAdapter = new AdapterSong(this, kMP.musicList);
-			songListView.setAdapter(songAdapter);
+			if (bundle.containsKey("query_type")) {
+				SongQuery query = SongQuery.of(bundle.getInt("query_type"),
+				                               bundle.getString("query_value"));
+
+				songs = kMP.songs.getCachedSongs(query);
+
+				if (songs == null)
+					load(query);
+			}
 		}
 
+		if (songs == null)
+			songs = new ArrayList<Song>();
+
+		showSongs();
+
 		// This enables the "Up" button on the top Action Bar
 		// Note that it returns to the parent Activity, specified
 		// on `AndroidManifest`
@@ -63,19 +121,145 @@ public class ActivityListSongs extends ActivityMaster
 		if (actionBar != null)
 			actionBar.setDisplayHomeAsUpEnabled(true);
 
-		// If we press and hold on a Song, let's add to the current
-		// playing queue.
-		songListView.setOnItemLongClickListener(new OnItemLongClickListener() {
+		// If we press and hold on a Song, we start selecting
+		// songs to add to the current playing queue.
+		songListView.setChoiceMode(ListView.CHOICE_MODE_MULTIPLE_MODAL);
+		songListView.setMultiChoiceModeListener(new MultiChoiceModeListener() {
+
+			@Override
+			public boolean onCreateActionMode(ActionMode mode, Menu menu) {
+				mode.getMenuInflater().inflate(R.menu.activity_list_songs_selection, menu);
+				return true;
+			}
+
+			@Override
+			public boolean onPrepareActionMode(ActionMode mode, Menu menu) {
+				return false;
+			}
 
 			@Override
-			public boolean onItemLongClick(AdapterView<?> parent, View view,
-					int position, long id) {
+			public void onItemCheckedStateChanged(ActionMode mode, int position, long id, boolean checked) {
+				mode.setTitle(getString(R.string.list_songs_selected, songListView.getCheckedItemCount()));
+			}
 
-				kMP.musicService.add(kMP.musicList.get(position));
+			@Override
+			public boolean onActionItemClicked(ActionMode mode, MenuItem item) {
+
+				List<Song> songs = selectedSongs();
+
+				switch (item.getItemId()) {
+				case R.id.list_songs_action_append:
+					enqueue(songs, false);
+					break;
+
+				case R.id.list_songs_action_play_next:
+					enqueue(songs, true);
+					break;
+
+				case R.id.list_songs_action_add_to_playlist:
+					addToPlaylist(songs);
+					break;
+
+				default:
+					return false;
+				}
+				mode.finish();
 				return true;
 			}
+
+			@Override
+			public void onDestroyActionMode(ActionMode mode) {
+			}
 		});
+	}
+
+	/**
+	 * Connects the song list to an adapter
+	 * (thing that creates several Layouts from the song list)
+	 */
+	private void showSongs() {
+		if (! songs.isEmpty()) {
+			AdapterSong songAdapter = new AdapterSong(this, songs);
+			songListView.setAdapter(songAdapter);
+		}
+	}
+
+	/**
+	 * Runs `query` in the background (it might need to build
+	 * indexes or read Playlists), showing its songs when done.
+	 */
+	private void load(final SongQuery query) {
+		loading = new BackgroundTask<ArrayList<Song>>() {
+			@Override
+			protected ArrayList<Song> doInBackground() {
+				return kMP.songs.getSongs(query);
+			}
+
+			@Override
+			protected void onPostExecute(ArrayList<Song> result) {
+				loading = null;
+
+				songs = result;
+				showSongs();
+			}
+		}.execute(TaskScheduler.PRIORITY_UI, null);
+	}
+
+	@Override
+	protected void onDestroy() {
+		super.onDestroy();
+
+		if (loading != null)
+			loading.cancel();
+	}
+
+	/**
+	 * All songs the user selected, in the order
+	 * they're on the list.
+	 */
+	private List<Song> selectedSongs() {
+		ArrayList<Song> selected = new ArrayList<Song>();
+
+		SparseBooleanArray checked = songListView.getCheckedItemPositions();
+
+		if (checked == null)
+			return selected;
+
+		for (int i = 0; i < checked.size(); i++)
+			if (checked.valueAt(i))
+				selected.add(songs.get(checked.keyAt(i)));
+
+		return selected;
+	}
+
+	/**
+	 * Shows a Dialog with all Playlists, adding `songs`
+	 * to the one the user picks.
+	 */
+	private void addToPlaylist(final List<Song> songs) {
+
+		final List<Playlist> playlists = kMP.songs.getSnapshot().getPlaylists();
+
+		String[] names = new String[playlists.size()];
+
+		for (int i = 0; i < names.length; i++)
+			names[i] = playlists.get(i).getName();
+
+		new AlertDialog.Builder(this)
+			.setTitle(getString(R.string.menu_now_playing_action_bar_add_to_playlist))
+			.setItems(names, new DialogInterface.OnClickListener() {
+
+				public void onClick(DialogInterface dialog, int which) {
+					Playlist playlist = playlists.get(which);
+
+					kMP.songs.appendToPlaylist(ActivityListSongs.this, playlist.getID(), songs);
 
+					Toast.makeText(ActivityListSongs.this,
+					               getString(R.string.menu_now_playing_dialog_add_to_playlist_success, playlist.getName()),
+					               Toast.LENGTH_SHORT).show();
+				}
+			})
+			.show();
 	}
 
 	/**
@@ -88,7 +272,7 @@ public class ActivityListSongs extends ActivityMaster
 	public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
 
 		// We'll play the current song list
-		kMP.nowPlayingList = kMP.musicList;
+		kMP.nowPlayingList = songs;
 
 		// Sending the song index inside the now playing list.
 		// See the documentation of `ActivityNowPLaying` class.
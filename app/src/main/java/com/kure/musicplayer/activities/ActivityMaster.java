@@ -1,15 +1,21 @@
 package com.kure.musicplayer.activities;
 
+import java.util.List;
+
 import android.annotation.SuppressLint;
 import android.app.Activity;
+import android.app.AlertDialog;
+import android.content.DialogInterface;
 import android.content.Intent;
 import android.os.Bundle;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
+import android.widget.Toast;
 
 import com.kure.musicplayer.R;
 import com.kure.musicplayer.kMP;
+import com.kure.musicplayer.model.Song;
 
 /**
  * Master Activity from which every other Activity inherits
@@ -21,6 +27,8 @@ import com.kure.musicplayer.kMP;
  * - They all have the same context menu (bottom menu).
  *   (note that there's an extra item "Now Playing" that
  *    only appears if user started playing something)
+ * - They can add songs to the "Now Playing List" (see
+ *   `askEnqueue()` and `enqueue()`).
  *
  * What we do is make each Activity keep track of which
  * theme it currently has.
@@ -47,6 +55,10 @@ public class ActivityMaster extends Activity {
 	 */
 	protected String currentTheme = "";
 
+	// Same order as `R.array.enqueue_actions`
+	private static final int ENQUEUE_NEXT   = 0;
+	private static final int ENQUEUE_APPEND = 1;
+
 	@Override
 	protected void onCreate(Bundle savedInstanceState) {
 
@@ -156,5 +168,49 @@ public class ActivityMaster extends Activity {
 
 		return super.onOptionsItemSelected(item);
 	}
-}
 
+	/**
+	 * Asks if `songs` should play next or go to the end
+	 * of the "Now Playing List", adding them if so.
+	 *
+	 * @param title What the songs are (like an album name).
+	 */
+	protected void askEnqueue(String title, final List<Song> songs) {
+
+		new AlertDialog.Builder(this)
+			.setTitle(title)
+			.setItems(R.array.enqueue_actions, new DialogInterface.OnClickListener() {
+
+				public void onClick(DialogInterface dialog, int which) {
+					if (which == ENQUEUE_NEXT)
+						enqueue(songs, true);
+
+					else if (which == ENQUEUE_APPEND)
+						enqueue(songs, false);
+				}
+			})
+			.show();
+	}
+
+	/**
+	 * Adds all `songs` to the "Now Playing List" at once,
+	 * without stopping the one that's playing.
+	 *
+	 * @param next If they should be the next ones to play
+	 *             (otherwise they go at the end).
+	 */
+	protected void enqueue(List<Song> songs, boolean next) {
+
+		if ((kMP.musicService == null) || songs.isEmpty())
+			return;
+
+		if (next)
+			kMP.musicService.addNext(songs);
+		else
+			kMP.musicService.addAll(songs);
+
+		Toast.makeText(this,
+		               getString(next ? R.string.enqueue_next_success : R.string.enqueue_append_success, songs.size()),
+		               Toast.LENGTH_SHORT).show();
+	}
+}
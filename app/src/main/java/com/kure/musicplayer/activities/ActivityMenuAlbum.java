@@ -3,22 +3,25 @@ package com.kure.musicplayer.activities;
 import java.util.ArrayList;
 
 import android.app.ActionBar;
-import android.content.Intent;
 import android.os.Bundle;
 import android.view.View;
 import android.widget.AdapterView;
 import android.widget.AdapterView.OnItemClickListener;
+import android.widget.AdapterView.OnItemLongClickListener;
 import android.widget.ArrayAdapter;
 import android.widget.ListView;
 
 import com.kure.musicplayer.R;
 import com.kure.musicplayer.kMP;
+import com.kure.musicplayer.model.SongQuery;
 
 /**
  * Shows a menu with all the albums of all the artists
  * on SongList, allowing the user to choose one of
  * them and going to a specific artist menu.
  *
+ * Pressing and holding an album adds all its
+ * songs to the "Now Playing List".
  */
 public class ActivityMenuAlbum extends ActivityMaster
 	implements OnItemClickListener {
@@ -66,6 +69,21 @@ public class ActivityMenuAlbum extends ActivityMaster
 		listView.setAdapter(adapter);
 
 		listView.setOnItemClickListener(this);
+
+		listView.setOnItemLongClickListener(new OnItemLongClickListener() {
+
+			@Override
+			public boolean onItemLongClick(AdapterView<?> parent, View view, int position, long id) {
+
+				if (! kMP.songs.isInitialized())
+					return false;
+
+				String album = items.get(position);
+
+				askEnqueue(album, kMP.songs.getSongsByAlbum(album));
+				return true;
+			}
+		});
 	}
 
 	/**
@@ -82,13 +100,7 @@ public class ActivityMenuAlbum extends ActivityMaster
 
 		String selectedAlbum = items.get(position);
 
-		kMP.musicList = kMP.songs.getSongsByAlbum(selectedAlbum);
-
-		Intent intent = new Intent(this, ActivityListSongs.class);
-
-		intent.putExtra("title", selectedAlbum);
-
-		startActivity(intent);
+		startActivity(ActivityListSongs.intentFor(this, SongQuery.byAlbum(selectedAlbum), selectedAlbum));
 	}
 
 	/**
@@ -8,17 +8,21 @@ import android.os.Bundle;
 import android.view.View;
 import android.widget.AdapterView;
 import android.widget.AdapterView.OnItemClickListener;
+import android.widget.AdapterView.OnItemLongClickListener;
 import android.widget.ArrayAdapter;
 import android.widget.ListView;
 
 import com.kure.musicplayer.R;
 import com.kure.musicplayer.kMP;
+import com.kure.musicplayer.model.SongQuery;
 
 /**
  * Shows a menu with all the artists of the songs
  * on SongList, allowing the user to choose one of
  * them and going to a specific artist menu.
  *
+ * Pressing and holding an artist adds all their
+ * songs to the "Now Playing List".
  */
 public class ActivityMenuArtist extends ActivityMaster
 implements OnItemClickListener {
@@ -65,6 +69,21 @@ implements OnItemClickListener {
 		listView.setAdapter(adapter);
 
 		listView.setOnItemClickListener(this);
+
+		listView.setOnItemLongClickListener(new OnItemLongClickListener() {
+
+			@Override
+			public boolean onItemLongClick(AdapterView<?> parent, View view, int position, long id) {
+
+				if (! kMP.songs.isInitialized())
+					return false;
+
+				String artist = items.get(position);
+
+				askEnqueue(artist, kMP.songs.getSongsByArtist(artist));
+				return true;
+			}
+		});
 	}
 
 	/**
@@ -88,13 +107,7 @@ implements OnItemClickListener {
 
 		if (albumsByArtist.size() == 1) {
 
-			kMP.musicList = kMP.songs.getSongsByArtist(selectedArtist);
-
-			Intent intent = new Intent(this, ActivityListSongs.class);
-
-			intent.putExtra("title", selectedArtist);
-
-			startActivity(intent);
+			startActivity(ActivityListSongs.intentFor(this, SongQuery.byArtist(selectedArtist), selectedArtist));
 		}
 		else {
 			// We'll send the artist name to display his albums
@@ -0,0 +1,206 @@
+package com.kure.musicplayer.activities;
+
+import java.util.ArrayList;
+
+import android.app.ActionBar;
+import android.os.Bundle;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.util.SparseBooleanArray;
+import android.view.View;
+import android.widget.AbsListView;
+import android.widget.AdapterView;
+import android.widget.AdapterView.OnItemClickListener;
+import android.widget.ArrayAdapter;
+import android.widget.Button;
+import android.widget.EditText;
+import android.widget.ListView;
+
+import com.kure.musicplayer.R;
+import com.kure.musicplayer.kMP;
+import com.kure.musicplayer.helpers.BackgroundTask;
+import com.kure.musicplayer.model.LibrarySnapshot;
+import com.kure.musicplayer.model.SongFilter;
+import com.kure.musicplayer.model.SongQuery;
+import com.kure.musicplayer.tasks.TaskScheduler;
+
+/**
+ * Lets the user filter songs by several things at once -
+ * like "Jazz or Blues, from 1960 to 1969, except Someone".
+ *
+ * Every time something changes we count the songs again
+ * (in the background) and show it on the button (see
+ * `SongFilter`).
+ */
+public class ActivityMenuFilter extends ActivityMaster
+	implements OnItemClickListener, TextWatcher {
+
+	/**
+	 * We work with this snapshot up until we're
+	 * closed, even if there's a rescan.
+	 */
+	private LibrarySnapshot snapshot;
+
+	/**
+	 * All genres, in the same order as on the list.
+	 */
+	private ArrayList<String> genres;
+
+	private ListView genreList;
+	private EditText yearFrom;
+	private EditText yearTo;
+	private EditText excludeArtist;
+	private Button   showButton;
+
+	/**
+	 * The filter we should count next - `null` once
+	 * we're gone.
+	 *
+	 * @note Only the latest one gets counted: changes
+	 *       that come while a count is waiting don't
+	 *       add another.
+	 */
+	private volatile SongFilter counting = null;
+
+	@Override
+	protected void onCreate(Bundle savedInstanceState) {
+		super.onCreate(savedInstanceState);
+		setContentView(R.layout.activity_menu_filter);
+
+		// This enables the "Up" button on the top Action Bar
+		// Note that it returns to the parent Activity, specified
+		// on `AndroidManifest`
+		ActionBar actionBar = getActionBar();
+		if (actionBar != null)
+			actionBar.setDisplayHomeAsUpEnabled(true);
+
+		snapshot = kMP.songs.getSnapshot();
+		genres   = snapshot.getGenres();
+
+		genreList     = (ListView)findViewById(R.id.activity_menu_filter_genres);
+		yearFrom      = (EditText)findViewById(R.id.activity_menu_filter_year_from);
+		yearTo        = (EditText)findViewById(R.id.activity_menu_filter_year_to);
+		excludeArtist = (EditText)findViewById(R.id.activity_menu_filter_exclude_artist);
+		showButton    = (Button)  findViewById(R.id.activity_menu_filter_show);
+
+		// The user can check as many genres as wanted
+		genreList.setChoiceMode(AbsListView.CHOICE_MODE_MULTIPLE);
+		genreList.setAdapter(new ArrayAdapter<String>
+				(this, android.R.layout.simple_list_item_multiple_choice, genres));
+
+		genreList.setOnItemClickListener(this);
+
+		yearFrom.addTextChangedListener(this);
+		yearTo.addTextChangedListener(this);
+		excludeArtist.addTextChangedListener(this);
+
+		showButton.setOnClickListener(new View.OnClickListener() {
+			@Override
+			public void onClick(View v) {
+				startActivity(ActivityListSongs.intentFor(ActivityMenuFilter.this,
+				                                          SongQuery.byFilter(getFilter()),
+				                                          getString(R.string.menu_music_filter)));
+			}
+		});
+
+		updateCount();
+	}
+
+	/**
+	 * Creates a filter with whatever the user
+	 * selected so far.
+	 */
+	private SongFilter getFilter() {
+		SongFilter.Builder builder = new SongFilter.Builder();
+
+		SparseBooleanArray checked = genreList.getCheckedItemPositions();
+
+		if (checked != null)
+			for (int i = 0; i < checked.size(); i++)
+				if (checked.valueAt(i))
+					builder.genre(genres.get(checked.keyAt(i)));
+
+		builder.years(parseYear(yearFrom), parseYear(yearTo));
+
+		String artist = excludeArtist.getText().toString().trim();
+		if (! artist.isEmpty())
+			builder.excludeArtist(artist);
+
+		return builder.build();
+	}
+
+	private static int parseYear(EditText text) {
+		try {
+			return Integer.parseInt(text.getText().toString().trim());
+		}
+		catch (NumberFormatException e) {
+			return SongFilter.ANY_YEAR;
+		}
+	}
+
+	/**
+	 * Counts the songs again and shows it on the button.
+	 *
+	 * It's usually quick, but might need to build the facet
+	 * indexes again (after `LibrarySnapshot#trimIndexes()`),
+	 * so it goes on `kMP.tasks`. A count still waiting
+	 * counts the new filter instead of adding another.
+	 */
+	private void updateCount() {
+		counting = getFilter();
+
+		// Only ours - a count left waiting by a filter
+		// screen that's gone wouldn't show up here
+		String key = "filter_count=" + System.identityHashCode(this);
+
+		new BackgroundTask<Integer>() {
+
+			/** What we've counted */
+			private SongFilter filter;
+
+			@Override
+			protected Integer doInBackground() {
+				filter = counting;
+
+				return (filter == null) ? 0 : filter.count(snapshot);
+			}
+
+			@Override
+			protected void onPostExecute(Integer count) {
+				// Something changed while we counted
+				if ((filter == null) || (filter != counting))
+					return;
+
+				showButton.setText(getString(R.string.menu_filter_show, count));
+			}
+		}.execute(TaskScheduler.PRIORITY_UI, key);
+	}
+
+	@Override
+	protected void onDestroy() {
+		super.onDestroy();
+
+		counting = null;
+	}
+
+	/**
+	 * When the user checks or unchecks a genre.
+	 */
+	@Override
+	public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+		updateCount();
+	}
+
+	@Override
+	public void afterTextChanged(Editable s) {
+		updateCount();
+	}
+
+	@Override
+	public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+	}
+
+	@Override
+	public void onTextChanged(CharSequence s, int start, int before, int count) {
+	}
+}
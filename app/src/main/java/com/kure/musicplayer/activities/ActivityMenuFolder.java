@@ -0,0 +1,156 @@
+package com.kure.musicplayer.activities;
+
+import java.util.ArrayList;
+
+import android.app.ActionBar;
+import android.content.Intent;
+import android.os.Bundle;
+import android.view.View;
+import android.widget.AdapterView;
+import android.widget.AdapterView.OnItemClickListener;
+import android.widget.AdapterView.OnItemLongClickListener;
+import android.widget.ArrayAdapter;
+import android.widget.ListView;
+
+import com.kure.musicplayer.R;
+import com.kure.musicplayer.kMP;
+import com.kure.musicplayer.model.PathTrie;
+import com.kure.musicplayer.model.Song;
+import com.kure.musicplayer.model.SongQuery;
+
+/**
+ * Shows everything inside a folder - first its sub-folders,
+ * then its songs - letting the user go down the folders or
+ * play the songs.
+ *
+ * Each sub-folder opens another one of this Activity, so
+ * the "Back" button goes up a folder.
+ *
+ * @note If we don't get an extra with a "path", we start
+ *       on the first folder that's worth showing
+ *       (see `PathTrie#getTop()`).
+ */
+public class ActivityMenuFolder extends ActivityMaster
+	implements OnItemClickListener {
+
+	/**
+	 * The folder we're showing.
+	 */
+	private PathTrie.Folder folder;
+
+	/**
+	 * Songs directly inside `folder`.
+	 * They're shown after all the sub-folders.
+	 */
+	private ArrayList<Song> songs;
+
+	/**
+	 * List that will be populated with all the items.
+	 *
+	 * Look for it inside the res/layout xml files.
+	 */
+	ListView listView;
+
+	@Override
+	protected void onCreate(Bundle savedInstanceState) {
+		super.onCreate(savedInstanceState);
+		setContentView(R.layout.activity_menu_folders);
+
+		// This enables the "Up" button on the top Action Bar
+		// Note that it returns to the parent Activity, specified
+		// on `AndroidManifest`
+		ActionBar actionBar = getActionBar();
+		if (actionBar != null)
+			actionBar.setDisplayHomeAsUpEnabled(true);
+
+		PathTrie folders = kMP.songs.getSnapshot().getFolders();
+
+		Bundle bundle = getIntent().getExtras();
+
+		if ((bundle != null) && (bundle.getString("path") != null))
+			folder = folders.find(bundle.getString("path"));
+		else
+			folder = folders.getTop();
+
+		// The folder went away after a rescan
+		if (folder == null) {
+			finish();
+			return;
+		}
+
+		if (folder.getParent() != null)
+			setTitle(folder.getName());
+
+		songs = kMP.songs.getSongs(SongQuery.byFolder(folder.getPath()));
+
+		// Sub-folders end with a '/', so they
+		// look different from songs.
+		ArrayList<String> items = new ArrayList<String>();
+
+		for (PathTrie.Folder subFolder : folder.getFolders())
+			items.add(subFolder.getName() + "/");
+
+		for (Song song : songs)
+			items.add(song.getTitle());
+
+		listView = (ListView)findViewById(R.id.activity_menu_folders_list);
+
+		// Adapter that will convert from Strings to List Items
+		final ArrayAdapter<String> adapter = new ArrayAdapter<String>
+				(this, android.R.layout.simple_list_item_1, items);
+
+		// Filling teh list with all the items
+		listView.setAdapter(adapter);
+
+		listView.setOnItemClickListener(this);
+
+		// If we press and hold on a Song, let's add to the current
+		// playing queue.
+		listView.setOnItemLongClickListener(new OnItemLongClickListener() {
+
+			@Override
+			public boolean onItemLongClick(AdapterView<?> parent, View view,
+					int position, long id) {
+
+				int songPosition = position - folder.getFolders().size();
+
+				if ((songPosition < 0) || (kMP.musicService == null))
+					return false;
+
+				kMP.musicService.add(songs.get(songPosition));
+				return true;
+			}
+		});
+	}
+
+	/**
+	 * Will react to the user selecting an item.
+	 */
+	@Override
+	public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+
+		int folderCount = folder.getFolders().size();
+
+		// Going down a folder
+		if (position < folderCount) {
+			Intent intent = new Intent(this, ActivityMenuFolder.class);
+
+			intent.putExtra("path", folder.getFolders().get(position).getPath());
+
+			startActivity(intent);
+			return;
+		}
+
+		// We'll play all songs of this folder,
+		// starting from the one the user selected.
+		kMP.nowPlayingList = songs;
+
+		// Sending the song index inside the now playing list.
+		// See the documentation of `ActivityNowPLaying` class.
+		Intent intent = new Intent(this, ActivityNowPlaying.class);
+
+		intent.putExtra("song", position - folderCount);
+
+		startActivity(intent);
+	}
+}
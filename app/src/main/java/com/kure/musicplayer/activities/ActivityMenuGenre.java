@@ -3,7 +3,6 @@ package com.kure.musicplayer.activities;
 import java.util.ArrayList;
 
 import android.app.ActionBar;
-import android.content.Intent;
 import android.os.Bundle;
 import android.view.View;
 import android.widget.AdapterView;
@@ -13,6 +12,7 @@ import android.widget.ListView;
 
 import com.kure.musicplayer.R;
 import com.kure.musicplayer.kMP;
+import com.kure.musicplayer.model.SongQuery;
 
 /**
  * Shows a menu with all the genres your songs have.
@@ -72,13 +72,7 @@ public class ActivityMenuGenre extends ActivityMaster
 
 		String selectedGenre = items.get(position);
 
-		kMP.musicList = kMP.songs.getSongsByGenre(selectedGenre);
-
-		Intent intent = new Intent(this, ActivityListSongs.class);
-
-		intent.putExtra("title", selectedGenre);
-
-		startActivity(intent);
+		startActivity(ActivityListSongs.intentFor(this, SongQuery.byGenre(selectedGenre), selectedGenre));
 	}
 
 	/**
@@ -1,11 +1,12 @@
 package com.kure.musicplayer.activities;
 
+import java.io.File;
 import java.util.ArrayList;
 
 import android.content.Context;
 import android.content.Intent;
-import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.Environment;
 import android.os.Handler;
 import android.preference.PreferenceManager;
 import android.util.Log;
@@ -18,8 +19,14 @@ import android.widget.Toast;
 
 import com.kure.musicplayer.NotificationMusic;
 import com.kure.musicplayer.R;
+import com.kure.musicplayer.helpers.BackgroundTask;
 import com.kure.musicplayer.helpers.SingleToast;
 import com.kure.musicplayer.kMP;
+import com.kure.musicplayer.model.FolderLibrarySource;
+import com.kure.musicplayer.model.LibrarySource;
+import com.kure.musicplayer.model.MediaStoreLibrarySource;
+import com.kure.musicplayer.services.RemotePlayback;
+import com.kure.musicplayer.tasks.TaskScheduler;
 
 /**
  * First screen that the user sees - the Main Menu.
@@ -142,7 +149,8 @@ public class ActivityMenuMain extends ActivityMaster
 					getString(R.string.menu_main_scanning),
 					Toast.LENGTH_LONG);
 
-			new ScanSongs().execute();
+			// Tapping "rescan" again while it waits does nothing
+			new ScanSongs().execute(TaskScheduler.PRIORITY_BACKGROUND, "scan");
 		}
 	}
 
@@ -271,17 +279,50 @@ public class ActivityMenuMain extends ActivityMaster
 	 * Source:
 	 * http://answers.oreilly.com/topic/2699-how-to-handle-threads-in-android-and-what-you-need-to-watch-for/
 	 */
-	class ScanSongs extends AsyncTask<String, Integer, String> {
+	class ScanSongs extends BackgroundTask<String> {
+
+		/**
+		 * Folders the user told us to look for songs.
+		 *
+		 * They're on a single setting, separated by ';'.
+		 * If there's none, we use the standard "Music" folder.
+		 */
+		private ArrayList<File> getMusicFolders() {
+			ArrayList<File> folders = new ArrayList<File>();
+
+			for (String path : kMP.settings.get("music_folders", "").split(";"))
+				if (! path.trim().isEmpty())
+					folders.add(new File(path.trim()));
+
+			if (folders.isEmpty())
+				folders.add(Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_MUSIC));
+
+			return folders;
+		}
 
 		/**
 		 * The action we'll do in the background.
 		 */
 		@Override
-		protected String doInBackground(String... params) {
+		protected String doInBackground() {
 
 			try {
+				// Reading tags from the files is optional,
+				// since it makes the first scan slower.
+				if (kMP.settings.get("read_tags", true))
+					kMP.songs.setTagScanner(kMP.tagScanner);
+				else
+					kMP.songs.setTagScanner(null);
+
 				// Will scan all songs on the device
-				kMP.songs.scanSongs(ActivityMenuMain.this, "external");
+				LibrarySource source = new MediaStoreLibrarySource(ActivityMenuMain.this, "external");
+
+				// Also looking for files the media database
+				// doesn't know about (if the user wants).
+				if (kMP.settings.get("discover_folders", false))
+					source = new FolderLibrarySource(source, getMusicFolders(), 0);
+
+				kMP.songs.scanSongs(source);
 				return ActivityMenuMain.this.getString(R.string.menu_main_scanning_ok);
 			}
 			catch (Exception e) {
@@ -298,6 +339,11 @@ public class ActivityMenuMain extends ActivityMaster
 		protected void onPostExecute(String result) {
 			super.onPostExecute(result);
 
+			// The music service might be on a process of its
+			// own, with a library of its own
+			if (kMP.musicService instanceof RemotePlayback)
+				((RemotePlayback)kMP.musicService).libraryChanged();
+
 			SingleToast.show(ActivityMenuMain.this,
 			               result,
 			               Toast.LENGTH_LONG);
@@ -14,6 +14,7 @@ import android.widget.Toast;
 
 import com.kure.musicplayer.R;
 import com.kure.musicplayer.kMP;
+import com.kure.musicplayer.model.SongQuery;
 
 /**
  * Direct sub menu for the Main Menu, showing other
@@ -59,6 +60,8 @@ public class ActivityMenuMusic extends ActivityMaster
 		items.add(getString(R.string.menu_music_albums));
 		items.add(getString(R.string.menu_music_genres));
 		items.add(getString(R.string.menu_music_years));
+		items.add(getString(R.string.menu_music_folders));
+		items.add(getString(R.string.menu_music_filter));
 		items.add(getString(R.string.menu_music_songs));
 
 		// List to be populated with items
@@ -104,8 +107,7 @@ public class ActivityMenuMusic extends ActivityMaster
 			startActivity(new Intent(this, ActivityMenuAlbum.class));
 		}
 		else if (currentItem == getString(R.string.menu_music_songs)) {
-			kMP.musicList = kMP.songs.songs;
-			startActivity(new Intent(this, ActivityListSongs.class));
+			startActivity(ActivityListSongs.intentFor(this, SongQuery.all(), null));
 		}
 		else if (currentItem == getString(R.string.menu_music_genres)) {
 			startActivity(new Intent(this, ActivityMenuGenre.class));
@@ -113,6 +115,12 @@ public class ActivityMenuMusic extends ActivityMaster
 		else if (currentItem == getString(R.string.menu_music_years)) {
 			startActivity(new Intent(this, ActivityMenuYear.class));
 		}
+		else if (currentItem == getString(R.string.menu_music_folders)) {
+			startActivity(new Intent(this, ActivityMenuFolder.class));
+		}
+		else if (currentItem == getString(R.string.menu_music_filter)) {
+			startActivity(new Intent(this, ActivityMenuFilter.class));
+		}
 		else {
 
 		}
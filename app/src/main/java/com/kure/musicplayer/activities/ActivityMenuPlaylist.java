@@ -1,23 +1,50 @@
 package com.kure.musicplayer.activities;
 
+import java.io.File;
+import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Collections;
 
 import android.app.ActionBar;
+import android.app.AlertDialog;
+import android.content.DialogInterface;
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.Environment;
+import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
 import android.widget.AdapterView;
 import android.widget.AdapterView.OnItemClickListener;
+import android.widget.AdapterView.OnItemLongClickListener;
 import android.widget.ArrayAdapter;
+import android.widget.EditText;
+import android.widget.LinearLayout;
 import android.widget.ListView;
+import android.widget.Toast;
 
 import com.kure.musicplayer.R;
+import com.kure.musicplayer.helpers.BackgroundTask;
 import com.kure.musicplayer.kMP;
+import com.kure.musicplayer.model.Playlist;
+import com.kure.musicplayer.model.Song;
+import com.kure.musicplayer.model.SongList;
+import com.kure.musicplayer.model.SongQuery;
+import com.kure.musicplayer.tasks.TaskScheduler;
 
 /**
  * Shows a menu with all the Playlists on the device.
  *
+ * Touching one lists its songs, pressing and holding
+ * lets the user edit it (see `ActivityEditPlaylist`) or
+ * save it as a file.
+ * Playlist files (M3U, M3U8 or PLS) can also be imported
+ * from the Action Bar.
+ *
+ * Smart playlists (see `SmartPlaylists`) come after all
+ * the others - they're created from the Action Bar and
+ * their rules can be changed by pressing and holding.
  */
 public class ActivityMenuPlaylist extends ActivityMaster
 implements OnItemClickListener {
@@ -36,6 +63,23 @@ implements OnItemClickListener {
 	 */
 	ListView listView;
 
+	ArrayAdapter<String> adapter;
+
+	/**
+	 * Names of the Playlists on the media database, then
+	 * of the smart ones - `items` shows both, in this order.
+	 */
+	private ArrayList<String> playlistNames;
+	private ArrayList<String> smartNames;
+
+	// Same order as `R.array.menu_playlist_actions`
+	private static final int ACTION_EDIT   = 0;
+	private static final int ACTION_EXPORT = 1;
+
+	// Same order as `R.array.menu_playlist_smart_actions`
+	private static final int ACTION_SMART_EDIT   = 0;
+	private static final int ACTION_SMART_DELETE = 1;
+
 	/**
 	 * Called when the activity is created for the first time.
 	 */
@@ -55,17 +99,306 @@ implements OnItemClickListener {
 		listView = (ListView)findViewById(R.id.activity_menu_artists_list);
 
 		// All playlist names and sorting alphabetically
-		items = kMP.songs.getPlaylistNames();
-		Collections.sort(items);
+		playlistNames = kMP.songs.getPlaylistNames();
+		Collections.sort(playlistNames);
+
+		smartNames = kMP.smartPlaylists.getNames();
+
+		items = new ArrayList<String>();
+		fillItems();
 
 		// Adapter that will convert from Strings to List Items
-		final ArrayAdapter<String> adapter = new ArrayAdapter<String>
+		adapter = new ArrayAdapter<String>
 				(this, android.R.layout.simple_list_item_1, items);
 
 		// Filling teh list with all the items
 		listView.setAdapter(adapter);
 
 		listView.setOnItemClickListener(this);
+
+		listView.setOnItemLongClickListener(new OnItemLongClickListener() {
+
+			@Override
+			public boolean onItemLongClick(AdapterView<?> parent, View view, int position, long id) {
+
+				if (! kMP.songs.isInitialized())
+					return false;
+
+				if (isSmart(position)) {
+					askSmartAction(smartNames.get(position - playlistNames.size()));
+					return true;
+				}
+
+				final String playlistName = playlistNames.get(position);
+
+				new AlertDialog.Builder(ActivityMenuPlaylist.this)
+					.setTitle(playlistName)
+					.setItems(R.array.menu_playlist_actions, new DialogInterface.OnClickListener() {
+
+						public void onClick(DialogInterface dialog, int which) {
+							if (which == ACTION_EDIT)
+								new LoadPlaylist(playlistName, true).execute(TaskScheduler.PRIORITY_UI, "edit_playlist=" + playlistName);
+
+							else if (which == ACTION_EXPORT)
+								new ExportPlaylist(playlistName).execute(TaskScheduler.PRIORITY_BACKGROUND, null);
+						}
+					})
+					.show();
+				return true;
+			}
+		});
+	}
+
+	@Override
+	public boolean onCreateOptionsMenu(Menu menu) {
+		getMenuInflater().inflate(R.menu.activity_menu_playlist, menu);
+
+		return super.onCreateOptionsMenu(menu);
+	}
+
+	@Override
+	public boolean onOptionsItemSelected(MenuItem item) {
+
+		if (item.getItemId() == R.id.menu_playlist_import) {
+			askImport();
+			return true;
+		}
+
+		if (item.getItemId() == R.id.menu_playlist_new_smart) {
+			askSmartPlaylist(null);
+			return true;
+		}
+		return super.onOptionsItemSelected(item);
+	}
+
+	/**
+	 * Puts all Playlists on `items`, with the
+	 * smart ones at the end.
+	 */
+	private void fillItems() {
+		items.clear();
+		items.addAll(playlistNames);
+
+		for (String name : smartNames)
+			items.add(getString(R.string.menu_playlist_smart_item, name));
+	}
+
+	/**
+	 * Tells if the item at `position` is a smart playlist.
+	 */
+	private boolean isSmart(int position) {
+		return position >= playlistNames.size();
+	}
+
+	/**
+	 * Asks whether to change or delete the
+	 * smart playlist `name`.
+	 */
+	private void askSmartAction(final String name) {
+
+		new AlertDialog.Builder(this)
+			.setTitle(name)
+			.setItems(R.array.menu_playlist_smart_actions, new DialogInterface.OnClickListener() {
+
+				public void onClick(DialogInterface dialog, int which) {
+					if (which == ACTION_SMART_EDIT)
+						askSmartPlaylist(name);
+
+					else if (which == ACTION_SMART_DELETE) {
+						kMP.smartPlaylists.remove(ActivityMenuPlaylist.this, name);
+
+						smartNames = kMP.smartPlaylists.getNames();
+						fillItems();
+						adapter.notifyDataSetChanged();
+					}
+				}
+			})
+			.show();
+	}
+
+	/**
+	 * Asks the name and rule of a smart playlist.
+	 *
+	 * @param oldName Name of the one we're changing, or
+	 *                `null` to create a new one.
+	 */
+	private void askSmartPlaylist(final String oldName) {
+
+		final EditText name = new EditText(this);
+		final EditText rule = new EditText(this);
+
+		name.setHint(getString(R.string.menu_playlist_smart_name));
+		rule.setHint(getString(R.string.menu_playlist_smart_rule));
+
+		if (oldName != null) {
+			name.setText(oldName);
+			rule.setText(kMP.smartPlaylists.get(oldName).getRule().toString());
+		}
+
+		LinearLayout layout = new LinearLayout(this);
+		layout.setOrientation(LinearLayout.VERTICAL);
+		layout.addView(name);
+		layout.addView(rule);
+
+		new AlertDialog.Builder(this)
+			.setTitle(getString(R.string.menu_playlist_new_smart))
+			.setView(layout)
+			.setPositiveButton(getString(R.string.menu_now_playing_dialog_create_playlist_button_ok), new DialogInterface.OnClickListener() {
+
+				public void onClick(DialogInterface dialog, int whichButton) {
+					String newName = name.getText().toString().trim();
+
+					if (newName.isEmpty())
+						return;
+
+					try {
+						kMP.smartPlaylists.save(ActivityMenuPlaylist.this, newName, rule.getText().toString());
+					}
+					catch (ParseException e) {
+						Toast.makeText(ActivityMenuPlaylist.this,
+						               getString(R.string.menu_playlist_smart_invalid, e.getMessage()),
+						               Toast.LENGTH_LONG).show();
+						return;
+					}
+
+					// Renamed
+					if ((oldName != null) && (! oldName.equals(newName)))
+						kMP.smartPlaylists.remove(ActivityMenuPlaylist.this, oldName);
+
+					smartNames = kMP.smartPlaylists.getNames();
+					fillItems();
+					adapter.notifyDataSetChanged();
+				}
+			})
+			.setNegativeButton(getString(R.string.menu_now_playing_dialog_create_playlist_button_cancel), null)
+			.show();
+	}
+
+	/**
+	 * Where playlist files go (and where we look
+	 * for them by default).
+	 */
+	private static File getPlaylistFolder() {
+		return Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_MUSIC);
+	}
+
+	/**
+	 * Asks the user which file to import.
+	 */
+	private void askImport() {
+
+		if (! kMP.songs.isInitialized())
+			return;
+
+		final EditText input = new EditText(this);
+
+		input.setText(getPlaylistFolder().getPath() + "/");
+
+		new AlertDialog.Builder(this)
+			.setTitle(getString(R.string.menu_playlist_import))
+			.setMessage(getString(R.string.menu_playlist_import_subtitle))
+			.setView(input)
+			.setPositiveButton(getString(R.string.menu_now_playing_dialog_create_playlist_button_ok), new DialogInterface.OnClickListener() {
+
+				public void onClick(DialogInterface dialog, int whichButton) {
+					new ImportPlaylist(input.getText().toString().trim()).execute(TaskScheduler.PRIORITY_BACKGROUND, null);
+				}
+			})
+			.setNegativeButton(getString(R.string.menu_now_playing_dialog_create_playlist_button_cancel), null)
+			.show();
+	}
+
+	/**
+	 * Reads a playlist file in the background, adding
+	 * the new Playlist to the list when done.
+	 */
+	class ImportPlaylist extends BackgroundTask<SongList.ImportResult> {
+
+		private String path;
+
+		ImportPlaylist(String path) {
+			this.path = path;
+		}
+
+		@Override
+		protected SongList.ImportResult doInBackground() {
+			try {
+				SongList.ImportResult result = kMP.songs.importPlaylist(ActivityMenuPlaylist.this, new File(path));
+
+				Log.d("ActivityMenuPlaylist", "Imported " + result.found + "/" + result.entries + " songs - read " +
+				      result.readTime + "ms, saved " + result.saveTime + "ms");
+				return result;
+			}
+			catch (Exception e) {
+				Log.w("ActivityMenuPlaylist", "Couldn't import " + path, e);
+				return null;
+			}
+		}
+
+		@Override
+		protected void onPostExecute(SongList.ImportResult result) {
+			super.onPostExecute(result);
+
+			if (result == null) {
+				Toast.makeText(ActivityMenuPlaylist.this, getString(R.string.menu_playlist_import_failed), Toast.LENGTH_LONG).show();
+				return;
+			}
+
+			Toast.makeText(ActivityMenuPlaylist.this,
+			               getString(R.string.menu_playlist_import_success, result.found, result.entries),
+			               Toast.LENGTH_LONG).show();
+
+			// User left before we finished
+			if (isFinishing())
+				return;
+
+			playlistNames.add(result.name);
+			Collections.sort(playlistNames);
+
+			fillItems();
+			adapter.notifyDataSetChanged();
+		}
+	}
+
+	/**
+	 * Saves a Playlist as a M3U8 file on the
+	 * Music folder, in the background.
+	 */
+	class ExportPlaylist extends BackgroundTask<File> {
+
+		private String playlistName;
+
+		ExportPlaylist(String playlistName) {
+			this.playlistName = playlistName;
+		}
+
+		@Override
+		protected File doInBackground() {
+			// Playlist names might have anything
+			File file = new File(getPlaylistFolder(), playlistName.replaceAll("[/\\\\:*?\"<>|]", "_") + ".m3u8");
+
+			try {
+				getPlaylistFolder().mkdirs();
+
+				kMP.songs.exportPlaylist(playlistName, file);
+				return file;
+			}
+			catch (Exception e) {
+				Log.w("ActivityMenuPlaylist", "Couldn't export " + playlistName, e);
+				return null;
+			}
+		}
+
+		@Override
+		protected void onPostExecute(File result) {
+			super.onPostExecute(result);
+
+			String text = (result == null) ?
+			              getString(R.string.menu_playlist_export_failed) :
+			              getString(R.string.menu_playlist_export_success, result.getPath());
+
+			Toast.makeText(ActivityMenuPlaylist.this, text, Toast.LENGTH_LONG).show();
+		}
 	}
 
 	/**
@@ -80,17 +413,103 @@ implements OnItemClickListener {
 		if (! kMP.songs.isInitialized())
 			return;
 
-		String selectedPlaylist = items.get(position);
+		if (isSmart(position)) {
+			String smartName = smartNames.get(position - playlistNames.size());
+
+			new LoadSmartPlaylist(smartName).execute(TaskScheduler.PRIORITY_UI, "smart_playlist=" + smartName);
+			return;
+		}
+
+		String selectedPlaylist = playlistNames.get(position);
+
+		// The songs of a playlist are only queried the first
+		// time it's opened, so we do it in the background.
+		new LoadPlaylist(selectedPlaylist, false).execute(TaskScheduler.PRIORITY_UI, "playlist=" + selectedPlaylist);
+	}
+
+	/**
+	 * Gets all songs of a playlist and lists them
+	 * (or opens them for editing).
+	 */
+	class LoadPlaylist extends BackgroundTask<ArrayList<Song>> {
+
+		private String playlistName;
+
+		private boolean edit;
+
+		LoadPlaylist(String playlistName, boolean edit) {
+			this.playlistName = playlistName;
+			this.edit         = edit;
+		}
+
+		@Override
+		protected ArrayList<Song> doInBackground() {
+			// Also leaves it on the cache for `ActivityListSongs`
+			return kMP.songs.getSongs(SongQuery.byPlaylist(playlistName));
+		}
+
+		@Override
+		protected void onPostExecute(ArrayList<Song> result) {
+			super.onPostExecute(result);
+
+			// User left before we finished
+			if (isFinishing())
+				return;
+
+			if (edit) {
+				Playlist playlist = kMP.songs.getSnapshot().getPlaylistByName(playlistName);
+
+				// Rescan took it away
+				if (playlist == null)
+					return;
+
+				Intent intent = new Intent(ActivityMenuPlaylist.this, ActivityEditPlaylist.class);
+
+				intent.putExtra("id",   playlist.getID());
+				intent.putExtra("name", playlistName);
+
+				startActivity(intent);
+				return;
+			}
+
+			startActivity(ActivityListSongs.intentFor(ActivityMenuPlaylist.this,
+			                                          SongQuery.byPlaylist(playlistName),
+			                                          playlistName));
+		}
+	}
+
+	/**
+	 * Finds the songs of a smart playlist and lists them.
+	 *
+	 * It only tests songs that changed since it was last
+	 * opened - but the first time goes through all of them.
+	 * Then they stay on the cache for `ActivityListSongs`.
+	 */
+	class LoadSmartPlaylist extends BackgroundTask<ArrayList<Song>> {
+
+		private String playlistName;
+
+		LoadSmartPlaylist(String playlistName) {
+			this.playlistName = playlistName;
+		}
 
-		// Based on the selected playlist name, getting
-		// all the songs and listing them.
-		kMP.musicList = kMP.songs.getSongsByPlaylist(selectedPlaylist);
+		@Override
+		protected ArrayList<Song> doInBackground() {
+			return kMP.songs.getSongs(SongQuery.bySmartPlaylist(playlistName));
+		}
 
-		Intent intent = new Intent(this, ActivityListSongs.class);
+		@Override
+		protected void onPostExecute(ArrayList<Song> result) {
+			super.onPostExecute(result);
 
-		intent.putExtra("title", selectedPlaylist);
+			// User left before we finished
+			if (isFinishing())
+				return;
 
-		startActivity(intent);
+			startActivity(ActivityListSongs.intentFor(ActivityMenuPlaylist.this,
+			                                          SongQuery.bySmartPlaylist(playlistName),
+			                                          playlistName));
+		}
 	}
 
 	/**
@@ -16,6 +16,7 @@ import android.widget.Toast;
 
 import com.kure.musicplayer.R;
 import com.kure.musicplayer.kMP;
+import com.kure.musicplayer.services.RemotePlayback;
 
 /**
  * A menu that allows the user to change the application's
@@ -135,7 +136,7 @@ public class ActivityMenuSettings extends PreferenceActivity
 				String dialogTitle = getString(R.string.menu_settings_info_dialog_title);
 				String dialogText  = getString(
 						R.string.menu_settings_info_dialog_text,
-						kMP.songs.songs.size(),
+						kMP.songs.getSnapshot().size(),
 						kMP.songs.getAlbums().size(),
 						kMP.songs.getArtists().size(),
 						kMP.songs.getPlaylistNames().size());
@@ -188,6 +189,11 @@ public class ActivityMenuSettings extends PreferenceActivity
 	@Override
 	public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
 
+		// The music service might be on a process of its own,
+		// where Settings don't change by themselves
+		if (kMP.musicService instanceof RemotePlayback)
+			((RemotePlayback)kMP.musicService).settingsChanged();
+
 		// If the user changed the theme, we'll restart
 		// this activity. This way the changes are applied
 		// immediately.
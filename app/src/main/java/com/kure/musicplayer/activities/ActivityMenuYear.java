@@ -3,7 +3,6 @@ package com.kure.musicplayer.activities;
 import java.util.ArrayList;
 
 import android.app.ActionBar;
-import android.content.Intent;
 import android.os.Bundle;
 import android.view.View;
 import android.widget.AdapterView;
@@ -13,6 +12,7 @@ import android.widget.ListView;
 
 import com.kure.musicplayer.R;
 import com.kure.musicplayer.kMP;
+import com.kure.musicplayer.model.SongQuery;
 
 /**
  * Shows a menu with all the years your songs have.
@@ -71,13 +71,7 @@ public class ActivityMenuYear extends ActivityMaster
 
 		int selectedYear = Integer.parseInt(items.get(position));
 
-		kMP.musicList = kMP.songs.getSongsByYear(selectedYear);
-
-		Intent intent = new Intent(this, ActivityListSongs.class);
-
-		intent.putExtra("title", Integer.toString(selectedYear));
-
-		startActivity(intent);
+		startActivity(ActivityListSongs.intentFor(this, SongQuery.byYear(selectedYear), Integer.toString(selectedYear)));
 	}
 
 	/**
@@ -1,5 +1,7 @@
 package com.kure.musicplayer.activities;
 
+import java.util.List;
+
 import android.app.ActionBar;
 import android.app.AlertDialog;
 import android.content.DialogInterface;
@@ -26,6 +28,8 @@ import com.kure.musicplayer.MusicController;
 import com.kure.musicplayer.R;
 import com.kure.musicplayer.kMP;
 import com.kure.musicplayer.adapters.AdapterSong;
+import com.kure.musicplayer.model.Playlist;
+import com.kure.musicplayer.model.Song;
 
 /**
  * It is te "Now Playing List" - shows all songs that will be played and lets
@@ -100,6 +104,10 @@ public class ActivityNowPlaying extends ActivityMaster implements
 		kMP.musicService.setList(kMP.nowPlayingList);
 		kMP.musicService.setSong(0);
 
+		// The service plays its own copy - from now on
+		// we show that one (songs might get added to it)
+		kMP.nowPlayingList = kMP.musicService.getList();
+
 		// Connects the song list to an adapter
 		// (thing that creates several Layouts from the song list)
 		songAdapter = new AdapterSong(this, kMP.nowPlayingList);
@@ -129,7 +137,7 @@ public class ActivityNowPlaying extends ActivityMaster implements
 		}
 
 		// Scroll the list view to the current song.
-		songListView.setSelection(kMP.musicService.currentSongPosition);
+		songListView.setSelection(kMP.musicService.getCurrentSongPosition());
 
 		// We'll get warned when the user clicks on an item
 		// and when he long selects an item.
@@ -244,13 +252,19 @@ public class ActivityNowPlaying extends ActivityMaster implements
 				case R.id.action_bar_submenu_new_playlist:
 					newPlaylist();
 					return false;
+
+					// Will ask which Playlist to add the
+					// current songs to.
+				case R.id.action_bar_submenu_add_to_playlist:
+					addToPlaylist();
+					return false;
 				}
 
 				// Finally, updating the list if it
 				// just got sorted
 				if (updateList) {
 					songAdapter.notifyDataSetChanged();
-					songListView.setSelection(kMP.musicService.currentSongPosition);
+					songListView.setSelection(kMP.musicService.getCurrentSongPosition());
 				}
 				return false;
 			}
@@ -319,6 +333,36 @@ public class ActivityNowPlaying extends ActivityMaster implements
 		//		popup.show();
 	}
 
+	/**
+	 * Shows a Dialog with all Playlists, adding the current
+	 * songs to the one the user picks.
+	 */
+	private void addToPlaylist() {
+
+		final List<Playlist> playlists = kMP.songs.getSnapshot().getPlaylists();
+
+		String[] names = new String[playlists.size()];
+
+		for (int i = 0; i < names.length; i++)
+			names[i] = playlists.get(i).getName();
+
+		new AlertDialog.Builder(ActivityNowPlaying.this)
+			.setTitle(getString(R.string.menu_now_playing_action_bar_add_to_playlist))
+			.setItems(names, new DialogInterface.OnClickListener() {
+
+				public void onClick(DialogInterface dialog, int which) {
+					Playlist playlist = playlists.get(which);
+
+					kMP.songs.appendToPlaylist(ActivityNowPlaying.this, playlist.getID(), kMP.nowPlayingList);
+
+					Toast.makeText(ActivityNowPlaying.this,
+					               getString(R.string.menu_now_playing_dialog_add_to_playlist_success, playlist.getName()),
+					               Toast.LENGTH_SHORT).show();
+				}
+			})
+			.show();
+	}
+
 	/**
 	 * Shows a Dialog asking the user for a new Playlist name,
 	 * creating it if so possible.
@@ -444,12 +488,14 @@ public class ActivityNowPlaying extends ActivityMaster implements
 		 * (TextView)actionBar.getCustomView().findViewById(R.
 		 * id.menu_item_title); textTop.setText("Now Playing List");
 		 */
-		if (kMP.musicService.currentSong == null)
+		Song currentSong = kMP.musicService.getCurrentSong();
+
+		if (currentSong == null)
 			return;
 
 		TextView textBottom = (TextView) actionBar.getCustomView()
 				.findViewById(R.id.action_bar_subtitle);
-		textBottom.setText(kMP.musicService.currentSong.getTitle());
+		textBottom.setText(currentSong.getTitle());
 
 		/*
 		 * actionBar.setDisplayOptions(ActionBar.DISPLAY_SHOW_CUSTOM);
@@ -512,6 +558,10 @@ public class ActivityNowPlaying extends ActivityMaster implements
 
 		refreshActionBarSubtitle();
 
+		// Songs might have been added to the queue
+		// while we were away
+		songAdapter.notifyDataSetChanged();
+
 		if (paused) {
 			// Ensure that the controller
 			// is shown when the user returns to the app
@@ -521,7 +571,7 @@ public class ActivityNowPlaying extends ActivityMaster implements
 
 		// Scroll the list view to the current song.
 		if (kMP.settings.get("scroll_on_focus", true))
-			songListView.setSelection(kMP.musicService.currentSongPosition);
+			songListView.setSelection(kMP.musicService.getCurrentSongPosition());
 	}
 
 	/**
@@ -578,18 +628,23 @@ public class ActivityNowPlaying extends ActivityMaster implements
 
 	@Override
 	public int getDuration() {
-		if (kMP.musicService != null && kMP.musicService.musicBound
-				&& kMP.musicService.isPlaying())
-			return kMP.musicService.getDuration();
+		if (kMP.musicService != null && kMP.musicService.isBound())
+			return (int)kMP.musicService.getPlaybackPosition().duration;
 		else
 			return 0;
 	}
 
+	/**
+	 * The MusicController calls this several times per
+	 * second, so we don't bother the MediaPlayer - the
+	 * position moves along with the clock.
+	 *
+	 * @note When paused, it stays where it stopped.
+	 */
 	@Override
 	public int getCurrentPosition() {
-		if (kMP.musicService != null && kMP.musicService.musicBound
-				&& kMP.musicService.isPlaying())
-			return kMP.musicService.getPosition();
+		if (kMP.musicService != null && kMP.musicService.isBound())
+			return (int)kMP.musicService.getPlaybackPosition().getPosition();
 		else
 			return 0;
 	}
@@ -601,7 +656,7 @@ public class ActivityNowPlaying extends ActivityMaster implements
 
 	@Override
 	public boolean isPlaying() {
-		if (kMP.musicService != null && kMP.musicService.musicBound)
+		if (kMP.musicService != null && kMP.musicService.isBound())
 			return kMP.musicService.isPlaying();
 
 		return false;
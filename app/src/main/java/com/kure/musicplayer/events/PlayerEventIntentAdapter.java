@@ -0,0 +1,39 @@
+package com.kure.musicplayer.events;
+
+import com.kure.musicplayer.services.ServicePlayMusic;
+
+/**
+ * Bridge between the old LocalBroadcast orders of
+ * `ServicePlayMusic` and `PlayerEventBus`.
+ *
+ * It converts the old order strings
+ * (`ServicePlayMusic.BROADCAST_ORDER_*`) into command codes,
+ * so orders still sent as Intents are obeyed.
+ *
+ * @note Events only go out on the bus - nothing listens
+ *       to them as Intents anymore.
+ */
+public class PlayerEventIntentAdapter {
+
+	/**
+	 * Converts one of the old order strings to a command code.
+	 *
+	 * @param order One of `ServicePlayMusic.BROADCAST_ORDER_*`.
+	 *
+	 * @return One of the `PlayerEvent.COMMAND_*` codes or
+	 *         -1 if it's not an order we know.
+	 */
+	public static int orderToCommand(String order) {
+		if (order == null)
+			return -1;
+
+		if (order.equals(ServicePlayMusic.BROADCAST_ORDER_PLAY))            return PlayerEvent.COMMAND_PLAY;
+		if (order.equals(ServicePlayMusic.BROADCAST_ORDER_PAUSE))           return PlayerEvent.COMMAND_PAUSE;
+		if (order.equals(ServicePlayMusic.BROADCAST_ORDER_TOGGLE_PLAYBACK)) return PlayerEvent.COMMAND_TOGGLE_PLAYBACK;
+		if (order.equals(ServicePlayMusic.BROADCAST_ORDER_STOP))            return PlayerEvent.COMMAND_STOP;
+		if (order.equals(ServicePlayMusic.BROADCAST_ORDER_SKIP))            return PlayerEvent.COMMAND_SKIP;
+		if (order.equals(ServicePlayMusic.BROADCAST_ORDER_REWIND))          return PlayerEvent.COMMAND_REWIND;
+
+		return -1;
+	}
+}
@@ -72,6 +72,7 @@ public class RemoteControlClientCompat {
 	// RCC short for RemoteControlClient
 	private static Method sRCCEditMetadataMethod;
 	private static Method sRCCSetPlayStateMethod;
+	private static Method sRCCSetPlayStatePositionMethod = null;
 	private static Method sRCCSetTransportControlFlags;
 
 	private static boolean sHasRemoteControlAPIs = false;
@@ -112,6 +113,15 @@ public class RemoteControlClientCompat {
 			sRCCSetTransportControlFlags = sRemoteControlClientClass.getMethod(
 					"setTransportControlFlags", int.class);
 
+			// Only on Jelly Bean MR2 and later - then the lock
+			// screen moves the progress bar by itself
+			try {
+				sRCCSetPlayStatePositionMethod = sRemoteControlClientClass.getMethod("setPlaybackState",
+						int.class, long.class, float.class);
+			} catch (NoSuchMethodException e) {
+				// Older Android, no progress bar
+			}
+
 			sHasRemoteControlAPIs = true;
 
 		} catch (ClassNotFoundException e) {
@@ -176,6 +186,10 @@ public class RemoteControlClientCompat {
 	 */
 	public class MetadataEditorCompat {
 
+		// These are looked up only once (on the first editor
+		// we create) and shared by all the others.
+		// Calling `getMethod()` every time we edit the
+		// metadata was way too expensive.
 		private Method mPutStringMethod;
 		private Method mPutBitmapMethod;
 		private Method mPutLongMethod;
@@ -195,24 +209,13 @@ public class RemoteControlClientCompat {
 						"should not be given a null MetadataEditor");
 			}
 			if (sHasRemoteControlAPIs) {
-				Class metadataEditorClass = actualMetadataEditor.getClass();
-
-				try {
-					mPutStringMethod = metadataEditorClass.getMethod("putString",
-							int.class, String.class);
+				lookupMetadataEditorMethods(actualMetadataEditor.getClass());
 
-					mPutBitmapMethod = metadataEditorClass.getMethod("putBitmap",
-							int.class, Bitmap.class);
-
-					mPutLongMethod = metadataEditorClass.getMethod("putLong",
-							int.class, long.class);
-
-					mClearMethod = metadataEditorClass.getMethod("clear", new Class[]{});
-					mApplyMethod = metadataEditorClass.getMethod("apply", new Class[]{});
-
-				} catch (Exception e) {
-					throw new RuntimeException(e.getMessage(), e);
-				}
+				mPutStringMethod = sMEPutStringMethod;
+				mPutBitmapMethod = sMEPutBitmapMethod;
+				mPutLongMethod   = sMEPutLongMethod;
+				mClearMethod     = sMEClearMethod;
+				mApplyMethod     = sMEApplyMethod;
 			}
 			mActualMetadataEditor = actualMetadataEditor;
 		}
@@ -338,6 +341,39 @@ public class RemoteControlClientCompat {
 		}
 	}
 
+	// ME short for MetadataEditor
+	private static Method sMEPutStringMethod;
+	private static Method sMEPutBitmapMethod;
+	private static Method sMEPutLongMethod;
+	private static Method sMEClearMethod;
+	private static Method sMEApplyMethod;
+
+	/**
+	 * Finds the methods of the actual MetadataEditor class,
+	 * caching them for all future editors.
+	 */
+	private static synchronized void lookupMetadataEditorMethods(Class metadataEditorClass) {
+		if (sMEApplyMethod != null)
+			return;
+
+		try {
+			sMEPutStringMethod = metadataEditorClass.getMethod("putString",
+					int.class, String.class);
+
+			sMEPutBitmapMethod = metadataEditorClass.getMethod("putBitmap",
+					int.class, Bitmap.class);
+
+			sMEPutLongMethod = metadataEditorClass.getMethod("putLong",
+					int.class, long.class);
+
+			sMEClearMethod = metadataEditorClass.getMethod("clear", new Class[]{});
+			sMEApplyMethod = metadataEditorClass.getMethod("apply", new Class[]{});
+
+		} catch (Exception e) {
+			throw new RuntimeException(e.getMessage(), e);
+		}
+	}
+
 	/**
 	 * Creates a {@link android.media.RemoteControlClient.MetadataEditor}.
 	 * @param startEmpty Set to false if you want the MetadataEditor to contain the metadata that
@@ -382,6 +418,28 @@ public class RemoteControlClientCompat {
 		}
 	}
 
+	/**
+	 * Sets the current playback state, along with where the
+	 * song is - so the lock screen can move its progress bar
+	 * without asking us.
+	 *
+	 * @param position Where the song is (milliseconds).
+	 * @param speed    1 if playing, 0 if stopped.
+	 *
+	 * @note Where that's not supported, only sets the state.
+	 */
+	public void setPlaybackState(int state, long position, float speed) {
+		if (sHasRemoteControlAPIs && (sRCCSetPlayStatePositionMethod != null)) {
+			try {
+				sRCCSetPlayStatePositionMethod.invoke(mActualRemoteControlClient, state, position, speed);
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		}
+		else
+			setPlaybackState(state);
+	}
+
 	/**
 	 * Sets the flags for the media transport control buttons that this client supports.
 	 * @param transportControlFlags A combination of the following flags:
@@ -0,0 +1,111 @@
+package com.kure.musicplayer.helpers;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.kure.musicplayer.kMP;
+import com.kure.musicplayer.tasks.TaskScheduler;
+
+/**
+ * Does something on `kMP.tasks` and gives the result back
+ * on the UI Thread - like an `AsyncTask`, but sharing
+ * Threads (and priorities) with everything else.
+ *
+ *     new BackgroundTask<String>() {
+ *         protected String doInBackground() { ... }
+ *         protected void onPostExecute(String result) { ... }
+ *     }.execute(TaskScheduler.PRIORITY_UI, null);
+ *
+ * @note Create, execute and cancel it from the UI Thread.
+ */
+public abstract class BackgroundTask<Result> {
+
+	// The tag we put on debug messages
+	private static final String TAG = "BackgroundTask";
+
+	private static final Handler main = new Handler(Looper.getMainLooper());
+
+	/**
+	 * Where it's running - `null` if another task with
+	 * the same key was already waiting.
+	 */
+	private TaskScheduler.Task task = null;
+
+	private volatile boolean cancelled = false;
+
+	/**
+	 * Runs on one of `kMP.tasks`' Threads.
+	 */
+	protected abstract Result doInBackground();
+
+	/**
+	 * Runs on the UI Thread with what `doInBackground()`
+	 * returned - unless it was cancelled.
+	 */
+	protected void onPostExecute(Result result) {
+	}
+
+	/**
+	 * Puts it on `kMP.tasks`.
+	 *
+	 * @param priority One of the `TaskScheduler.PRIORITY_*`.
+	 * @param key      If some task with the same key is still
+	 *                 waiting, it won't run - only that one
+	 *                 (`null` to always run).
+	 * @return Itself, to cancel it later.
+	 */
+	public final BackgroundTask<Result> execute(int priority, String key) {
+		Runnable work = new Runnable() {
+			@Override
+			public void run() {
+				if (cancelled)
+					return;
+
+				final Result result;
+				try {
+					result = doInBackground();
+				}
+				catch (RuntimeException e) {
+					Log.w(TAG, "Task failed", e);
+					return;
+				}
+
+				main.post(new Runnable() {
+					@Override
+					public void run() {
+						if (! cancelled)
+							onPostExecute(result);
+					}
+				});
+			}
+		};
+
+		TaskScheduler.Task submitted = kMP.tasks.submit(priority, key, work);
+
+		// Not cancelling someone else's
+		if (submitted.getAction() == work)
+			task = submitted;
+
+		return this;
+	}
+
+	/**
+	 * Makes sure `onPostExecute()` never gets called (and
+	 * `doInBackground()` too, if it didn't start yet).
+	 */
+	public final void cancel() {
+		cancelled = true;
+
+		if (task != null)
+			task.cancel();
+	}
+
+	/**
+	 * If `cancel()` was called - long `doInBackground()`s
+	 * should check it from time to time.
+	 */
+	public final boolean isCancelled() {
+		return cancelled;
+	}
+}
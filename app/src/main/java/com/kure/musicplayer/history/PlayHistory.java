@@ -0,0 +1,398 @@
+package com.kure.musicplayer.history;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+
+import com.kure.musicplayer.model.PlayCounts;
+import com.kure.musicplayer.model.Song;
+
+/**
+ * Everything the user listened to, and what they
+ * listened the most.
+ *
+ * - Plays are saved with `record()`, which returns
+ *   immediately - all writing happens on a background
+ *   Thread, so it never gets in the way of the music;
+ * - Rankings come from `topTracks()`, `topArtists()` and
+ *   `topGenres()` for any time window.
+ *
+ * Rankings are built from the pre-counted `daily_counts`
+ * table (see `PlayHistoryDatabase`), so they take about the
+ * same time no matter how many plays there are.
+ *
+ * @note Queries run on the caller's Thread - don't call
+ *       them from the UI Thread.
+ */
+public class PlayHistory {
+
+	// The tag we put on debug messages
+	private static final String TAG = "PlayHistory";
+
+	/**
+	 * A single line of a ranking.
+	 */
+	public static class Entry {
+
+		/**
+		 * What got played - the artist or genre name,
+		 * or the song ID for tracks (see `getSongId()`).
+		 */
+		public final String key;
+
+		/** How many times it got played */
+		public final long count;
+
+		public Entry(String key, long count) {
+			this.key   = key;
+			this.count = count;
+		}
+
+		/**
+		 * Only makes sense for `topTracks()`.
+		 */
+		public long getSongId() {
+			return Long.parseLong(key);
+		}
+	}
+
+	private PlayHistoryDatabase database;
+
+	/**
+	 * Thread where all writes happen.
+	 */
+	private HandlerThread writerThread;
+	private Handler writer;
+
+	// Only touched on `writerThread`
+	private SQLiteStatement insertPlay  = null;
+	private SQLiteStatement insertCount = null;
+	private SQLiteStatement updateCount = null;
+
+	/**
+	 * How many plays we've saved since we started.
+	 */
+	private volatile int recordedPlays = 0;
+
+	public PlayHistory(Context context) {
+		this(context, PlayHistoryDatabase.NAME);
+	}
+
+	/**
+	 * Uses the database file `name` instead of the default one.
+	 */
+	public PlayHistory(Context context, String name) {
+		database = new PlayHistoryDatabase(context, name);
+
+		writerThread = new HandlerThread("PlayHistory");
+		writerThread.start();
+
+		writer = new Handler(writerThread.getLooper());
+	}
+
+	/**
+	 * Saves that `song` started playing right now.
+	 *
+	 * @note Returns immediately, saving it later.
+	 */
+	public void record(Song song) {
+		record(song.getId(), song.getArtist(), song.getGenre(), System.currentTimeMillis());
+	}
+
+	/**
+	 * Saves that a song started playing at `playedAt`
+	 * (milliseconds since the epoch).
+	 *
+	 * @note Returns immediately, saving it later.
+	 */
+	public void record(final long songId, final String artist, final String genre, final long playedAt) {
+		writer.post(new Runnable() {
+			@Override
+			public void run() {
+				SQLiteDatabase db = database.getWritableDatabase();
+
+				db.beginTransaction();
+				try {
+					insert(db, songId, artist, genre, playedAt);
+					db.setTransactionSuccessful();
+				}
+				catch (Exception e) {
+					Log.w(TAG, "Couldn't save play", e);
+				}
+				finally {
+					db.endTransaction();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Saves lots of plays at once, on the caller's Thread.
+	 *
+	 * All of them go on a single transaction, so it's
+	 * way faster than calling `record()` several times.
+	 * Useful for importing history from somewhere else.
+	 *
+	 * @note All arrays must have the same size.
+	 */
+	public synchronized void recordAll(long[] songIds, String[] artists, String[] genres, long[] playedAt) {
+		SQLiteDatabase db = database.getWritableDatabase();
+
+		db.beginTransaction();
+		try {
+			for (int i = 0; i < songIds.length; i++)
+				insert(db, songIds[i], artists[i], genres[i], playedAt[i]);
+
+			db.setTransactionSuccessful();
+		}
+		finally {
+			db.endTransaction();
+		}
+	}
+
+	/**
+	 * Inserts the play and increases all its counters.
+	 *
+	 * @note Must be inside a transaction.
+	 */
+	private synchronized void insert(SQLiteDatabase db, long songId, String artist, String genre, long playedAt) {
+
+		if (insertPlay == null) {
+			insertPlay = db.compileStatement(
+					"INSERT INTO plays (played_at, song_id, artist, genre) VALUES (?, ?, ?, ?)");
+
+			// SQLite on older Androids doesn't have "UPSERT",
+			// so we make sure the row exists and then increase it.
+			insertCount = db.compileStatement(
+					"INSERT OR IGNORE INTO daily_counts (kind, day, key, count) VALUES (?, ?, ?, 0)");
+			updateCount = db.compileStatement(
+					"UPDATE daily_counts SET count = count + 1 WHERE kind = ? AND day = ? AND key = ?");
+		}
+
+		insertPlay.bindLong(1, playedAt);
+		insertPlay.bindLong(2, songId);
+		bindStringOrNull(insertPlay, 3, artist);
+		bindStringOrNull(insertPlay, 4, genre);
+		insertPlay.executeInsert();
+
+		long day = playedAt / PlayHistoryDatabase.DAY;
+
+		increaseCount(PlayHistoryDatabase.KIND_TRACK,  day, Long.toString(songId));
+		increaseCount(PlayHistoryDatabase.KIND_ARTIST, day, artist);
+		increaseCount(PlayHistoryDatabase.KIND_GENRE,  day, genre);
+
+		increaseCount(PlayHistoryDatabase.KIND_TRACK, PlayHistoryDatabase.ALL_TIME, Long.toString(songId));
+
+		recordedPlays++;
+	}
+
+	private void increaseCount(int kind, long day, String key) {
+		if ((key == null) || key.isEmpty())
+			return;
+
+		insertCount.bindLong  (1, kind);
+		insertCount.bindLong  (2, day);
+		insertCount.bindString(3, key);
+		insertCount.executeInsert();
+
+		updateCount.bindLong  (1, kind);
+		updateCount.bindLong  (2, day);
+		updateCount.bindString(3, key);
+		updateCount.executeUpdateDelete();
+	}
+
+	private static void bindStringOrNull(SQLiteStatement statement, int index, String value) {
+		if (value == null)
+			statement.bindNull(index);
+		else
+			statement.bindString(index, value);
+	}
+
+	/**
+	 * The `amount` most played songs between `from` and `to`
+	 * (milliseconds since the epoch, `to` not included).
+	 */
+	public List<Entry> topTracks(long from, long to, int amount) {
+		return top(PlayHistoryDatabase.KIND_TRACK, "CAST(song_id AS TEXT)", from, to, amount);
+	}
+
+	/**
+	 * The `amount` most played artists between `from` and `to`.
+	 */
+	public List<Entry> topArtists(long from, long to, int amount) {
+		return top(PlayHistoryDatabase.KIND_ARTIST, "artist", from, to, amount);
+	}
+
+	/**
+	 * The `amount` most played genres between `from` and `to`.
+	 */
+	public List<Entry> topGenres(long from, long to, int amount) {
+		return top(PlayHistoryDatabase.KIND_GENRE, "genre", from, to, amount);
+	}
+
+	/**
+	 * Builds a ranking for any time window.
+	 *
+	 * The window is split in three:
+	 *
+	 *     from      first full day          last full day     to
+	 *      |---------|=========================|---------------|
+	 *        (plays)        (daily_counts)          (plays)
+	 *
+	 * Full days come from the pre-counted table, while the
+	 * partial days on the edges are counted from the plays
+	 * themselves. Then we add both up.
+	 *
+	 * @param kind   One of `PlayHistoryDatabase.KIND_*`.
+	 * @param column What to group by on the `plays` table.
+	 */
+	private List<Entry> top(int kind, String column, long from, long to, int amount) {
+
+		List<Entry> entries = new ArrayList<Entry>();
+
+		// Before that, days would be `ALL_TIME`
+		if (from < 0)
+			from = 0;
+
+		if ((from >= to) || (amount <= 0))
+			return entries;
+
+		long firstDay = (from + PlayHistoryDatabase.DAY - 1) / PlayHistoryDatabase.DAY;
+		long lastDay  = to / PlayHistoryDatabase.DAY;
+
+		long headEnd, tailStart;
+
+		if (firstDay < lastDay) {
+			headEnd   = firstDay * PlayHistoryDatabase.DAY;
+			tailStart = lastDay  * PlayHistoryDatabase.DAY;
+		}
+		else {
+			// No full days at all, everything
+			// comes from the plays table.
+			firstDay  = lastDay;
+			headEnd   = to;
+			tailStart = to;
+		}
+
+		String sql =
+				"SELECT key, SUM(n) AS total FROM ("                               +
+				"  SELECT key, count AS n FROM daily_counts"                       +
+				"  WHERE kind = ? AND day >= ? AND day < ?"                        +
+				"  UNION ALL"                                                      +
+				"  SELECT " + column + " AS key, 1 AS n FROM plays"                +
+				"  WHERE ((played_at >= ? AND played_at < ?)"                     +
+				"      OR (played_at >= ? AND played_at < ?))"                     +
+				"    AND " + column + " IS NOT NULL AND " + column + " <> ''"      +
+				") GROUP BY key ORDER BY total DESC LIMIT ?";
+
+		String[] arguments = {
+				Integer.toString(kind),
+				Long.toString(firstDay),
+				Long.toString(lastDay),
+				Long.toString(from),
+				Long.toString(headEnd),
+				Long.toString(tailStart),
+				Long.toString(to),
+				Integer.toString(amount)
+		};
+
+		Cursor cursor = database.getReadableDatabase().rawQuery(sql, arguments);
+		try {
+			for (cursor.moveToFirst(); ! cursor.isAfterLast(); cursor.moveToNext())
+				entries.add(new Entry(cursor.getString(0), cursor.getLong(1)));
+		}
+		finally {
+			cursor.close();
+		}
+		return entries;
+	}
+
+	/**
+	 * How many plays we've ever saved.
+	 */
+	public long getTotalPlays() {
+		SQLiteStatement count = database.getReadableDatabase()
+				.compileStatement("SELECT COUNT(*) FROM plays");
+		try {
+			return count.simpleQueryForLong();
+		}
+		finally {
+			count.close();
+		}
+	}
+
+	/**
+	 * How many times each song was ever played.
+	 *
+	 * Comes from the `ALL_TIME` rows of `daily_counts`, so it
+	 * reads one row per song instead of every play.
+	 *
+	 * @note Plays still waiting to be saved (see `record()`)
+	 *       aren't counted.
+	 */
+	public PlayCounts getPlayCounts() {
+		PlayCounts counts = new PlayCounts();
+
+		String[] arguments = {
+				Integer.toString(PlayHistoryDatabase.KIND_TRACK),
+				Long.toString(PlayHistoryDatabase.ALL_TIME)
+		};
+
+		Cursor cursor = database.getReadableDatabase()
+				.rawQuery("SELECT CAST(key AS INTEGER), count FROM daily_counts WHERE kind = ? AND day = ?", arguments);
+		try {
+			for (cursor.moveToFirst(); ! cursor.isAfterLast(); cursor.moveToNext())
+				counts.set(cursor.getLong(0), cursor.getInt(1));
+		}
+		finally {
+			cursor.close();
+		}
+		return counts;
+	}
+
+	/**
+	 * How many plays we've saved since we started.
+	 */
+	public int getRecordedPlays() {
+		return recordedPlays;
+	}
+
+	/**
+	 * Removes all plays, starting from scratch.
+	 *
+	 * @note Runs on the caller's Thread.
+	 */
+	public synchronized void clear() {
+		SQLiteDatabase db = database.getWritableDatabase();
+
+		db.beginTransaction();
+		try {
+			db.delete("plays", null, null);
+			db.delete("daily_counts", null, null);
+			db.setTransactionSuccessful();
+		}
+		finally {
+			db.endTransaction();
+		}
+	}
+
+	/**
+	 * Saves whatever is pending and closes the database.
+	 */
+	public void close() {
+		writer.post(new Runnable() {
+			@Override
+			public void run() {
+				database.close();
+				writerThread.quit();
+			}
+		});
+	}
+}
@@ -0,0 +1,83 @@
+package com.kure.musicplayer.history;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+/**
+ * The SQLite database where we keep everything the user
+ * listened to.
+ *
+ * It has two tables:
+ *
+ * - `plays`:        Every time a song started playing, with
+ *                   the artist and genre it had back then;
+ * - `daily_counts`: How many times each song, artist and genre
+ *                   got played on each day.
+ *
+ * `daily_counts` is updated together with `plays` and is what
+ * makes "top N of the last X days" fast - instead of going through
+ * a million plays we only sum a handful of rows per day.
+ *
+ * Songs also have a row on day `ALL_TIME`, with how many times
+ * they were ever played - a single row per song instead of one
+ * per day they were played.
+ *
+ * @note Days are counted in UTC (`timestamp / DAY`); they're only
+ *       used internally, so it doesn't matter.
+ */
+public class PlayHistoryDatabase extends SQLiteOpenHelper {
+
+	public static final String NAME = "history.db";
+
+	/**
+	 * Must be increased every time the tables change.
+	 */
+	public static final int VERSION = 1;
+
+	/** How long a day is, in milliseconds */
+	public static final long DAY = 24 * 60 * 60 * 1000;
+
+	/**
+	 * The "day" of `daily_counts` rows that count every play
+	 * (only for `KIND_TRACK`) - real days are never negative.
+	 */
+	public static final long ALL_TIME = -1;
+
+	// What is being counted on `daily_counts`
+	public static final int KIND_TRACK  = 0;
+	public static final int KIND_ARTIST = 1;
+	public static final int KIND_GENRE  = 2;
+
+	public PlayHistoryDatabase(Context context, String name) {
+		super(context, name, null, VERSION);
+	}
+
+	@Override
+	public void onCreate(SQLiteDatabase db) {
+
+		db.execSQL("CREATE TABLE plays ("                 +
+		           "_id       INTEGER PRIMARY KEY, "      +
+		           "played_at INTEGER NOT NULL, "         +
+		           "song_id   INTEGER NOT NULL, "         +
+		           "artist    TEXT, "                     +
+		           "genre     TEXT)");
+
+		// For the edges of time windows (see `PlayHistory#top()`)
+		db.execSQL("CREATE INDEX plays_played_at ON plays (played_at)");
+
+		// The primary key is also what we search for:
+		// "all artists from day X to day Y".
+		db.execSQL("CREATE TABLE daily_counts ("          +
+		           "kind  INTEGER NOT NULL, "             +
+		           "day   INTEGER NOT NULL, "             +
+		           "key   TEXT    NOT NULL, "             +
+		           "count INTEGER NOT NULL, "             +
+		           "PRIMARY KEY (kind, day, key))");
+	}
+
+	@Override
+	public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+		// Nothing yet - there's only version 1
+	}
+}
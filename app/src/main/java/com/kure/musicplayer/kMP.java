@@ -1,5 +1,6 @@
 package com.kure.musicplayer;
 
+import java.io.File;
 import java.util.ArrayList;
 
 import android.app.Activity;
@@ -10,12 +11,22 @@ import android.content.ServiceConnection;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.os.IBinder;
+import android.util.Log;
 
 import com.kure.musicplayer.activities.ActivityQuit;
+import com.kure.musicplayer.events.PlayerEventBus;
+import com.kure.musicplayer.history.PlayHistory;
+import com.kure.musicplayer.model.CacheRegistry;
+import com.kure.musicplayer.model.SmartPlaylists;
 import com.kure.musicplayer.model.Song;
 import com.kure.musicplayer.model.SongList;
+import com.kure.musicplayer.services.Playback;
+import com.kure.musicplayer.services.RemotePlayback;
 import com.kure.musicplayer.services.ServicePlayMusic;
 import com.kure.musicplayer.services.ServicePlayMusic.MusicBinder;
+import com.kure.musicplayer.services.ServicePlaybackProcess;
+import com.kure.musicplayer.tags.TagScanner;
+import com.kure.musicplayer.tasks.TaskScheduler;
 
 
 /**
@@ -29,6 +40,9 @@ import com.kure.musicplayer.services.ServicePlayMusic.MusicBinder;
  */
 public class kMP {
 
+	// The tag we put on debug messages
+	private static final String TAG = "kMP";
+
 	/**
 	 * All the songs on the device.
 	 */
@@ -40,22 +54,76 @@ public class kMP {
 	public static Settings settings = new Settings();
 
 	/**
-	 * Our custom service that allows the music to play
-	 * even when the app is not on focus.
+	 * Where the music player tells what it's doing and
+	 * receives orders.
+	 *
+	 * @see PlayerEventBus
+	 */
+	public static PlayerEventBus events = new PlayerEventBus();
+
+	/**
+	 * Everything the user listened to.
+	 *
+	 * @note Created on `initialize()`.
+	 * @see PlayHistory
 	 */
-	public static ServicePlayMusic musicService = null;
+	public static PlayHistory history = null;
 
 	/**
-	 * Contains the songs that are going to be shown to
-	 * the user on a particular menu.
+	 * Playlists made of rules, like "genre=Rock AND never played".
 	 *
-	 * @note IGNORE THIS - don't mess with it.
+	 * @note Loaded on `initialize()`.
+	 * @see SmartPlaylists
+	 */
+	public static SmartPlaylists smartPlaylists = new SmartPlaylists();
+
+	/**
+	 * Reads tags the MediaStore doesn't have straight
+	 * from the song files, caching them on disk.
+	 *
+	 * @note Created on `initialize()`.
+	 */
+	public static TagScanner tagScanner = null;
+
+	/**
+	 * Everything we keep in memory only to be faster,
+	 * let go when the system runs out of memory.
+	 *
+	 * @note Caches are registered on `initialize()`.
+	 * @see MemoryTrimmer
+	 */
+	public static CacheRegistry caches = new CacheRegistry();
+
+	/**
+	 * Where everything that shouldn't block the UI Thread
+	 * runs - scans, queries, imports...
+	 *
+	 * @see TaskScheduler
+	 * @see com.kure.musicplayer.helpers.BackgroundTask
+	 */
+	public static TaskScheduler tasks = new TaskScheduler("kMP", 0);
+
+	/**
+	 * Trims `caches` when the system asks us to
+	 * (`null` until `initialize()`).
+	 */
+	private static MemoryTrimmer memoryTrimmer = null;
+
+	/**
+	 * Our custom service that allows the music to play
+	 * even when the app is not on focus.
 	 *
-	 * Every `ActivityMenu*` uses this temporary variable to
-	 * store subsections of `SongList` and set `ActivityListSongs`
-	 * to display it.
+	 * @note If it's running on a process of its own (the
+	 *       "separate_process" Setting), this is the
+	 *       `RemotePlayback` that talks to it.
+	 */
+	public static Playback musicService = null;
+
+	/**
+	 * Talks to the music service when it's on a process
+	 * of its own (`null` if it isn't).
 	 */
-	public static ArrayList<Song> musicList = null;
+	private static RemotePlayback remotePlayback = null;
 
 	/**
 	 * List of the songs being currently played by the user.
@@ -93,6 +161,31 @@ public class kMP {
 
 		kMP.packageName = c.getPackageName();
 
+		// Otherwise tasks submitted directly (not through
+		// `BackgroundTask`) would fail without a trace
+		kMP.tasks.setFailureListener(new TaskScheduler.FailureListener() {
+			@Override
+			public void onTaskFailed(TaskScheduler.Task task, Throwable failure) {
+				Log.w(TAG, "Task failed", failure);
+			}
+		});
+
+		if (kMP.history == null)
+			kMP.history = new PlayHistory(c.getApplicationContext());
+
+		kMP.smartPlaylists.load(c.getApplicationContext(), kMP.history);
+		kMP.smartPlaylists.cacheOn(kMP.songs.getQueryCache());
+
+		if (kMP.tagScanner == null)
+			kMP.tagScanner = new TagScanner(new File(c.getFilesDir(), "tags.cache"), 0);
+
+		if (kMP.memoryTrimmer == null) {
+			registerCaches();
+
+			kMP.memoryTrimmer = new MemoryTrimmer(kMP.caches, kMP.tasks);
+			c.getApplicationContext().registerComponentCallbacks(kMP.memoryTrimmer);
+		}
+
 		try {
 			// Retrieving several information
 			PackageInfo info = c.getPackageManager().getPackageInfo(kMP.packageName, 0);
@@ -110,6 +203,55 @@ public class kMP {
 		}
 	}
 
+	/**
+	 * Tells `caches` about everything we can let go.
+	 *
+	 * @note The songs themselves (and the Now Playing List)
+	 *       aren't here - they're what's being used.
+	 */
+	private static void registerCaches() {
+
+		// Cheap to run again
+		caches.register("queries", CacheRegistry.PRIORITY_LOW, songs.getQueryCache());
+
+		// Always the current snapshot's, so older
+		// snapshots don't stay around because of us
+		caches.register("facets", CacheRegistry.PRIORITY_NORMAL, new CacheRegistry.Cache() {
+			@Override
+			public long getSize() {
+				return songs.getSnapshot().getIndexSize();
+			}
+			@Override
+			public void trim() {
+				songs.getSnapshot().trimIndexes();
+			}
+		});
+
+		// Need to read the play history again
+		caches.register("smart_playlists", CacheRegistry.PRIORITY_HIGH, new CacheRegistry.Cache() {
+			@Override
+			public long getSize() {
+				return smartPlaylists.getSize();
+			}
+			@Override
+			public void trim() {
+				smartPlaylists.trim();
+			}
+		});
+
+		// Need to read the cache file again
+		caches.register("tags", CacheRegistry.PRIORITY_HIGH, new CacheRegistry.Cache() {
+			@Override
+			public long getSize() {
+				return tagScanner.getCache().sizeInBytes();
+			}
+			@Override
+			public void trim() {
+				tagScanner.trim();
+			}
+		});
+	}
+
 	/**
 	 * Destroys everything.
 	 *
@@ -118,6 +260,11 @@ public class kMP {
 	 */
 	public static void destroy() {
 		songs.destroy();
+
+		if (history != null) {
+			history.close();
+			history = null;
+		}
 	}
 
 	/**
@@ -135,14 +282,22 @@ public class kMP {
 			MusicBinder binder = (MusicBinder)service;
 
 			// Here's where we finally create the MusicService
-			musicService = binder.getService();
-			musicService.setList(kMP.songs.songs);
-			musicService.musicBound = true;
+			ServicePlayMusic localService = binder.getService();
+
+			// It might have brought back what it was playing
+			// (see `ServicePlayMusic.restoreQueue()`)
+			if ((localService.getList() == null) || localService.getList().isEmpty())
+				localService.setList(kMP.songs.getSongs());
+
+			localService.musicBound = true;
+
+			musicService = localService;
 		}
 
 		@Override
 		public void onServiceDisconnected(ComponentName name) {
-			musicService.musicBound = false;
+			if (musicService instanceof ServicePlayMusic)
+				((ServicePlayMusic)musicService).musicBound = false;
 		}
 	};
 
@@ -166,6 +321,18 @@ public class kMP {
 		if (kMP.musicService != null)
 			return;
 
+		// Keeping the music away from our garbage collections
+		// (takes effect the next time the service starts)
+		if (kMP.settings.get("separate_process", false)) {
+			musicServiceIntent = new Intent(c, ServicePlaybackProcess.class);
+			c.startService(musicServiceIntent);
+
+			// Becomes `musicService` once connected
+			remotePlayback = new RemotePlayback();
+			remotePlayback.bind(c);
+			return;
+		}
+
 		// Create an intent to bind our Music Connection to
 		// the MusicService.
 		musicServiceIntent = new Intent(c, ServicePlayMusic.class);
@@ -182,6 +349,11 @@ public class kMP {
 		if (musicServiceIntent == null)
 			return;
 
+		if (remotePlayback != null) {
+			remotePlayback.unbind(c);
+			remotePlayback = null;
+		}
+
 		c.stopService(musicServiceIntent);
 		musicServiceIntent = null;
 
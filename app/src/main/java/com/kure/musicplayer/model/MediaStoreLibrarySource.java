@@ -0,0 +1,309 @@
+package com.kure.musicplayer.model;
+
+import java.util.ArrayList;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.MediaStore;
+
+/**
+ * Gets songs, genres and playlists from the Android
+ * media database (the "MediaStore").
+ *
+ * Thanks:
+ *
+ * - Showing me how to get a music's full PATH:
+ *   http://stackoverflow.com/a/21333187
+ *
+ * - Teaching me the queries to get Playlists
+ *   and their songs:
+ *   http://stackoverflow.com/q/11292125
+ */
+public class MediaStoreLibrarySource implements LibrarySource {
+
+	/**
+	 * Whatever answers our queries.
+	 *
+	 * Usually it's the system's `ContentResolver`, but it can be
+	 * replaced by a fake one (see `SyntheticMediaStore`, on
+	 * debug builds).
+	 *
+	 * @note Same arguments as `ContentResolver#query()`.
+	 */
+	public interface Database {
+		public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder);
+	}
+
+	private Database database;
+
+	private String fromWhere;
+
+	/**
+	 * @param context   The current Activity's Context.
+	 * @param fromWhere Where should we scan for songs -
+	 *                  "internal" (phone's memory) or
+	 *                  "external" (SD card).
+	 */
+	public MediaStoreLibrarySource(Context context, String fromWhere) {
+		this(contentResolverDatabase(context.getContentResolver()), fromWhere);
+	}
+
+	/**
+	 * Scans `database` instead of the system's media database.
+	 *
+	 * @param fromWhere Same as the other constructor.
+	 */
+	public MediaStoreLibrarySource(Database database, String fromWhere) {
+
+		// Not implemented yet.
+		if (fromWhere == "both")
+			throw new RuntimeException("Can't scan from both locations - not implemented");
+
+		this.database  = database;
+		this.fromWhere = fromWhere;
+	}
+
+	private static Database contentResolverDatabase(final ContentResolver resolver) {
+		return new Database() {
+			@Override
+			public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+				return resolver.query(uri, projection, selection, selectionArgs, sortOrder);
+			}
+		};
+	}
+
+	/**
+	 * Inside it, we make a lot of queries to the system's
+	 * databases - getting songs, genres and playlists.
+	 */
+	@Override
+	public void scan(LibraryBuilder builder) {
+
+		// This is a rather complex function that interacts with
+		// the underlying Android database.
+		// Grab some coffee and stick to the comments.
+
+		// The URIs that tells where we should scan for files.
+		// There are separate URIs for music, genres and playlists. Go figure...
+		//
+		// Remember - internal is the phone memory, external is for the SD card.
+		Uri musicUri = ((fromWhere == "internal") ?
+				        android.provider.MediaStore.Audio.Media.INTERNAL_CONTENT_URI:
+				        android.provider.MediaStore.Audio.Media.EXTERNAL_CONTENT_URI);
+		Uri genreUri = ((fromWhere == "internal") ?
+				        android.provider.MediaStore.Audio.Genres.INTERNAL_CONTENT_URI:
+				        android.provider.MediaStore.Audio.Genres.EXTERNAL_CONTENT_URI);
+		Uri playlistUri = ((fromWhere == "internal") ?
+		        android.provider.MediaStore.Audio.Playlists.INTERNAL_CONTENT_URI:
+		        android.provider.MediaStore.Audio.Playlists.EXTERNAL_CONTENT_URI);
+
+		// Gives us access to query for files on the system.
+		Database resolver = database;
+
+		// We use this thing to iterate through the results
+		// of a SQLite database query.
+		Cursor cursor;
+
+		// OK, this is where we start.
+		//
+		// First, before even touching the songs, we'll save all the
+		// music genres (like "Rock", "Jazz" and such).
+		// That's because Android doesn't allow getting a song genre
+		// from the song file itself.
+		//
+		// To get the genres, we make queries to the system's SQLite
+		// database. It involves genre IDs, music IDs and such.
+		//
+		// We're creating two maps:
+		//
+		// 1. Genre ID -> Genre Names
+		// 2. Song ID -> Genre ID
+		//
+		// This way, we have a connection from a Song ID to a Genre Name.
+		//
+		// Then we finally get the songs!
+		// We make queries to the database, getting all possible song
+		// metadata - like artist, album and such.
+
+
+		// These are the columns from the system databases.
+		// They're the information I want to get from songs.
+		String GENRE_ID      = MediaStore.Audio.Genres._ID;
+		String GENRE_NAME    = MediaStore.Audio.Genres.NAME;
+        String SONG_ID       = android.provider.MediaStore.Audio.Media._ID;
+		String SONG_TITLE    = android.provider.MediaStore.Audio.Media.TITLE;
+		String SONG_ARTIST   = android.provider.MediaStore.Audio.Media.ARTIST;
+		String SONG_ALBUM    = android.provider.MediaStore.Audio.Media.ALBUM;
+		String SONG_YEAR     = android.provider.MediaStore.Audio.Media.YEAR;
+		String SONG_TRACK_NO = android.provider.MediaStore.Audio.Media.TRACK;
+		String SONG_FILEPATH = android.provider.MediaStore.Audio.Media.DATA;
+		String SONG_DURATION = android.provider.MediaStore.Audio.Media.DURATION;
+
+		// All genre IDs we've found
+		ArrayList<Long> genreIds = new ArrayList<Long>();
+
+		// This is what we'll ask of the genres
+		String[] genreColumns = {
+				GENRE_ID,
+				GENRE_NAME
+		};
+
+		// Actually querying the genres database
+        cursor = resolver.query(genreUri, genreColumns, null, null, null);
+
+		// Iterating through the results and filling the map.
+        for (cursor.moveToFirst(); !cursor.isAfterLast(); cursor.moveToNext()) {
+            builder.addGenre(cursor.getLong(0), cursor.getString(1));
+            genreIds.add(cursor.getLong(0));
+        }
+
+        cursor.close();
+
+        // Now, the map from Songs IDs to Genre IDs
+        // UPDATE URI HERE
+    	if (fromWhere == "both")
+    		throw new RuntimeException("Can't scan from both locations - not implemented");
+
+    	// For each genre, we'll query the databases to get
+    	// all songs's IDs that have it as a genre.
+    	for (Long genreID : genreIds) {
+
+        	Uri uri = MediaStore.Audio.Genres.Members.getContentUri(fromWhere, genreID);
+
+        	cursor = resolver.query(uri, new String[] { SONG_ID }, null, null, null);
+
+        	// Iterating through the results, populating the map
+        	for (cursor.moveToFirst(); !cursor.isAfterLast(); cursor.moveToNext()) {
+
+        		long currentSongID = cursor.getLong(cursor.getColumnIndex(SONG_ID));
+
+        		builder.addGenreMember(genreID, currentSongID);
+        	}
+        	cursor.close();
+        }
+
+    	// Finished getting the Genres.
+    	// Let's go get dem songzz.
+
+		// Columns I'll retrieve from the song table
+		String[] columns = {
+				SONG_ID,
+				SONG_TITLE,
+				SONG_ARTIST,
+				SONG_ALBUM,
+				SONG_YEAR,
+				SONG_TRACK_NO,
+				SONG_FILEPATH,
+				SONG_DURATION
+		};
+
+		// Thing that limits results to only show music files.
+		//
+		// It's a SQL "WHERE" clause - it becomes `WHERE IS_MUSIC=1`.
+		//
+		// (note: using `IS_MUSIC!=0` takes a fuckload of time)
+		final String musicsOnly = MediaStore.Audio.Media.IS_MUSIC + "=1";
+
+		// Actually querying the system
+		cursor = resolver.query(musicUri, columns, musicsOnly, null, null);
+
+		if (cursor != null && cursor.moveToFirst())
+		{
+			// NOTE: I tried to use MediaMetadataRetriever, but it was too slow.
+			//       Even with 10 songs, it took like 13 seconds,
+			//       No way I'm releasing it this way - I have like 4.260 songs!
+
+			do {
+				// Creating a song from the values on the row
+				Song song = new Song(cursor.getInt(cursor.getColumnIndex(SONG_ID)),
+						             cursor.getString(cursor.getColumnIndex(SONG_FILEPATH)));
+
+				song.setTitle      (cursor.getString(cursor.getColumnIndex(SONG_TITLE)));
+				song.setArtist     (cursor.getString(cursor.getColumnIndex(SONG_ARTIST)));
+				song.setAlbum      (cursor.getString(cursor.getColumnIndex(SONG_ALBUM)));
+				song.setYear       (cursor.getInt   (cursor.getColumnIndex(SONG_YEAR)));
+				song.setTrackNumber(cursor.getInt   (cursor.getColumnIndex(SONG_TRACK_NO)));
+				song.setDuration   (cursor.getInt   (cursor.getColumnIndex(SONG_DURATION)));
+
+				// The builder will fill the song genre
+				// with the maps we created before.
+				builder.addSong(song);
+			}
+			while (cursor.moveToNext());
+		}
+		else
+		{
+			// What do I do if I can't find any songs?
+		}
+		cursor.close();
+
+		// Alright, now I'll get all the Playlists.
+		// Only their IDs and Names - the songs inside each one
+		// are only queried when someone opens it
+		// (see `MemberLoader` below).
+
+		// As you know, the columns for the database.
+		String PLAYLIST_ID   = MediaStore.Audio.Playlists._ID;
+		String PLAYLIST_NAME = MediaStore.Audio.Playlists.NAME;
+
+		// This is what I'll get for all playlists.
+		String[] playlistColumns = {
+				PLAYLIST_ID,
+				PLAYLIST_NAME
+		};
+
+		cursor = resolver.query(playlistUri, playlistColumns, null, null, null);
+
+		MemberLoader loader = new MemberLoader(database, fromWhere);
+
+		for (cursor.moveToFirst(); !cursor.isAfterLast(); cursor.moveToNext())
+			builder.addPlaylist(new Playlist(cursor.getLong(cursor.getColumnIndex(PLAYLIST_ID)),
+			                                 cursor.getString(cursor.getColumnIndex(PLAYLIST_NAME)),
+			                                 loader));
+
+		cursor.close();
+	}
+
+	/**
+	 * Gets all songs inside a Playlist, when it's opened.
+	 *
+	 * @note Runs a query, so better not call it
+	 *       from the UI Thread.
+	 */
+	private static class MemberLoader implements PlaylistMemberLoader {
+
+		private Database database;
+		private String   fromWhere;
+
+		MemberLoader(Database database, String fromWhere) {
+			this.database  = database;
+			this.fromWhere = fromWhere;
+		}
+
+		@Override
+		public void load(Playlist playlist) {
+			String PLAYLIST_SONG_ID = MediaStore.Audio.Playlists.Members.AUDIO_ID;
+
+			Uri uri = MediaStore.Audio.Playlists.Members.getContentUri(fromWhere, playlist.getID());
+
+			Cursor cursor = database.query(uri,
+			                               new String[] { PLAYLIST_SONG_ID },
+			                               MediaStore.Audio.Media.IS_MUSIC + "=1",
+			                               null, null);
+
+			// The playlist might've been deleted since the scan
+			if (cursor == null)
+				return;
+
+			int column = cursor.getColumnIndex(PLAYLIST_SONG_ID);
+
+			// Adding each song's ID to it
+			for (cursor.moveToFirst(); !cursor.isAfterLast(); cursor.moveToNext())
+				playlist.add(cursor.getLong(column));
+
+			cursor.close();
+		}
+	}
+}
@@ -0,0 +1,203 @@
+package com.kure.musicplayer.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.MediaStore;
+import android.util.Log;
+
+/**
+ * Saves Playlist edits on the Android media database.
+ *
+ * Instead of deleting all songs and inserting them again,
+ * we read what's there now, find the fewest changes to get
+ * to what we want (see `PlaylistDiff`) and send only them,
+ * all at once on a single `applyBatch()`.
+ *
+ * The media database only moves songs by position and only
+ * appends new ones, so:
+ *
+ * - Repeated songs are removed (Playlists here don't repeat);
+ * - Songs we didn't know about (not music, or added by some
+ *   other app since we looked) are left where they are;
+ * - Songs inserted anywhere but the end are appended and
+ *   then moved to their place.
+ *
+ * @note It runs queries, so don't call it from the UI Thread.
+ */
+public class PlaylistSync {
+
+	// The tag we put on debug messages
+	private static final String TAG = "PlaylistSync";
+
+	private ContentResolver resolver;
+
+	private String fromWhere;
+
+	/**
+	 * How long each sync took and what it did.
+	 */
+	public static class Result {
+
+		/** What we sent to the database */
+		public PlaylistDiff diff;
+
+		/** How many operations went on the batch */
+		public int operations = 0;
+
+		/** Milliseconds reading the current songs */
+		public long queryTime = 0;
+
+		/** Milliseconds finding the changes */
+		public long diffTime = 0;
+
+		/** Milliseconds the database took to apply them */
+		public long applyTime = 0;
+
+		@Override
+		public String toString() {
+			return diff + " (" + operations + " operations) - query " + queryTime +
+			       "ms, diff " + diffTime + "ms, apply " + applyTime + "ms";
+		}
+	}
+
+	/**
+	 * @param fromWhere "internal" or "external".
+	 */
+	public PlaylistSync(ContentResolver resolver, String fromWhere) {
+		this.resolver  = resolver;
+		this.fromWhere = fromWhere;
+	}
+
+	/**
+	 * Makes the Playlist with `playlistId` have `after`
+	 * instead of `before` (the songs we knew it had).
+	 *
+	 * @return What it did, or `null` if it failed.
+	 */
+	public Result sync(long playlistId, long[] before, long[] after) {
+		Result result = new Result();
+
+		Uri membersUri = MediaStore.Audio.Playlists.Members.getContentUri(fromWhere, playlistId);
+
+		String ROW_ID     = MediaStore.Audio.Playlists.Members._ID;
+		String AUDIO_ID   = MediaStore.Audio.Playlists.Members.AUDIO_ID;
+		String PLAY_ORDER = MediaStore.Audio.Playlists.Members.PLAY_ORDER;
+
+		ArrayList<ContentProviderOperation> batch = new ArrayList<ContentProviderOperation>();
+
+		// 1. What's there right now
+		long start = System.currentTimeMillis();
+
+		Cursor cursor = resolver.query(membersUri,
+		                               new String[] { ROW_ID, AUDIO_ID, PLAY_ORDER },
+		                               null, null,
+		                               PLAY_ORDER);
+		if (cursor == null)
+			return null;
+
+		LongHashSet seen = new LongHashSet(cursor.getCount());
+
+		long[] current = new long[cursor.getCount()];
+		int    size    = 0;
+
+		long lastPlayOrder = 0;
+
+		for (cursor.moveToFirst(); !cursor.isAfterLast(); cursor.moveToNext()) {
+			long id = cursor.getLong(cursor.getColumnIndex(AUDIO_ID));
+
+			lastPlayOrder = Math.max(lastPlayOrder, cursor.getLong(cursor.getColumnIndex(PLAY_ORDER)));
+
+			if (seen.add(id)) {
+				current[size++] = id;
+				continue;
+			}
+
+			// Repeated - only this row goes away
+			batch.add(ContentProviderOperation.newDelete(membersUri)
+			          .withSelection(ROW_ID + "=?",
+			                         new String[] { Long.toString(cursor.getLong(cursor.getColumnIndex(ROW_ID))) })
+			          .build());
+		}
+		cursor.close();
+
+		current = Arrays.copyOf(current, size);
+
+		result.queryTime = System.currentTimeMillis() - start;
+
+		// 2. What to change
+		start = System.currentTimeMillis();
+
+		long[] wanted = PlaylistDiff.keepingOthers(current, before, after);
+
+		result.diff     = PlaylistDiff.between(current, wanted);
+		result.diffTime = System.currentTimeMillis() - start;
+
+		// 3. Sending it all at once
+		for (PlaylistDiff.Operation operation : result.diff.getOperations()) {
+			switch (operation.type) {
+
+			case PlaylistDiff.DELETE:
+				batch.add(ContentProviderOperation.newDelete(membersUri)
+				          .withSelection(AUDIO_ID + "=?",
+				                         new String[] { Long.toString(operation.songId) })
+				          .build());
+				size--;
+				break;
+
+			case PlaylistDiff.INSERT:
+				batch.add(ContentProviderOperation.newInsert(membersUri)
+				          .withValue(AUDIO_ID,   operation.songId)
+				          .withValue(PLAY_ORDER, ++lastPlayOrder)
+				          .build());
+				size++;
+
+				if (operation.to != size - 1)
+					batch.add(move(membersUri, size - 1, operation.to));
+				break;
+
+			case PlaylistDiff.MOVE:
+				batch.add(move(membersUri, operation.from, operation.to));
+				break;
+			}
+		}
+
+		result.operations = batch.size();
+
+		if (batch.isEmpty())
+			return result;
+
+		start = System.currentTimeMillis();
+
+		try {
+			resolver.applyBatch(MediaStore.AUTHORITY, batch);
+		}
+		catch (Exception e) {
+			Log.w(TAG, "Couldn't save playlist " + playlistId, e);
+			return null;
+		}
+		result.applyTime = System.currentTimeMillis() - start;
+
+		Log.d(TAG, "Playlist " + playlistId + ": " + result);
+		return result;
+	}
+
+	/**
+	 * Same thing `MediaStore.Audio.Playlists.Members.moveItem()`
+	 * does, but as an operation we can put on a batch.
+	 */
+	private static ContentProviderOperation move(Uri membersUri, int from, int to) {
+		Uri uri = membersUri.buildUpon()
+				.appendEncodedPath(String.valueOf(from))
+				.appendQueryParameter("move", "true")
+				.build();
+
+		return ContentProviderOperation.newUpdate(uri)
+				.withValue(MediaStore.Audio.Playlists.Members.PLAY_ORDER, to)
+				.build();
+	}
+}
@@ -0,0 +1,269 @@
+package com.kure.musicplayer.model;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Map;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.kure.musicplayer.history.PlayHistory;
+
+/**
+ * All smart playlists the user created (see `SmartPlaylist`).
+ *
+ * Only their names and rules are saved (on their own
+ * SharedPreferences file) - songs are found again from the
+ * current `LibrarySnapshot` each time one is opened.
+ * Since each `SmartPlaylist` remembers what it found before,
+ * opening it again only tests songs that changed.
+ *
+ * Play counts (for rules like "never played") are read from
+ * the `PlayHistory` once, then kept up to date by
+ * `songPlayed()`.
+ *
+ * It also finds the songs of `SongQuery.bySmartPlaylist()`
+ * for a `QueryCache` (see `cacheOn()`), telling it when
+ * they might have changed.
+ *
+ * @note Thread-safe.
+ */
+public class SmartPlaylists implements SongQuery.Finder {
+
+	// The tag we put on debug messages
+	private static final String TAG = "SmartPlaylists";
+
+	/**
+	 * Name of the SharedPreferences file, where each
+	 * key is a name and each value its rule.
+	 */
+	private static final String PREFERENCES = "smart_playlists";
+
+	private final ArrayList<SmartPlaylist> playlists = new ArrayList<SmartPlaylist>();
+
+	private PlayHistory history = null;
+
+	/**
+	 * How many times each song was played - only read
+	 * when some Playlist needs it.
+	 */
+	private PlayCounts plays = null;
+
+	/**
+	 * Where our songs are remembered (might be `null`).
+	 */
+	private QueryCache results = null;
+
+	/**
+	 * Reads all saved smart playlists.
+	 *
+	 * Rules we can't understand anymore are left out
+	 * (but still saved).
+	 *
+	 * @param history Where play counts come from
+	 *                (might be `null`).
+	 */
+	public synchronized void load(Context c, PlayHistory history) {
+		this.history = history;
+
+		playlists.clear();
+
+		Map<String, ?> saved = preferences(c).getAll();
+
+		for (Map.Entry<String, ?> entry : saved.entrySet()) {
+			try {
+				playlists.add(new SmartPlaylist(entry.getKey(), SmartRule.parse(entry.getValue().toString())));
+			}
+			catch (ParseException e) {
+				Log.w(TAG, "Invalid rule on \"" + entry.getKey() + "\"", e);
+			}
+		}
+	}
+
+	/**
+	 * Finds the songs of smart playlist queries for `cache`,
+	 * making it forget them when they might have changed.
+	 */
+	public synchronized void cacheOn(QueryCache cache) {
+		results = cache;
+		cache.setFinder(this);
+	}
+
+	@Override
+	public ArrayList<Song> find(SongQuery query, LibrarySnapshot snapshot) {
+		return getSongs(query.getValue(), snapshot);
+	}
+
+	/**
+	 * Makes `results` find the songs of smart playlists again.
+	 */
+	private void forgetResults() {
+		if (results != null)
+			results.forget(SongQuery.TYPE_SMART);
+	}
+
+	/**
+	 * Alphabetically sorted names of all smart playlists.
+	 */
+	public synchronized ArrayList<String> getNames() {
+		ArrayList<String> names = new ArrayList<String>();
+
+		for (SmartPlaylist playlist : playlists)
+			names.add(playlist.getName());
+
+		Collections.sort(names);
+		return names;
+	}
+
+	/**
+	 * Returns the smart playlist called `name`,
+	 * or `null` if there's none.
+	 */
+	public synchronized SmartPlaylist get(String name) {
+		for (SmartPlaylist playlist : playlists)
+			if (playlist.getName().equals(name))
+				return playlist;
+
+		return null;
+	}
+
+	/**
+	 * Creates a smart playlist (or changes the rule of
+	 * an existing one) and saves it.
+	 *
+	 * @throws ParseException If `expression` isn't a valid
+	 *                        rule - then nothing changes.
+	 */
+	public synchronized void save(Context c, String name, String expression) throws ParseException {
+		SmartPlaylist playlist = new SmartPlaylist(name, SmartRule.parse(expression));
+
+		SmartPlaylist old = get(name);
+
+		if (old != null)
+			playlists.remove(old);
+
+		playlists.add(playlist);
+		forgetResults();
+
+		preferences(c).edit().putString(name, playlist.getRule().toString()).commit();
+	}
+
+	/**
+	 * Forgets the smart playlist called `name`.
+	 */
+	public synchronized void remove(Context c, String name) {
+		SmartPlaylist playlist = get(name);
+
+		if (playlist != null)
+			playlists.remove(playlist);
+
+		forgetResults();
+
+		preferences(c).edit().remove(name).commit();
+	}
+
+	/**
+	 * All songs of `snapshot` on the smart playlist
+	 * called `name` (empty if there's none).
+	 *
+	 * @note Might read the play history the first time,
+	 *       so don't call it from the UI Thread.
+	 */
+	public ArrayList<Song> getSongs(String name, LibrarySnapshot snapshot) {
+		SmartPlaylist playlist = get(name);
+
+		if (playlist == null)
+			return new ArrayList<Song>();
+
+		PlayCounts counts = new PlayCounts();
+
+		if ((playlist.getRule().getFields() & SmartRule.FIELD_PLAYS) != 0)
+			counts = getPlayCounts();
+
+		long start = System.currentTimeMillis();
+
+		ArrayList<Song> songs = playlist.getSongs(snapshot, counts);
+
+		Log.d(TAG, "\"" + name + "\": " + songs.size() + " songs, tested " +
+		      playlist.getLastTested() + " in " + (System.currentTimeMillis() - start) + "ms");
+
+		return songs;
+	}
+
+	/**
+	 * Tells that a song just started playing, so
+	 * playlists that depend on it get updated.
+	 */
+	public synchronized void songPlayed(long songId) {
+		if (plays != null)
+			plays.increase(songId);
+
+		boolean changed = false;
+
+		for (SmartPlaylist playlist : playlists) {
+			playlist.songPlayed(songId);
+
+			if ((playlist.getRule().getFields() & SmartRule.FIELD_PLAYS) != 0)
+				changed = true;
+		}
+
+		if (changed)
+			forgetResults();
+	}
+
+	/**
+	 * Roughly how much memory the playlists' results
+	 * and play counts take, in bytes.
+	 */
+	public synchronized long getSize() {
+		long bytes = (plays == null) ? 0 : (plays.size() * 24);
+
+		for (SmartPlaylist playlist : playlists)
+			bytes += playlist.sizeInBytes();
+
+		return bytes;
+	}
+
+	/**
+	 * Forgets all results and play counts - they're found
+	 * again the next time a playlist is opened.
+	 */
+	public synchronized void trim() {
+		plays = null;
+
+		for (SmartPlaylist playlist : playlists)
+			playlist.reset();
+	}
+
+	/**
+	 * Reads the play counts the first time.
+	 *
+	 * @note Not holding the lock while reading, since
+	 *       `songPlayed()` gets called from the UI Thread.
+	 */
+	private PlayCounts getPlayCounts() {
+		PlayHistory source;
+
+		synchronized (this) {
+			if (plays != null)
+				return plays;
+
+			source = history;
+		}
+
+		PlayCounts counts = (source == null) ? new PlayCounts() : source.getPlayCounts();
+
+		synchronized (this) {
+			if (plays == null)
+				plays = counts;
+
+			return plays;
+		}
+	}
+
+	private static SharedPreferences preferences(Context c) {
+		return c.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+	}
+}
@@ -1,17 +1,21 @@
 package com.kure.musicplayer.model;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import android.content.ContentResolver;
+import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
-import android.database.Cursor;
 import android.net.Uri;
 import android.provider.MediaStore;
 
+import com.kure.musicplayer.tags.TagScanner;
+
 /**
  * Global interface to all the songs this application can see.
  *
@@ -20,48 +24,71 @@ import android.provider.MediaStore;
  *   (both internal and external memories)
  * - Has query functions to songs and their attributes.
  *
- * Thanks:
- *
- * - Showing me how to get a music's full PATH:
- *   http://stackoverflow.com/a/21333187
+ * Each scan is published as a `LibrarySnapshot`, swapped in
+ * all at once (see `LibraryStore`). Query functions grab the
+ * current snapshot once and work only with it, so they're safe
+ * to call from any Thread even while a rescan is going on.
  *
- * - Teaching me the queries to get Playlists
- *   and their songs:
- *   http://stackoverflow.com/q/11292125
+ * @note The actual queries live on `LibrarySnapshot` (on the
+ *       `library-core` module), so they can run outside Android.
  */
 public class SongList {
 
 	/**
-	 * Big list with all the Songs found.
+	 * How many songs we insert at once when creating
+	 * a Playlist.
 	 */
-	public ArrayList<Song> songs = new ArrayList<Song>();
+	public static final int MEMBER_BATCH = 500;
 
 	/**
-	 * Big list with all the Playlists found.
+	 * How many query results we remember - enough to go
+	 * back and forth between a few screens.
 	 */
-	public ArrayList<Playlist> playlists = new ArrayList<Playlist>();
+	public static final int QUERY_CACHE_SIZE = 16;
 
 	/**
-	 * Maps song's genre IDs to song's genre names.
-	 * @note It's only available after calling `scanSongs`.
+	 * Everything we've found on the last scan.
+	 *
+	 * It's swapped all at once when a scan finishes
+	 * (or a Playlist gets created).
 	 */
-	private HashMap<String, String> genreIdToGenreNameMap;
+	private final LibraryStore library = new LibraryStore();
 
 	/**
-	 * Maps song's IDs to song genre IDs.
-	 * @note It's only available after calling `scanSongs`.
+	 * Flag that tells if successfully scanned all songs.
 	 */
-	private HashMap<String, String> songIdToGenreIdMap;
+	private volatile boolean scannedSongs = false;
 
 	/**
-	 * Flag that tells if successfully scanned all songs.
+	 * Reads tags straight from the song files after each scan.
+	 *
+	 * If `null`, we only get what the MediaStore tells us
+	 * (no album artist, disc number, ReplayGain...).
 	 */
-	private boolean scannedSongs;
+	private volatile TagScanner tagScanner = null;
 
 	/**
-	 * Flag that tells if we're scanning songs right now.
+	 * Songs the last queries found.
+	 *
+	 * @see #getSongs(SongQuery)
 	 */
-	private boolean scanningSongs;
+	private final QueryCache queries = new QueryCache(QUERY_CACHE_SIZE);
+
+	/**
+	 * Saves Playlist edits on the media database, one
+	 * after the other, away from the UI Thread.
+	 */
+	private final ExecutorService playlistSync = Executors.newSingleThreadExecutor();
+
+	/**
+	 * Returns everything we've found on the last scan.
+	 *
+	 * It never changes, so hold on to it if you want to
+	 * make several queries over the same songs.
+	 */
+	public LibrarySnapshot getSnapshot() {
+		return library.get();
+	}
 
 	/**
 	 * Tells if we've successfully scanned all songs on
@@ -78,7 +105,17 @@ public class SongList {
 	 * Tells if we're currently scanning songs on the device.
 	 */
 	public boolean isScanning() {
-		return scanningSongs;
+		return library.isScanning();
+	}
+
+	/**
+	 * Sets what will read tags from the song files on the
+	 * next scans.
+	 *
+	 * @param scanner Pass `null` to stop reading tags.
+	 */
+	public void setTagScanner(TagScanner scanner) {
+		this.tagScanner = scanner;
 	}
 
 	/**
@@ -89,9 +126,6 @@ public class SongList {
 	 * So you should call it on a separate thread and
 	 * query `isInitialized` when needed.
 	 *
-	 * Inside it, we make a lot of queries to the system's
-	 * databases - getting songs, genres and playlists.
-	 *
 	 * @note If you call this function twice, it rescans
 	 *       the songs, refreshing internal lists.
 	 *       It doesn't add up songs.
@@ -103,287 +137,46 @@ public class SongList {
 	 * - "internal" To scan for songs on the phone's memory.
 	 * - "external" To scan for songs on the SD card.
 	 * - "both"     To scan for songs anywhere.
+	 *
+	 * @see MediaStoreLibrarySource
 	 */
 	public void scanSongs(Context c, String fromWhere) {
+		scanSongs(new MediaStoreLibrarySource(c, fromWhere));
+	}
 
-		// This is a rather complex function that interacts with
-		// the underlying Android database.
-		// Grab some coffee and stick to the comments.
-
-		// Not implemented yet.
-		if (fromWhere == "both")
-			throw new RuntimeException("Can't scan from both locations - not implemented");
-
-		// Checking for flags so we don't get called twice
-		// Fucking Java that doesn't allow local static variables.
-		if (scanningSongs)
-			return;
-		scanningSongs = true;
-
-		// The URIs that tells where we should scan for files.
-		// There are separate URIs for music, genres and playlists. Go figure...
-		//
-		// Remember - internal is the phone memory, external is for the SD card.
-		Uri musicUri = ((fromWhere == "internal") ?
-				        android.provider.MediaStore.Audio.Media.INTERNAL_CONTENT_URI:
-				        android.provider.MediaStore.Audio.Media.EXTERNAL_CONTENT_URI);
-		Uri genreUri = ((fromWhere == "internal") ?
-				        android.provider.MediaStore.Audio.Genres.INTERNAL_CONTENT_URI:
-				        android.provider.MediaStore.Audio.Genres.EXTERNAL_CONTENT_URI);
-		Uri playlistUri = ((fromWhere == "internal") ?
-		        android.provider.MediaStore.Audio.Playlists.INTERNAL_CONTENT_URI:
-		        android.provider.MediaStore.Audio.Playlists.EXTERNAL_CONTENT_URI);
-
-		// Gives us access to query for files on the system.
-		ContentResolver resolver = c.getContentResolver();
-
-		// We use this thing to iterate through the results
-		// of a SQLite database query.
-		Cursor cursor;
-
-		// OK, this is where we start.
-		//
-		// First, before even touching the songs, we'll save all the
-		// music genres (like "Rock", "Jazz" and such).
-		// That's because Android doesn't allow getting a song genre
-		// from the song file itself.
-		//
-		// To get the genres, we make queries to the system's SQLite
-		// database. It involves genre IDs, music IDs and such.
-		//
-		// We're creating two maps:
-		//
-		// 1. Genre ID -> Genre Names
-		// 2. Song ID -> Genre ID
-		//
-		// This way, we have a connection from a Song ID to a Genre Name.
-		//
-		// Then we finally get the songs!
-		// We make queries to the database, getting all possible song
-		// metadata - like artist, album and such.
-
-
-		// These are the columns from the system databases.
-		// They're the information I want to get from songs.
-		String GENRE_ID      = MediaStore.Audio.Genres._ID;
-		String GENRE_NAME    = MediaStore.Audio.Genres.NAME;
-        String SONG_ID       = android.provider.MediaStore.Audio.Media._ID;
-		String SONG_TITLE    = android.provider.MediaStore.Audio.Media.TITLE;
-		String SONG_ARTIST   = android.provider.MediaStore.Audio.Media.ARTIST;
-		String SONG_ALBUM    = android.provider.MediaStore.Audio.Media.ALBUM;
-		String SONG_YEAR     = android.provider.MediaStore.Audio.Media.YEAR;
-		String SONG_TRACK_NO = android.provider.MediaStore.Audio.Media.TRACK;
-		String SONG_FILEPATH = android.provider.MediaStore.Audio.Media.DATA;
-		String SONG_DURATION = android.provider.MediaStore.Audio.Media.DURATION;
-
-		// Creating the map  "Genre IDs" -> "Genre Names"
-		genreIdToGenreNameMap = new HashMap<String, String>();
-
-		// This is what we'll ask of the genres
-		String[] genreColumns = {
-				GENRE_ID,
-				GENRE_NAME
-		};
-
-		// Actually querying the genres database
-        cursor = resolver.query(genreUri, genreColumns, null, null, null);
-
-		// Iterating through the results and filling the map.
-        for (cursor.moveToFirst(); !cursor.isAfterLast(); cursor.moveToNext())
-            genreIdToGenreNameMap.put(cursor.getString(0), cursor.getString(1));
-
-        cursor.close();
-
-        // Map from Songs IDs to Genre IDs
-        songIdToGenreIdMap = new HashMap<String, String>();
-
-        // UPDATE URI HERE
-    	if (fromWhere == "both")
-    		throw new RuntimeException("Can't scan from both locations - not implemented");
-
-    	// For each genre, we'll query the databases to get
-    	// all songs's IDs that have it as a genre.
-    	for (String genreID : genreIdToGenreNameMap.keySet()) {
-
-        	Uri uri = MediaStore.Audio.Genres.Members.getContentUri(fromWhere,
-        			                                                Long.parseLong(genreID));
-
-        	cursor = resolver.query(uri, new String[] { SONG_ID }, null, null, null);
-
-        	// Iterating through the results, populating the map
-        	for (cursor.moveToFirst(); !cursor.isAfterLast(); cursor.moveToNext()) {
-
-        		long currentSongID = cursor.getLong(cursor.getColumnIndex(SONG_ID));
-
-        		songIdToGenreIdMap.put(Long.toString(currentSongID), genreID);
-        	}
-        	cursor.close();
-        }
-
-    	// Finished getting the Genres.
-    	// Let's go get dem songzz.
-
-		// Columns I'll retrieve from the song table
-		String[] columns = {
-				SONG_ID,
-				SONG_TITLE,
-				SONG_ARTIST,
-				SONG_ALBUM,
-				SONG_YEAR,
-				SONG_TRACK_NO,
-				SONG_FILEPATH,
-				SONG_DURATION
-		};
-
-		// Thing that limits results to only show music files.
-		//
-		// It's a SQL "WHERE" clause - it becomes `WHERE IS_MUSIC=1`.
-		//
-		// (note: using `IS_MUSIC!=0` takes a fuckload of time)
-		final String musicsOnly = MediaStore.Audio.Media.IS_MUSIC + "=1";
-
-		// Actually querying the system
-		cursor = resolver.query(musicUri, columns, musicsOnly, null, null);
-
-		if (cursor != null && cursor.moveToFirst())
-		{
-			// NOTE: I tried to use MediaMetadataRetriever, but it was too slow.
-			//       Even with 10 songs, it took like 13 seconds,
-			//       No way I'm releasing it this way - I have like 4.260 songs!
-
-			do {
-				// Creating a song from the values on the row
-				Song song = new Song(cursor.getInt(cursor.getColumnIndex(SONG_ID)),
-						             cursor.getString(cursor.getColumnIndex(SONG_FILEPATH)));
-
-				song.setTitle      (cursor.getString(cursor.getColumnIndex(SONG_TITLE)));
-				song.setArtist     (cursor.getString(cursor.getColumnIndex(SONG_ARTIST)));
-				song.setAlbum      (cursor.getString(cursor.getColumnIndex(SONG_ALBUM)));
-				song.setYear       (cursor.getInt   (cursor.getColumnIndex(SONG_YEAR)));
-				song.setTrackNumber(cursor.getInt   (cursor.getColumnIndex(SONG_TRACK_NO)));
-				song.setDuration   (cursor.getInt   (cursor.getColumnIndex(SONG_DURATION)));
-
-				// Using the previously created genre maps
-				// to fill the current song genre.
-				String currentGenreID   = songIdToGenreIdMap.get(Long.toString(song.getId()));
-				String currentGenreName = genreIdToGenreNameMap.get(currentGenreID);
-				song.setGenre(currentGenreName);
-
-				// Adding the song to the global list
-				songs.add(song);
-			}
-			while (cursor.moveToNext());
-		}
-		else
-		{
-			// What do I do if I can't find any songs?
-		}
-		cursor.close();
-
-		// Alright, now I'll get all the Playlists.
-		// First I grab all playlist IDs and Names and then for each
-		// one of those, getting all songs inside them.
-
-		// As you know, the columns for the database.
-		String PLAYLIST_ID      = MediaStore.Audio.Playlists._ID;
-		String PLAYLIST_NAME    = MediaStore.Audio.Playlists.NAME;
-		String PLAYLIST_SONG_ID = MediaStore.Audio.Playlists.Members.AUDIO_ID;
-
-		// This is what I'll get for all playlists.
-		String[] playlistColumns = {
-				PLAYLIST_ID,
-				PLAYLIST_NAME
-		};
-
-		// The actual query - takes a while.
-		cursor = resolver.query(playlistUri, playlistColumns, null, null, null);
-
-		// Going through all playlists, creating my class and populating
-		// it with all the song IDs they have.
-		for (cursor.moveToFirst(); !cursor.isAfterLast(); cursor.moveToNext()) {
-
-			Playlist playlist = new Playlist(cursor.getLong(cursor.getColumnIndex(PLAYLIST_ID)),
-			                                 cursor.getString(cursor.getColumnIndex(PLAYLIST_NAME)));
-
-			// For each playlist, get all song IDs
-			Uri currentUri = MediaStore.Audio.Playlists.Members.getContentUri(fromWhere, playlist.getID());
-
-			Cursor cursor2 = resolver.query(currentUri,
-			                                new String[] { PLAYLIST_SONG_ID },
-			                                musicsOnly,
-			                                null, null);
-
-			// Adding each song's ID to it
-			for (cursor2.moveToFirst(); !cursor2.isAfterLast(); cursor2.moveToNext())
-				playlist.add(cursor2.getLong(cursor2.getColumnIndex(PLAYLIST_SONG_ID)));
-
-			playlists.add(playlist);
-			cursor2.close();
-		}
-
-		// Finally, let's sort the song list alphabetically
-		// based on the song title.
-		Collections.sort(songs, new Comparator<Song>() {
-			public int compare(Song a, Song b)
-			{
-				return a.getTitle().compareTo(b.getTitle());
-			}
-		});
-
-		scannedSongs  = true;
-		scanningSongs = false;
+	/**
+	 * Scans `source` for songs, replacing everything
+	 * we had before.
+	 *
+	 * @note Does nothing if there's already a scan going on.
+	 */
+	public void scanSongs(LibrarySource source) {
+		if (library.scan(source, tagScanner))
+			scannedSongs = true;
 	}
 
 	public void destroy() {
-		songs.clear();
+		library.clear();
+		scannedSongs = false;
+
+		// Next scan starts versions over
+		queries.clear();
 	}
 
 	/**
 	 * Returns an alphabetically sorted list with all the
 	 * artists of the scanned songs.
-	 *
-	 * @note This method might take a while depending on how
-	 *       many songs you have.
 	 */
 	public ArrayList<String> getArtists() {
-
-		ArrayList<String> artists = new ArrayList<String>();
-
-		for (Song song : songs) {
-			String artist = song.getArtist();
-
-			if ((artist != null) && (! artists.contains(artist)))
-				artists.add(artist);
-		}
-
-		// Making them alphabetically sorted
-		Collections.sort(artists);
-
-		return artists;
+		return library.get().getArtists();
 	}
 
 	/**
 	 * Returns an alphabetically sorted list with all the
 	 * albums of the scanned songs.
-	 *
-	 * @note This method might take a while depending on how
-	 *       many songs you have.
 	 */
 	public ArrayList<String> getAlbums() {
-
-		ArrayList<String> albums = new ArrayList<String>();
-
-		for (Song song : songs) {
-			String album = song.getAlbum();
-
-			if ((album != null) && (! albums.contains(album)))
-				albums.add(album);
-		}
-
-		// Making them alphabetically sorted
-		Collections.sort(albums);
-
-		return albums;
+		return library.get().getAlbums();
 	}
 
 	/**
@@ -391,15 +184,7 @@ public class SongList {
 	 * existing genres on the scanned songs.
 	 */
 	public ArrayList<String> getGenres() {
-
-		ArrayList<String> genres = new ArrayList<String>();
-
-		for (String genre : genreIdToGenreNameMap.values())
-			genres.add(genre);
-
-		Collections.sort(genres);
-
-		return genres;
+		return library.get().getGenres();
 	}
 
 	/**
@@ -409,174 +194,92 @@ public class SongList {
 	 *       years, do a `Integer.parseInt(string)`.
 	 */
 	public ArrayList<String> getYears() {
-
-		ArrayList<String> years = new ArrayList<String>();
-
-		for (Song song : songs) {
-			String year = Integer.toString(song.getYear());
-
-			if ((Integer.parseInt(year) > 0) && (! years.contains(year)))
-				years.add(year);
-		}
-
-		// Making them alphabetically sorted
-		Collections.sort(years);
-
-		return years;
+		return library.get().getYears();
 	}
 
 	/**
 	 * Returns a list of Songs belonging to a specified artist.
 	 */
 	public ArrayList<Song> getSongsByArtist(String desiredArtist) {
-		ArrayList<Song> songsByArtist = new ArrayList<Song>();
-
-		for (Song song : songs) {
-			String currentArtist = song.getArtist();
-
-			if (currentArtist.equals(desiredArtist))
-				songsByArtist.add(song);
-		}
-
-		// Sorting resulting list by Album
-		Collections.sort(songsByArtist, new Comparator<Song>() {
-			public int compare(Song a, Song b)
-			{
-				return a.getAlbum().compareTo(b.getAlbum());
-			}
-		});
-
-		return songsByArtist;
+		return library.get().getSongsByArtist(desiredArtist);
 	}
 
 	/**
 	 * Returns a list of album names belonging to a specified artist.
 	 */
 	public ArrayList<String> getAlbumsByArtist(String desiredArtist) {
-		ArrayList<String> albumsByArtist = new ArrayList<String>();
-
-		for (Song song : songs) {
-			String currentArtist = song.getArtist();
-			String currentAlbum  = song.getAlbum();
-
-			if (currentArtist.equals(desiredArtist))
-				if (! albumsByArtist.contains(currentAlbum))
-					albumsByArtist.add(currentAlbum);
-		}
-
-		// Sorting alphabetically
-		Collections.sort(albumsByArtist);
-
-		return albumsByArtist;
+		return library.get().getAlbumsByArtist(desiredArtist);
 	}
 
 	/**
 	 * Returns a new list with all songs.
 	 *
-	 * @note This is different than accessing `songs` directly
+	 * @note This is different than `getSnapshot().getSongs()`
 	 *       because it duplicates it - you can then mess with
 	 *       it without worrying about changing the original.
 	 */
 	public ArrayList<Song> getSongs() {
-		ArrayList<Song> list = new ArrayList<Song>();
+		return new ArrayList<Song>(library.get().getSongs());
+	}
 
-		for (Song song : songs)
-			list.add(song);
+	/**
+	 * Returns a new list with the songs `query` finds,
+	 * remembering them for next time.
+	 */
+	public ArrayList<Song> getSongs(SongQuery query) {
+		return queries.get(query, library.get());
+	}
+
+	/**
+	 * Same as `getSongs(SongQuery)`, but only if we have the
+	 * results already - `null` otherwise.
+	 *
+	 * @note Never goes through the library, so it's fine
+	 *       on the UI Thread.
+	 */
+	public ArrayList<Song> getCachedSongs(SongQuery query) {
+		return queries.peek(query, library.get());
+	}
 
-		return list;
+	/**
+	 * Where `getSongs(SongQuery)` keeps its results
+	 * (and how often they were there).
+	 */
+	public QueryCache getQueryCache() {
+		return queries;
 	}
 
 	/**
 	 * Returns a list of Songs belonging to a specified album.
 	 */
 	public ArrayList<Song> getSongsByAlbum(String desiredAlbum) {
-		ArrayList<Song> songsByAlbum = new ArrayList<Song>();
-
-		for (Song song : songs) {
-			String currentAlbum = song.getAlbum();
-
-			if (currentAlbum.equals(desiredAlbum))
-				songsByAlbum.add(song);
-		}
-
-		return songsByAlbum;
+		return library.get().getSongsByAlbum(desiredAlbum);
 	}
 
 	/**
 	 * Returns a list with all songs that have the same `genre.`
 	 */
 	public ArrayList<Song> getSongsByGenre(String genreName) {
-
-		ArrayList<Song> currentSongs = new ArrayList<Song>();
-
-		for (Song song : songs) {
-
-			String currentSongGenre = song.getGenre();
-
-			if (currentSongGenre == genreName)
-				currentSongs.add(song);
-		}
-
-		return currentSongs;
+		return library.get().getSongsByGenre(genreName);
 	}
 
 	/**
 	 * Returns a list with all songs composed at `year`.
 	 */
 	public ArrayList<Song> getSongsByYear(int year) {
-
-		ArrayList<Song> currentSongs = new ArrayList<Song>();
-
-		for (Song song : songs) {
-
-			int currentYear = song.getYear();
-
-			if (currentYear == year)
-				currentSongs.add(song);
-		}
-
-		return currentSongs;
+		return library.get().getSongsByYear(year);
 	}
 
 	public ArrayList<String> getPlaylistNames() {
-
-		ArrayList<String> names = new ArrayList<String>();
-
-		for (Playlist playlist : playlists)
-			names.add(playlist.getName());
-
-		return names;
+		return library.get().getPlaylistNames();
 	}
 
 	public Song getSongById(long id) {
-
-		Song currentSong = null;
-
-		for (Song song : songs)
-			if (song.getId() == id) {
-				currentSong = song;
-				break;
-			}
-
-		return currentSong;
+		return library.get().getSongById(id);
 	}
 
 	public ArrayList<Song> getSongsByPlaylist(String playlistName) {
-
-		ArrayList<Long> songIDs = null;
-
-		for (Playlist playlist : playlists)
-			if (playlist.getName().equals(playlistName)) {
-				songIDs = playlist.getSongIds();
-				break;
-			}
-
-		ArrayList<Song> currentSongs = new ArrayList<Song>();
-
-		for (Long songID : songIDs)
-			currentSongs.add(getSongById(songID));
-
-		return currentSongs;
+		return library.get().getSongsByPlaylist(playlistName);
 	}
 
 	/**
@@ -589,6 +292,26 @@ public class SongList {
 	 */
 	public void newPlaylist(Context c, String fromWhere, String name, ArrayList<Song> songsToAdd) {
 
+		Playlist songs = new Playlist(0, name);
+
+		// The media database doesn't know these
+		for (Song song : songsToAdd)
+			if (! song.isDiscovered())
+				songs.add(song.getId());
+
+		createPlaylist(c, fromWhere, name, songs.toArray());
+	}
+
+	/**
+	 * Creates a Playlist named `name` with `songIds`, both on
+	 * the media database and on our own list.
+	 *
+	 * Songs are inserted `MEMBER_BATCH` at a time.
+	 *
+	 * @return The new Playlist.
+	 */
+	private Playlist createPlaylist(Context c, String fromWhere, String name, long[] songIds) {
+
 		ContentResolver resolver = c.getContentResolver();
 
 		Uri playlistUri = ((fromWhere == "internal") ?
@@ -605,48 +328,241 @@ public class SongList {
 		// Actually inserting the new playlist.
 		Uri newPlaylistUri = resolver.insert(playlistUri, values);
 
-		// Getting the new Playlist ID
-		String PLAYLIST_ID      = MediaStore.Audio.Playlists._ID;
-		String PLAYLIST_NAME    = MediaStore.Audio.Playlists.NAME;
-
-		// This is what I'll get for all playlists.
-		String[] playlistColumns = {
-				PLAYLIST_ID,
-				PLAYLIST_NAME
-		};
-
-		// The actual query - takes a while.
-		Cursor cursor = resolver.query(playlistUri, playlistColumns, null, null, null);
-
-		long playlistID = 0;
-
-		// Going through all playlists, creating my class and populating
-		// it with all the song IDs they have.
-		for (cursor.moveToFirst(); !cursor.isAfterLast(); cursor.moveToNext())
-			if (name.equals(cursor.getString(cursor.getColumnIndex(PLAYLIST_NAME))))
-				playlistID = cursor.getLong(cursor.getColumnIndex(PLAYLIST_ID));
+		// Its ID is at the end of the URI
+		long playlistID = ContentUris.parseId(newPlaylistUri);
 
 		// Now, to it's songs
 		Uri songUri = Uri.withAppendedPath(newPlaylistUri, MediaStore.Audio.Playlists.Members.CONTENT_DIRECTORY);
-		int songOrder = 1;
 
-		for (Song song : songsToAdd) {
+		ContentValues[] batch = new ContentValues[Math.min(songIds.length, MEMBER_BATCH)];
 
-			ContentValues songValues = new ContentValues();
+		for (int i = 0; i < songIds.length; i += batch.length) {
+			int count = Math.min(batch.length, songIds.length - i);
 
-			songValues.put(MediaStore.Audio.Playlists.Members.AUDIO_ID,   song.getId());
-			songValues.put(MediaStore.Audio.Playlists.Members.PLAY_ORDER, songOrder);
+			if (count < batch.length)
+				batch = new ContentValues[count];
 
-			resolver.insert(songUri, songValues);
-			songOrder++;
+			for (int j = 0; j < count; j++) {
+				batch[j] = new ContentValues();
+
+				batch[j].put(MediaStore.Audio.Playlists.Members.AUDIO_ID,   songIds[i + j]);
+				batch[j].put(MediaStore.Audio.Playlists.Members.PLAY_ORDER, i + j + 1);
+			}
+			resolver.bulkInsert(songUri, batch);
 		}
 
 		// Finally, we're updating our internal list of Playlists
 		Playlist newPlaylist = new Playlist(playlistID, name);
 
+		for (long id : songIds)
+			newPlaylist.add(id);
+
+		// Publishing a new snapshot with it.
+		// If a rescan finished in the meantime, we add
+		// it to that one instead.
+		library.putPlaylist(newPlaylist);
+
+		return newPlaylist;
+	}
+
+	/**
+	 * What happened when importing a playlist file.
+	 */
+	public static class ImportResult {
+
+		/** Name of the new Playlist */
+		public String name;
+
+		/** How many entries were on the file */
+		public int entries = 0;
+
+		/** How many of them we found on the library */
+		public int found = 0;
+
+		/** Milliseconds reading the file and finding songs */
+		public long readTime = 0;
+
+		/** Milliseconds saving the Playlist */
+		public long saveTime = 0;
+	}
+
+	/**
+	 * Creates a Playlist from a M3U, M3U8 or PLS `file`,
+	 * named after it.
+	 *
+	 * The file is read line by line and each entry is looked
+	 * up by path (see `SongPathResolver`) - entries that aren't
+	 * on the library are skipped.
+	 *
+	 * @note Takes a while on big files - call it on a
+	 *       separate Thread.
+	 */
+	public ImportResult importPlaylist(Context c, File file) throws IOException {
+
+		ImportResult result = new ImportResult();
+
+		long start = System.currentTimeMillis();
+
+		String name = file.getName();
+
+		if (name.lastIndexOf('.') > 0)
+			name = name.substring(0, name.lastIndexOf('.'));
+
+		result.name = name;
+
+		// Keeps the order and skips repeated ones
+		Playlist songs = new Playlist(0, name);
+
+		SongPathResolver resolver = new SongPathResolver(library.get());
+
+		String folder = file.getAbsoluteFile().getParent();
+
+		PlaylistFileReader reader = PlaylistFileReader.open(file);
+		try {
+			PlaylistFileReader.Entry entry;
+
+			while ((entry = reader.next()) != null) {
+				result.entries++;
+
+				Song song = resolver.resolve(entry.path, folder);
+
+				// The media database doesn't know about
+				// discovered songs
+				if ((song == null) || song.isDiscovered())
+					continue;
+
+				songs.add(song.getId());
+				result.found++;
+			}
+		}
+		finally {
+			reader.close();
+		}
+		result.readTime = System.currentTimeMillis() - start;
+
+		start = System.currentTimeMillis();
+
+		createPlaylist(c, "external", name, songs.toArray());
+
+		result.saveTime = System.currentTimeMillis() - start;
+		return result;
+	}
+
+	/**
+	 * Saves the songs of the Playlist named `playlistName`
+	 * on `file` (M3U8, or PLS if it ends with ".pls").
+	 *
+	 * @return How many songs were saved.
+	 */
+	public int exportPlaylist(String playlistName, File file) throws IOException {
+
+		PlaylistFileWriter writer = PlaylistFileWriter.open(file);
+		try {
+			for (Song song : getSongsByPlaylist(playlistName))
+				writer.write(song);
+		}
+		finally {
+			writer.close();
+		}
+		return writer.getCount();
+	}
+
+	/**
+	 * Replaces the songs of the Playlist with `playlistId`.
+	 *
+	 * We change our own list right away and save it on the
+	 * media database in the background (only what changed -
+	 * see `PlaylistSync`).
+	 *
+	 * @param c      Activity on which we're editing.
+	 * @param before Songs the user could edit (usually the ones
+	 *               on the library). The Playlist might have
+	 *               others - they're left untouched.
+	 * @param after  What the user did to them.
+	 */
+	public void editPlaylist(Context c, long playlistId, long[] before, long[] after) {
+
+		Playlist playlist = library.get().getPlaylistById(playlistId);
+
+		if (playlist != null)
+			replacePlaylist(playlist, PlaylistDiff.keepingOthers(playlist.toArray(), before, after));
+
+		syncPlaylist(c, playlistId, before, after);
+	}
+
+	/**
+	 * Adds `songsToAdd` to the end of the Playlist with
+	 * `playlistId` (skipping the ones already there).
+	 *
+	 * @note Returns right away - the Playlist's songs might
+	 *       need to be loaded first, so it's all done in
+	 *       the background.
+	 */
+	public void appendToPlaylist(Context c, final long playlistId, List<Song> songsToAdd) {
+
+		final ContentResolver resolver = c.getContentResolver();
+
+		final ArrayList<Long> ids = new ArrayList<Long>(songsToAdd.size());
+
 		for (Song song : songsToAdd)
-			newPlaylist.add(song.getId());
+			if (! song.isDiscovered())
+				ids.add(song.getId());
+
+		playlistSync.execute(new Runnable() {
+			@Override
+			public void run() {
+				Playlist playlist = library.get().getPlaylistById(playlistId);
+
+				if (playlist == null)
+					return;
+
+				long[] before = playlist.toArray();
+
+				Playlist appended = new Playlist(playlist.getID(), playlist.getName());
+
+				for (long id : before)
+					appended.add(id);
+
+				for (long id : ids)
+					appended.add(id);
+
+				long[] after = appended.toArray();
+
+				if (after.length == before.length)
+					return;
+
+				replacePlaylist(playlist, after);
+
+				new PlaylistSync(resolver, "external").sync(playlistId, before, after);
+			}
+		});
+	}
+
+	/**
+	 * Publishes a snapshot where `playlist` has `songIds`.
+	 */
+	private void replacePlaylist(Playlist playlist, long[] songIds) {
+		Playlist edited = new Playlist(playlist.getID(), playlist.getName());
+
+		for (long id : songIds)
+			edited.add(id);
+
+		library.putPlaylist(edited);
+	}
+
+	/**
+	 * Saves the changes from `before` to `after` on the
+	 * media database, in the background.
+	 */
+	private void syncPlaylist(Context c, final long playlistId, final long[] before, final long[] after) {
 
-		playlists.add(newPlaylist);
+		final ContentResolver resolver = c.getContentResolver();
+
+		playlistSync.execute(new Runnable() {
+			@Override
+			public void run() {
+				new PlaylistSync(resolver, "external").sync(playlistId, before, after);
+			}
+		});
 	}
 }
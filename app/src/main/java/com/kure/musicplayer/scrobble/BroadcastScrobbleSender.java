@@ -0,0 +1,158 @@
+package com.kure.musicplayer.scrobble;
+
+import java.util.List;
+
+import android.content.Context;
+import android.content.Intent;
+
+/**
+ * Delivers scrobbles to another application installed
+ * on the device, through broadcasts.
+ *
+ * It supports several Last.fm Android scrobblers, as specified
+ * on `res/xml/preferences.xml` (see `forScrobbler()`).
+ *
+ * Those apps time the songs themselves, so we must tell them
+ * as things happen (`sendState()`). None of their APIs takes
+ * the time a song was played, so we can't deliver plays from
+ * the past (`canSendPlayed()` is false) - they'd be scrobbled
+ * as if played right now, in no time at all.
+ *
+ * To test it, point it to a fake receiver with
+ * your own action.
+ */
+public class BroadcastScrobbleSender implements ScrobbleSender {
+
+	/**
+	 * See the ScrobbleDroid API here:
+	 * http://code.google.com/p/scrobbledroid/wiki/DeveloperAPI
+	 */
+	public static final String ACTION_SCROBBLEDROID = "net.jjc1138.android.scrobbler.action.MUSIC_STATUS";
+
+	/**
+	 * See the SimpleLastfmScrobbler API here:
+	 * https://github.com/tgwizard/sls/wiki/Developer%27s-API
+	 */
+	public static final String ACTION_SLS = "com.adam.aslfms.notify.playstatechanged";
+
+	// States from the SimpleLastfmScrobbler API
+	private static final int SLS_START    = 0;
+	private static final int SLS_RESUME   = 1;
+	private static final int SLS_PAUSE    = 2;
+	private static final int SLS_COMPLETE = 3;
+
+	private Context context;
+
+	private String action;
+
+	private String appName;
+	private String appPackage;
+
+	/**
+	 * Creates a sender that broadcasts `action`.
+	 *
+	 * @param action     Either `ACTION_SLS`, `ACTION_SCROBBLEDROID`
+	 *                   or anything that follows the SLS API.
+	 * @param appName    Name of this application (sent to SLS).
+	 * @param appPackage Package of this application (sent to SLS).
+	 */
+	public BroadcastScrobbleSender(Context context, String action, String appName, String appPackage) {
+		this.context    = context;
+		this.action     = action;
+		this.appName    = appName;
+		this.appPackage = appPackage;
+	}
+
+	/**
+	 * Creates a sender for the scrobbler app the user chose.
+	 *
+	 * @param scrobbler Value of the "lastfm_which" setting.
+	 * @return A sender or `null` if we don't know that scrobbler.
+	 */
+	public static BroadcastScrobbleSender forScrobbler(Context context, String scrobbler, String appName, String appPackage) {
+
+		if (scrobbler.equals("scrobbledroid"))
+			return new BroadcastScrobbleSender(context, ACTION_SCROBBLEDROID, appName, appPackage);
+
+		if (scrobbler.equals("sls"))
+			return new BroadcastScrobbleSender(context, ACTION_SLS, appName, appPackage);
+
+		return null;
+	}
+
+	/**
+	 * Only true when someone is listening to our broadcasts -
+	 * otherwise they'd get lost.
+	 */
+	@Override
+	public boolean isAvailable() {
+		return ! context.getPackageManager()
+				.queryBroadcastReceivers(new Intent(action), 0)
+				.isEmpty();
+	}
+
+	@Override
+	public boolean sendState(int state, Scrobble song) {
+
+		if (! isAvailable())
+			return false;
+
+		if (action.equals(ACTION_SCROBBLEDROID)) {
+
+			// ScrobbleDroid only wants to know if
+			// the song is playing or not.
+			boolean isPlaying = (state == STATE_START) || (state == STATE_RESUME);
+
+			context.sendBroadcast(scrobbleDroidIntent(song, isPlaying));
+			return true;
+		}
+
+		switch (state) {
+		case STATE_START:    context.sendBroadcast(slsIntent(song, SLS_START));    break;
+		case STATE_RESUME:   context.sendBroadcast(slsIntent(song, SLS_RESUME));   break;
+		case STATE_PAUSE:    context.sendBroadcast(slsIntent(song, SLS_PAUSE));    break;
+		case STATE_COMPLETE: context.sendBroadcast(slsIntent(song, SLS_COMPLETE)); break;
+		default:
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public boolean canSendPlayed() {
+		return false;
+	}
+
+	/**
+	 * Never delivers - see `canSendPlayed()`.
+	 */
+	@Override
+	public boolean send(List<Scrobble> scrobbles) {
+		return false;
+	}
+
+	private Intent scrobbleDroidIntent(Scrobble scrobble, boolean isPlaying) {
+		Intent intent = new Intent(action);
+
+		intent.putExtra("playing", isPlaying);
+		intent.putExtra("id",      scrobble.songId);
+
+		return intent;
+	}
+
+	private Intent slsIntent(Scrobble scrobble, int state) {
+		Intent intent = new Intent(action);
+
+		intent.putExtra("state", state);
+
+		intent.putExtra("app-name",    appName);
+		intent.putExtra("app-package", appPackage);
+
+		intent.putExtra("track",    scrobble.title);
+		intent.putExtra("artist",   scrobble.artist);
+		intent.putExtra("album",    scrobble.album);
+		intent.putExtra("duration", scrobble.duration);
+
+		return intent;
+	}
+}
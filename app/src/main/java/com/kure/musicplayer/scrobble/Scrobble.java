@@ -0,0 +1,35 @@
+package com.kure.musicplayer.scrobble;
+
+/**
+ * A single song the user listened to long enough
+ * to be sent to Last.fm.
+ *
+ * It's a simple data container - it keeps a copy of the
+ * song's metadata so we can send it even after the song
+ * is gone from the library.
+ */
+public class Scrobble {
+
+	/** Android ID of the song */
+	public final long songId;
+
+	/** When the user started listening (seconds since the epoch) */
+	public final long timestamp;
+
+	/** Duration of the song, in seconds */
+	public final int duration;
+
+	public final String title;
+	public final String artist;
+	public final String album;
+
+	public Scrobble(long songId, long timestamp, int duration,
+	                String title, String artist, String album) {
+		this.songId    = songId;
+		this.timestamp = timestamp;
+		this.duration  = duration;
+		this.title     = (title  == null) ? "" : title;
+		this.artist    = (artist == null) ? "" : artist;
+		this.album     = (album  == null) ? "" : album;
+	}
+}
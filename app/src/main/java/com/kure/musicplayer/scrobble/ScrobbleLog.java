@@ -0,0 +1,401 @@
+package com.kure.musicplayer.scrobble;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+
+import android.util.Log;
+
+/**
+ * Append-only file with all scrobbles we haven't sent yet.
+ *
+ * It's made of two files:
+ *
+ * - `<name>`:        All scrobbles, one after another, in a
+ *                    compact binary format;
+ * - `<name>.cursor`: Position (in bytes) of the first scrobble
+ *                    that wasn't delivered yet.
+ *
+ * We only move the cursor after a batch was successfully
+ * delivered, so if we crash in the middle we'll simply
+ * send it again (at-least-once delivery).
+ *
+ * When everything was delivered, both files are emptied.
+ *
+ * Each record goes like this:
+ *
+ *     version (byte) | length (int) | scrobble (length bytes) | CRC32 of the scrobble (int)
+ *
+ * So a record that got damaged (a bad sector, a crash while
+ * writing it) is spotted and skipped - we look for the next
+ * good one right after it and keep going from there. If there's
+ * none (usually a half-written record at the end), the file is
+ * cut right before it.
+ *
+ * @note Not thread-safe - use it from a single Thread.
+ */
+public class ScrobbleLog {
+
+	// The tag we put on debug messages
+	private static final String TAG = "ScrobbleLog";
+
+	/**
+	 * Changes every time the record format changes.
+	 */
+	private static final byte RECORD_VERSION = 2;
+
+	/** Version, length and CRC around each scrobble */
+	private static final int RECORD_OVERHEAD = 1 + 4 + 4;
+
+	/** Biggest scrobble possible - IDs, duration and three strings */
+	private static final int MAX_SCROBBLE = 8 + 8 + 4 + (3 * (2 + 65535));
+
+	private File logFile;
+	private File cursorFile;
+
+	/**
+	 * Position of the first scrobble not delivered.
+	 */
+	private long cursor;
+
+	/**
+	 * Creates (or reopens) the log at `file`.
+	 */
+	public ScrobbleLog(File file) {
+		logFile    = file;
+		cursorFile = new File(file.getPath() + ".cursor");
+		cursor     = readCursor();
+
+		// The log got truncated under our feet
+		if (cursor > logFile.length())
+			cursor = 0;
+	}
+
+	/**
+	 * Saves a scrobble at the end of the log.
+	 */
+	public void append(Scrobble scrobble) throws IOException {
+
+		// Whole record at once, so a crash is less
+		// likely to leave half of it
+		FileOutputStream file = new FileOutputStream(logFile, true);
+		try {
+			file.write(encode(scrobble));
+		}
+		finally {
+			file.close();
+		}
+	}
+
+	/**
+	 * The whole record for `scrobble`, as it goes on the file.
+	 */
+	private static byte[] encode(Scrobble scrobble) throws IOException {
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+		DataOutputStream      data  = new DataOutputStream(bytes);
+
+		data.writeLong (scrobble.songId);
+		data.writeLong (scrobble.timestamp);
+		data.writeInt  (scrobble.duration);
+		data.writeUTF  (scrobble.title);
+		data.writeUTF  (scrobble.artist);
+		data.writeUTF  (scrobble.album);
+
+		byte[] payload = bytes.toByteArray();
+
+		CRC32 crc = new CRC32();
+		crc.update(payload);
+
+		ByteArrayOutputStream record = new ByteArrayOutputStream(payload.length + RECORD_OVERHEAD);
+		DataOutputStream      out    = new DataOutputStream(record);
+
+		out.writeByte (RECORD_VERSION);
+		out.writeInt  (payload.length);
+		out.write     (payload);
+		out.writeInt  ((int)crc.getValue());
+
+		return record.toByteArray();
+	}
+
+	/**
+	 * Tells if there's anything not delivered yet.
+	 */
+	public boolean hasPending() {
+		return logFile.length() > cursor;
+	}
+
+	/**
+	 * How many bytes the scrobbles not delivered yet take.
+	 */
+	public long getPendingBytes() {
+		return Math.max(0, logFile.length() - cursor);
+	}
+
+	/**
+	 * Forgets the scrobbles not delivered yet that were played
+	 * before `oldest`, and then the oldest ones until the rest
+	 * fit in `maxBytes`.
+	 *
+	 * If anything goes, the log is rewritten with only the
+	 * rest (without damaged records, too).
+	 *
+	 * @param oldest When the oldest scrobble we keep was played
+	 *               (seconds since the epoch).
+	 * @return How many scrobbles were forgotten.
+	 */
+	public int compact(long oldest, long maxBytes) throws IOException {
+		if (! hasPending())
+			return 0;
+
+		Batch batch = readPending(Integer.MAX_VALUE);
+
+		// Newest first, until there's no more room
+		ArrayList<byte[]> kept = new ArrayList<byte[]>();
+		long              size = 0;
+
+		for (int i = batch.scrobbles.size() - 1; i >= 0; i--) {
+			Scrobble scrobble = batch.scrobbles.get(i);
+
+			if (scrobble.timestamp < oldest)
+				continue;
+
+			byte[] record = encode(scrobble);
+
+			if (size + record.length > maxBytes)
+				break;
+
+			kept.add(record);
+			size += record.length;
+		}
+
+		int forgotten = batch.scrobbles.size() - kept.size();
+
+		if (forgotten == 0)
+			return 0;
+
+		File temporary = new File(logFile.getPath() + ".tmp");
+
+		FileOutputStream out = new FileOutputStream(temporary);
+		try {
+			for (int i = kept.size() - 1; i >= 0; i--)
+				out.write(kept.get(i));
+		}
+		finally {
+			out.close();
+		}
+
+		// Cursor first - if we die before the rename,
+		// the old log is sent again from the start
+		cursor = 0;
+		writeCursor();
+
+		if (! temporary.renameTo(logFile))
+			throw new IOException("Couldn't compact scrobble log");
+
+		Log.w(TAG, "Forgot " + forgotten + " scrobbles from " + logFile);
+		return forgotten;
+	}
+
+	/**
+	 * A group of scrobbles read from the log.
+	 *
+	 * After delivering them, call `ScrobbleLog#commit(Batch)`.
+	 */
+	public static class Batch {
+		public final ArrayList<Scrobble> scrobbles = new ArrayList<Scrobble>();
+
+		/** Position right after the last scrobble */
+		long end;
+	}
+
+	/**
+	 * Reads up to `max` scrobbles that weren't delivered yet.
+	 *
+	 * Damaged records are skipped (see the class comment).
+	 *
+	 * @return A batch that might be empty - and still have
+	 *         to be committed, if all we found was damaged.
+	 */
+	public Batch readPending(int max) throws IOException {
+
+		Batch batch = new Batch();
+		batch.end = cursor;
+
+		if (! hasPending())
+			return batch;
+
+		RandomAccessFile file = new RandomAccessFile(logFile, "rw");
+
+		try {
+			long length   = file.length();
+			long position = cursor;
+
+			while ((batch.scrobbles.size() < max) && (position < length)) {
+
+				Scrobble scrobble = readRecord(file, position, length);
+
+				if (scrobble == null) {
+					long next = findRecord(file, position + 1, length);
+
+					if (next == -1) {
+						// Nothing good after it - most likely a
+						// record we were writing when we crashed
+						Log.w(TAG, "Removing " + (length - position) + " damaged bytes at the end of " + logFile);
+
+						file.setLength(position);
+						batch.end = position;
+						break;
+					}
+
+					Log.w(TAG, "Skipping " + (next - position) + " damaged bytes at " + position + " of " + logFile);
+
+					position = next;
+					continue;
+				}
+
+				batch.scrobbles.add(scrobble);
+
+				position += recordLength(file, position);
+				batch.end = position;
+			}
+		}
+		finally {
+			file.close();
+		}
+		return batch;
+	}
+
+	/**
+	 * Position of the first good record from `position`
+	 * on, or -1 if there's none.
+	 */
+	private long findRecord(RandomAccessFile file, long position, long length) throws IOException {
+		for (; position < length; position++)
+			if (readRecord(file, position, length) != null)
+				return position;
+
+		return -1;
+	}
+
+	/**
+	 * How many bytes the record at `position` takes.
+	 *
+	 * @note Only for records `readRecord()` said are good.
+	 */
+	private int recordLength(RandomAccessFile file, long position) throws IOException {
+		file.seek(position + 1);
+
+		return file.readInt() + RECORD_OVERHEAD;
+	}
+
+	/**
+	 * Reads the record at `position`.
+	 *
+	 * @return The scrobble on it, or `null` if it's damaged
+	 *         (or not all of it is on the file).
+	 */
+	private Scrobble readRecord(RandomAccessFile file, long position, long length) throws IOException {
+		if (position + RECORD_OVERHEAD > length)
+			return null;
+
+		file.seek(position);
+
+		if (file.readByte() != RECORD_VERSION)
+			return null;
+
+		int size = file.readInt();
+
+		if ((size <= 0) || (size > MAX_SCROBBLE) || (position + RECORD_OVERHEAD + size > length))
+			return null;
+
+		byte[] payload = new byte[size];
+		file.readFully(payload);
+
+		CRC32 crc = new CRC32();
+		crc.update(payload);
+
+		if (file.readInt() != (int)crc.getValue())
+			return null;
+
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+
+		try {
+			return new Scrobble(in.readLong(),
+			                    in.readLong(),
+			                    in.readInt(),
+			                    in.readUTF(),
+			                    in.readUTF(),
+			                    in.readUTF());
+		}
+		catch (IOException e) {
+			// Right CRC over the wrong contents
+			return null;
+		}
+	}
+
+	/**
+	 * Marks all scrobbles on `batch` as delivered.
+	 *
+	 * @note Only call this after actually delivering them!
+	 */
+	public void commit(Batch batch) throws IOException {
+		if (batch.end <= cursor)
+			return;
+
+		cursor = batch.end;
+
+		// Everything was delivered, let's start from scratch
+		if (cursor >= logFile.length()) {
+			new FileOutputStream(logFile).close();
+			cursor = 0;
+		}
+		writeCursor();
+	}
+
+	private long readCursor() {
+		if (! cursorFile.exists())
+			return 0;
+
+		try {
+			DataInputStream in = new DataInputStream(new FileInputStream(cursorFile));
+			try {
+				return in.readLong();
+			}
+			finally {
+				in.close();
+			}
+		}
+		catch (IOException e) {
+			// We'll send everything again, that's OK.
+			return 0;
+		}
+	}
+
+	/**
+	 * Saves the cursor on a temporary file and then renames
+	 * it, so we never end up with a half-written cursor.
+	 */
+	private void writeCursor() throws IOException {
+		File temporary = new File(cursorFile.getPath() + ".tmp");
+
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(temporary));
+		try {
+			out.writeLong(cursor);
+		}
+		finally {
+			out.close();
+		}
+
+		if (! temporary.renameTo(cursorFile))
+			throw new IOException("Couldn't save scrobble cursor");
+	}
+}
@@ -0,0 +1,205 @@
+package com.kure.musicplayer.scrobble;
+
+import java.io.File;
+import java.io.IOException;
+
+import android.util.Log;
+
+/**
+ * Keeps scrobbles on disk until a `ScrobbleSender` is able
+ * to deliver them.
+ *
+ * Only plays that couldn't be sent as they happened come
+ * here (see `ScrobbleSender#sendState()`). They're written to
+ * a `ScrobbleLog` as soon as they arrive and sent in batches
+ * of up to `BATCH_SIZE`, with the time they were played.
+ * If the sender is missing or fails, they simply stay on the
+ * log for the next `flush()`.
+ *
+ * We don't keep them forever, though:
+ *
+ * - If the sender can't deliver past plays at all
+ *   (`ScrobbleSender#canSendPlayed()`), they're not saved;
+ * - Scrobbles older than `MAX_AGE` are forgotten, since
+ *   Last.fm refuses them anyway;
+ * - When the log goes over `MAX_BYTES`, the oldest ones
+ *   are forgotten.
+ *
+ * @note Not thread-safe - use it from a single Thread.
+ */
+public class ScrobbleQueue {
+
+	/**
+	 * Maximum scrobbles we give to the sender at once.
+	 */
+	public static final int BATCH_SIZE = 50;
+
+	/**
+	 * How old a scrobble may get before we forget it,
+	 * in seconds (Last.fm only takes the last 14 days).
+	 */
+	public static final long MAX_AGE = 14 * 24 * 60 * 60;
+
+	/**
+	 * How big the log may get before we forget the oldest
+	 * scrobbles (some thousands of them).
+	 */
+	public static final long MAX_BYTES = 256 * 1024;
+
+	// The tag we put on debug messages
+	private static final String TAG = "ScrobbleQueue";
+
+	private ScrobbleLog log;
+
+	private ScrobbleSender sender;
+
+	// Counters, so we can see what's happening.
+	private int queued    = 0;
+	private int delivered = 0;
+	private int batches   = 0;
+	private int failures  = 0;
+	private int dropped   = 0;
+
+	/**
+	 * Creates the queue, reusing whatever was left on
+	 * `file` from last time.
+	 */
+	public ScrobbleQueue(File file, ScrobbleSender sender) {
+		this.log    = new ScrobbleLog(file);
+		this.sender = sender;
+	}
+
+	public void setSender(ScrobbleSender sender) {
+		this.sender = sender;
+	}
+
+	/**
+	 * Saves `scrobble` to be delivered later.
+	 *
+	 * @return If it was saved - not if the sender could
+	 *         never deliver it.
+	 */
+	public boolean add(Scrobble scrobble) {
+
+		// It would only pile up on disk
+		if ((sender == null) || (! sender.canSendPlayed())) {
+			dropped++;
+			return false;
+		}
+
+		try {
+			log.append(scrobble);
+			queued++;
+
+			if (log.getPendingBytes() > MAX_BYTES)
+				dropped += log.compact(oldest(), MAX_BYTES / 2);
+
+			return true;
+		}
+		catch (IOException e) {
+			Log.w(TAG, "Couldn't save scrobble", e);
+			return false;
+		}
+	}
+
+	/**
+	 * When the oldest scrobble we still keep was played
+	 * (seconds since the epoch).
+	 */
+	private static long oldest() {
+		return (System.currentTimeMillis() / 1000) - MAX_AGE;
+	}
+
+	/**
+	 * Tries to deliver everything that's pending.
+	 *
+	 * Stops at the first batch that fails - the rest
+	 * stays on disk for next time.
+	 *
+	 * @return How many scrobbles were delivered.
+	 */
+	public int flush() {
+		if (! log.hasPending())
+			return 0;
+
+		int sent = 0;
+
+		try {
+			// Even if we can't send them, they
+			// shouldn't stay here forever
+			dropped += log.compact(oldest(), MAX_BYTES);
+
+			if ((sender == null) || (! sender.canSendPlayed()) || (! sender.isAvailable()))
+				return 0;
+
+			while (log.hasPending()) {
+
+				ScrobbleLog.Batch batch = log.readPending(BATCH_SIZE);
+				if (batch.scrobbles.isEmpty()) {
+					// Only damaged records - moving past them
+					log.commit(batch);
+					break;
+				}
+
+				if (! sender.send(batch.scrobbles)) {
+					failures++;
+					break;
+				}
+
+				// If we die right before this, the batch
+				// will be sent again.
+				log.commit(batch);
+
+				sent += batch.scrobbles.size();
+				batches++;
+			}
+		}
+		catch (IOException e) {
+			failures++;
+			Log.w(TAG, "Couldn't read scrobbles", e);
+		}
+
+		delivered += sent;
+		return sent;
+	}
+
+	public boolean hasPending() {
+		return log.hasPending();
+	}
+
+	/**
+	 * How many scrobbles we've saved.
+	 */
+	public int getQueued() {
+		return queued;
+	}
+
+	/**
+	 * How many scrobbles we've delivered.
+	 */
+	public int getDelivered() {
+		return delivered;
+	}
+
+	/**
+	 * How many batches we've delivered.
+	 */
+	public int getBatches() {
+		return batches;
+	}
+
+	/**
+	 * How many scrobbles we've forgotten, either because
+	 * they were too old or because nobody could deliver them.
+	 */
+	public int getDropped() {
+		return dropped;
+	}
+
+	/**
+	 * How many times delivering failed.
+	 */
+	public int getFailures() {
+		return failures;
+	}
+}
@@ -0,0 +1,54 @@
+package com.kure.musicplayer.scrobble;
+
+import java.util.List;
+
+/**
+ * Something that takes scrobbles and delivers them to Last.fm
+ * (usually another application installed on the device).
+ *
+ * Songs go as they play, with `sendState()`. Only plays
+ * that couldn't go that way are kept and sent later, with
+ * `send()` - if the sender can tell when they happened.
+ *
+ * Having it as an interface lets us swap the real scrobbler
+ * apps for a fake one when testing.
+ */
+public interface ScrobbleSender {
+
+	// What's happening to a song right now (see `sendState()`)
+	public static final int STATE_START    = 0;
+	public static final int STATE_RESUME   = 1;
+	public static final int STATE_PAUSE    = 2;
+	public static final int STATE_COMPLETE = 3;
+
+	/**
+	 * Tells if we can deliver anything right now
+	 * (for example, if the scrobbler app is installed).
+	 */
+	public boolean isAvailable();
+
+	/**
+	 * Tells what's happening to `song` right now, as it
+	 * happens - the other side decides when it was listened
+	 * long enough.
+	 *
+	 * @param state One of the `STATE_*` constants.
+	 * @return If it was delivered.
+	 */
+	public boolean sendState(int state, Scrobble song);
+
+	/**
+	 * Tells if `send()` can deliver plays that already
+	 * happened, at the time they happened.
+	 */
+	public boolean canSendPlayed();
+
+	/**
+	 * Delivers all `scrobbles` (songs that were already
+	 * played), in order, each at its `Scrobble#timestamp`.
+	 *
+	 * @return If they were delivered. When it's `false`
+	 *         they'll be sent again later.
+	 */
+	public boolean send(List<Scrobble> scrobbles);
+}
@@ -0,0 +1,125 @@
+package com.kure.musicplayer.scrobble;
+
+import com.kure.musicplayer.model.Song;
+
+/**
+ * Decides when a song was listened long enough to be
+ * scrobbled, following Last.fm's rules:
+ *
+ * - The song must be longer than 30 seconds;
+ * - The user must have listened to at least half of it
+ *   or for 4 minutes (whichever comes first).
+ *
+ * Pauses don't count as listening time.
+ *
+ * Tell it what's happening with the `on*()` methods;
+ * whenever a song qualifies, it's given to the `Listener`.
+ */
+public class ScrobbleTracker {
+
+	/** Songs shorter than this are never scrobbled (milliseconds) */
+	public static final long MINIMUM_SONG_DURATION = 30 * 1000;
+
+	/** Listening this long is always enough (milliseconds) */
+	public static final long MAXIMUM_REQUIRED_TIME = 4 * 60 * 1000;
+
+	/**
+	 * Receives the songs that qualified.
+	 */
+	public interface Listener {
+		public void onScrobble(Scrobble scrobble);
+	}
+
+	private Listener listener;
+
+	/** Song being listened right now (or `null`) */
+	private Song song = null;
+
+	/** When the user started listening (milliseconds since the epoch) */
+	private long startedAt = 0;
+
+	/** How long we've listened before the last pause (milliseconds) */
+	private long listenedTime = 0;
+
+	/**
+	 * When the song last started/unpaused (milliseconds, monotonic)
+	 * or -1 if it's paused.
+	 */
+	private long resumedAt = -1;
+
+	public ScrobbleTracker(Listener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * A new song started playing.
+	 *
+	 * @note Finishes the previous one, if any.
+	 */
+	public void onPlaying(Song song) {
+		finish();
+
+		this.song    = song;
+		startedAt    = System.currentTimeMillis();
+		listenedTime = 0;
+		resumedAt    = now();
+	}
+
+	public void onPaused() {
+		if ((song == null) || (resumedAt == -1))
+			return;
+
+		listenedTime += now() - resumedAt;
+		resumedAt     = -1;
+	}
+
+	public void onUnpaused() {
+		if ((song == null) || (resumedAt != -1))
+			return;
+
+		resumedAt = now();
+	}
+
+	/**
+	 * The current song ended - either it completed or
+	 * the user skipped it.
+	 */
+	public void onStopped() {
+		finish();
+	}
+
+	/**
+	 * Checks if the current song qualifies, sending it
+	 * to the listener if so.
+	 */
+	private void finish() {
+		if (song == null)
+			return;
+
+		onPaused();
+
+		if (qualifies(song.getDuration(), listenedTime))
+			listener.onScrobble(new Scrobble(song.getId(),
+			                                 startedAt / 1000,
+			                                 (int)song.getDurationSeconds(),
+			                                 song.getTitle(),
+			                                 song.getArtist(),
+			                                 song.getAlbum()));
+		song = null;
+	}
+
+	/**
+	 * Tells if listening `listened` milliseconds of a song with
+	 * `duration` milliseconds is enough to scrobble it.
+	 */
+	public static boolean qualifies(long duration, long listened) {
+		if (duration <= MINIMUM_SONG_DURATION)
+			return false;
+
+		return listened >= Math.min(duration / 2, MAXIMUM_REQUIRED_TIME);
+	}
+
+	private static long now() {
+		return System.nanoTime() / 1000000;
+	}
+}
@@ -0,0 +1,66 @@
+package com.kure.musicplayer.services;
+
+import android.os.SystemClock;
+
+/**
+ * Adds up for how long we've been holding something
+ * (like a wake lock or the MediaPlayer).
+ *
+ * Call `hold()` when we get it and `release()` when we
+ * give it back - calling any of them twice in a row
+ * does nothing.
+ *
+ * @note Times are on the `SystemClock.elapsedRealtime()`
+ *       clock (keeps counting while the device sleeps).
+ */
+public class HoldTimer {
+
+	/** When we got it (-1 if we're not holding it now) */
+	private long since = -1;
+
+	/** All the time we've held it before `since` */
+	private long total = 0;
+
+	/** How many times we got it */
+	private int holds = 0;
+
+	public void hold() {
+		if (since != -1)
+			return;
+
+		since = SystemClock.elapsedRealtime();
+		holds++;
+	}
+
+	public void release() {
+		if (since == -1)
+			return;
+
+		total += SystemClock.elapsedRealtime() - since;
+		since = -1;
+	}
+
+	public boolean isHeld() {
+		return since != -1;
+	}
+
+	/**
+	 * For how long (milliseconds) we've held it,
+	 * counting until now if we're still holding it.
+	 */
+	public long getTotal() {
+		if (since == -1)
+			return total;
+
+		return total + (SystemClock.elapsedRealtime() - since);
+	}
+
+	public int getHolds() {
+		return holds;
+	}
+
+	@Override
+	public String toString() {
+		return getTotal() + "ms (" + holds + "x)";
+	}
+}
@@ -0,0 +1,95 @@
+package com.kure.musicplayer.services;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.kure.musicplayer.model.Song;
+
+/**
+ * Everything the Activities can ask of the music player.
+ *
+ * Usually it's `ServicePlayMusic` itself, living on the same
+ * process as everyone else.
+ * But if the user wants it on a process of its own (see
+ * `ServicePlaybackProcess`) it's a `RemotePlayback`, that
+ * talks to it through Binder.
+ *
+ * @note Call everything from the UI Thread.
+ */
+public interface Playback {
+
+	/**
+	 * If we're still connected to the service.
+	 */
+	public boolean isBound();
+
+	// The Now Playing List
+
+	/**
+	 * Replaces the Now Playing List.
+	 *
+	 * @note Make sure to call `playSong()` after this.
+	 */
+	public void setList(ArrayList<Song> songs);
+
+	/**
+	 * The Now Playing List itself - don't change it.
+	 */
+	public ArrayList<Song> getList();
+
+	public void add(Song song);
+	public void addAll(List<Song> songs);
+	public void addNext(List<Song> songs);
+
+	/**
+	 * @see ServicePlayMusic#sortBy(String)
+	 */
+	public void sortBy(String rule);
+
+	public Song getSong(int position);
+
+	// Playback
+
+	public void setSong(int songIndex);
+	public void playSong();
+
+	public void next(boolean userSkippedSong);
+	public void previous(boolean userSkippedSong);
+
+	public void pausePlayer();
+	public void unpausePlayer();
+	public void togglePlayback();
+
+	public void seekTo(int position);
+
+	public void toggleShuffle();
+	public void toggleRepeat();
+
+	// State
+
+	/**
+	 * Song being played (or paused), `null` if none.
+	 */
+	public Song getCurrentSong();
+
+	/**
+	 * Where the current song is on the Now Playing List.
+	 */
+	public int getCurrentSongPosition();
+
+	public boolean isPlaying();
+
+	/**
+	 * @see PlaybackPosition
+	 */
+	public PlaybackPosition getPlaybackPosition();
+
+	public boolean isShuffle();
+	public boolean isRepeat();
+
+	// Settings that changed
+
+	public void notifyCurrentSong();
+	public void cancelNotification();
+	public void destroyLockScreenWidget();
+}
@@ -0,0 +1,88 @@
+package com.kure.musicplayer.services;
+
+import android.os.SystemClock;
+
+/**
+ * Where the current song was at a given moment, so anyone
+ * can tell where it is now without asking the MediaPlayer.
+ *
+ * While playing, the position moves along with the clock:
+ *
+ *     position + (now - anchor)
+ *
+ * `ServicePlayMusic` publishes a new one whenever that stops
+ * being true (pause, unpause, seek, new song...), and progress
+ * bars just call `getPosition()` as often as they like.
+ *
+ * @note Immutable - and times are all on the
+ *       `SystemClock.elapsedRealtime()` clock.
+ */
+public final class PlaybackPosition {
+
+	/**
+	 * Nothing's playing.
+	 */
+	public static final PlaybackPosition STOPPED = new PlaybackPosition(0, 0, 0, false);
+
+	/** Position of the song (milliseconds) at `anchor` */
+	public final long position;
+
+	/** Duration of the song (milliseconds), 0 if unknown */
+	public final long duration;
+
+	/** When we got `position` */
+	public final long anchor;
+
+	/** If the position moves along with the clock */
+	public final boolean playing;
+
+	public PlaybackPosition(long position, long duration, long anchor, boolean playing) {
+		this.position = position;
+		this.duration = duration;
+		this.anchor   = anchor;
+		this.playing  = playing;
+	}
+
+	/**
+	 * Where the song is at `now`.
+	 *
+	 * Never goes past the end of the song.
+	 */
+	public long getPosition(long now) {
+		long current = playing ? (position + (now - anchor)) : position;
+
+		if ((duration > 0) && (current > duration))
+			return duration;
+
+		return Math.max(current, 0);
+	}
+
+	/**
+	 * Where the song is right now.
+	 */
+	public long getPosition() {
+		return getPosition(SystemClock.elapsedRealtime());
+	}
+
+	/**
+	 * How long ago (milliseconds) we asked
+	 * the MediaPlayer.
+	 */
+	public long getAge(long now) {
+		return now - anchor;
+	}
+
+	/**
+	 * The same, but stopped (or moving) at `now`.
+	 */
+	public PlaybackPosition withPlaying(boolean playing, long now) {
+		return new PlaybackPosition(getPosition(now), duration, now, playing);
+	}
+
+	/**
+	 * The same, but at `position` from `now` on.
+	 */
+	public PlaybackPosition withPosition(long position, long now) {
+		return new PlaybackPosition(position, duration, now, playing);
+	}
+}
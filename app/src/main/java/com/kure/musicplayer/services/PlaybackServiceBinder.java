@@ -0,0 +1,547 @@
+package com.kure.musicplayer.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.RemoteCallbackList;
+import android.os.RemoteException;
+import android.util.Log;
+
+import com.kure.musicplayer.kMP;
+import com.kure.musicplayer.events.PlayerEvent;
+import com.kure.musicplayer.events.PlayerEventBus;
+import com.kure.musicplayer.model.Song;
+
+/**
+ * Lets another process control `ServicePlayMusic`
+ * (see `IPlaybackService`).
+ *
+ * Binder calls arrive on Binder Threads, but the service only
+ * works on its main Thread. So every call goes, in order,
+ * through `worker` - where song IDs become `Song`s - and then
+ * to the main Thread. Calls that return something wait
+ * for their turn.
+ *
+ * On the other direction, events the service posts on
+ * `kMP.events` and every new `PlaybackPosition` go to all
+ * registered callbacks.
+ *
+ * @note This process has a library of its own, scanned the
+ *       first time someone sends us songs (and again after
+ *       `libraryChanged()`). Songs that aren't on it still
+ *       go on the queue, so positions are the same on both
+ *       sides - they're played from their IDs or files.
+ */
+class PlaybackServiceBinder extends IPlaybackService.Stub {
+
+	// The tag we put on debug messages
+	private static final String TAG = "PlaybackServiceBinder";
+
+	/**
+	 * How long (milliseconds) we wait for the main Thread
+	 * to answer something.
+	 */
+	private static final long TIMEOUT = 5000;
+
+	private final ServicePlayMusic service;
+
+	private final Handler main = new Handler(Looper.getMainLooper());
+
+	private final HandlerThread workerThread;
+	private final Handler       worker;
+
+	private final RemoteCallbackList<IPlaybackCallback> callbacks = new RemoteCallbackList<IPlaybackCallback>();
+
+	/**
+	 * Songs sent so far by `setQueue()` - only
+	 * touched on `worker`.
+	 */
+	private ArrayList<Song> queueBeingSet = new ArrayList<Song>();
+
+	/**
+	 * If the other process scanned the songs after we did -
+	 * only touched on `worker`.
+	 */
+	private boolean libraryStale = false;
+
+	PlaybackServiceBinder(ServicePlayMusic service) {
+		this.service = service;
+
+		workerThread = new HandlerThread("PlaybackServiceBinder");
+		workerThread.start();
+
+		worker = new Handler(workerThread.getLooper());
+
+		kMP.events.register(eventForwarder);
+	}
+
+	/**
+	 * Stops everything - called when the service dies.
+	 */
+	void close() {
+		kMP.events.unregister(eventForwarder);
+
+		callbacks.kill();
+		workerThread.quit();
+	}
+
+	/**
+	 * Sends everything the service tells (but not the
+	 * orders it receives) to the other process.
+	 */
+	private final PlayerEventBus.Listener eventForwarder = new PlayerEventBus.Listener() {
+		@Override
+		public void onPlayerEvent(PlayerEvent event) {
+			if (event.code >= PlayerEvent.COMMAND_PLAY)
+				return;
+
+			sendEvent(event.code, event.songId);
+		}
+	};
+
+	/**
+	 * Called by the service whenever the song moves
+	 * differently from what we've said before.
+	 */
+	void positionChanged(PlaybackPosition position) {
+		synchronized (callbacks) {
+			int count = callbacks.beginBroadcast();
+
+			for (int i = 0; i < count; i++) {
+				try {
+					callbacks.getBroadcastItem(i).onPosition(position.position,
+					                                         position.duration,
+					                                         position.anchor,
+					                                         position.playing);
+				}
+				catch (RemoteException e) {
+					// It's dead - the list removes it
+				}
+			}
+			callbacks.finishBroadcast();
+		}
+	}
+
+	private void sendEvent(int code, long songId) {
+		synchronized (callbacks) {
+			int count = callbacks.beginBroadcast();
+
+			for (int i = 0; i < count; i++) {
+				try {
+					callbacks.getBroadcastItem(i).onEvent(code, songId);
+				}
+				catch (RemoteException e) {
+					// It's dead - the list removes it
+				}
+			}
+			callbacks.finishBroadcast();
+		}
+	}
+
+	/**
+	 * Runs `action` on the service's Thread, after
+	 * everything that came before it.
+	 */
+	private void run(final Runnable action) {
+
+		// Called from our own process - waiting
+		// for ourselves would never end
+		if (Looper.myLooper() == Looper.getMainLooper()) {
+			action.run();
+			return;
+		}
+
+		worker.post(new Runnable() {
+			@Override
+			public void run() {
+				main.post(action);
+			}
+		});
+	}
+
+	/**
+	 * Same as `run()`, but waits for the result.
+	 *
+	 * @return What `action` returns, or `otherwise` if it
+	 *         took too long or failed.
+	 */
+	private <T> T call(Callable<T> action, T otherwise) {
+		FutureTask<T> task = new FutureTask<T>(action);
+
+		run(task);
+
+		try {
+			return task.get(TIMEOUT, TimeUnit.MILLISECONDS);
+		}
+		catch (Exception e) {
+			Log.w(TAG, "Service didn't answer", e);
+			return otherwise;
+		}
+	}
+
+	/**
+	 * Finds the songs with `songIds` on this process'
+	 * library (scanning it if we haven't yet, or if it's
+	 * older than the other process').
+	 *
+	 * Songs we don't have become new ones, with only their
+	 * ID and file (from `paths`) - enough to play them. We
+	 * never leave any out, otherwise positions sent by the
+	 * other process would point to the wrong songs.
+	 *
+	 * @note Slow when scanning - only call it on `worker`.
+	 */
+	private ArrayList<Song> resolve(long[] songIds, String[] paths) {
+		if (libraryStale || (! kMP.songs.isInitialized())) {
+			kMP.songs.scanSongs(service, "external");
+			libraryStale = false;
+		}
+
+		ArrayList<Song> songs = new ArrayList<Song>(songIds.length);
+
+		int missing = 0;
+
+		for (int i = 0; i < songIds.length; i++) {
+			Song song = kMP.songs.getSongById(songIds[i]);
+
+			if (song == null) {
+				String path = ((paths != null) && (i < paths.length)) ? paths[i] : null;
+
+				song = new Song(songIds[i], path);
+				missing++;
+			}
+			songs.add(song);
+		}
+
+		if (missing > 0)
+			Log.w(TAG, missing + " songs not on our library");
+
+		return songs;
+	}
+
+	private static long[] toIds(List<Song> songs, int from, int count) {
+		int to = Math.min(songs.size(), from + count);
+
+		if (from >= to)
+			return new long[0];
+
+		long[] ids = new long[to - from];
+
+		for (int i = from; i < to; i++)
+			ids[i - from] = songs.get(i).getId();
+
+		return ids;
+	}
+
+	// The Now Playing List
+
+	@Override
+	public void setQueue(final long[] songIds, final String[] paths, final boolean append) {
+		worker.post(new Runnable() {
+			@Override
+			public void run() {
+				if (! append)
+					queueBeingSet = new ArrayList<Song>();
+
+				queueBeingSet.addAll(resolve(songIds, paths));
+
+				final ArrayList<Song> songs = new ArrayList<Song>(queueBeingSet);
+
+				main.post(new Runnable() {
+					@Override
+					public void run() {
+						service.setList(songs);
+					}
+				});
+			}
+		});
+	}
+
+	@Override
+	public void enqueue(final long[] songIds, final String[] paths, final boolean next) {
+		worker.post(new Runnable() {
+			@Override
+			public void run() {
+				final ArrayList<Song> songs = resolve(songIds, paths);
+
+				main.post(new Runnable() {
+					@Override
+					public void run() {
+						if (next)
+							service.addNext(songs);
+						else
+							service.addAll(songs);
+					}
+				});
+			}
+		});
+	}
+
+	@Override
+	public int getQueueSize() {
+		return call(new Callable<Integer>() {
+			@Override
+			public Integer call() {
+				return service.getList().size();
+			}
+		}, 0);
+	}
+
+	@Override
+	public long[] getQueue(final int from, final int count) {
+		return call(new Callable<long[]>() {
+			@Override
+			public long[] call() {
+				return toIds(service.getList(), from, count);
+			}
+		}, new long[0]);
+	}
+
+	@Override
+	public void sortQueue(final String rule) {
+		run(new Runnable() {
+			@Override
+			public void run() {
+				service.sortBy(rule);
+			}
+		});
+	}
+
+	// Playback
+
+	@Override
+	public void setSong(final int position) {
+		run(new Runnable() {
+			@Override
+			public void run() {
+				service.setSong(position);
+			}
+		});
+	}
+
+	@Override
+	public void playSong() {
+		run(new Runnable() {
+			@Override
+			public void run() {
+				service.playSong();
+			}
+		});
+	}
+
+	@Override
+	public void pause() {
+		run(new Runnable() {
+			@Override
+			public void run() {
+				service.pausePlayer();
+			}
+		});
+	}
+
+	@Override
+	public void unpause() {
+		run(new Runnable() {
+			@Override
+			public void run() {
+				service.unpausePlayer();
+			}
+		});
+	}
+
+	@Override
+	public void togglePlayback() {
+		run(new Runnable() {
+			@Override
+			public void run() {
+				service.togglePlayback();
+			}
+		});
+	}
+
+	@Override
+	public void next() {
+		run(new Runnable() {
+			@Override
+			public void run() {
+				service.next(true);
+			}
+		});
+	}
+
+	@Override
+	public void previous() {
+		run(new Runnable() {
+			@Override
+			public void run() {
+				service.previous(true);
+			}
+		});
+	}
+
+	@Override
+	public void seekTo(final int position) {
+		run(new Runnable() {
+			@Override
+			public void run() {
+				service.seekTo(position);
+			}
+		});
+	}
+
+	@Override
+	public void toggleShuffle() {
+		run(new Runnable() {
+			@Override
+			public void run() {
+				service.toggleShuffle();
+			}
+		});
+	}
+
+	@Override
+	public void toggleRepeat() {
+		run(new Runnable() {
+			@Override
+			public void run() {
+				service.toggleRepeat();
+			}
+		});
+	}
+
+	// State
+
+	@Override
+	public int getSongPosition() {
+		return call(new Callable<Integer>() {
+			@Override
+			public Integer call() {
+				return service.getCurrentSongPosition();
+			}
+		}, 0);
+	}
+
+	@Override
+	public long getSongId() {
+		return call(new Callable<Long>() {
+			@Override
+			public Long call() {
+				Song song = service.getCurrentSong();
+
+				return (song == null) ? PlayerEvent.NO_SONG : song.getId();
+			}
+		}, PlayerEvent.NO_SONG);
+	}
+
+	@Override
+	public boolean isShuffle() {
+		return call(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return service.isShuffle();
+			}
+		}, false);
+	}
+
+	@Override
+	public boolean isRepeat() {
+		return call(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return service.isRepeat();
+			}
+		}, false);
+	}
+
+	@Override
+	public void settingsChanged() {
+		run(new Runnable() {
+			@Override
+			public void run() {
+				// The other process saved them
+				kMP.settings.loadShared(service);
+			}
+		});
+	}
+
+	@Override
+	public void libraryChanged() {
+		// Only scanning again when someone sends us songs,
+		// so the music doesn't wait for it
+		worker.post(new Runnable() {
+			@Override
+			public void run() {
+				libraryStale = true;
+			}
+		});
+	}
+
+	@Override
+	public void notifyCurrentSong() {
+		run(new Runnable() {
+			@Override
+			public void run() {
+				service.notifyCurrentSong();
+			}
+		});
+	}
+
+	@Override
+	public void cancelNotification() {
+		run(new Runnable() {
+			@Override
+			public void run() {
+				service.cancelNotification();
+			}
+		});
+	}
+
+	@Override
+	public void destroyLockScreenWidget() {
+		run(new Runnable() {
+			@Override
+			public void run() {
+				service.destroyLockScreenWidget();
+			}
+		});
+	}
+
+	@Override
+	public void registerCallback(final IPlaybackCallback callback) {
+		if (callback == null)
+			return;
+
+		callbacks.register(callback);
+
+		// So it doesn't have to wait for something to happen
+		run(new Runnable() {
+			@Override
+			public void run() {
+				PlaybackPosition position = service.getPlaybackPosition();
+				try {
+					callback.onPosition(position.position, position.duration, position.anchor, position.playing);
+				}
+				catch (RemoteException e) {
+					callbacks.unregister(callback);
+				}
+			}
+		});
+	}
+
+	@Override
+	public void unregisterCallback(IPlaybackCallback callback) {
+		if (callback != null)
+			callbacks.unregister(callback);
+	}
+
+	@Override
+	public long ping(long value) {
+		return value;
+	}
+}
@@ -0,0 +1,830 @@
+package com.kure.musicplayer.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.RemoteException;
+import android.util.Log;
+
+import com.kure.musicplayer.kMP;
+import com.kure.musicplayer.events.PlayerEvent;
+import com.kure.musicplayer.events.PlayerEventBus;
+import com.kure.musicplayer.model.Song;
+
+/**
+ * Controls the music service when it's running on a
+ * process of its own (see `ServicePlaybackProcess`).
+ *
+ * For the Activities it's just like `ServicePlayMusic`, but
+ * everything goes through Binder (`IPlaybackService`):
+ *
+ * - Songs go as IDs, and come back from our own library;
+ * - Events the service posts on its `kMP.events` are posted
+ *   again on ours, so everyone listening keeps working;
+ * - Orders posted on our `kMP.events` (media buttons and
+ *   such) are sent to the service;
+ * - The service sends every new `PlaybackPosition`, so
+ *   progress bars don't cost a Binder call per frame.
+ *
+ * We also measure how long each call takes to come back
+ * (see `getAverageRoundTripNanos()`).
+ *
+ * @note Must be created (and used) on the UI Thread.
+ */
+public class RemotePlayback implements Playback, ServiceConnection {
+
+	// The tag we put on debug messages
+	private static final String TAG = "RemotePlayback";
+
+	/**
+	 * How many song IDs we send (or ask for) on a single
+	 * call - Binder doesn't like big transactions.
+	 */
+	public static final int QUEUE_BATCH = 5000;
+
+	private IPlaybackService service = null;
+
+	private boolean bound = false;
+
+	/**
+	 * Our copy of the Now Playing List - updated whenever
+	 * the service says it changed.
+	 */
+	private final ArrayList<Song> queue = new ArrayList<Song>();
+
+	/**
+	 * Last position the service sent us.
+	 */
+	private volatile PlaybackPosition position = PlaybackPosition.STOPPED;
+
+	/**
+	 * Callbacks come on Binder Threads; this brings
+	 * them to the UI Thread.
+	 */
+	private final Handler handler = new Handler();
+
+	// How long calls to the service took to come back.
+	private long roundTrips        = 0;
+	private long roundTripNanos    = 0;
+	private long maxRoundTripNanos = 0;
+
+	/**
+	 * Binds to the service on `ServicePlaybackProcess`,
+	 * becoming `kMP.musicService` once connected.
+	 */
+	public void bind(Context c) {
+		Intent intent = new Intent(c, ServicePlaybackProcess.class);
+		intent.setAction(ServicePlayMusic.ACTION_BIND_REMOTE);
+
+		c.getApplicationContext().bindService(intent, this, Context.BIND_AUTO_CREATE);
+	}
+
+	/**
+	 * Stops talking to the service.
+	 */
+	public void unbind(Context c) {
+		if (service != null) {
+			try {
+				service.unregisterCallback(callback);
+			}
+			catch (RemoteException e) {
+				// Already gone
+			}
+		}
+
+		c.getApplicationContext().unbindService(this);
+		disconnected();
+	}
+
+	@Override
+	public void onServiceConnected(ComponentName name, IBinder binder) {
+		service = IPlaybackService.Stub.asInterface(binder);
+		bound   = true;
+
+		long start = System.nanoTime();
+		try {
+			service.registerCallback(callback);
+		}
+		catch (RemoteException e) {
+			lost(e);
+			return;
+		}
+		finally {
+			measured(start);
+		}
+
+		kMP.events.register(commandForwarder);
+
+		// It might have outlived us - keeping whatever it's playing
+		int size;
+
+		start = System.nanoTime();
+		try {
+			size = service.getQueueSize();
+		}
+		catch (RemoteException e) {
+			lost(e);
+			return;
+		}
+		finally {
+			measured(start);
+		}
+
+		// Otherwise, same as when it's on our process
+		if (size > 0)
+			refreshQueue();
+		else
+			setList(kMP.songs.getSongs());
+
+		kMP.musicService = this;
+
+		measureLatency(20);
+	}
+
+	@Override
+	public void onServiceDisconnected(ComponentName name) {
+		disconnected();
+	}
+
+	private void disconnected() {
+		if (! bound)
+			return;
+
+		kMP.events.unregister(commandForwarder);
+
+		bound   = false;
+		service = null;
+
+		Log.w(TAG, "disconnected - " + roundTrips + " calls, average " +
+		           getAverageRoundTripNanos() + "ns, max " + maxRoundTripNanos + "ns");
+	}
+
+	/**
+	 * Something went wrong talking to the service
+	 * (probably its process died).
+	 */
+	private void lost(RemoteException e) {
+		Log.w(TAG, "Lost the service", e);
+		disconnected();
+	}
+
+	/**
+	 * Counts a call that started at `start`
+	 * (`System.nanoTime()`).
+	 */
+	private void measured(long start) {
+		long nanos = System.nanoTime() - start;
+
+		roundTrips++;
+		roundTripNanos += nanos;
+
+		if (nanos > maxRoundTripNanos)
+			maxRoundTripNanos = nanos;
+	}
+
+	public long getRoundTrips() {
+		return roundTrips;
+	}
+
+	public long getAverageRoundTripNanos() {
+		if (roundTrips == 0)
+			return 0;
+
+		return roundTripNanos / roundTrips;
+	}
+
+	public long getMaxRoundTripNanos() {
+		return maxRoundTripNanos;
+	}
+
+	/**
+	 * Calls the service `times` times doing nothing,
+	 * logging how long it took.
+	 *
+	 * @return Average round trip, in nanoseconds
+	 *         (-1 if we're not connected).
+	 */
+	public long measureLatency(int times) {
+		if ((service == null) || (times <= 0))
+			return -1;
+
+		long total = 0;
+		long max   = 0;
+
+		try {
+			for (int i = 0; i < times; i++) {
+				long start = System.nanoTime();
+				service.ping(i);
+
+				long nanos = System.nanoTime() - start;
+				total += nanos;
+				max    = Math.max(max, nanos);
+			}
+		}
+		catch (RemoteException e) {
+			lost(e);
+			return -1;
+		}
+
+		Log.w(TAG, "ping: average " + (total / times) + "ns, max " + max + "ns");
+		return total / times;
+	}
+
+	/**
+	 * What the service tells us.
+	 */
+	private final IPlaybackCallback.Stub callback = new IPlaybackCallback.Stub() {
+
+		@Override
+		public void onEvent(final int code, final long songId) {
+			handler.post(new Runnable() {
+				@Override
+				public void run() {
+					if (code == PlayerEvent.QUEUE_CHANGED)
+						refreshQueue();
+
+					// Smart playlists live on this process
+					if ((code == PlayerEvent.PLAYING) && (songId != PlayerEvent.NO_SONG))
+						kMP.smartPlaylists.songPlayed(songId);
+
+					kMP.events.post(code, songId);
+				}
+			});
+		}
+
+		@Override
+		public void onPosition(long position, long duration, long anchor, boolean playing) {
+			RemotePlayback.this.position = new PlaybackPosition(position, duration, anchor, playing);
+		}
+	};
+
+	/**
+	 * Sends orders posted on our `kMP.events` to the service.
+	 */
+	private final PlayerEventBus.Listener commandForwarder = new PlayerEventBus.Listener() {
+		@Override
+		public void onPlayerEvent(PlayerEvent event) {
+
+			switch (event.code) {
+
+			case PlayerEvent.COMMAND_PAUSE:
+				pausePlayer();
+				break;
+
+			case PlayerEvent.COMMAND_PLAY:
+				unpausePlayer();
+				break;
+
+			case PlayerEvent.COMMAND_TOGGLE_PLAYBACK:
+				togglePlayback();
+				break;
+
+			case PlayerEvent.COMMAND_SKIP:
+				next(true);
+				playSong();
+				break;
+
+			case PlayerEvent.COMMAND_REWIND:
+				previous(true);
+				playSong();
+				break;
+			}
+		}
+	};
+
+	/**
+	 * Asks the service for the whole Now Playing List,
+	 * replacing our copy (keeping the same object, since
+	 * adapters might be showing it).
+	 *
+	 * Songs not on our library (we might not have scanned
+	 * yet) stay as new ones with only their IDs, so positions
+	 * are the same as the service's.
+	 */
+	private void refreshQueue() {
+		if (service == null)
+			return;
+
+		ArrayList<Song> songs = new ArrayList<Song>();
+
+		long start = System.nanoTime();
+		try {
+			int size = service.getQueueSize();
+
+			for (int from = 0; from < size; from += QUEUE_BATCH)
+				for (long songId : service.getQueue(from, QUEUE_BATCH)) {
+					Song song = kMP.songs.getSongById(songId);
+
+					songs.add((song != null) ? song : new Song(songId, null));
+				}
+		}
+		catch (RemoteException e) {
+			lost(e);
+			return;
+		}
+		finally {
+			measured(start);
+		}
+
+		queue.clear();
+		queue.addAll(songs);
+	}
+
+	private static long[] toIds(List<Song> songs, int from, int count) {
+		int to = Math.min(songs.size(), from + count);
+
+		long[] ids = new long[Math.max(to - from, 0)];
+
+		for (int i = from; i < to; i++)
+			ids[i - from] = songs.get(i).getId();
+
+		return ids;
+	}
+
+	/**
+	 * Files of the songs on `toIds()` that the media
+	 * database doesn't know about - `null` for the others.
+	 */
+	private static String[] toPaths(List<Song> songs, int from, int count) {
+		int to = Math.min(songs.size(), from + count);
+
+		String[] paths = new String[Math.max(to - from, 0)];
+
+		for (int i = from; i < to; i++)
+			if (songs.get(i).isDiscovered())
+				paths[i - from] = songs.get(i).getFilePath();
+
+		return paths;
+	}
+
+	/**
+	 * Tells the service we scanned the songs again, so it
+	 * does the same (and gets songs it doesn't have yet).
+	 *
+	 * Also finds our copy of the Now Playing List on the
+	 * new library.
+	 */
+	public void libraryChanged() {
+		if (service == null)
+			return;
+
+		long start = System.nanoTime();
+		try {
+			service.libraryChanged();
+		}
+		catch (RemoteException e) {
+			lost(e);
+			return;
+		}
+		finally {
+			measured(start);
+		}
+
+		refreshQueue();
+	}
+
+	@Override
+	public boolean isBound() {
+		return bound;
+	}
+
+	// The Now Playing List
+
+	@Override
+	public void setList(ArrayList<Song> songs) {
+		queue.clear();
+
+		if (songs != null)
+			queue.addAll(songs);
+
+		if (service == null)
+			return;
+
+		long start = System.nanoTime();
+		try {
+			// Even if it's empty
+			service.setQueue(toIds(queue, 0, QUEUE_BATCH), toPaths(queue, 0, QUEUE_BATCH), false);
+
+			for (int from = QUEUE_BATCH; from < queue.size(); from += QUEUE_BATCH)
+				service.setQueue(toIds(queue, from, QUEUE_BATCH), toPaths(queue, from, QUEUE_BATCH), true);
+		}
+		catch (RemoteException e) {
+			lost(e);
+		}
+		finally {
+			measured(start);
+		}
+	}
+
+	@Override
+	public ArrayList<Song> getList() {
+		return queue;
+	}
+
+	@Override
+	public void add(Song song) {
+		addAll(Collections.singletonList(song));
+	}
+
+	@Override
+	public void addAll(List<Song> songs) {
+		enqueue(songs, false);
+	}
+
+	@Override
+	public void addNext(List<Song> songs) {
+		enqueue(songs, true);
+	}
+
+	/**
+	 * Our copy gets updated once the service
+	 * tells the queue changed.
+	 */
+	private void enqueue(List<Song> songs, boolean next) {
+		if ((service == null) || songs.isEmpty())
+			return;
+
+		long start = System.nanoTime();
+		try {
+			for (int from = 0; from < songs.size(); from += QUEUE_BATCH)
+				service.enqueue(toIds(songs, from, QUEUE_BATCH), toPaths(songs, from, QUEUE_BATCH), next);
+		}
+		catch (RemoteException e) {
+			lost(e);
+		}
+		finally {
+			measured(start);
+		}
+	}
+
+	@Override
+	public void sortBy(String rule) {
+		if (service == null)
+			return;
+
+		long start = System.nanoTime();
+		try {
+			service.sortQueue(rule);
+		}
+		catch (RemoteException e) {
+			lost(e);
+			return;
+		}
+		finally {
+			measured(start);
+		}
+
+		// The service doesn't tell when it sorts
+		refreshQueue();
+	}
+
+	@Override
+	public Song getSong(int position) {
+		return queue.get(position);
+	}
+
+	// Playback
+
+	@Override
+	public void setSong(int songIndex) {
+		if (service == null)
+			return;
+
+		long start = System.nanoTime();
+		try {
+			service.setSong(songIndex);
+		}
+		catch (RemoteException e) {
+			lost(e);
+		}
+		finally {
+			measured(start);
+		}
+	}
+
+	@Override
+	public void playSong() {
+		if (service == null)
+			return;
+
+		long start = System.nanoTime();
+		try {
+			service.playSong();
+		}
+		catch (RemoteException e) {
+			lost(e);
+		}
+		finally {
+			measured(start);
+		}
+	}
+
+	@Override
+	public void next(boolean userSkippedSong) {
+		if (service == null)
+			return;
+
+		long start = System.nanoTime();
+		try {
+			service.next();
+		}
+		catch (RemoteException e) {
+			lost(e);
+		}
+		finally {
+			measured(start);
+		}
+	}
+
+	@Override
+	public void previous(boolean userSkippedSong) {
+		if (service == null)
+			return;
+
+		long start = System.nanoTime();
+		try {
+			service.previous();
+		}
+		catch (RemoteException e) {
+			lost(e);
+		}
+		finally {
+			measured(start);
+		}
+	}
+
+	@Override
+	public void pausePlayer() {
+		if (service == null)
+			return;
+
+		long start = System.nanoTime();
+		try {
+			service.pause();
+		}
+		catch (RemoteException e) {
+			lost(e);
+		}
+		finally {
+			measured(start);
+		}
+	}
+
+	@Override
+	public void unpausePlayer() {
+		if (service == null)
+			return;
+
+		long start = System.nanoTime();
+		try {
+			service.unpause();
+		}
+		catch (RemoteException e) {
+			lost(e);
+		}
+		finally {
+			measured(start);
+		}
+	}
+
+	@Override
+	public void togglePlayback() {
+		if (service == null)
+			return;
+
+		long start = System.nanoTime();
+		try {
+			service.togglePlayback();
+		}
+		catch (RemoteException e) {
+			lost(e);
+		}
+		finally {
+			measured(start);
+		}
+	}
+
+	@Override
+	public void seekTo(int position) {
+		if (service == null)
+			return;
+
+		long start = System.nanoTime();
+		try {
+			service.seekTo(position);
+		}
+		catch (RemoteException e) {
+			lost(e);
+		}
+		finally {
+			measured(start);
+		}
+	}
+
+	@Override
+	public void toggleShuffle() {
+		if (service == null)
+			return;
+
+		long start = System.nanoTime();
+		try {
+			service.toggleShuffle();
+		}
+		catch (RemoteException e) {
+			lost(e);
+		}
+		finally {
+			measured(start);
+		}
+	}
+
+	@Override
+	public void toggleRepeat() {
+		if (service == null)
+			return;
+
+		long start = System.nanoTime();
+		try {
+			service.toggleRepeat();
+		}
+		catch (RemoteException e) {
+			lost(e);
+		}
+		finally {
+			measured(start);
+		}
+	}
+
+	// State
+
+	@Override
+	public Song getCurrentSong() {
+		if (service == null)
+			return null;
+
+		long start = System.nanoTime();
+		try {
+			long songId = service.getSongId();
+
+			return (songId == PlayerEvent.NO_SONG) ? null : kMP.songs.getSongById(songId);
+		}
+		catch (RemoteException e) {
+			lost(e);
+			return null;
+		}
+		finally {
+			measured(start);
+		}
+	}
+
+	@Override
+	public int getCurrentSongPosition() {
+		if (service == null)
+			return 0;
+
+		long start = System.nanoTime();
+		try {
+			return service.getSongPosition();
+		}
+		catch (RemoteException e) {
+			lost(e);
+			return 0;
+		}
+		finally {
+			measured(start);
+		}
+	}
+
+	/**
+	 * @note Doesn't call the service.
+	 */
+	@Override
+	public boolean isPlaying() {
+		return position.playing;
+	}
+
+	/**
+	 * @note Doesn't call the service - it sends us
+	 *       every new position.
+	 */
+	@Override
+	public PlaybackPosition getPlaybackPosition() {
+		return position;
+	}
+
+	@Override
+	public boolean isShuffle() {
+		if (service == null)
+			return false;
+
+		long start = System.nanoTime();
+		try {
+			return service.isShuffle();
+		}
+		catch (RemoteException e) {
+			lost(e);
+			return false;
+		}
+		finally {
+			measured(start);
+		}
+	}
+
+	@Override
+	public boolean isRepeat() {
+		if (service == null)
+			return false;
+
+		long start = System.nanoTime();
+		try {
+			return service.isRepeat();
+		}
+		catch (RemoteException e) {
+			lost(e);
+			return false;
+		}
+		finally {
+			measured(start);
+		}
+	}
+
+	// Settings
+
+	/**
+	 * Makes the service read the Settings again - on
+	 * its process they don't change by themselves.
+	 */
+	public void settingsChanged() {
+		if (service == null)
+			return;
+
+		long start = System.nanoTime();
+		try {
+			service.settingsChanged();
+		}
+		catch (RemoteException e) {
+			lost(e);
+		}
+		finally {
+			measured(start);
+		}
+	}
+
+	@Override
+	public void notifyCurrentSong() {
+		if (service == null)
+			return;
+
+		long start = System.nanoTime();
+		try {
+			service.notifyCurrentSong();
+		}
+		catch (RemoteException e) {
+			lost(e);
+		}
+		finally {
+			measured(start);
+		}
+	}
+
+	@Override
+	public void cancelNotification() {
+		if (service == null)
+			return;
+
+		long start = System.nanoTime();
+		try {
+			service.cancelNotification();
+		}
+		catch (RemoteException e) {
+			lost(e);
+		}
+		finally {
+			measured(start);
+		}
+	}
+
+	@Override
+	public void destroyLockScreenWidget() {
+		if (service == null)
+			return;
+
+		long start = System.nanoTime();
+		try {
+			service.destroyLockScreenWidget();
+		}
+		catch (RemoteException e) {
+			lost(e);
+		}
+		finally {
+			measured(start);
+		}
+	}
+}
@@ -1,12 +1,15 @@
 package com.kure.musicplayer.services;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
 
-import android.app.PendingIntent;
 import android.app.Service;
 import android.content.BroadcastReceiver;
 import android.content.ComponentName;
@@ -14,24 +17,30 @@ import android.content.ContentUris;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.content.SharedPreferences;
 import android.media.AudioManager;
 import android.media.MediaPlayer;
 import android.media.RemoteControlClient;
 import android.net.Uri;
 import android.os.Binder;
+import android.os.Handler;
 import android.os.IBinder;
 import android.os.PowerManager;
+import android.os.SystemClock;
 import android.support.v4.content.LocalBroadcastManager;
 import android.util.Log;
 import android.view.KeyEvent;
 import android.widget.Toast;
 
+import com.kure.musicplayer.LockScreenWidget;
 import com.kure.musicplayer.NotificationMusic;
 import com.kure.musicplayer.R;
 import com.kure.musicplayer.kMP;
-import com.kure.musicplayer.external.RemoteControlClientCompat;
-import com.kure.musicplayer.external.RemoteControlHelper;
+import com.kure.musicplayer.events.PlayerEvent;
+import com.kure.musicplayer.events.PlayerEventBus;
+import com.kure.musicplayer.events.PlayerEventIntentAdapter;
 import com.kure.musicplayer.model.Song;
+import com.kure.musicplayer.model.SongComparators;
 
 /**
  * Service that makes the music play and notifies every action.
@@ -43,38 +52,39 @@ import com.kure.musicplayer.model.Song;
  *   currently playing song;
  * - Starts the other service, `MusicScrobblerService`
  *   (if set on Settings) that scrobbles songs to Last.fm;
- * - LocalBroadcasts every action it takes;
+ * - Posts every action it takes on `kMP.events`;
  * - Keep watching for headphone/headset events with
- *   a Broadcast - and react accordingly.
+ *   a Broadcast - and react accordingly;
+ * - Going idle when paused for too long (see `enterIdle()`).
  *
- * Broadcasts:
+ * Activities in the same process talk to it directly
+ * (through `MusicBinder`). When it runs on a process of its
+ * own (see `ServicePlaybackProcess`), they bind with
+ * `ACTION_BIND_REMOTE` and talk through `IPlaybackService`.
  *
- * This service makes sure to broadcast every action it
- * takes.
+ * Events:
  *
- * It sends a LocalBroadcast of name `BROADCAST_EVENT_NAME`,
- * of which you can get it's action with the following
- * extras:
+ * This service makes sure to post every action it
+ * takes on the `PlayerEventBus` at `kMP.events`.
  *
- * - String BROADCAST_EXTRA_ACTION: Current action it's taking.
- *
- * - Long   BROADCAST_EXTRA_SONG_ID: ID of the Song it's taking
- *                                   action into.
+ * Each event has a code (`PlayerEvent.PLAYING`,
+ * `PlayerEvent.PAUSED` and such) and the ID of the Song
+ * it's taking action into.
  *
  * For example, see the following scenarios:
  *
  * - Starts playing Song with ID 1.
- *   + Send a LocalBroadcast with `BROADCAST_EXTRA_ACTION`
- *     of `BROADCAST_EXTRA_PLAYING` and
- *     `BROADCAST_EXTRA_SONG_ID` of 1.
+ *   + Posts `PlayerEvent.PLAYING` with song ID 1.
  *
  * - User skips to a Song with ID 2:
- *   + Send a LocalBroadcast with `BROADCAST_EXTRA_ACTION`
- *     of `BROADCAST_EXTRA_SKIP_NEXT` and
- *     `BROADCAST_EXTRA_SONG_ID` of 1.
- *   + Send a LocalBriadcast with `BROADCAST_EXTRA_ACTION`
- *     of `BROADCAST_EXTRA_PLAYING` and
- *     `BROADCAST_EXTRA_SONG_ID` of 2.
+ *   + Posts `PlayerEvent.SKIP_NEXT` with song ID 1.
+ *   + Posts `PlayerEvent.PLAYING` with song ID 2.
+ *
+ * It also listens to commands on the same bus
+ * (`PlayerEvent.COMMAND_*`).
+ *
+ * Orders sent as the old `BROADCAST_ORDER` Intents are
+ * still obeyed (see `PlayerEventIntentAdapter`).
  *
  * @note It keeps the music playing even when the
  *       device is locked.
@@ -90,59 +100,126 @@ public class ServicePlayMusic extends Service
 	implements MediaPlayer.OnPreparedListener,
 	           MediaPlayer.OnErrorListener,
 	           MediaPlayer.OnCompletionListener,
-	           AudioManager.OnAudioFocusChangeListener {
+	           MediaPlayer.OnSeekCompleteListener,
+	           AudioManager.OnAudioFocusChangeListener,
+	           Playback {
+
+	/**
+	 * Android Media Player - we control it in here.
+	 */
+	private MediaPlayer player;
 
 	/**
-	 * String that identifies all broadcasts this Service makes.
+	 * List of songs we're  currently playing.
+	 */
+	private ArrayList<Song> songs;
+
+	/**
+	 * Index of the current song we're playing on the `songs` list.
+	 */
+	public int currentSongPosition;
+
+	/**
+	 * Where the next songs to "play next" go (see `addNext()`),
+	 * so several of them play in the order they were added.
 	 *
-	 * Since this Service will send LocalBroadcasts to explain
-	 * what it does (like "playing song" or "paused song"),
-	 * other classes that might be interested on it must
-	 * register a BroadcastReceiver to this String.
+	 * Only valid while `currentSongPosition` is `playNextAnchor` -
+	 * once another song starts, they go right after it again.
+	 * Moving on to one of them (see `next()`) keeps them valid,
+	 * so they all play, in order, even on shuffle.
 	 */
-	public static final String BROADCAST_ACTION = "com.kure.musicplayer.MUSIC_SERVICE";
+	private int playNextPosition = -1;
+	private int playNextAnchor   = -1;
 
-	/** String used to get the current state Extra on the Broadcast Intent */
-	public static final String BROADCAST_EXTRA_STATE = "x_japan";
+	/**
+	 * While playing, we ask the MediaPlayer where it really is
+	 * once in a while (milliseconds), so our clock and the
+	 * audio don't drift apart.
+	 */
+	public static final long RESYNC_INTERVAL = 10000;
 
-	/** String used to get the song ID Extra on the Broadcast Intent */
-	public static final String BROADCAST_EXTRA_SONG_ID = "tenacious_d";
+	/**
+	 * Where the current song is - see `getPlaybackPosition()`.
+	 */
+	private volatile PlaybackPosition playbackPosition = PlaybackPosition.STOPPED;
 
-	// All possible messages this Service will broadcast
-	// Ignore the actual values
+	/**
+	 * How many times we've asked the MediaPlayer for the
+	 * position or duration, since `nativeCallsSince`.
+	 */
+	private final AtomicLong nativeCalls = new AtomicLong(0);
+	private long nativeCallsSince = SystemClock.elapsedRealtime();
 
-	/** Broadcast for when some music started playing */
-	public static final String BROADCAST_EXTRA_PLAYING = "beatles";
+	/**
+	 * Bind with this action to get an `IPlaybackService`
+	 * instead of a `MusicBinder` (for other processes).
+	 */
+	public static final String ACTION_BIND_REMOTE = "com.kure.musicplayer.action.BIND_REMOTE";
 
-	/** Broadcast for when some music just got paused */
-	public static final String BROADCAST_EXTRA_PAUSED = "santana";
+	/**
+	 * Start this Service with this action to give it an order
+	 * (one of `PlayerEvent.COMMAND_*`, on `EXTRA_COMMAND`).
+	 *
+	 * That's how receivers reach us when we're on another
+	 * process (see `sendCommand()`).
+	 */
+	public static final String ACTION_COMMAND = "com.kure.musicplayer.action.COMMAND";
+	public static final String EXTRA_COMMAND  = "command";
 
-	/** Broadcast for when a paused music got unpaused*/
-	public static final String BROADCAST_EXTRA_UNPAUSED = "iron_maiden";
+	/**
+	 * Talks to other processes - only created when
+	 * someone binds with `ACTION_BIND_REMOTE`.
+	 */
+	private PlaybackServiceBinder remoteBinder = null;
 
-	/** Broadcast for when current music got played until the end */
-	public static final String BROADCAST_EXTRA_COMPLETED = "los_hermanos";
+	/**
+	 * Default for how long (minutes) we wait while paused
+	 * before going idle - see `enterIdle()`.
+	 */
+	public static final int DEFAULT_IDLE_TIMEOUT = 10;
 
-	/** Broadcast for when the user skipped to the next song */
-	public static final String BROADCAST_EXTRA_SKIP_NEXT = "paul_gilbert";
+	/**
+	 * If we've released the MediaPlayer after being paused
+	 * for too long (we're still "paused" for everyone else).
+	 */
+	private boolean idle = false;
 
-	/** Broadcast for when the user skipped to the previous song */
-	public static final String BROADCAST_EXTRA_SKIP_PREVIOUS = "john_petrucci";
+	/**
+	 * Where to go once the song is prepared - used when
+	 * coming back from idle (0 if nowhere).
+	 */
+	private int pendingSeek = 0;
 
 	/**
-	 * Android Media Player - we control it in here.
+	 * Waits while paused to call `enterIdle()`.
 	 */
-	private MediaPlayer player;
+	private Handler idleHandler = new Handler();
+
+	private final Runnable idleTimeout = new Runnable() {
+		@Override
+		public void run() {
+			enterIdle();
+		}
+	};
 
 	/**
-	 * List of songs we're  currently playing.
+	 * Where we keep the queue while idle - once we leave the
+	 * foreground, the system might kill us at any time (see
+	 * `saveQueue()`).
 	 */
-	private ArrayList<Song> songs;
+	private static final String QUEUE_PREFERENCES = "queue";
 
 	/**
-	 * Index of the current song we're playing on the `songs` list.
+	 * If there's a queue saved there, so we only forget
+	 * it once.
 	 */
-	public int currentSongPosition;
+	private boolean queueSaved = false;
+
+	// For how long we've held each of these things.
+	// Logged when the service gets destroyed.
+	private final HoldTimer serviceTime  = new HoldTimer();
+	private final HoldTimer playerTime   = new HoldTimer();
+	private final HoldTimer wakeLockTime = new HoldTimer();
 
 	/**
 	 * Copy of the current song being played (or paused).
@@ -215,18 +292,10 @@ public class ServicePlayMusic extends Service
 
 
     /**
-     * Controller that communicates with the lock screen,
+     * Publishes the current song on the lock screen,
      * providing that fancy widget.
      */
-    RemoteControlClientCompat lockscreenController = null;
-
-    /**
-     * We use this to get the media buttons' Broadcasts and
-     * to control the lock screen widget.
-     *
-     * Component name of the MusicIntentReceiver.
-     */
-    ComponentName mediaButtonEventReceiver;
+    LockScreenWidget lockScreenWidget = null;
 
     /**
      * Use this to get audio focus:
@@ -246,13 +315,18 @@ public class ServicePlayMusic extends Service
 	public void onCreate() {
 		super.onCreate();
 
+		serviceTime.hold();
+
 		currentSongPosition = 0;
 
 		randomNumberGenerator = new Random();
 
         audioManager = (AudioManager) getSystemService(AUDIO_SERVICE);
 
-		initMusicPlayer();
+		// We might have been killed while idle - in that
+		// case we stay idle, where we were
+		if (! restoreQueue())
+			initMusicPlayer();
 
 		Context context = getApplicationContext();
 
@@ -260,8 +334,10 @@ public class ServicePlayMusic extends Service
         Intent scrobblerIntent = new Intent(context, ServiceScrobbleMusic.class);
         context.startService(scrobblerIntent);
 
-		// Registering our BroadcastReceiver to listen to orders
-        // from inside our own application.
+		// Listening to orders from inside our own application...
+		kMP.events.register(commandListener);
+
+		// ...including the ones that still come as Intents.
 		LocalBroadcastManager
 		.getInstance(getApplicationContext())
 		.registerReceiver(localBroadcastReceiver, new IntentFilter(ServicePlayMusic.BROADCAST_ORDER));
@@ -284,8 +360,13 @@ public class ServicePlayMusic extends Service
 		if (player == null)
 			player = new MediaPlayer();
 
+		playerTime.hold();
+
 		// Assures the CPU continues running this service
 		// even when the device is sleeping.
+		//
+		// (the MediaPlayer only holds it while started - see
+		//  `wakeLockTime`)
 		player.setWakeMode(getApplicationContext(),
 				PowerManager.PARTIAL_WAKE_LOCK);
 
@@ -295,6 +376,7 @@ public class ServicePlayMusic extends Service
 		player.setOnPreparedListener(this); // player initialized
 		player.setOnCompletionListener(this); // song completed
 		player.setOnErrorListener(this);
+		player.setOnSeekCompleteListener(this); // seek finished
 
 		Log.w(TAG, "initMusicPlayer");
 	}
@@ -310,11 +392,245 @@ public class ServicePlayMusic extends Service
 		if (player == null)
 			return;
 
+		releasePlayer();
+
+		playbackPosition = PlaybackPosition.STOPPED;
+
+		Log.w(TAG, "stopMusicPlayer");
+	}
+
+	/**
+	 * Gets rid of the MediaPlayer (and its wake lock),
+	 * keeping everything else.
+	 */
+	private void releasePlayer() {
 		player.stop();
 		player.release();
 		player = null;
 
-		Log.w(TAG, "stopMusicPlayer");
+		wakeLockTime.release();
+		playerTime.release();
+	}
+
+	/**
+	 * How long (milliseconds) we wait while paused before
+	 * going idle, from the Settings (-1 for never).
+	 */
+	private long getIdleTimeout() {
+		int minutes = DEFAULT_IDLE_TIMEOUT;
+
+		try {
+			minutes = Integer.parseInt(kMP.settings.get("idle_timeout", Integer.toString(DEFAULT_IDLE_TIMEOUT)));
+		}
+		catch (NumberFormatException e) {
+			// Keep the default
+		}
+
+		if (minutes < 0)
+			return -1;
+
+		return minutes * 60 * 1000L;
+	}
+
+	/**
+	 * Starts counting to go idle (if the Settings say so).
+	 *
+	 * @see #enterIdle()
+	 */
+	private void scheduleIdle() {
+		idleHandler.removeCallbacks(idleTimeout);
+
+		long timeout = getIdleTimeout();
+
+		if (timeout >= 0)
+			idleHandler.postDelayed(idleTimeout, timeout);
+	}
+
+	private void cancelIdle() {
+		idleHandler.removeCallbacks(idleTimeout);
+	}
+
+	/**
+	 * Stops holding stuff we don't need while paused.
+	 *
+	 * When the user pauses and walks away, there's no point
+	 * on keeping a prepared MediaPlayer (with all its native
+	 * resources and its wake lock) or staying on the
+	 * foreground - the system might want that memory.
+	 *
+	 * So we:
+	 *
+	 * - Remember where the song was (`playbackPosition`
+	 *   stays as it is);
+	 * - Release the MediaPlayer;
+	 * - Leave the foreground, removing the notification.
+	 *
+	 * For everyone else we're still paused - on the next
+	 * `unpausePlayer()` the song gets prepared again and
+	 * continues from where it was.
+	 *
+	 * @note Only works while paused.
+	 */
+	public void enterIdle() {
+		cancelIdle();
+
+		if ((serviceState != ServiceState.Paused) || idle || (player == null))
+			return;
+
+		// Before leaving the foreground
+		saveQueue();
+
+		releasePlayer();
+		cancelNotification();
+
+		idle = true;
+
+		Log.w(TAG, "idle at " + playbackPosition.position + "ms, wake lock held " + wakeLockTime +
+		           ", player held " + playerTime + " since " + serviceTime.getTotal() + "ms");
+	}
+
+	public boolean isIdle() {
+		return idle;
+	}
+
+	/**
+	 * Prepares the current song again after `enterIdle()`,
+	 * starting from where it was.
+	 *
+	 * @note The notification comes back on `onPrepared()`.
+	 */
+	private void leaveIdle() {
+		if (! idle)
+			return;
+
+		idle = false;
+
+		forgetQueue();
+
+		if (player == null)
+			initMusicPlayer();
+
+		if (currentSong == null)
+			return;
+
+		pendingSeek = (int)playbackPosition.position;
+
+		prepareSong(currentSong);
+
+		Log.w(TAG, "leaving idle");
+	}
+
+	/**
+	 * Writes the queue, the current song and where it was,
+	 * so `restoreQueue()` can bring them back.
+	 *
+	 * Songs go as their IDs; the ones found by walking
+	 * folders also go with their files.
+	 */
+	private void saveQueue() {
+		if ((songs == null) || songs.isEmpty())
+			return;
+
+		StringBuilder ids   = new StringBuilder();
+		StringBuilder paths = new StringBuilder();
+
+		for (Song song : songs) {
+			if (ids.length() > 0)
+				ids.append(',');
+
+			ids.append(song.getId());
+
+			if (song.isDiscovered())
+				paths.append(song.getId()).append('\t').append(song.getFilePath()).append('\n');
+		}
+
+		// Not `apply()` - we might be gone before it ends
+		getSharedPreferences(QUEUE_PREFERENCES, MODE_PRIVATE).edit()
+		.putString("ids", ids.toString())
+		.putString("paths", paths.toString())
+		.putInt("index", currentSongPosition)
+		.putLong("position", playbackPosition.position)
+		.putLong("duration", playbackPosition.duration)
+		.commit();
+
+		queueSaved = true;
+	}
+
+	/**
+	 * Brings back what `saveQueue()` wrote, going idle
+	 * (paused, without a MediaPlayer) on the song we were.
+	 *
+	 * Songs not on our library yet get only their IDs
+	 * (and files) - enough to play them.
+	 *
+	 * @return If there was something to restore.
+	 */
+	private boolean restoreQueue() {
+		SharedPreferences saved = getSharedPreferences(QUEUE_PREFERENCES, MODE_PRIVATE);
+
+		String ids = saved.getString("ids", "");
+
+		if (ids.isEmpty())
+			return false;
+
+		queueSaved = true;
+
+		HashMap<Long, String> paths    = new HashMap<Long, String>();
+		ArrayList<Song>       restored = new ArrayList<Song>();
+
+		try {
+			for (String line : saved.getString("paths", "").split("\n")) {
+				int tab = line.indexOf('\t');
+
+				if (tab > 0)
+					paths.put(Long.parseLong(line.substring(0, tab)), line.substring(tab + 1));
+			}
+
+			for (String id : ids.split(",")) {
+				long songId = Long.parseLong(id);
+				Song song   = kMP.songs.getSongById(songId);
+
+				restored.add((song != null) ? song : new Song(songId, paths.get(songId)));
+			}
+		}
+		catch (NumberFormatException e) {
+			Log.w(TAG, "Invalid saved queue", e);
+			forgetQueue();
+			return false;
+		}
+
+		int index = saved.getInt("index", 0);
+
+		if ((index < 0) || (index >= restored.size()))
+			index = 0;
+
+		songs               = restored;
+		currentSongPosition = index;
+		currentSong         = restored.get(index);
+
+		playbackPosition = new PlaybackPosition(saved.getLong("position", 0),
+		                                        saved.getLong("duration", 0),
+		                                        SystemClock.elapsedRealtime(),
+		                                        false);
+
+		serviceState = ServiceState.Paused;
+		idle         = true;
+
+		Log.w(TAG, "restored " + restored.size() + " songs, at " + index + " (" + playbackPosition.position + "ms)");
+		return true;
+	}
+
+	/**
+	 * We're playing again - what `saveQueue()` wrote
+	 * is old now.
+	 */
+	private void forgetQueue() {
+		if (! queueSaved)
+			return;
+
+		getSharedPreferences(QUEUE_PREFERENCES, MODE_PRIVATE).edit().clear().apply();
+
+		queueSaved = false;
 	}
 
 	/**
@@ -325,7 +641,24 @@ public class ServicePlayMusic extends Service
 	 * @note Make sure to call {@link #playSong()} after this.
 	 */
 	public void setList(ArrayList<Song> theSongs) {
-		songs = theSongs;
+
+		// Our own copy - adding songs to the queue must
+		// not change the list the user is browsing.
+		songs = (theSongs == null) ?
+		        new ArrayList<Song>() :
+		        new ArrayList<Song>(theSongs);
+
+		playNextPosition = -1;
+	}
+
+	/**
+	 * The "Now Playing List" itself.
+	 *
+	 * @note Don't change it - go through `add()`,
+	 *       `addAll()` and `addNext()` instead.
+	 */
+	public ArrayList<Song> getList() {
+		return songs;
 	}
 
 	/**
@@ -334,7 +667,69 @@ public class ServicePlayMusic extends Service
 	 * @param song New song to put at the end.
 	 */
 	public void add(Song song) {
-		songs.add(song);
+		addAll(Collections.singletonList(song));
+	}
+
+	/**
+	 * Appends all `newSongs` to the end of the currently
+	 * playing queue, at once.
+	 *
+	 * The song that's playing keeps playing.
+	 */
+	public void addAll(List<Song> newSongs) {
+		if (newSongs.isEmpty())
+			return;
+
+		if (songs == null)
+			songs = new ArrayList<Song>();
+
+		songs.addAll(newSongs);
+
+		kMP.events.post(PlayerEvent.QUEUE_CHANGED, PlayerEvent.NO_SONG);
+	}
+
+	/**
+	 * Places all `newSongs` right after the current song,
+	 * at once - they'll be the next ones to play.
+	 *
+	 * Calling it again before the current song changes
+	 * places songs after the ones added before (so they
+	 * play in the order the user added them).
+	 *
+	 * The song that's playing keeps playing.
+	 */
+	public void addNext(List<Song> newSongs) {
+		if ((songs == null) || songs.isEmpty()) {
+			addAll(newSongs);
+			return;
+		}
+
+		if (newSongs.isEmpty())
+			return;
+
+		if ((playNextAnchor != currentSongPosition) ||
+		    (playNextPosition <= currentSongPosition) ||
+		    (playNextPosition > songs.size()))
+			playNextPosition = currentSongPosition + 1;
+
+		// Everything is after the current song,
+		// so its position stays the same
+		songs.addAll(playNextPosition, newSongs);
+
+		playNextPosition += newSongs.size();
+		playNextAnchor    = currentSongPosition;
+
+		kMP.events.post(PlayerEvent.QUEUE_CHANGED, PlayerEvent.NO_SONG);
+	}
+
+	/**
+	 * If there are songs added by `addNext()` waiting
+	 * right after the current one.
+	 */
+	private boolean hasPlayNext() {
+		return (playNextAnchor == currentSongPosition) &&
+		       (playNextPosition > currentSongPosition + 1) &&
+		       (playNextPosition <= songs.size());
 	}
 
     /**
@@ -352,6 +747,10 @@ public class ServicePlayMusic extends Service
 	 *
 	 * @note It is static so we can look out for external broadcasts
 	 *       even when the service is offline.
+	 *
+	 * @note It always runs on the app's main process, so orders
+	 *       go through `sendCommand()` - the service might be on
+	 *       another one.
 	 */
     public static class ExternalBroadcastReceiver extends BroadcastReceiver {
 
@@ -360,9 +759,9 @@ public class ServicePlayMusic extends Service
 
     		Log.w(TAG, "external broadcast");
 
-    		// Broadcasting orders to our MusicService
-    		// locally (inside the application)
-    		LocalBroadcastManager local = LocalBroadcastManager.getInstance(context);
+			// We might have been started just for this
+			if (! kMP.settings.isLoaded())
+				kMP.settings.loadShared(context);
 
 			String action = intent.getAction();
 
@@ -378,11 +777,8 @@ public class ServicePlayMusic extends Service
     			String text = context.getString(R.string.service_music_play_headphone_off);
     			Toast.makeText(context, text, Toast.LENGTH_SHORT).show();
 
-    			// send an intent to our MusicService to telling it to pause the audio
-    			Intent broadcastIntent = new Intent(ServicePlayMusic.BROADCAST_ORDER);
-				broadcastIntent.putExtra(ServicePlayMusic.BROADCAST_EXTRA_GET_ORDER, ServicePlayMusic.BROADCAST_ORDER_PAUSE);
-
-				local.sendBroadcast(broadcastIntent);
+    			// Telling our MusicService to pause the audio
+    			sendCommand(context, PlayerEvent.COMMAND_PAUSE);
     			Log.w(TAG, "becoming noisy");
     			return;
     		}
@@ -396,46 +792,42 @@ public class ServicePlayMusic extends Service
     			if (keyEvent.getAction() != KeyEvent.ACTION_DOWN)
     				return;
 
-    			String intentValue = null;
+    			int command = -1;
 
     			switch (keyEvent.getKeyCode()) {
 
     			case KeyEvent.KEYCODE_HEADSETHOOK:
     			case KeyEvent.KEYCODE_MEDIA_PLAY_PAUSE:
-    				intentValue = ServicePlayMusic.BROADCAST_ORDER_TOGGLE_PLAYBACK;
+    				command = PlayerEvent.COMMAND_TOGGLE_PLAYBACK;
     				Log.w(TAG, "media play pause");
     				break;
 
     			case KeyEvent.KEYCODE_MEDIA_PLAY:
-    				intentValue = ServicePlayMusic.BROADCAST_ORDER_PLAY;
+    				command = PlayerEvent.COMMAND_PLAY;
     				Log.w(TAG, "media play");
     				break;
 
     			case KeyEvent.KEYCODE_MEDIA_PAUSE:
-    				intentValue = ServicePlayMusic.BROADCAST_ORDER_PAUSE;
+    				command = PlayerEvent.COMMAND_PAUSE;
     				Log.w(TAG, "media pause");
     				break;
 
     			case KeyEvent.KEYCODE_MEDIA_NEXT:
-    				intentValue = ServicePlayMusic.BROADCAST_ORDER_SKIP;
+    				command = PlayerEvent.COMMAND_SKIP;
     				Log.w(TAG, "media next");
     				break;
 
     			case KeyEvent.KEYCODE_MEDIA_PREVIOUS:
     				// TODO: ensure that doing this in rapid succession actually plays the
     				// previous song
-    				intentValue = ServicePlayMusic.BROADCAST_ORDER_REWIND;
+    				command = PlayerEvent.COMMAND_REWIND;
     				Log.w(TAG, "media previous");
     				break;
     			}
 
-    			// Actually sending the Intent
-    			if (intentValue != null) {
-    				Intent broadcastIntent = new Intent(ServicePlayMusic.BROADCAST_ORDER);
-    				broadcastIntent.putExtra(ServicePlayMusic.BROADCAST_EXTRA_GET_ORDER, intentValue);
-
-    				local.sendBroadcast(broadcastIntent);
-    			}
+    			// Actually sending the order
+    			if (command != -1)
+    				sendCommand(context, command);
     		}
     	}
     }
@@ -462,14 +854,8 @@ public class ServicePlayMusic extends Service
 				if (connectedMicrophone && (serviceState == ServiceState.Paused)) {
 
 					// Will only do it if it's Setting is enabled, of course
-					if (kMP.settings.get("play_headphone_on", true)) {
-						LocalBroadcastManager local = LocalBroadcastManager.getInstance(context);
-
-						Intent broadcastIntent = new Intent(ServicePlayMusic.BROADCAST_ORDER);
-						broadcastIntent.putExtra(ServicePlayMusic.BROADCAST_EXTRA_GET_ORDER, ServicePlayMusic.BROADCAST_ORDER_PLAY);
-
-						local.sendBroadcast(broadcastIntent);
-					}
+					if (kMP.settings.get("play_headphone_on", true))
+						kMP.events.command(PlayerEvent.COMMAND_PLAY);
 				}
 
 				// I wonder what's this for
@@ -484,9 +870,46 @@ public class ServicePlayMusic extends Service
 		}
     };
 
+	/**
+	 * Obeys the orders sent to us through `kMP.events`.
+	 */
+	PlayerEventBus.Listener commandListener = new PlayerEventBus.Listener() {
+		@Override
+		public void onPlayerEvent(PlayerEvent event) {
+
+			switch (event.code) {
+
+			case PlayerEvent.COMMAND_PAUSE:
+				pausePlayer();
+				break;
+
+			case PlayerEvent.COMMAND_PLAY:
+				unpausePlayer();
+				break;
+
+			case PlayerEvent.COMMAND_TOGGLE_PLAYBACK:
+				togglePlayback();
+				break;
+
+			case PlayerEvent.COMMAND_SKIP:
+				next(true);
+				playSong();
+				break;
+
+			case PlayerEvent.COMMAND_REWIND:
+				previous(true);
+				playSong();
+				break;
+			}
+		}
+	};
+
 	/**
 	 * The thing that will keep an eye on LocalBroadcasts
 	 * for the MusicService.
+	 *
+	 * @note Orders should go through `kMP.events` now;
+	 *       this only converts the old Intents into them.
 	 */
 	BroadcastReceiver localBroadcastReceiver = new BroadcastReceiver() {
 		@Override
@@ -494,29 +917,14 @@ public class ServicePlayMusic extends Service
 
 			// Getting the information sent by the MusicService
 			// (and ignoring it if invalid)
-			String order = intent.getStringExtra(ServicePlayMusic.BROADCAST_EXTRA_GET_ORDER);
+			int command = PlayerEventIntentAdapter.orderToCommand(
+					intent.getStringExtra(ServicePlayMusic.BROADCAST_EXTRA_GET_ORDER));
 
 			// What?
-			if (order == null)
+			if (command == -1)
 				return;
 
-			if (order.equals(ServicePlayMusic.BROADCAST_ORDER_PAUSE)) {
-				pausePlayer();
-			}
-			else if (order.equals(ServicePlayMusic.BROADCAST_ORDER_PLAY)) {
-				unpausePlayer();
-			}
-			else if (order.equals(ServicePlayMusic.BROADCAST_ORDER_TOGGLE_PLAYBACK)) {
-				togglePlayback();
-			}
-			else if (order.equals(ServicePlayMusic.BROADCAST_ORDER_SKIP)) {
-				next(true);
-				playSong();
-			}
-			else if (order.equals(ServicePlayMusic.BROADCAST_ORDER_REWIND)) {
-				previous(true);
-				playSong();
-			}
+			kMP.events.command(command);
 
 			Log.w(TAG, "local broadcast received");
 		}
@@ -529,6 +937,12 @@ public class ServicePlayMusic extends Service
 	 * @return If we have it.
 	 */
 	private boolean requestAudioFocus() {
+
+		// We ask only once - the system keeps it with us
+		// until `#onAudioFocusChange()` tells otherwise.
+		if (hasAudioFocus)
+			return true;
+
 		//Request audio focus for playback
 		int result = audioManager.requestAudioFocus(
 				this,
@@ -536,9 +950,18 @@ public class ServicePlayMusic extends Service
 				AudioManager.AUDIOFOCUS_GAIN);
 
 		//Check if audio focus was granted. If not, stop the service.
-		return (result == AudioManager.AUDIOFOCUS_REQUEST_GRANTED);
+		hasAudioFocus = (result == AudioManager.AUDIOFOCUS_REQUEST_GRANTED);
+
+		return hasAudioFocus;
 	}
 
+	/**
+	 * Tells if we currently have the audio focus.
+	 *
+	 * @see #requestAudioFocus()
+	 */
+	private boolean hasAudioFocus = false;
+
 	/**
 	 * Does something when the audio focus state changed
 	 *
@@ -561,9 +984,10 @@ public class ServicePlayMusic extends Service
 		case AudioManager.AUDIOFOCUS_GAIN:
 			Log.w(TAG, "audiofocus gain");
 
-			if (player == null)
-				initMusicPlayer();
+			hasAudioFocus = true;
 
+			// (if we went idle meanwhile, this prepares
+			//  the song again)
 			if (pausedTemporarilyDueToAudioFocus) {
 				pausedTemporarilyDueToAudioFocus = false;
 				unpausePlayer();
@@ -571,7 +995,9 @@ public class ServicePlayMusic extends Service
 
 			if (loweredVolumeDueToAudioFocus) {
 				loweredVolumeDueToAudioFocus = false;
-				player.setVolume(1.0f, 1.0f);
+
+				if (player != null)
+					player.setVolume(1.0f, 1.0f);
 			}
 			break;
 
@@ -579,12 +1005,19 @@ public class ServicePlayMusic extends Service
 		case AudioManager.AUDIOFOCUS_LOSS:
 			Log.w(TAG, "audiofocus loss");
 
+			// Next time we play we'll need to ask again
+			hasAudioFocus = false;
+
 			// Giving up everything
 			//audioManager.unregisterMediaButtonEventReceiver(mediaButtonEventReceiver);
 			//audioManager.abandonAudioFocus(this);
 
-			//pausePlayer();
-			stopMusicPlayer();
+			// Pausing and releasing the MediaPlayer right
+			// away, so it can still continue later
+			if (! isPaused())
+				pausePlayer();
+
+			enterIdle();
 			break;
 
 		// Just lost audio focus but will get it back shortly
@@ -602,6 +1035,9 @@ public class ServicePlayMusic extends Service
 		case AudioManager.AUDIOFOCUS_LOSS_TRANSIENT_CAN_DUCK:
 			Log.w(TAG, "audiofocus loss transient can duck");
 
+			if (player == null)
+				break;
+
 			player.setVolume(0.1f, 0.1f);
 			loweredVolumeDueToAudioFocus = true;
 			break;
@@ -645,70 +1081,36 @@ public class ServicePlayMusic extends Service
 		    return;
 		}
 
-		Log.w("service", "audio_focus_granted");
-
 		// The Lock-Screen widget was not created up until now.
-		// (both of the null-checks below)
-		if (mediaButtonEventReceiver == null)
-			mediaButtonEventReceiver = new ComponentName(this, ExternalBroadcastReceiver.class);
-
-        if (lockscreenController == null) {
-            Intent audioButtonIntent = new Intent(Intent.ACTION_MEDIA_BUTTON);
-            audioButtonIntent.setComponent(mediaButtonEventReceiver);
-
-            PendingIntent pending = PendingIntent.getBroadcast(this, 0, audioButtonIntent, 0);
-
-            lockscreenController = new RemoteControlClientCompat(pending);
-
-            RemoteControlHelper.registerRemoteControlClient(audioManager, lockscreenController);
-            audioManager.registerMediaButtonEventReceiver(mediaButtonEventReceiver);
-
-            Log.w("service", "created control compat");
-        }
+		if (lockScreenWidget == null)
+			lockScreenWidget = new LockScreenWidget(this,
+			                                        audioManager,
+			                                        new ComponentName(this, ExternalBroadcastReceiver.class));
 
-        // Current state of the Lock-Screen Widget
-        lockscreenController.setPlaybackState(state);
+		// So it can move the progress bar on its own
+		lockScreenWidget.setPosition(playbackPosition);
 
-        // All buttons the Lock-Screen Widget supports
-        // (will be broadcasts)
-        lockscreenController.setTransportControlFlags(
-        		RemoteControlClient.FLAG_KEY_MEDIA_PLAY     |
-        		RemoteControlClient.FLAG_KEY_MEDIA_PAUSE    |
-        		RemoteControlClient.FLAG_KEY_MEDIA_PREVIOUS |
-        		RemoteControlClient.FLAG_KEY_MEDIA_NEXT);
-
-        // Update the current song metadata
-        // on the Lock-Screen Widget
-        lockscreenController
-        		// Starts editing (before #apply())
-        		.editMetadata(true)
-
-        		// Sending all metadata of the current song
-                .putString(android.media.MediaMetadataRetriever.METADATA_KEY_ARTIST,   song.getArtist())
-                .putString(android.media.MediaMetadataRetriever.METADATA_KEY_ALBUM,    song.getAlbum())
-                .putString(android.media.MediaMetadataRetriever.METADATA_KEY_TITLE,    song.getTitle())
-                .putLong  (android.media.MediaMetadataRetriever.METADATA_KEY_DURATION, song.getDuration())
-
-                // TODO: fetch real item artwork
-                //.putBitmap(
-                //        RemoteControlClientCompat.MetadataEditorCompat.METADATA_KEY_ARTWORK,
-                //        mDummyAlbumArt)
-
-                // Saves (after #editMetadata())
-                .apply();
+		// Only sends what's different from the last time
+		lockScreenWidget.update(song, state);
+	}
 
-        Log.w("service", "remote control client applied");
+	/**
+	 * Changes the state of the lock-screen widget, keeping
+	 * the song it's displaying.
+	 *
+	 * @note Does nothing if the widget wasn't created yet.
+	 *
+	 * @see #updateLockScreenWidget(Song, int)
+	 */
+	private void updateLockScreenWidgetState(int state) {
+		if (lockScreenWidget != null)
+			lockScreenWidget.setPlaybackState(state);
 	}
 
 	public void destroyLockScreenWidget() {
-		if ((audioManager != null) && (lockscreenController != null)) {
-			//RemoteControlHelper.unregisterRemoteControlClient(audioManager, lockscreenController);
-			lockscreenController = null;
-		}
-
-		if ((audioManager != null) && (mediaButtonEventReceiver != null)) {
-			audioManager.unregisterMediaButtonEventReceiver(mediaButtonEventReceiver);
-			mediaButtonEventReceiver = null;
+		if (lockScreenWidget != null) {
+			lockScreenWidget.destroy();
+			lockScreenWidget = null;
 		}
 	}
 
@@ -720,8 +1122,18 @@ public class ServicePlayMusic extends Service
 
 		serviceState = ServiceState.Playing;
 
+		// Coming back from idle
+		if (pendingSeek > 0) {
+			player.seekTo(pendingSeek);
+			pendingSeek = 0;
+		}
+
 		// Start playback
 		player.start();
+		wakeLockTime.hold();
+
+		// Only place we ask for the duration
+		publishPosition(true, true);
 
 		// If the user clicks on the notification, let's spawn the
 		// Now Playing screen.
@@ -752,11 +1164,14 @@ public class ServicePlayMusic extends Service
 		// Keep this state!
 		serviceState = ServiceState.Playing;
 
+		// Stopped on its own
+		wakeLockTime.release();
+
 		// TODO: Why do I need this?
 /*		if (player.getCurrentPosition() <= 0)
 			return;
 */
-		broadcastState(ServicePlayMusic.BROADCAST_EXTRA_COMPLETED);
+		broadcastState(PlayerEvent.COMPLETED);
 
 		// Repeating current song if desired
 		if (repeatMode) {
@@ -798,6 +1213,21 @@ public class ServicePlayMusic extends Service
 	public void onDestroy() {
 		Context context = getApplicationContext();
 
+		kMP.events.unregister(commandListener);
+
+		LocalBroadcastManager
+		.getInstance(context)
+		.unregisterReceiver(localBroadcastReceiver);
+
+		Log.w(TAG, "events dispatched: " + kMP.events.getDispatchedEvents() +
+		           ", average " + kMP.events.getAverageDispatchNanos() + "ns" +
+		           ", max " + kMP.events.getMaxDispatchNanos() + "ns");
+
+		Log.w(TAG, "MediaPlayer position calls: " + nativeCalls.get() +
+		           " (" + getNativeCallsPerSecond() + "/s)");
+
+		cancelIdle();
+
 		cancelNotification();
 
 		currentSong = null;
@@ -806,13 +1236,25 @@ public class ServicePlayMusic extends Service
 		Intent scrobblerIntent = new Intent(context, ServiceScrobbleMusic.class);
 		context.stopService(scrobblerIntent);
 
-		if (audioManager != null)
+		if (audioManager != null) {
 			audioManager.abandonAudioFocus(this);
+			hasAudioFocus = false;
+		}
 
 		stopMusicPlayer();
 
 		destroyLockScreenWidget();
 
+		if (remoteBinder != null) {
+			remoteBinder.close();
+			remoteBinder = null;
+		}
+
+		serviceTime.release();
+
+		Log.w(TAG, "service alive " + serviceTime + ", player held " + playerTime +
+		           ", wake lock held " + wakeLockTime);
+
 		Log.w(TAG, "onDestroy");
 		super.onDestroy();
 	}
@@ -842,11 +1284,10 @@ public class ServicePlayMusic extends Service
 			return;
 
 		if (userSkippedSong)
-			broadcastState(ServicePlayMusic.BROADCAST_EXTRA_SKIP_PREVIOUS);
+			broadcastState(PlayerEvent.SKIP_PREVIOUS);
 
 		// Updates Lock-Screen Widget
-		if (lockscreenController != null)
-			lockscreenController.setPlaybackState(RemoteControlClient.PLAYSTATE_SKIPPING_BACKWARDS);
+		updateLockScreenWidgetState(RemoteControlClient.PLAYSTATE_SKIPPING_BACKWARDS);
 
 		currentSongPosition--;
 		if (currentSongPosition < 0)
@@ -868,11 +1309,17 @@ public class ServicePlayMusic extends Service
 		// TODO or maybe a playlist, whatever
 
 		if (userSkippedSong)
-			broadcastState(ServicePlayMusic.BROADCAST_EXTRA_SKIP_NEXT);
+			broadcastState(PlayerEvent.SKIP_NEXT);
 
 		// Updates Lock-Screen Widget
-		if (lockscreenController != null)
-			lockscreenController.setPlaybackState(RemoteControlClient.PLAYSTATE_SKIPPING_FORWARDS);
+		updateLockScreenWidgetState(RemoteControlClient.PLAYSTATE_SKIPPING_FORWARDS);
+
+		// Songs to "play next" come first, even on shuffle
+		if (hasPlayNext()) {
+			currentSongPosition++;
+			playNextAnchor = currentSongPosition;
+			return;
+		}
 
 		if (shuffleMode) {
 			int newSongPosition = currentSongPosition;
@@ -890,38 +1337,132 @@ public class ServicePlayMusic extends Service
 			currentSongPosition = 0;
 	}
 
+	/**
+	 * Where the current song is, in milliseconds.
+	 *
+	 * @note Doesn't ask the MediaPlayer - see
+	 *       `getPlaybackPosition()`.
+	 */
 	public int getPosition() {
-		return player.getCurrentPosition();
+		return (int)getPlaybackPosition().getPosition();
 	}
 
+	/**
+	 * Duration of the current song, in milliseconds.
+	 */
 	public int getDuration() {
-		return player.getDuration();
+		return (int)getPlaybackPosition().duration;
 	}
 
+	/**
+	 * Tells if there's a song playing right now
+	 * (not paused or still preparing).
+	 */
 	public boolean isPlaying() {
-		boolean returnValue = false;
+		return playbackPosition.playing;
+	}
 
-		try {
-			returnValue = player.isPlaying();
-		}
-		catch (IllegalStateException e) {
-			player.reset();
-			player.prepareAsync();
+	/**
+	 * Where the current song was at some moment, so you
+	 * can tell where it is now (see `PlaybackPosition`).
+	 *
+	 * Call it as often as you like - only once every
+	 * `RESYNC_INTERVAL` it asks the MediaPlayer.
+	 */
+	public PlaybackPosition getPlaybackPosition() {
+		PlaybackPosition current = playbackPosition;
+
+		if (current.playing &&
+		    (current.getAge(SystemClock.elapsedRealtime()) > RESYNC_INTERVAL) &&
+		    (serviceState == ServiceState.Playing))
+			publishPosition(true, false);
+
+		return playbackPosition;
+	}
+
+	/**
+	 * Asks the MediaPlayer where it is, telling everyone.
+	 *
+	 * @param playing      If the song is moving from now on.
+	 * @param readDuration If we should ask for the duration too
+	 *                     (otherwise we keep the one we had).
+	 */
+	private void publishPosition(boolean playing, boolean readDuration) {
+		if (player == null) {
+			playbackPosition = PlaybackPosition.STOPPED;
+			return;
 		}
 
-		return returnValue;
+		long now = SystemClock.elapsedRealtime();
+
+		long position = player.getCurrentPosition();
+		long duration = playbackPosition.duration;
+
+		if (readDuration)
+			duration = player.getDuration();
+
+		nativeCalls.addAndGet(readDuration ? 2 : 1);
+
+		setPlaybackPosition(new PlaybackPosition(position, duration, now, playing));
+	}
+
+	private void setPlaybackPosition(PlaybackPosition position) {
+		playbackPosition = position;
+
+		if (lockScreenWidget != null)
+			lockScreenWidget.setPosition(position);
+
+		if (remoteBinder != null)
+			remoteBinder.positionChanged(position);
+	}
+
+	/**
+	 * How many times per second we've asked the MediaPlayer
+	 * for the position or duration (since we started or
+	 * `resetNativeCalls()`).
+	 */
+	public float getNativeCallsPerSecond() {
+		long elapsed = SystemClock.elapsedRealtime() - nativeCallsSince;
+
+		if (elapsed <= 0)
+			return 0;
+
+		return nativeCalls.get() * 1000.0f / elapsed;
+	}
+
+	public void resetNativeCalls() {
+		nativeCalls.set(0);
+		nativeCallsSince = SystemClock.elapsedRealtime();
 	}
 
 	public boolean isPaused() {
 		return serviceState == ServiceState.Paused;
 	}
 
+	@Override
+	public Song getCurrentSong() {
+		return currentSong;
+	}
+
+	@Override
+	public int getCurrentSongPosition() {
+		return currentSongPosition;
+	}
+
 	/**
 	 * Actually plays the song set by `currentSongPosition`.
 	 */
 	public void playSong() {
 
-		player.reset();
+		// Whatever it was, we're not idle anymore
+		cancelIdle();
+		idle        = false;
+		pendingSeek = 0;
+
+		forgetQueue();
+
+		if (player == null)
+			initMusicPlayer();
 
 		// Get the song ID from the list, extract the ID and
 		// get an URL based on it
@@ -929,10 +1470,49 @@ public class ServicePlayMusic extends Service
 
 		currentSong = songToPlay;
 
+		// Not moving until it's prepared
+		setPlaybackPosition(new PlaybackPosition(0,
+		                                         Math.max(songToPlay.getDuration(), 0),
+		                                         SystemClock.elapsedRealtime(),
+		                                         false));
+
+		prepareSong(songToPlay);
+
+		broadcastState(PlayerEvent.PLAYING);
+
+		// Saved on another Thread, won't hold us
+		if ((kMP.history != null) && (currentSong != null))
+			kMP.history.record(currentSong);
+
+		// Rules like "never played" might have changed
+		if (currentSong != null)
+			kMP.smartPlaylists.songPlayed(currentSong.getId());
+
+		updateLockScreenWidget(currentSong, RemoteControlClient.PLAYSTATE_PLAYING);
+		Log.w(TAG, "play song");
+	}
+
+	/**
+	 * Makes the MediaPlayer load `songToPlay`, calling
+	 * `onPrepared()` when it's ready.
+	 */
+	private void prepareSong(Song songToPlay) {
+
+		player.reset();
+		wakeLockTime.release();
+
 		// Append the external URI with our songs'
-		Uri songToPlayURI = ContentUris.withAppendedId
-				(android.provider.MediaStore.Audio.Media.EXTERNAL_CONTENT_URI,
-				 songToPlay.getId());
+		//
+		// Songs the media database doesn't know about
+		// (found on folders) are played from their file.
+		Uri songToPlayURI;
+
+		if (songToPlay.isDiscovered())
+			songToPlayURI = Uri.fromFile(new File(songToPlay.getFilePath()));
+		else
+			songToPlayURI = ContentUris.withAppendedId
+					(android.provider.MediaStore.Audio.Media.EXTERNAL_CONTENT_URI,
+					 songToPlay.getId());
 
 		try {
 			player.setDataSource(getApplicationContext(), songToPlayURI);
@@ -950,43 +1530,65 @@ public class ServicePlayMusic extends Service
 		// When finished, will call `onPrepare`
 		player.prepareAsync();
 		serviceState = ServiceState.Preparing;
-
-		broadcastState(ServicePlayMusic.BROADCAST_EXTRA_PLAYING);
-
-		updateLockScreenWidget(currentSong, RemoteControlClient.PLAYSTATE_PLAYING);
-		Log.w(TAG, "play song");
 	}
 
 	public void pausePlayer() {
 		if (serviceState != ServiceState.Paused && serviceState != ServiceState.Playing)
 			return;
 
+		// Already paused (and released everything)
+		if (idle)
+			return;
+
 		player.pause();
 		serviceState = ServiceState.Paused;
+		wakeLockTime.release();
 
-		notification.notifyPaused(true);
+		// Where it stopped
+		publishPosition(false, false);
+
+		// If nothing happens for a while, we go idle
+		scheduleIdle();
+
+		if (notification != null)
+			notification.notifyPaused(true);
 
         // Updates Lock-Screen Widget
-		if (lockscreenController != null)
-			lockscreenController.setPlaybackState(RemoteControlClient.PLAYSTATE_PAUSED);
+		updateLockScreenWidgetState(RemoteControlClient.PLAYSTATE_PAUSED);
 
-		broadcastState(ServicePlayMusic.BROADCAST_EXTRA_PAUSED);
+		broadcastState(PlayerEvent.PAUSED);
 	}
 
 	public void unpausePlayer() {
 		if (serviceState != ServiceState.Paused && serviceState != ServiceState.Playing)
 			return;
 
+		cancelIdle();
+
+		if (idle) {
+			// Will start playing once it's prepared again
+			leaveIdle();
+
+			updateLockScreenWidgetState(RemoteControlClient.PLAYSTATE_PLAYING);
+			broadcastState(PlayerEvent.UNPAUSED);
+			return;
+		}
+
 		player.start();
 		serviceState = ServiceState.Playing;
+		wakeLockTime.hold();
+
+		// Starts moving from where it was paused
+		// (no need to ask the MediaPlayer)
+		setPlaybackPosition(playbackPosition.withPlaying(true, SystemClock.elapsedRealtime()));
 
-		notification.notifyPaused(false);
+		if (notification != null)
+			notification.notifyPaused(false);
 
 		// Updates Lock-Screen Widget
-		if (lockscreenController != null)
-			lockscreenController.setPlaybackState(RemoteControlClient.PLAYSTATE_PLAYING);
+		updateLockScreenWidgetState(RemoteControlClient.PLAYSTATE_PLAYING);
 
-		broadcastState(ServicePlayMusic.BROADCAST_EXTRA_UNPAUSED);
+		broadcastState(PlayerEvent.UNPAUSED);
 	}
 
 	/**
@@ -1003,7 +1605,27 @@ public class ServicePlayMusic extends Service
 	}
 
 	public void seekTo(int position) {
+
+		// We'll go there when we come back
+		if (idle) {
+			setPlaybackPosition(playbackPosition.withPosition(position, SystemClock.elapsedRealtime()));
+			return;
+		}
+
 		player.seekTo(position);
+
+		// Showing the new position right away,
+		// until the seek finishes
+		setPlaybackPosition(playbackPosition.withPosition(position, SystemClock.elapsedRealtime()));
+	}
+
+	/**
+	 * Called when a `seekTo()` finishes - it might not have
+	 * gone exactly where we wanted.
+	 */
+	@Override
+	public void onSeekComplete(MediaPlayer mp) {
+		publishPosition(playbackPosition.playing, false);
 	}
 
 	/**
@@ -1062,14 +1684,71 @@ public class ServicePlayMusic extends Service
 	 */
 	private final IBinder musicBind = new MusicBinder();
 
+	/**
+	 * Called for every `startService()` - including the
+	 * orders from `sendCommand()`.
+	 */
+	@Override
+	public int onStartCommand(Intent intent, int flags, int startId) {
+
+		if ((intent != null) && ACTION_COMMAND.equals(intent.getAction()))
+			kMP.events.command(intent.getIntExtra(EXTRA_COMMAND, -1));
+
+		return super.onStartCommand(intent, flags, startId);
+	}
+
+	/**
+	 * Gives an order to the music service, wherever it is.
+	 *
+	 * If it's on this process we tell it right away. Otherwise
+	 * (on ":playback", see `ServicePlaybackProcess`) it goes
+	 * through `startService()` - which works even if this process
+	 * was just started for a receiver and isn't bound to it.
+	 *
+	 * @param command One of `PlayerEvent.COMMAND_*`.
+	 */
+	public static void sendCommand(Context c, int command) {
+
+		if (kMP.musicService instanceof ServicePlayMusic) {
+			kMP.events.command(command);
+			return;
+		}
+
+		// We might have been started just for this
+		if (! kMP.settings.isLoaded())
+			kMP.settings.loadShared(c);
+
+		Class<?> service = kMP.settings.get("separate_process", false) ?
+		                   ServicePlaybackProcess.class :
+		                   ServicePlayMusic.class;
+
+		Intent intent = new Intent(c, service);
+		intent.setAction(ACTION_COMMAND);
+		intent.putExtra(EXTRA_COMMAND, command);
+
+		c.startService(intent);
+	}
+
 	/**
 	 * Called when the Service is finally bound to the app.
 	 */
 	@Override
 	public IBinder onBind(Intent intent) {
+
+		if (ACTION_BIND_REMOTE.equals(intent.getAction())) {
+			if (remoteBinder == null)
+				remoteBinder = new PlaybackServiceBinder(this);
+
+			return remoteBinder;
+		}
 		return musicBind;
 	}
 
+	@Override
+	public boolean isBound() {
+		return musicBound;
+	}
+
 	/**
 	 * Called when the Service is unbound - user quitting
 	 * the app or something.
@@ -1106,50 +1785,18 @@ public class ServicePlayMusic extends Service
 		                         0 :
 		                         currentSong.getId());
 
-		if (rule.equals("title"))
-			Collections.sort(songs, new Comparator<Song>() {
-				public int compare(Song a, Song b)
-				{
-					return a.getTitle().compareTo(b.getTitle());
-				}
-			});
-
-		else if (rule.equals("artist"))
-			Collections.sort(songs, new Comparator<Song>() {
-				public int compare(Song a, Song b)
-				{
-					return a.getArtist().compareTo(b.getArtist());
-				}
-			});
-
-		else if (rule.equals("album"))
-			Collections.sort(songs, new Comparator<Song>() {
-				public int compare(Song a, Song b)
-				{
-					return a.getAlbum().compareTo(b.getAlbum());
-				}
-			});
+		Comparator<Song> comparator = SongComparators.forRule(rule);
 
-		else if (rule.equals("track"))
-			Collections.sort(songs, new Comparator<Song>() {
-				public int compare(Song a, Song b)
-				{
-					int left  = a.getTrackNumber();
-					int right = b.getTrackNumber();
-
-					if (left == right)
-						return 0;
-
-					return ((left < right) ?
-					         -1 :
-					         1);
-				}
-			});
+		if (comparator != null)
+			Collections.sort(songs, comparator);
 
 		else if (rule.equals("random")) {
 			Collections.shuffle(songs, randomNumberGenerator);
 		}
 
+		// Songs to "play next" are all over the place now
+		playNextPosition = -1;
+
 
 		// Now that we sorted, get again the current song
 		// position.
@@ -1203,25 +1850,17 @@ public class ServicePlayMusic extends Service
 	/**
 	 * Shouts the state of the Music Service.
 	 *
-	 * @note This broadcast is visible only inside this application.
+	 * @note This event is visible only inside this application.
 	 *
-	 * @note Will get received by listeners of `ServicePlayMusic.BROADCAST_ACTION`
+	 * @note Will get received by listeners of `kMP.events`
 	 *
-	 * @param state Current state of the Music Service.
+	 * @param state Current state of the Music Service
+	 *              (one of the `PlayerEvent` codes).
 	 */
-	private void broadcastState(String state) {
+	private void broadcastState(int state) {
 		if (currentSong == null)
 			return;
 
-		Intent broadcastIntent = new Intent(ServicePlayMusic.BROADCAST_ACTION);
-
-		broadcastIntent.putExtra(ServicePlayMusic.BROADCAST_EXTRA_STATE,   state);
-		broadcastIntent.putExtra(ServicePlayMusic.BROADCAST_EXTRA_SONG_ID, currentSong.getId());
-
-		LocalBroadcastManager
-		.getInstance(getApplicationContext())
-		.sendBroadcast(broadcastIntent);
-
-		Log.w(TAG, "sentBroadcast");
+		kMP.events.post(state, currentSong.getId());
 	}
 }
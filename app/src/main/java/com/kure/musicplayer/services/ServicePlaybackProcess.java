@@ -0,0 +1,32 @@
+package com.kure.musicplayer.services;
+
+import com.kure.musicplayer.kMP;
+
+/**
+ * The very same `ServicePlayMusic`, but declared on the
+ * AndroidManifest to run on a process of its own (":playback").
+ *
+ * That way, garbage collections caused by the Activities
+ * (scrolling huge lists, scanning the library) happen on
+ * another heap and never stop the music player's Thread.
+ *
+ * Activities talk to it through `RemotePlayback` - it's only
+ * used when the user enables the "separate_process" Setting.
+ *
+ * @note Nothing's loaded on this process when it starts,
+ *       so we initialize whatever the service needs.
+ */
+public class ServicePlaybackProcess extends ServicePlayMusic {
+
+	@Override
+	public void onCreate() {
+
+		// Saved by the other process
+		kMP.settings.loadShared(this);
+
+		// Play history and smart playlists
+		kMP.initialize(this);
+
+		super.onCreate();
+	}
+}
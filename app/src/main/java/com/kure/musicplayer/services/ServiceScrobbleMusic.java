@@ -1,26 +1,39 @@
 package com.kure.musicplayer.services;
 
+import java.io.File;
+
 import android.app.Service;
-import android.content.BroadcastReceiver;
-import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
-import android.support.v4.content.LocalBroadcastManager;
+import android.util.Log;
 
 import com.kure.musicplayer.kMP;
+import com.kure.musicplayer.events.PlayerEvent;
+import com.kure.musicplayer.events.PlayerEventBus;
 import com.kure.musicplayer.model.Song;
+import com.kure.musicplayer.scrobble.BroadcastScrobbleSender;
+import com.kure.musicplayer.scrobble.Scrobble;
+import com.kure.musicplayer.scrobble.ScrobbleQueue;
+import com.kure.musicplayer.scrobble.ScrobbleSender;
+import com.kure.musicplayer.scrobble.ScrobbleTracker;
 
 /**
  * Asynchronous service that will communicate with the
  * MusicService and scrobble songs to Last.fm through
  * installed applications.
  *
- * - It listens to Broadcasts from MusicService, like when
+ * - It listens to events from MusicService, like when
  *   the music started, paused, has changed...
- * - Then sends that information to other applications that
+ * - Tells them right away to other applications that
  *   directly communicates with Last.fm.
  *   There's a handful of them, check out on Settings.
+ * - Decides by itself when a song was listened long
+ *   enough to be scrobbled (see `ScrobbleTracker`) - if
+ *   we couldn't tell the other app about it, it's saved
+ *   on disk (see `ScrobbleQueue`) to be sent later - if
+ *   the other app can take plays from the past.
  *
  * Thanks:
  * - Vogella, for the awesome tutorial on Services.
@@ -29,17 +42,80 @@ import com.kure.musicplayer.model.Song;
  */
 public class ServiceScrobbleMusic extends Service {
 
+	// The tag we put on debug messages
+	private static final String TAG = "ServiceScrobbleMusic";
+
+	/**
+	 * File (inside our private directory) where we keep
+	 * the scrobbles not delivered yet.
+	 */
+	private static final String QUEUE_FILE = "scrobbles.log";
+
+	/**
+	 * Decides when songs should be scrobbled.
+	 * Only touched on the main Thread.
+	 */
+	private ScrobbleTracker tracker;
+
+	/**
+	 * Scrobbles waiting to be delivered.
+	 * Only touched on `queueThread`.
+	 */
+	private ScrobbleQueue queue;
+
+	/**
+	 * Song playing right now, as we tell the scrobbler app
+	 * (or `null`). Only touched on the main Thread.
+	 */
+	private Scrobble playing = null;
+
+	/**
+	 * If the scrobbler app missed something about the
+	 * current song - then it won't scrobble it, and we
+	 * keep it for later. Only touched on `queueThread`.
+	 */
+	private boolean stateFailed = false;
+
+	/**
+	 * Thread where we do all disk reads/writes
+	 * and broadcasts.
+	 */
+	private HandlerThread queueThread;
+	private Handler queueHandler;
+
 	/**
 	 * Service just got created.
 	 */
 	@Override
 	public void onCreate() {
 
-		// Registering the BroadcastReceiver to listen
-		// to the MusicService.
-		LocalBroadcastManager
-		.getInstance(getApplicationContext())
-		.registerReceiver(musicServiceBroadcastReceiver, new IntentFilter(ServicePlayMusic.BROADCAST_ACTION));
+		queueThread = new HandlerThread("ScrobbleQueue");
+		queueThread.start();
+		queueHandler = new Handler(queueThread.getLooper());
+
+		queue = new ScrobbleQueue(new File(getFilesDir(), QUEUE_FILE), null);
+
+		tracker = new ScrobbleTracker(new ScrobbleTracker.Listener() {
+			@Override
+			public void onScrobble(final Scrobble scrobble) {
+				queueHandler.post(new Runnable() {
+					@Override
+					public void run() {
+						if (! stateFailed)
+							return;
+
+						// Only saved if it can ever be sent
+						queue.setSender(getSender());
+
+						if (queue.add(scrobble))
+							flushQueue();
+					}
+				});
+			}
+		});
+
+		// Listening to the MusicService.
+		kMP.events.register(musicServiceListener);
 	}
 
 	/**
@@ -57,6 +133,15 @@ public class ServiceScrobbleMusic extends Service {
 			// This service is being explicitly started
 		}
 
+		// Whatever was left from last time might be
+		// deliverable now.
+		queueHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				flushQueue();
+			}
+		});
+
 		// This makes sure this service will be restarted
 		// when Android kills it.
 		// When it does, the `intent` will be `null`.
@@ -66,114 +151,173 @@ public class ServiceScrobbleMusic extends Service {
 	@Override
 	public void onDestroy() {
 
-		// Unregistering the BroadcastReceiver
-		LocalBroadcastManager
-		.getInstance(getApplicationContext())
-		.unregisterReceiver(musicServiceBroadcastReceiver);
+		// Not listening anymore
+		kMP.events.unregister(musicServiceListener);
 
-		super.onDestroy();
-	}
-
-	/**
-	 * The thing that will keep an eye on LocalBroadcasts
-	 * for the MusicService.
-	 */
-	BroadcastReceiver musicServiceBroadcastReceiver = new BroadcastReceiver() {
+		// One last try before leaving; whatever
+		// isn't delivered stays on disk.
+		queueHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				flushQueue();
 
-		/**
-		 * What it'll do when receiving a message from the
-		 * MusicService?
-		 */
-		@Override
-		public void onReceive(Context context, Intent intent) {
+				Log.d(TAG, "Scrobbles queued: " + queue.getQueued() +
+				           ", delivered: "       + queue.getDelivered() +
+				           " in "                + queue.getBatches() + " batches" +
+				           ", failures: "        + queue.getFailures() +
+				           ", dropped: "         + queue.getDropped());
 
-			// Getting the information sent by the MusicService
-			// (and ignoring it if invalid)
-			String action  = intent.getStringExtra(ServicePlayMusic.BROADCAST_EXTRA_STATE);
-			Long   song_id = intent.getLongExtra(ServicePlayMusic.BROADCAST_EXTRA_SONG_ID, -1);
+				queueThread.quit();
+			}
+		});
 
-			if (song_id != -1)
-				scrobbleSong(kMP.songs.getSongById(song_id), action);
-		}
-	};
+		super.onDestroy();
+	}
 
 	/**
-	 * Sends a song information to Last.fm.
-	 *
-	 * It supports several Last.fm Android scrobblers, as specified
-	 * on `res/xml/preferences.xml`.
+	 * Sends pending scrobbles to the scrobbler app the
+	 * user chose on the settings.
 	 *
-	 * @param song              Song it'll send to Last.fm
-	 * @param musicPlayerAction What is happening to the song right
-	 *                          now - as specified on `MusicService`.
+	 * @note Must be called on `queueThread`.
 	 */
-	public void scrobbleSong(Song song, String musicPlayerAction) {
+	private void flushQueue() {
 
 		// Double-checking - won't scrobble if the user
 		// don't want us to.
 		if (! kMP.settings.get("lastfm", false))
 			return;
 
-		String scrobbler = kMP.settings.get("lastfm_which", "sls");
+		queue.setSender(getSender());
+		queue.flush();
+	}
 
-		// See the ScrobbleDroid API here:
-		// http://code.google.com/p/scrobbledroid/wiki/DeveloperAPI
-		if (scrobbler.equals("scrobbledroid")) {
+	/**
+	 * The scrobbler app the user chose on the settings
+	 * (or `null` if we don't know it).
+	 */
+	private ScrobbleSender getSender() {
+		String scrobbler = kMP.settings.get("lastfm_which", "sls");
 
-			Intent scrobble = new Intent("net.jjc1138.android.scrobbler.action.MUSIC_STATUS");
+		return BroadcastScrobbleSender.forScrobbler(this,
+		                                            scrobbler,
+		                                            kMP.applicationName,
+		                                            kMP.packageName);
+	}
 
-			boolean isPlaying = true;
+	/**
+	 * Tells the scrobbler app what's happening to the
+	 * current song, right now.
+	 *
+	 * @param state One of `ScrobbleSender.STATE_*`.
+	 */
+	private void sendState(final int state) {
+		final Scrobble song = playing;
 
-			// Assuming the music is playing, unless...
-			if (musicPlayerAction.equals(ServicePlayMusic.BROADCAST_EXTRA_PAUSED) ||
-				musicPlayerAction.equals(ServicePlayMusic.BROADCAST_EXTRA_COMPLETED) ||
-				musicPlayerAction.equals(ServicePlayMusic.BROADCAST_EXTRA_SKIP_NEXT) ||
-				musicPlayerAction.equals(ServicePlayMusic.BROADCAST_EXTRA_SKIP_PREVIOUS))
-				isPlaying = false;
+		if (song == null)
+			return;
 
-			scrobble.putExtra("playing", isPlaying);
-			scrobble.putExtra("id", song.getId());
+		queueHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				ScrobbleSender sender = getSender();
 
-			sendBroadcast(scrobble);
-			return;
-		}
+				boolean sent = (sender != null) && sender.sendState(state, song);
 
-		// See the SimpleLastfmScrobbler API here:
-		// https://github.com/tgwizard/sls/wiki/Developer%27s-API
-		if (scrobbler.equals("sls")) {
+				// A new song gets a new chance
+				if (state == ScrobbleSender.STATE_START)
+					stateFailed = ! sent;
 
-			Intent scrobble = new Intent("com.adam.aslfms.notify.playstatechanged");
+				else if (! sent)
+					stateFailed = true;
+			}
+		});
+	}
 
-			// One of the specific states allowed from the
-			// SimpleLastfmScrobbler API
-			int state;
+	/**
+	 * The thing that will keep an eye on events
+	 * from the MusicService.
+	 */
+	PlayerEventBus.Listener musicServiceListener = new PlayerEventBus.Listener() {
 
-			if (musicPlayerAction.equals(ServicePlayMusic.BROADCAST_EXTRA_PLAYING))
-				state = 0;
-			else if (musicPlayerAction.equals(ServicePlayMusic.BROADCAST_EXTRA_UNPAUSED))
-				state = 1;
-			else if (musicPlayerAction.equals(ServicePlayMusic.BROADCAST_EXTRA_PAUSED))
-				state = 2;
-			else if (musicPlayerAction.equals(ServicePlayMusic.BROADCAST_EXTRA_COMPLETED))
-				state = 3;
+		/**
+		 * What it'll do when receiving a message from the
+		 * MusicService?
+		 */
+		@Override
+		public void onPlayerEvent(PlayerEvent event) {
 
-			// Ignoring any other states - won't be necessary
-			else
+			// Ignoring orders and events without songs
+			if (event.isCommand() || (event.songId == PlayerEvent.NO_SONG))
 				return;
 
-			scrobble.putExtra("state", state);
-
-			// Now, to the song's details.
-			scrobble.putExtra("app-name",    kMP.applicationName);
-			scrobble.putExtra("app-package", kMP.packageName);
+			trackSong(event.songId, event.code);
+		}
+	};
 
-			scrobble.putExtra("track",    song.getTitle());
-			scrobble.putExtra("artist",   song.getArtist());
-			scrobble.putExtra("album",    song.getAlbum());
-			scrobble.putExtra("duration", song.getDurationSeconds());
+	/**
+	 * Tells the tracker what is happening to a song.
+	 *
+	 * @param songId            Song we got the event for.
+	 * @param musicPlayerAction What is happening to the song right
+	 *                          now - one of the `PlayerEvent` codes.
+	 */
+	public void trackSong(long songId, int musicPlayerAction) {
 
-			sendBroadcast(scrobble);
+		// Won't even keep track if the user
+		// don't want us to scrobble.
+		if (! kMP.settings.get("lastfm", false))
 			return;
+
+		// The scrobbler app hears about it before the
+		// tracker decides (see `stateFailed`).
+		switch (musicPlayerAction) {
+
+		case PlayerEvent.PLAYING:
+			// Finishing the last one before starting this
+			// one, so it's checked against its own `stateFailed`
+			tracker.onStopped();
+
+			// Only looking up the song once, when it starts
+			Song song = kMP.songs.getSongById(songId);
+			if (song == null) {
+				playing = null;
+				break;
+			}
+
+			playing = new Scrobble(song.getId(),
+			                       System.currentTimeMillis() / 1000,
+			                       (int)song.getDurationSeconds(),
+			                       song.getTitle(),
+			                       song.getArtist(),
+			                       song.getAlbum());
+
+			sendState(ScrobbleSender.STATE_START);
+			tracker.onPlaying(song);
+			break;
+
+		case PlayerEvent.PAUSED:
+			sendState(ScrobbleSender.STATE_PAUSE);
+			tracker.onPaused();
+			break;
+
+		case PlayerEvent.UNPAUSED:
+			sendState(ScrobbleSender.STATE_RESUME);
+			tracker.onUnpaused();
+			break;
+
+		case PlayerEvent.COMPLETED:
+			sendState(ScrobbleSender.STATE_COMPLETE);
+			tracker.onStopped();
+			playing = null;
+			break;
+
+		case PlayerEvent.SKIP_NEXT:
+		case PlayerEvent.SKIP_PREVIOUS:
+			// Not complete - it just stopped
+			sendState(ScrobbleSender.STATE_PAUSE);
+			tracker.onStopped();
+			playing = null;
+			break;
 		}
 	}
 
@@ -0,0 +1,78 @@
+package com.kure.musicplayer.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.kure.musicplayer.events.PlayerEvent;
+import com.kure.musicplayer.events.PlayerEventBus;
+
+/**
+ * How long `PlayerEventBus#post()` takes to deliver an event
+ * to all listeners - from a single Thread, and from several
+ * at once (like the service and the UI posting together).
+ *
+ * Listeners only look at the event, so it's the bus itself
+ * being measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class EventBusBenchmark {
+
+	/** The app has a handful (service, scrobbler, screens) */
+	@Param({ "1", "4", "16" })
+	public int listeners;
+
+	private PlayerEventBus bus;
+
+	/**
+	 * Something listeners write to, so their work
+	 * isn't thrown away.
+	 */
+	private volatile long seen = 0;
+
+	@Setup
+	public void setup() {
+		bus = new PlayerEventBus();
+
+		for (int i = 0; i < listeners; i++)
+			bus.register(new PlayerEventBus.Listener() {
+				@Override
+				public void onPlayerEvent(PlayerEvent event) {
+					if (event.code == PlayerEvent.COMPLETED)
+						seen = event.songId;
+				}
+			});
+	}
+
+	@Benchmark
+	public void post() {
+		bus.post(PlayerEvent.PLAYING, 42);
+	}
+
+	@Benchmark
+	public void command() {
+		bus.command(PlayerEvent.COMMAND_TOGGLE_PLAYBACK);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void postContended() {
+		bus.post(PlayerEvent.PLAYING, 42);
+	}
+}
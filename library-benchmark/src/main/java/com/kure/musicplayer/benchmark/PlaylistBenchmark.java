@@ -0,0 +1,114 @@
+package com.kure.musicplayer.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.kure.musicplayer.model.LibraryBuilder;
+import com.kure.musicplayer.model.LibrarySnapshot;
+import com.kure.musicplayer.model.Playlist;
+import com.kure.musicplayer.model.PlaylistDiff;
+import com.kure.musicplayer.model.SyntheticLibrary;
+
+/**
+ * Scanning a library with lots of big playlists -
+ * it shouldn't get slower as playlists grow.
+ *
+ * `scanLazy` only creates the playlists (like the media
+ * database source does), so it shouldn't get slower
+ * with more of them either.
+ *
+ * `diff` finds what to save after a typical edit (a few
+ * songs moved, removed and added).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class PlaylistBenchmark {
+
+	@Param({ "100", "1000", "10000" })
+	public int playlistSize;
+
+	@Param({ "20", "200" })
+	public int playlists;
+
+	private SyntheticLibrary source;
+	private SyntheticLibrary lazySource;
+
+	/** First playlist, before and after the edit */
+	private long[] before;
+	private long[] after;
+
+	@Setup
+	public void setup() {
+		source     = new SyntheticLibrary(options(false));
+		lazySource = new SyntheticLibrary(options(true));
+
+		Playlist playlist = new Playlist(1, "Edited");
+
+		for (long id : source.getPlaylistMembers(0))
+			playlist.add(id);
+
+		before = playlist.toArray();
+
+		// Last song to the top, first one removed
+		// and a new one at the middle
+		Playlist edited = new Playlist(1, "Edited");
+
+		edited.add(before[before.length - 1]);
+
+		for (int i = 1; i < before.length - 1; i++) {
+			if (i == before.length / 2)
+				edited.add(-1);
+
+			edited.add(before[i]);
+		}
+		after = edited.toArray();
+	}
+
+	private SyntheticLibrary.Options options(boolean lazy) {
+		SyntheticLibrary.Options options = SyntheticLibrary.Options.withSongs(20000);
+
+		options.playlists     = playlists;
+		options.playlistSize  = playlistSize;
+		options.lazyPlaylists = lazy;
+
+		return options;
+	}
+
+	@Benchmark
+	public LibrarySnapshot scan() {
+		return scan(source);
+	}
+
+	@Benchmark
+	public LibrarySnapshot scanLazy() {
+		return scan(lazySource);
+	}
+
+	@Benchmark
+	public PlaylistDiff diff() {
+		return PlaylistDiff.between(before, after);
+	}
+
+	private static LibrarySnapshot scan(SyntheticLibrary library) {
+		LibraryBuilder builder = new LibraryBuilder();
+
+		library.scan(builder);
+
+		return builder.build(1);
+	}
+}
@@ -0,0 +1,102 @@
+package com.kure.musicplayer.benchmark;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.kure.musicplayer.model.LibraryBuilder;
+import com.kure.musicplayer.model.LibrarySnapshot;
+import com.kure.musicplayer.model.PlaylistFileReader;
+import com.kure.musicplayer.model.PlaylistFileWriter;
+import com.kure.musicplayer.model.Song;
+import com.kure.musicplayer.model.SongPathResolver;
+import com.kure.musicplayer.model.SyntheticLibrary;
+
+/**
+ * Reading a big M3U file and finding all of its songs
+ * on a 20k songs library.
+ *
+ * `importSameDevice` has the library's exact paths,
+ * `importOtherDevice` has paths from another storage
+ * (so we look songs up by file name).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class PlaylistFileBenchmark {
+
+	@Param({ "1000", "10000" })
+	public int entries;
+
+	private LibrarySnapshot library;
+
+	private String sameDevice;
+	private String otherDevice;
+
+	@Setup
+	public void setup() throws IOException {
+		SyntheticLibrary source = new SyntheticLibrary(SyntheticLibrary.Options.withSongs(20000));
+
+		LibraryBuilder builder = new LibraryBuilder();
+		source.scan(builder);
+		library = builder.build(1);
+
+		StringWriter same = new StringWriter();
+
+		PlaylistFileWriter writer = new PlaylistFileWriter(same, PlaylistFileReader.M3U, null);
+
+		for (int i = 0; i < entries; i++)
+			writer.write(library.getSongs().get((i * 7) % library.size()));
+
+		writer.close();
+
+		sameDevice  = same.toString();
+		otherDevice = sameDevice.replace("\n/sdcard/", "\n/mnt/external_sd/");
+	}
+
+	@Benchmark
+	public int importSameDevice() throws IOException {
+		return read(sameDevice);
+	}
+
+	@Benchmark
+	public int importOtherDevice() throws IOException {
+		return read(otherDevice);
+	}
+
+	private int read(String file) throws IOException {
+		PlaylistFileReader reader = new PlaylistFileReader(new StringReader(file), PlaylistFileReader.M3U);
+
+		SongPathResolver resolver = new SongPathResolver(library);
+
+		int found = 0;
+
+		PlaylistFileReader.Entry entry;
+
+		while ((entry = reader.next()) != null) {
+			Song song = resolver.resolve(entry.path, null);
+
+			if (song != null)
+				found++;
+		}
+		reader.close();
+
+		return found;
+	}
+}
@@ -0,0 +1,135 @@
+package com.kure.musicplayer.benchmark;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.kure.musicplayer.model.LibraryBuilder;
+import com.kure.musicplayer.model.LibrarySnapshot;
+import com.kure.musicplayer.model.Song;
+import com.kure.musicplayer.model.SongFilter;
+import com.kure.musicplayer.model.SyntheticLibrary;
+
+/**
+ * The queries behind each menu: lists of artists, albums,
+ * genres and years ("facets"), songs of one of them,
+ * several facets combined and looking up songs by ID.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class QueryBenchmark {
+
+	@Param({ "1000", "10000", "100000" })
+	public int size;
+
+	private LibrarySnapshot library;
+
+	private SyntheticLibrary source;
+
+	/** Two genres, a decade and an artist left out */
+	private SongFilter filter;
+
+	/** Song IDs we'll look up, in random order */
+	private long[] ids;
+	private int next = 0;
+
+	@Setup
+	public void setup() {
+		source = new SyntheticLibrary(SyntheticLibrary.Options.withSongs(size));
+
+		LibraryBuilder builder = new LibraryBuilder();
+		source.scan(builder);
+		library = builder.build(1);
+
+		filter = new SongFilter.Builder()
+				.genre(source.getGenreName(0))
+				.genre(source.getGenreName(1))
+				.years(1960, 1969)
+				.excludeArtist(source.getArtist(0))
+				.build();
+
+		Random random = new Random(42);
+
+		ids = new long[1024];
+		for (int i = 0; i < ids.length; i++)
+			ids[i] = source.songId(random.nextInt(size));
+	}
+
+	@Benchmark
+	public ArrayList<String> artists() {
+		return library.getArtists();
+	}
+
+	@Benchmark
+	public ArrayList<String> albums() {
+		return library.getAlbums();
+	}
+
+	@Benchmark
+	public ArrayList<String> genres() {
+		return library.getGenres();
+	}
+
+	@Benchmark
+	public ArrayList<String> years() {
+		return library.getYears();
+	}
+
+	@Benchmark
+	public ArrayList<Song> songsByArtist() {
+		return library.getSongsByArtist(source.getArtist(size / 2));
+	}
+
+	@Benchmark
+	public ArrayList<String> albumsByArtist() {
+		return library.getAlbumsByArtist(source.getArtist(size / 2));
+	}
+
+	@Benchmark
+	public ArrayList<Song> songsByAlbum() {
+		return library.getSongsByAlbum(source.getAlbum(size / 2));
+	}
+
+	@Benchmark
+	public ArrayList<Song> songsByGenre() {
+		return library.getSongsByGenre(source.getGenreName(0));
+	}
+
+	@Benchmark
+	public ArrayList<Song> songsByYear() {
+		return library.getSongsByYear(1990);
+	}
+
+	@Benchmark
+	public ArrayList<Song> songsByPlaylist() {
+		return library.getSongsByPlaylist("Playlist 0");
+	}
+
+	@Benchmark
+	public int filterCount() {
+		return filter.count(library);
+	}
+
+	@Benchmark
+	public Song songById() {
+		next = (next + 1) & (ids.length - 1);
+
+		return library.getSongById(ids[next]);
+	}
+}
@@ -0,0 +1,51 @@
+package com.kure.musicplayer.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.kure.musicplayer.model.LibraryBuilder;
+import com.kure.musicplayer.model.LibrarySnapshot;
+import com.kure.musicplayer.model.SyntheticLibrary;
+
+/**
+ * How long it takes to turn everything a source finds
+ * into a library (genres, sorting, indexes...).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class ScanBenchmark {
+
+	@Param({ "1000", "10000", "100000" })
+	public int size;
+
+	private SyntheticLibrary source;
+
+	@Setup
+	public void setup() {
+		source = new SyntheticLibrary(SyntheticLibrary.Options.withSongs(size));
+	}
+
+	@Benchmark
+	public LibrarySnapshot scan() {
+		LibraryBuilder builder = new LibraryBuilder();
+
+		source.scan(builder);
+
+		return builder.build(1);
+	}
+}
@@ -0,0 +1,117 @@
+package com.kure.musicplayer.benchmark;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.kure.musicplayer.model.LibraryBuilder;
+import com.kure.musicplayer.model.LibrarySnapshot;
+import com.kure.musicplayer.model.PlayCounts;
+import com.kure.musicplayer.model.SmartPlaylist;
+import com.kure.musicplayer.model.SmartRule;
+import com.kure.musicplayer.model.Song;
+import com.kure.musicplayer.model.SyntheticLibrary;
+
+/**
+ * Finding the songs of a smart playlist.
+ *
+ * - `full` tests every song, like the first time;
+ * - `rescan` goes back and forth between two scans of the
+ *   same library (all songs are new objects), where 1% of
+ *   the songs changed their year;
+ * - `reopen` is the same snapshot again, with a song
+ *   played in between.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class SmartPlaylistBenchmark {
+
+	@Param({ "10000", "100000" })
+	public int size;
+
+	private SmartRule rule;
+
+	private PlayCounts plays = new PlayCounts();
+
+	/** Two scans, one after the other */
+	private LibrarySnapshot before;
+	private LibrarySnapshot after;
+
+	private SmartPlaylist rescanned;
+	private SmartPlaylist reopened;
+
+	private boolean flip = false;
+
+	@Setup
+	public void setup() throws ParseException {
+		SyntheticLibrary source = new SyntheticLibrary(SyntheticLibrary.Options.withSongs(size));
+
+		rule = SmartRule.parse("(genre=\"" + source.getGenreName(0) + "\" OR title~\"7\") " +
+		                       "AND year>=1990 AND never played");
+
+		before = scan(source, false);
+		after  = scan(source, true);
+
+		for (int i = 0; i < size; i += 3)
+			plays.set(source.songId(i), 1);
+
+		rescanned = new SmartPlaylist("rescan", rule);
+		rescanned.getSongs(before, plays);
+
+		reopened = new SmartPlaylist("reopen", rule);
+		reopened.getSongs(before, plays);
+	}
+
+	/**
+	 * @param change If we should change the year
+	 *               of 1% of the songs.
+	 */
+	private static LibrarySnapshot scan(SyntheticLibrary source, boolean change) {
+		LibraryBuilder builder = new LibraryBuilder();
+		source.scan(builder);
+
+		if (change) {
+			List<Song> songs = builder.getSongs();
+
+			for (int i = 0; i < songs.size(); i += 100)
+				songs.get(i).setYear(songs.get(i).getYear() + 30);
+		}
+		return builder.build(1);
+	}
+
+	@Benchmark
+	public ArrayList<Song> full() {
+		return new SmartPlaylist("full", rule).getSongs(after, plays);
+	}
+
+	@Benchmark
+	public ArrayList<Song> rescan() {
+		flip = ! flip;
+
+		return rescanned.getSongs(flip ? after : before, plays);
+	}
+
+	@Benchmark
+	public ArrayList<Song> reopen() {
+		reopened.songPlayed(after.getSongs().get(0).getId());
+
+		return reopened.getSongs(before, plays);
+	}
+}
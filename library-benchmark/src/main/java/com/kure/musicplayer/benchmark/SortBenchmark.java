@@ -0,0 +1,81 @@
+package com.kure.musicplayer.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.kure.musicplayer.model.LibraryBuilder;
+import com.kure.musicplayer.model.LibrarySnapshot;
+import com.kure.musicplayer.model.Song;
+import com.kure.musicplayer.model.SyntheticLibrary;
+import com.kure.musicplayer.model.SongComparators;
+
+/**
+ * Sorting and shuffling the whole library, like the
+ * Now Playing list does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class SortBenchmark {
+
+	@Param({ "1000", "10000", "100000" })
+	public int size;
+
+	private LibrarySnapshot library;
+
+	private Random random = new Random(42);
+
+	@Setup
+	public void setup() {
+		LibraryBuilder builder = new LibraryBuilder();
+		new SyntheticLibrary(SyntheticLibrary.Options.withSongs(size)).scan(builder);
+
+		library = builder.build(1);
+	}
+
+	@Benchmark
+	public ArrayList<Song> byTitle() {
+		return library.getSongsSortedBy(SongComparators.BY_TITLE);
+	}
+
+	@Benchmark
+	public ArrayList<Song> byArtist() {
+		return library.getSongsSortedBy(SongComparators.BY_ARTIST);
+	}
+
+	@Benchmark
+	public ArrayList<Song> byAlbum() {
+		return library.getSongsSortedBy(SongComparators.BY_ALBUM);
+	}
+
+	@Benchmark
+	public ArrayList<Song> byTrack() {
+		return library.getSongsSortedBy(SongComparators.BY_TRACK);
+	}
+
+	@Benchmark
+	public ArrayList<Song> shuffle() {
+		ArrayList<Song> songs = new ArrayList<Song>(library.getSongs());
+
+		Collections.shuffle(songs, random);
+
+		return songs;
+	}
+}
@@ -0,0 +1,92 @@
+package com.kure.musicplayer.events;
+
+/**
+ * Something that happened to (or was asked of) the music player.
+ *
+ * It's a tiny container with an event code and the ID of
+ * the song it's about.
+ *
+ * Events are recycled by `PlayerEventBus` - so please
+ * don't keep references to them after your listener returns.
+ * Copy whatever you need.
+ */
+public class PlayerEvent {
+
+	// All possible things the music player tells us.
+	// (sent by `ServicePlayMusic`)
+
+	/** Some music started playing */
+	public static final int PLAYING = 1;
+
+	/** Some music just got paused */
+	public static final int PAUSED = 2;
+
+	/** A paused music got unpaused */
+	public static final int UNPAUSED = 3;
+
+	/** Current music got played until the end */
+	public static final int COMPLETED = 4;
+
+	/** The user skipped to the next song */
+	public static final int SKIP_NEXT = 5;
+
+	/** The user skipped to the previous song */
+	public static final int SKIP_PREVIOUS = 6;
+
+	/** Songs were added to the "Now Playing List" */
+	public static final int QUEUE_CHANGED = 7;
+
+	// All possible orders we can give to the music player.
+	// (received by `ServicePlayMusic`)
+
+	/** Unpause the current song */
+	public static final int COMMAND_PLAY = 101;
+
+	/** Pause the current song */
+	public static final int COMMAND_PAUSE = 102;
+
+	/** Pause if playing, unpause if paused */
+	public static final int COMMAND_TOGGLE_PLAYBACK = 103;
+
+	/** Stop everything */
+	public static final int COMMAND_STOP = 104;
+
+	/** Skip to the next song */
+	public static final int COMMAND_SKIP = 105;
+
+	/** Go back to the previous song */
+	public static final int COMMAND_REWIND = 106;
+
+	/**
+	 * Used when an event isn't about any song.
+	 */
+	public static final long NO_SONG = -1;
+
+	/**
+	 * What happened - one of the constants above.
+	 */
+	public int code;
+
+	/**
+	 * ID of the song it happened to (or `NO_SONG`).
+	 */
+	public long songId;
+
+	/**
+	 * Next free event on the pool.
+	 * @see PlayerEventBus
+	 */
+	PlayerEvent nextInPool = null;
+
+	/**
+	 * Tells if this is an order to the music player
+	 * (instead of something that happened to it).
+	 */
+	public boolean isCommand() {
+		return isCommand(code);
+	}
+
+	public static boolean isCommand(int code) {
+		return code >= COMMAND_PLAY;
+	}
+}
@@ -0,0 +1,200 @@
+package com.kure.musicplayer.model;
+
+import java.util.ArrayList;
+
+/**
+ * Keeps track of everything we hold in memory only to be
+ * faster - indexes, tags read before, smart playlists'
+ * results... - so we can let go of it when the system
+ * runs out of memory.
+ *
+ * Each cache registers itself with a priority. When asked
+ * to `trim()`, we go from the lowest priority up, so caches
+ * that are cheap to build again go away first.
+ *
+ * Caches are never rebuilt here - whoever needs one again
+ * simply builds it, the same way it did the first time.
+ *
+ * @note Thread-safe.
+ */
+public class CacheRegistry {
+
+	/**
+	 * Something we can build again quickly (like the
+	 * result of a query).
+	 */
+	public static final int PRIORITY_LOW = 0;
+
+	/**
+	 * Takes a while to build again, but no disk access
+	 * (like indexes of the whole library).
+	 */
+	public static final int PRIORITY_NORMAL = 1;
+
+	/**
+	 * Has to read files or the database to build again.
+	 */
+	public static final int PRIORITY_HIGH = 2;
+
+	/**
+	 * Something that can be thrown away and built
+	 * again later.
+	 */
+	public interface Cache {
+
+		/**
+		 * Roughly how much memory it takes right now,
+		 * in bytes.
+		 */
+		public long getSize();
+
+		/**
+		 * Lets go of everything it can.
+		 *
+		 * @note Might be called from any Thread.
+		 */
+		public void trim();
+	}
+
+	private static class Entry {
+		final String name;
+		final int    priority;
+		final Cache  cache;
+
+		Entry(String name, int priority, Cache cache) {
+			this.name     = name;
+			this.priority = priority;
+			this.cache    = cache;
+		}
+	}
+
+	/** Sorted by priority - lowest first */
+	private final ArrayList<Entry> entries = new ArrayList<Entry>();
+
+	// Statistics since we were created
+	private int  trims     = 0;
+	private long reclaimed = 0;
+
+	/**
+	 * Starts keeping track of `cache`.
+	 *
+	 * @param name     Only to tell it apart on `toString()`.
+	 * @param priority One of the `PRIORITY_*` constants.
+	 */
+	public synchronized void register(String name, int priority, Cache cache) {
+		int index = 0;
+
+		while ((index < entries.size()) && (entries.get(index).priority <= priority))
+			index++;
+
+		entries.add(index, new Entry(name, priority, cache));
+	}
+
+	public synchronized void unregister(Cache cache) {
+		for (int i = 0; i < entries.size(); i++) {
+			if (entries.get(i).cache == cache) {
+				entries.remove(i);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Trims all caches with priority up to `priority`
+	 * (lowest first).
+	 *
+	 * @return Roughly how many bytes were freed.
+	 * @note Caches might wait for whoever's using them,
+	 *       so better not call it on the UI Thread.
+	 */
+	public long trim(int priority) {
+		ArrayList<Entry> chosen = new ArrayList<Entry>();
+
+		synchronized (this) {
+			for (Entry entry : entries)
+				if (entry.priority <= priority)
+					chosen.add(entry);
+		}
+
+		long freed = 0;
+
+		for (Entry entry : chosen) {
+			long before = entry.cache.getSize();
+
+			entry.cache.trim();
+
+			freed += Math.max(0, before - entry.cache.getSize());
+		}
+
+		synchronized (this) {
+			trims++;
+			reclaimed += freed;
+		}
+		return freed;
+	}
+
+	/**
+	 * Trims everything.
+	 */
+	public long trimAll() {
+		return trim(PRIORITY_HIGH);
+	}
+
+	/**
+	 * Roughly how much memory all caches take
+	 * right now, in bytes.
+	 */
+	public long getSize() {
+		long size = 0;
+
+		for (Cache cache : getCaches())
+			size += cache.getSize();
+
+		return size;
+	}
+
+	/**
+	 * How many times `trim()` was called.
+	 */
+	public synchronized int getTrims() {
+		return trims;
+	}
+
+	/**
+	 * Roughly how many bytes all `trim()`s freed.
+	 */
+	public synchronized long getReclaimed() {
+		return reclaimed;
+	}
+
+	private synchronized ArrayList<Cache> getCaches() {
+		ArrayList<Cache> caches = new ArrayList<Cache>(entries.size());
+
+		for (Entry entry : entries)
+			caches.add(entry.cache);
+
+		return caches;
+	}
+
+	/**
+	 * Each cache with its size, like "tags=1200 facets=3400".
+	 */
+	@Override
+	public String toString() {
+		ArrayList<Entry> all;
+
+		synchronized (this) {
+			all = new ArrayList<Entry>(entries);
+		}
+
+		StringBuilder string = new StringBuilder();
+
+		for (Entry entry : all) {
+			if (string.length() > 0)
+				string.append(' ');
+
+			string.append(entry.name).append('=').append(entry.cache.getSize());
+		}
+		return string.toString();
+	}
+}
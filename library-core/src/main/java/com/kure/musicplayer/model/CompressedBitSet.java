@@ -0,0 +1,442 @@
+package com.kure.musicplayer.model;
+
+import java.util.Arrays;
+
+/**
+ * A set of non-negative integers (like song positions),
+ * taking little memory both when it has few numbers and
+ * when it has lots of them.
+ *
+ * Numbers are split in chunks of 65536 (by their upper
+ * 16 bits). Each chunk is either:
+ *
+ * - A sorted array of the lower 16 bits, while it has up
+ *   to `ARRAY_LIMIT` numbers (2 bytes each);
+ * - A plain bitmap of 65536 bits (8KB) after that.
+ *
+ * So a genre with 10 songs takes a few bytes, while one with
+ * half the library takes at most 1 bit per song.
+ * (it's the idea behind "Roaring" bitmaps)
+ *
+ * Sets can be combined with `and()`, `or()` and `andNot()`,
+ * chunk by chunk - chunks only one of them has are skipped
+ * or copied without looking inside.
+ *
+ * @note Numbers must be added in increasing order, and
+ *       it's read-only after that. It's not thread-safe
+ *       while adding, but can be read by any Thread after.
+ */
+public class CompressedBitSet {
+
+	/**
+	 * Chunks with more numbers than this become bitmaps -
+	 * that's when an array would take more than 8KB.
+	 */
+	static final int ARRAY_LIMIT = 4096;
+
+	private static final int BITMAP_WORDS = 65536 / 64;
+
+	/** Upper 16 bits of each chunk, increasing */
+	private char[] keys = new char[4];
+
+	/** Each chunk is either a `char[]` or a `long[]` */
+	private Object[] chunks = new Object[4];
+
+	/** How many numbers each chunk has */
+	private int[] counts = new int[4];
+
+	private int size = 0;
+
+	private int cardinality = 0;
+
+	private int last = -1;
+
+	/**
+	 * Adds `number` to the set.
+	 *
+	 * @throws IllegalArgumentException If it's not bigger than
+	 *                                  the last one added.
+	 */
+	public void add(int number) {
+		if (number <= last)
+			throw new IllegalArgumentException("Numbers must be added in increasing order");
+
+		last = number;
+
+		char key = (char)(number >>> 16);
+		char low = (char)(number & 0xFFFF);
+
+		if ((size == 0) || (keys[size - 1] != key))
+			newChunk(key);
+
+		int chunk = size - 1;
+		int count = counts[chunk];
+
+		if (chunks[chunk] instanceof char[]) {
+			char[] array = (char[])chunks[chunk];
+
+			if (count < ARRAY_LIMIT) {
+				if (count == array.length)
+					chunks[chunk] = array = Arrays.copyOf(array, Math.min(array.length * 2, ARRAY_LIMIT));
+
+				array[count] = low;
+			}
+			else {
+				// Too big - turning into a bitmap
+				long[] bitmap = new long[BITMAP_WORDS];
+
+				for (int i = 0; i < count; i++)
+					bitmap[array[i] >>> 6] |= (1L << array[i]);
+
+				bitmap[low >>> 6] |= (1L << low);
+				chunks[chunk] = bitmap;
+			}
+		}
+		else {
+			long[] bitmap = (long[])chunks[chunk];
+			bitmap[low >>> 6] |= (1L << low);
+		}
+
+		counts[chunk]++;
+		cardinality++;
+	}
+
+	private void newChunk(char key) {
+		if (size == keys.length) {
+			keys   = Arrays.copyOf(keys,   size * 2);
+			chunks = Arrays.copyOf(chunks, size * 2);
+			counts = Arrays.copyOf(counts, size * 2);
+		}
+		keys  [size] = key;
+		chunks[size] = new char[4];
+		counts[size] = 0;
+		size++;
+	}
+
+	/**
+	 * A set with all numbers from `from` up until `to`
+	 * (not including it).
+	 */
+	public static CompressedBitSet range(int from, int to) {
+		CompressedBitSet set = new CompressedBitSet();
+
+		for (int number = from; number < to; number++)
+			set.add(number);
+
+		return set;
+	}
+
+	/**
+	 * Numbers that are on both `this` and `other`.
+	 */
+	public CompressedBitSet and(CompressedBitSet other) {
+		CompressedBitSet result = new CompressedBitSet();
+
+		int i = 0;
+		int j = 0;
+
+		while ((i < size) && (j < other.size)) {
+			if (keys[i] < other.keys[j])
+				i++;
+
+			else if (keys[i] > other.keys[j])
+				j++;
+
+			else {
+				if (chunks[i] instanceof char[])
+					result.appendFiltered(keys[i], (char[])chunks[i], counts[i], other, j, true);
+
+				else if (other.chunks[j] instanceof char[])
+					result.appendFiltered(keys[i], (char[])other.chunks[j], other.counts[j], this, i, true);
+
+				else {
+					long[] a = (long[])chunks[i];
+					long[] b = (long[])other.chunks[j];
+					long[] bits = new long[BITMAP_WORDS];
+
+					for (int word = 0; word < BITMAP_WORDS; word++)
+						bits[word] = a[word] & b[word];
+
+					result.appendBitmap(keys[i], bits);
+				}
+				i++;
+				j++;
+			}
+		}
+		result.seal();
+		return result;
+	}
+
+	/**
+	 * Numbers that are on `this`, `other` or both.
+	 */
+	public CompressedBitSet or(CompressedBitSet other) {
+		CompressedBitSet result = new CompressedBitSet();
+
+		int i = 0;
+		int j = 0;
+
+		while ((i < size) || (j < other.size)) {
+			if ((j == other.size) || ((i < size) && (keys[i] < other.keys[j]))) {
+				result.appendCopy(this, i);
+				i++;
+			}
+			else if ((i == size) || (keys[i] > other.keys[j])) {
+				result.appendCopy(other, j);
+				j++;
+			}
+			else {
+				long[] a = bitmap(i);
+				long[] b = other.bitmap(j);
+				long[] bits = new long[BITMAP_WORDS];
+
+				for (int word = 0; word < BITMAP_WORDS; word++)
+					bits[word] = a[word] | b[word];
+
+				result.appendBitmap(keys[i], bits);
+				i++;
+				j++;
+			}
+		}
+		result.seal();
+		return result;
+	}
+
+	/**
+	 * Numbers that are on `this` but not on `other`.
+	 */
+	public CompressedBitSet andNot(CompressedBitSet other) {
+		CompressedBitSet result = new CompressedBitSet();
+
+		int j = 0;
+
+		for (int i = 0; i < size; i++) {
+			while ((j < other.size) && (other.keys[j] < keys[i]))
+				j++;
+
+			// Nothing to remove from this chunk
+			if ((j == other.size) || (other.keys[j] != keys[i]))
+				result.appendCopy(this, i);
+
+			else if (chunks[i] instanceof char[])
+				result.appendFiltered(keys[i], (char[])chunks[i], counts[i], other, j, false);
+
+			else {
+				long[] a = (long[])chunks[i];
+				long[] b = other.bitmap(j);
+				long[] bits = new long[BITMAP_WORDS];
+
+				for (int word = 0; word < BITMAP_WORDS; word++)
+					bits[word] = a[word] & ~b[word];
+
+				result.appendBitmap(keys[i], bits);
+			}
+		}
+		result.seal();
+		return result;
+	}
+
+	/**
+	 * Chunk `chunk` as a bitmap (converting it if needed).
+	 *
+	 * @note Don't change the result - it might be ours.
+	 */
+	private long[] bitmap(int chunk) {
+		if (chunks[chunk] instanceof long[])
+			return (long[])chunks[chunk];
+
+		char[] array  = (char[])chunks[chunk];
+		long[] bitmap = new long[BITMAP_WORDS];
+
+		for (int i = 0; i < counts[chunk]; i++)
+			bitmap[array[i] >>> 6] |= (1L << array[i]);
+
+		return bitmap;
+	}
+
+	/**
+	 * Appends a chunk with the numbers of `array` that
+	 * are (or aren't, if `keep` is false) on `other`'s
+	 * chunk `otherChunk`.
+	 */
+	private void appendFiltered(char key, char[] array, int count, CompressedBitSet other, int otherChunk, boolean keep) {
+		char[] filtered = new char[count];
+		int    kept     = 0;
+
+		Object chunk = other.chunks[otherChunk];
+
+		for (int i = 0; i < count; i++) {
+			char low = array[i];
+
+			boolean found = (chunk instanceof char[]) ?
+					(Arrays.binarySearch((char[])chunk, 0, other.counts[otherChunk], low) >= 0) :
+					((((long[])chunk)[low >>> 6] & (1L << low)) != 0);
+
+			if (found == keep)
+				filtered[kept++] = low;
+		}
+
+		if (kept > 0)
+			appendChunk(key, filtered, kept);
+	}
+
+	/**
+	 * Appends a chunk from a bitmap, turning it into
+	 * an array if it's small enough.
+	 */
+	private void appendBitmap(char key, long[] bits) {
+		int count = 0;
+		for (long word : bits)
+			count += Long.bitCount(word);
+
+		if (count == 0)
+			return;
+
+		if (count > ARRAY_LIMIT) {
+			appendChunk(key, bits, count);
+			return;
+		}
+
+		char[] array = new char[count];
+		int    index = 0;
+
+		for (int word = 0; word < BITMAP_WORDS; word++) {
+			long value = bits[word];
+
+			while (value != 0) {
+				array[index++] = (char)((word << 6) | Long.numberOfTrailingZeros(value));
+				value &= (value - 1);
+			}
+		}
+		appendChunk(key, array, count);
+	}
+
+	/**
+	 * Appends a copy of `other`'s chunk `chunk`.
+	 */
+	private void appendCopy(CompressedBitSet other, int chunk) {
+		Object container = other.chunks[chunk];
+
+		if (container instanceof char[])
+			container = Arrays.copyOf((char[])container, other.counts[chunk]);
+		else
+			container = ((long[])container).clone();
+
+		appendChunk(other.keys[chunk], container, other.counts[chunk]);
+	}
+
+	private void appendChunk(char key, Object container, int count) {
+		if (size == keys.length) {
+			keys   = Arrays.copyOf(keys,   size * 2);
+			chunks = Arrays.copyOf(chunks, size * 2);
+			counts = Arrays.copyOf(counts, size * 2);
+		}
+		keys  [size] = key;
+		chunks[size] = container;
+		counts[size] = count;
+		size++;
+
+		cardinality += count;
+	}
+
+	/**
+	 * After combining sets, only numbers bigger than
+	 * the ones we have can be added.
+	 */
+	private void seal() {
+		if (size == 0)
+			return;
+
+		int chunk = size - 1;
+
+		if (chunks[chunk] instanceof char[])
+			last = (keys[chunk] << 16) | ((char[])chunks[chunk])[counts[chunk] - 1];
+		else {
+			long[] bitmap = (long[])chunks[chunk];
+			int word = BITMAP_WORDS - 1;
+
+			while (bitmap[word] == 0)
+				word--;
+
+			last = (keys[chunk] << 16) | (word << 6) | (63 - Long.numberOfLeadingZeros(bitmap[word]));
+		}
+	}
+
+	/**
+	 * Tells if `number` is on the set.
+	 */
+	public boolean contains(int number) {
+		if (number < 0)
+			return false;
+
+		int chunk = Arrays.binarySearch(keys, 0, size, (char)(number >>> 16));
+		if (chunk < 0)
+			return false;
+
+		char low = (char)(number & 0xFFFF);
+
+		if (chunks[chunk] instanceof char[])
+			return Arrays.binarySearch((char[])chunks[chunk], 0, counts[chunk], low) >= 0;
+
+		return (((long[])chunks[chunk])[low >>> 6] & (1L << low)) != 0;
+	}
+
+	/**
+	 * How many numbers there are on the set.
+	 */
+	public int cardinality() {
+		return cardinality;
+	}
+
+	public boolean isEmpty() {
+		return cardinality == 0;
+	}
+
+	/**
+	 * All numbers on the set, in increasing order.
+	 */
+	public int[] toArray() {
+		int[] result = new int[cardinality];
+		int   index  = 0;
+
+		for (int chunk = 0; chunk < size; chunk++) {
+			int high = keys[chunk] << 16;
+
+			if (chunks[chunk] instanceof char[]) {
+				char[] array = (char[])chunks[chunk];
+
+				for (int i = 0; i < counts[chunk]; i++)
+					result[index++] = high | array[i];
+			}
+			else {
+				long[] bitmap = (long[])chunks[chunk];
+
+				for (int word = 0; word < BITMAP_WORDS; word++) {
+					long bits = bitmap[word];
+
+					while (bits != 0) {
+						int bit = Long.numberOfTrailingZeros(bits);
+						result[index++] = high | (word << 6) | bit;
+						bits &= (bits - 1);
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Roughly how much memory the numbers take, in bytes.
+	 */
+	public long sizeInBytes() {
+		long bytes = size * (2 + 4 + 8);
+
+		for (int chunk = 0; chunk < size; chunk++) {
+			if (chunks[chunk] instanceof char[])
+				bytes += ((char[])chunks[chunk]).length * 2;
+			else
+				bytes += BITMAP_WORDS * 8;
+		}
+		return bytes;
+	}
+}
@@ -0,0 +1,150 @@
+package com.kure.musicplayer.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Which songs have each value of an attribute (a "facet"),
+ * like genres, artists or years.
+ *
+ * For every value we keep a `CompressedBitSet` with the
+ * positions of its songs (on `LibrarySnapshot#getSongs()`),
+ * so combining facets is just AND/OR/NOT over them
+ * (see `SongFilter`).
+ *
+ * Since a song can be on several genres at once, the genre
+ * index is the only place that knows all of them -
+ * `Song#getGenre()` only has the first one.
+ *
+ * @note Read-only after created.
+ */
+public class FacetIndex {
+
+	private final HashMap<String, CompressedBitSet> members;
+
+	/** All values, sorted */
+	private final List<String> names;
+
+	private FacetIndex(HashMap<String, CompressedBitSet> members) {
+		this.members = members;
+
+		ArrayList<String> list = new ArrayList<String>(members.keySet());
+		Collections.sort(list);
+
+		this.names = Collections.unmodifiableList(list);
+	}
+
+	/**
+	 * Creates an index with the genre each song already has
+	 * (one per song).
+	 */
+	public static FacetIndex byGenre(List<Song> songs) {
+		Builder builder = new Builder();
+
+		for (int position = 0; position < songs.size(); position++)
+			builder.add(songs.get(position).getGenre(), position);
+
+		return builder.build();
+	}
+
+	/**
+	 * Creates an index with each song's artist.
+	 */
+	public static FacetIndex byArtist(List<Song> songs) {
+		Builder builder = new Builder();
+
+		for (int position = 0; position < songs.size(); position++)
+			builder.add(songs.get(position).getArtist(), position);
+
+		return builder.build();
+	}
+
+	/**
+	 * Creates an index with each song's year
+	 * (as a String, like "1969").
+	 *
+	 * @note Songs without a year are left out.
+	 */
+	public static FacetIndex byYear(List<Song> songs) {
+		Builder builder = new Builder();
+
+		for (int position = 0; position < songs.size(); position++) {
+			int year = songs.get(position).getYear();
+
+			if (year > 0)
+				builder.add(Integer.toString(year), position);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * All values that have songs, sorted.
+	 *
+	 * @note Read-only.
+	 */
+	public List<String> getNames() {
+		return names;
+	}
+
+	/**
+	 * Positions of the songs with value `name`, or
+	 * `null` if no song has it.
+	 */
+	public CompressedBitSet get(String name) {
+		return members.get(name);
+	}
+
+	/**
+	 * Roughly how much memory it takes, in bytes.
+	 */
+	public long sizeInBytes() {
+		long bytes = 0;
+
+		for (Map.Entry<String, CompressedBitSet> entry : members.entrySet())
+			bytes += 64 + (entry.getKey().length() * 2) + entry.getValue().sizeInBytes();
+
+		return bytes;
+	}
+
+	/**
+	 * Creates a `FacetIndex`, one song at a time.
+	 */
+	public static class Builder {
+
+		private HashMap<String, CompressedBitSet> members = new HashMap<String, CompressedBitSet>();
+
+		/**
+		 * Tells that the song at `position` has value `name`.
+		 *
+		 * @note Each value must get increasing positions
+		 *       (see `CompressedBitSet#add()`). Adding the
+		 *       same song twice to a value does nothing.
+		 *       Empty values are ignored.
+		 */
+		public void add(String name, int position) {
+			if ((name == null) || name.isEmpty())
+				return;
+
+			CompressedBitSet songs = members.get(name);
+
+			if (songs == null) {
+				songs = new CompressedBitSet();
+				members.put(name, songs);
+			}
+
+			// Like two genres with the same name
+			// (on the media database)
+			if (songs.contains(position))
+				return;
+
+			songs.add(position);
+		}
+
+		public FacetIndex build() {
+			return new FacetIndex(members);
+		}
+	}
+}
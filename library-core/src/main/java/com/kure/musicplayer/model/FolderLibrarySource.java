@@ -0,0 +1,168 @@
+package com.kure.musicplayer.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Gets songs by walking folders on the filesystem,
+ * on top of some other source.
+ *
+ * The media database misses files it hasn't indexed yet
+ * (or that aren't marked as music). So we first scan the
+ * other source and then add every audio file inside the
+ * folders that it didn't have.
+ *
+ * New songs only have their file path (and the file name
+ * as title) - the rest comes from their tags, if they're
+ * read afterwards (see `com.kure.musicplayer.tags`).
+ *
+ * Paths are compared after resolving symbolic links on
+ * their folders, so "/sdcard/Music" finds the same songs
+ * the media database knows as "/storage/emulated/0/Music".
+ *
+ * @note New songs have negative ids (see `Song#isDiscovered()`),
+ *       made from their paths - so the same file keeps the
+ *       same id between scans.
+ */
+public class FolderLibrarySource implements LibrarySource {
+
+	private LibrarySource base;
+
+	private List<File> folders;
+
+	private FolderWalker walker;
+
+	// Statistics from the last scan
+	private volatile int  discovered = 0;
+	private volatile long walkTime   = 0;
+
+	/**
+	 * @param base    Source to scan first (or `null` to only
+	 *                look on the folders).
+	 * @param folders Where to look for songs.
+	 * @param threads How many folders to list at the same time
+	 *                (0 to use one per processor core).
+	 */
+	public FolderLibrarySource(LibrarySource base, List<File> folders, int threads) {
+		this.base    = base;
+		this.folders = folders;
+		this.walker  = new FolderWalker(threads);
+	}
+
+	@Override
+	public void scan(LibraryBuilder builder) {
+
+		if (base != null)
+			base.scan(builder);
+
+		HashSet<String> knownPaths = new HashSet<String>();
+		HashSet<Long>   knownIds   = new HashSet<Long>();
+
+		// Most songs share a few folders, so we only
+		// resolve each folder once
+		HashMap<String, String> canonicalFolders = new HashMap<String, String>();
+
+		for (Song song : builder.getSongs()) {
+			if (song.getFilePath() != null)
+				knownPaths.add(canonicalPath(new File(song.getFilePath()), canonicalFolders));
+
+			knownIds.add(song.getId());
+		}
+
+		long start = System.nanoTime();
+
+		int count = 0;
+
+		for (File file : walker.walk(folders)) {
+			String path      = file.getAbsolutePath();
+			String canonical = canonicalPath(file, canonicalFolders);
+
+			if (knownPaths.contains(canonical))
+				continue;
+
+			// Hash collisions are very unlikely, but
+			// the id must be unique anyway.
+			long id = idFromPath(path);
+			while (knownIds.contains(id))
+				id--;
+
+			knownIds.add(id);
+			knownPaths.add(canonical);
+
+			builder.addSong(new Song(id, path));
+			count++;
+		}
+
+		discovered = count;
+		walkTime   = (System.nanoTime() - start) / 1000000;
+	}
+
+	/**
+	 * The path of `file` with its folder's symbolic links
+	 * (and "..") resolved, like `File#getCanonicalPath()`.
+	 *
+	 * @param folders Folders already resolved - we add
+	 *                `file`'s folder to it.
+	 */
+	private static String canonicalPath(File file, HashMap<String, String> folders) {
+		String folder = file.getParent();
+
+		if (folder == null)
+			return file.getAbsolutePath();
+
+		String canonical = folders.get(folder);
+
+		if (canonical == null) {
+			try {
+				canonical = new File(folder).getCanonicalPath();
+			}
+			catch (IOException e) {
+				canonical = new File(folder).getAbsolutePath();
+			}
+			folders.put(folder, canonical);
+		}
+		return canonical + File.separator + file.getName();
+	}
+
+	/**
+	 * Negative number that (almost always) only
+	 * this `path` has.
+	 */
+	private static long idFromPath(String path) {
+
+		// 64-bit FNV-1a
+		long hash = 0xcbf29ce484222325L;
+
+		for (int i = 0; i < path.length(); i++) {
+			hash ^= path.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+
+		// Clearing the sign bit then negating it,
+		// so it's never 0 or positive.
+		return -(hash & Long.MAX_VALUE) - 1;
+	}
+
+	/**
+	 * How many songs we've found that the other
+	 * source didn't have, on the last scan.
+	 */
+	public int getDiscoveredCount() {
+		return discovered;
+	}
+
+	/**
+	 * How long walking the folders took on the last
+	 * scan, in milliseconds.
+	 */
+	public long getWalkTime() {
+		return walkTime;
+	}
+
+	public FolderWalker getWalker() {
+		return walker;
+	}
+}
@@ -0,0 +1,210 @@
+package com.kure.musicplayer.model;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.kure.musicplayer.tags.TagReader;
+
+/**
+ * Looks for audio files inside folders, using several
+ * Threads at once.
+ *
+ * Every folder becomes a task: it lists its files and
+ * sends each sub-folder to the pool as another task.
+ * This way all cores keep busy even on very uneven
+ * trees (like one huge "Music" folder next to tiny ones).
+ *
+ * A file is considered audio if it has one of the known
+ * `EXTENSIONS` and its first bytes look like audio
+ * (see `TagReader.isAudio()`).
+ *
+ * Skips:
+ * - Hidden files and folders (starting with '.');
+ * - Folders with a ".nomedia" file, just like Android does;
+ * - Folders we've already seen (through symbolic links).
+ */
+public class FolderWalker {
+
+	/**
+	 * File extensions we'll even consider (lowercase).
+	 */
+	public static final Set<String> EXTENSIONS = new HashSet<String>();
+	static {
+		Collections.addAll(EXTENSIONS,
+		                   "mp3", "flac", "ogg", "oga", "opus",
+		                   "m4a", "mp4", "aac", "wav");
+	}
+
+	private int threads;
+
+	private ExecutorService executor;
+
+	/** Folders waiting or being listed */
+	private final AtomicInteger pending = new AtomicInteger(0);
+
+	/** Canonical paths of folders we've already listed */
+	private final ConcurrentHashMap<String, Boolean> visited = new ConcurrentHashMap<String, Boolean>();
+
+	private final ConcurrentLinkedQueue<File> found = new ConcurrentLinkedQueue<File>();
+
+	// Statistics
+	private final AtomicInteger folders = new AtomicInteger(0);
+	private final AtomicInteger files   = new AtomicInteger(0);
+
+	/**
+	 * @param threads How many folders to list at the same time
+	 *                (0 to use one per processor core).
+	 */
+	public FolderWalker(int threads) {
+		this.threads = (threads > 0) ? threads : Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Finds all audio files inside `roots` (and all
+	 * their sub-folders).
+	 *
+	 * @return The files found, sorted by path.
+	 * @note Blocks until it's done - don't call it on the UI Thread.
+	 */
+	public synchronized List<File> walk(List<File> roots) {
+
+		visited.clear();
+		found.clear();
+		folders.set(0);
+		files.set(0);
+
+		executor = Executors.newFixedThreadPool(threads);
+		try {
+			for (File root : roots)
+				submit(root);
+
+			// Waiting for the last folder to be listed.
+			synchronized (pending) {
+				while (pending.get() > 0)
+					pending.wait();
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			executor.shutdownNow();
+			executor = null;
+		}
+
+		ArrayList<File> result = new ArrayList<File>(found);
+		Collections.sort(result);
+		return result;
+	}
+
+	private void submit(final File folder) {
+		pending.incrementAndGet();
+
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						list(folder);
+					}
+					finally {
+						finished();
+					}
+				}
+			});
+		}
+		catch (RejectedExecutionException e) {
+			// We're shutting down
+			finished();
+		}
+	}
+
+	private void finished() {
+		if (pending.decrementAndGet() == 0) {
+			synchronized (pending) {
+				pending.notifyAll();
+			}
+		}
+	}
+
+	private void list(File folder) {
+
+		// Symbolic links might take us to a folder
+		// we've already seen (or to a loop!)
+		try {
+			if (visited.putIfAbsent(folder.getCanonicalPath(), Boolean.TRUE) != null)
+				return;
+		}
+		catch (IOException e) {
+			return;
+		}
+
+		if (new File(folder, ".nomedia").exists())
+			return;
+
+		File[] children = folder.listFiles(new FileFilter() {
+			@Override
+			public boolean accept(File file) {
+				return ! file.getName().startsWith(".");
+			}
+		});
+
+		// Not a folder or can't read it
+		if (children == null)
+			return;
+
+		folders.incrementAndGet();
+
+		for (File child : children) {
+			if (child.isDirectory())
+				submit(child);
+
+			else if (hasAudioExtension(child.getName())) {
+				files.incrementAndGet();
+
+				if (TagReader.isAudio(child))
+					found.add(child);
+			}
+		}
+	}
+
+	/**
+	 * Tells if the file `name` has one of the `EXTENSIONS`.
+	 */
+	public static boolean hasAudioExtension(String name) {
+		int dot = name.lastIndexOf('.');
+		if (dot == -1)
+			return false;
+
+		return EXTENSIONS.contains(name.substring(dot + 1).toLowerCase(Locale.US));
+	}
+
+	/**
+	 * How many folders were listed on the last walk.
+	 */
+	public int getFolderCount() {
+		return folders.get();
+	}
+
+	/**
+	 * How many files had an audio extension on the last
+	 * walk (including the ones whose first bytes didn't
+	 * look like audio).
+	 */
+	public int getCandidateCount() {
+		return files.get();
+	}
+}
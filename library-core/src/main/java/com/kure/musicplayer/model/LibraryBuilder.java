@@ -0,0 +1,149 @@
+package com.kure.musicplayer.model;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Collects everything a `LibrarySource` finds and turns
+ * it into a `LibrarySnapshot`.
+ *
+ * Sources usually find genres separately from songs,
+ * so we keep two maps:
+ *
+ * 1. Genre ID -> Genre Name
+ * 2. Song ID  -> Genre IDs (a song might be on several)
+ *
+ * and turn them into a `FacetIndex` at `build()`.
+ *
+ * @note Not thread-safe.
+ */
+public class LibraryBuilder {
+
+	private ArrayList<Song>     songs     = new ArrayList<Song>();
+	private ArrayList<Playlist> playlists = new ArrayList<Playlist>();
+
+	private HashMap<Long, String> genreIdToGenreName = new HashMap<Long, String>();
+	private HashMap<Long, ArrayList<Long>> songIdToGenreIds = new HashMap<Long, ArrayList<Long>>();
+
+	public void addSong(Song song) {
+		songs.add(song);
+	}
+
+	public void addPlaylist(Playlist playlist) {
+		playlists.add(playlist);
+	}
+
+	/**
+	 * Tells there's a genre with `id` and `name`.
+	 */
+	public void addGenre(long id, String name) {
+		genreIdToGenreName.put(id, name);
+	}
+
+	/**
+	 * Tells that the song with `songId` belongs
+	 * to the genre with `genreId`.
+	 *
+	 * @note Call it once for each genre a song is on.
+	 */
+	public void addGenreMember(long genreId, long songId) {
+		ArrayList<Long> genreIds = songIdToGenreIds.get(songId);
+
+		if (genreIds == null) {
+			genreIds = new ArrayList<Long>(1);
+			songIdToGenreIds.put(songId, genreIds);
+		}
+		genreIds.add(genreId);
+	}
+
+	/**
+	 * How many songs we've got so far.
+	 */
+	public int getSongCount() {
+		return songs.size();
+	}
+
+	/**
+	 * All songs we've got so far, in the order they were added.
+	 *
+	 * @note It's the actual list, not a copy - it's here so we
+	 *       can fill songs with more information (like tags read
+	 *       straight from the files) before `build()`.
+	 */
+	public List<Song> getSongs() {
+		return songs;
+	}
+
+	/**
+	 * Creates the snapshot with everything we've got,
+	 * sorting songs by title.
+	 *
+	 * @note Songs that aren't on any genre keep the
+	 *       one they already had (and are placed on it).
+	 *       Songs on several genres get the first one as
+	 *       `Song#getGenre()`, but are found on all of them.
+	 * @note Songs found on folders that still have no title
+	 *       (no tags or we didn't read them) get their file
+	 *       name as title.
+	 */
+	public LibrarySnapshot build(long version) {
+
+		for (Song song : songs) {
+			ArrayList<Long> genreIds = songIdToGenreIds.get(song.getId());
+			if (genreIds != null)
+				song.setGenre(genreIdToGenreName.get(genreIds.get(0)));
+
+			if (song.isDiscovered() && ((song.getTitle() == null) || song.getTitle().isEmpty()))
+				song.setTitle(titleFromPath(song.getFilePath()));
+		}
+
+		Collections.sort(songs, SongComparators.BY_TITLE);
+
+		// Songs on the same folder end up sharing its path
+		PathTrie folders = new PathTrie();
+
+		for (Song song : songs)
+			song.setFolder(folders.add(song));
+
+		folders.freeze();
+
+		// Now that songs have their final positions,
+		// marking them on each of their genres.
+		FacetIndex.Builder genres = new FacetIndex.Builder();
+
+		for (int position = 0; position < songs.size(); position++) {
+			Song song = songs.get(position);
+
+			ArrayList<Long> genreIds = songIdToGenreIds.get(song.getId());
+
+			if (genreIds == null)
+				genres.add(song.getGenre(), position);
+			else
+				for (Long genreId : genreIds)
+					genres.add(genreIdToGenreName.get(genreId), position);
+		}
+
+		LibrarySnapshot snapshot = new LibrarySnapshot(version, songs, playlists, folders, genres.build());
+
+		// Creating the other facets right now, while we're
+		// still scanning (instead of when the user first
+		// filters songs).
+		snapshot.getArtistIndex();
+		snapshot.getYearIndex();
+
+		return snapshot;
+	}
+
+	/**
+	 * "/sdcard/Music/01 - Song.mp3" becomes "01 - Song".
+	 */
+	private static String titleFromPath(String path) {
+		String name = new File(path).getName();
+
+		int dot = name.lastIndexOf('.');
+		return (dot > 0) ? name.substring(0, dot) : name;
+	}
+}
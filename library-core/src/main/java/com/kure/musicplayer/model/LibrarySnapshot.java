@@ -0,0 +1,532 @@
+package com.kure.musicplayer.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Everything we found on a scan, frozen in time.
+ *
+ * Once created it never changes - a rescan (or a new Playlist)
+ * creates another snapshot with a bigger `version`.
+ * This way, whoever holds a snapshot can go through it
+ * from any Thread, without locks, and never sees a list
+ * that's half-built.
+ *
+ * It also has all query functions to songs and their
+ * attributes (artists, albums, genres...).
+ *
+ * @note The `Song`s and `Playlist`s inside must not be
+ *       changed after they're placed here.
+ * @see LibraryBuilder
+ */
+public final class LibrarySnapshot {
+
+	/**
+	 * What we have before the first scan.
+	 */
+	public static final LibrarySnapshot EMPTY =
+			new LibrarySnapshot(0,
+			                    new ArrayList<Song>(),
+			                    new ArrayList<Playlist>());
+
+	private final long version;
+
+	private final List<Song>     songs;
+	private final List<Playlist> playlists;
+
+	/**
+	 * Maps song IDs to the songs themselves.
+	 */
+	private final HashMap<Long, Song> songsById;
+
+	/**
+	 * All folders that have songs.
+	 */
+	private final PathTrie folders;
+
+	/**
+	 * Songs of each genre, artist and year.
+	 *
+	 * If not given on the constructor, they're only
+	 * created when someone asks for them (and might be
+	 * thrown away by `trimIndexes()`).
+	 */
+	private volatile FacetIndex genres;
+	private volatile FacetIndex artists = null;
+	private volatile FacetIndex years   = null;
+
+	/** See `getAllPositions()` */
+	private volatile CompressedBitSet allPositions = null;
+
+	/**
+	 * If `genres` came from the constructor - then we
+	 * can't build it again.
+	 */
+	private final boolean genresGiven;
+
+	/**
+	 * Creates a snapshot, copying all lists.
+	 *
+	 * Genres are the ones each song has (one per song).
+	 *
+	 * @param version   Number that tells which snapshot
+	 *                  is newer.
+	 * @param songs     All songs, in the order they'll be shown.
+	 * @param playlists All playlists.
+	 */
+	public LibrarySnapshot(long version, Collection<Song> songs, Collection<Playlist> playlists) {
+		this(version, songs, playlists, PathTrie.of(songs), null);
+	}
+
+	/**
+	 * Same as the other constructor, with the folders and
+	 * genres already built.
+	 *
+	 * @param folders Tree with all `songs`, already frozen.
+	 * @param genres  Genres with the songs' positions (in the
+	 *                same order as `songs`), or `null` to use
+	 *                the one each song has.
+	 */
+	public LibrarySnapshot(long version, Collection<Song> songs, Collection<Playlist> playlists, PathTrie folders, FacetIndex genres) {
+		this.version   = version;
+		this.folders   = folders;
+		this.genres    = genres;
+		this.songs     = Collections.unmodifiableList(new ArrayList<Song>(songs));
+		this.playlists = Collections.unmodifiableList(new ArrayList<Playlist>(playlists));
+
+		this.genresGiven = (genres != null);
+
+		songsById = new HashMap<Long, Song>(songs.size() * 2);
+
+		for (Song song : songs)
+			songsById.put(song.getId(), song);
+	}
+
+	/**
+	 * Shares everything with `other`, only changing the version.
+	 */
+	private LibrarySnapshot(long version, LibrarySnapshot other) {
+		this.version   = version;
+		this.songs     = other.songs;
+		this.playlists = other.playlists;
+		this.songsById = other.songsById;
+		this.folders   = other.folders;
+		this.genres    = other.genres;
+		this.artists   = other.artists;
+		this.years     = other.years;
+
+		this.allPositions = other.allPositions;
+		this.genresGiven  = other.genresGiven;
+	}
+
+	/**
+	 * Returns the same snapshot with another version.
+	 *
+	 * @note Doesn't copy anything.
+	 */
+	public LibrarySnapshot withVersion(long version) {
+		return new LibrarySnapshot(version, this);
+	}
+
+	/**
+	 * Returns a new snapshot equal to this one but
+	 * with `playlist` added (and a new version).
+	 *
+	 * If there's already a Playlist with the same ID,
+	 * it gets replaced (in the same place).
+	 */
+	public LibrarySnapshot withPlaylist(Playlist playlist) {
+		ArrayList<Playlist> newPlaylists = new ArrayList<Playlist>(playlists);
+
+		int index = indexOfPlaylist(playlist.getID());
+
+		if (index != -1)
+			newPlaylists.set(index, playlist);
+		else
+			newPlaylists.add(playlist);
+
+		// Genres we built ourselves can be built again
+		return new LibrarySnapshot(version + 1, songs, newPlaylists, folders, genresGiven ? genres : null);
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * All songs, sorted by title.
+	 *
+	 * @note Read-only - to mess with it, copy it first.
+	 */
+	public List<Song> getSongs() {
+		return songs;
+	}
+
+	/**
+	 * @note Read-only.
+	 */
+	public List<Playlist> getPlaylists() {
+		return playlists;
+	}
+
+	/**
+	 * All folders that have songs, to browse by folder.
+	 */
+	public PathTrie getFolders() {
+		return folders;
+	}
+
+	/**
+	 * Returns the song with `id` or `null` if there's none.
+	 */
+	public Song getSongById(long id) {
+		return songsById.get(id);
+	}
+
+	/**
+	 * How many songs there are.
+	 */
+	public int size() {
+		return songs.size();
+	}
+
+	/**
+	 * Returns an alphabetically sorted list with all the
+	 * artists of the songs.
+	 */
+	public ArrayList<String> getArtists() {
+
+		HashSet<String> artists = new HashSet<String>();
+
+		for (Song song : songs) {
+			String artist = song.getArtist();
+
+			if (artist != null)
+				artists.add(artist);
+		}
+
+		return sorted(artists);
+	}
+
+	/**
+	 * Returns an alphabetically sorted list with all the
+	 * albums of the songs.
+	 */
+	public ArrayList<String> getAlbums() {
+
+		HashSet<String> albums = new HashSet<String>();
+
+		for (Song song : songs) {
+			String album = song.getAlbum();
+
+			if (album != null)
+				albums.add(album);
+		}
+
+		return sorted(albums);
+	}
+
+	/**
+	 * Which songs are on each genre.
+	 */
+	public FacetIndex getGenreIndex() {
+		// Two Threads might create it at the same time,
+		// but they'd create the same thing.
+		FacetIndex index = genres;
+
+		if (index == null) {
+			index  = FacetIndex.byGenre(songs);
+			genres = index;
+		}
+		return index;
+	}
+
+	/**
+	 * Which songs are from each artist.
+	 */
+	public FacetIndex getArtistIndex() {
+		FacetIndex index = artists;
+
+		if (index == null) {
+			index   = FacetIndex.byArtist(songs);
+			artists = index;
+		}
+		return index;
+	}
+
+	/**
+	 * Which songs are from each year.
+	 */
+	public FacetIndex getYearIndex() {
+		FacetIndex index = years;
+
+		if (index == null) {
+			index = FacetIndex.byYear(songs);
+			years = index;
+		}
+		return index;
+	}
+
+	/**
+	 * Positions of all songs, to use with `SongFilter`
+	 * (like "everything except...").
+	 */
+	public CompressedBitSet getAllPositions() {
+		CompressedBitSet all = allPositions;
+
+		if (all == null) {
+			all          = CompressedBitSet.range(0, songs.size());
+			allPositions = all;
+		}
+		return all;
+	}
+
+	/**
+	 * Roughly how much memory the indexes built so far
+	 * take, in bytes.
+	 */
+	public long getIndexSize() {
+		long bytes = 0;
+
+		FacetIndex[] indexes = { genresGiven ? null : genres, artists, years };
+
+		for (FacetIndex index : indexes)
+			if (index != null)
+				bytes += index.sizeInBytes();
+
+		CompressedBitSet all = allPositions;
+
+		if (all != null)
+			bytes += all.sizeInBytes();
+
+		return bytes;
+	}
+
+	/**
+	 * Throws away all indexes we can build again - they
+	 * get built the next time someone asks for them.
+	 *
+	 * @note Snapshots that share indexes (see
+	 *       `withVersion()`) keep their own copies.
+	 */
+	public void trimIndexes() {
+		if (! genresGiven)
+			genres = null;
+
+		artists      = null;
+		years        = null;
+		allPositions = null;
+	}
+
+	/**
+	 * The songs at `positions` (on `getSongs()`).
+	 */
+	public ArrayList<Song> getSongsAt(CompressedBitSet positions) {
+		ArrayList<Song> result = new ArrayList<Song>(positions.cardinality());
+
+		for (int position : positions.toArray())
+			result.add(songs.get(position));
+
+		return result;
+	}
+
+	/**
+	 * Returns an alphabetically sorted list with all
+	 * genres that have songs.
+	 */
+	public ArrayList<String> getGenres() {
+		return new ArrayList<String>(getGenreIndex().getNames());
+	}
+
+	/**
+	 * Returns a list with all years the songs have.
+	 *
+	 * @note It is a list of Strings. To access the
+	 *       years, do a `Integer.parseInt(string)`.
+	 */
+	public ArrayList<String> getYears() {
+
+		HashSet<String> years = new HashSet<String>();
+
+		for (Song song : songs) {
+			int year = song.getYear();
+
+			if (year > 0)
+				years.add(Integer.toString(year));
+		}
+
+		return sorted(years);
+	}
+
+	/**
+	 * Returns a list of Songs belonging to a specified artist,
+	 * sorted by album.
+	 */
+	public ArrayList<Song> getSongsByArtist(String desiredArtist) {
+		ArrayList<Song> songsByArtist = new ArrayList<Song>();
+
+		for (Song song : songs) {
+			String currentArtist = song.getArtist();
+
+			if (desiredArtist.equals(currentArtist))
+				songsByArtist.add(song);
+		}
+
+		// Sorting resulting list by Album
+		Collections.sort(songsByArtist, SongComparators.BY_ALBUM);
+
+		return songsByArtist;
+	}
+
+	/**
+	 * Returns a list of album names belonging to a specified artist.
+	 */
+	public ArrayList<String> getAlbumsByArtist(String desiredArtist) {
+		HashSet<String> albumsByArtist = new HashSet<String>();
+
+		for (Song song : songs) {
+			String currentArtist = song.getArtist();
+			String currentAlbum  = song.getAlbum();
+
+			if (desiredArtist.equals(currentArtist) && (currentAlbum != null))
+				albumsByArtist.add(currentAlbum);
+		}
+
+		return sorted(albumsByArtist);
+	}
+
+	/**
+	 * Returns a list of Songs belonging to a specified album.
+	 */
+	public ArrayList<Song> getSongsByAlbum(String desiredAlbum) {
+		ArrayList<Song> songsByAlbum = new ArrayList<Song>();
+
+		for (Song song : songs) {
+			String currentAlbum = song.getAlbum();
+
+			if (desiredAlbum.equals(currentAlbum))
+				songsByAlbum.add(song);
+		}
+
+		return songsByAlbum;
+	}
+
+	/**
+	 * Returns a list with all songs on `genreName`
+	 * (including the ones that are also on other genres).
+	 */
+	public ArrayList<Song> getSongsByGenre(String genreName) {
+
+		CompressedBitSet members = getGenreIndex().get(genreName);
+
+		if (members == null)
+			return new ArrayList<Song>();
+
+		return getSongsAt(members);
+	}
+
+	/**
+	 * Returns a list with all songs composed at `year`.
+	 */
+	public ArrayList<Song> getSongsByYear(int year) {
+
+		ArrayList<Song> currentSongs = new ArrayList<Song>();
+
+		for (Song song : songs) {
+
+			int currentYear = song.getYear();
+
+			if (currentYear == year)
+				currentSongs.add(song);
+		}
+
+		return currentSongs;
+	}
+
+	/**
+	 * Returns the Playlist with `id` or `null` if there's none.
+	 */
+	public Playlist getPlaylistById(long id) {
+		int index = indexOfPlaylist(id);
+
+		return (index == -1) ? null : playlists.get(index);
+	}
+
+	private int indexOfPlaylist(long id) {
+		for (int i = 0; i < playlists.size(); i++)
+			if (playlists.get(i).getID() == id)
+				return i;
+
+		return -1;
+	}
+
+	/**
+	 * Returns the first Playlist named `name` or
+	 * `null` if there's none.
+	 */
+	public Playlist getPlaylistByName(String name) {
+		for (Playlist playlist : playlists)
+			if (playlist.getName().equals(name))
+				return playlist;
+
+		return null;
+	}
+
+	public ArrayList<String> getPlaylistNames() {
+
+		ArrayList<String> names = new ArrayList<String>();
+
+		for (Playlist playlist : playlists)
+			names.add(playlist.getName());
+
+		return names;
+	}
+
+	/**
+	 * Returns all songs inside the playlist named `playlistName`.
+	 *
+	 * @note Songs that are not on the library are skipped.
+	 */
+	public ArrayList<Song> getSongsByPlaylist(String playlistName) {
+
+		ArrayList<Song> currentSongs = new ArrayList<Song>();
+
+		Playlist playlist = getPlaylistByName(playlistName);
+
+		if (playlist == null)
+			return currentSongs;
+
+		for (int i = 0; i < playlist.size(); i++) {
+			Song song = getSongById(playlist.getSongId(i));
+
+			if (song != null)
+				currentSongs.add(song);
+		}
+
+		return currentSongs;
+	}
+
+	/**
+	 * Returns a new list with all songs sorted by `comparator`.
+	 */
+	public ArrayList<Song> getSongsSortedBy(Comparator<Song> comparator) {
+		ArrayList<Song> list = new ArrayList<Song>(songs);
+
+		Collections.sort(list, comparator);
+
+		return list;
+	}
+
+	private static ArrayList<String> sorted(Collection<String> strings) {
+		ArrayList<String> list = new ArrayList<String>(strings);
+
+		Collections.sort(list);
+
+		return list;
+	}
+}
@@ -0,0 +1,21 @@
+package com.kure.musicplayer.model;
+
+/**
+ * Somewhere we can get songs from.
+ *
+ * On Android it's the system's media database, but it
+ * might be anything - a folder, a fake library for
+ * benchmarks...
+ *
+ * @see LibraryBuilder
+ */
+public interface LibrarySource {
+
+	/**
+	 * Gives all songs, genres and playlists found
+	 * to `builder`.
+	 *
+	 * @note Takes a while - don't call it on the UI Thread.
+	 */
+	public void scan(LibraryBuilder builder);
+}
@@ -0,0 +1,118 @@
+package com.kure.musicplayer.model;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.kure.musicplayer.tags.TagScanner;
+
+/**
+ * Keeps the current `LibrarySnapshot`, replacing it on
+ * every scan.
+ *
+ * A scan builds a whole new snapshot on the side and swaps
+ * it in at once. So whoever calls `get()` - from any Thread,
+ * without locking - sees either the old library or the new
+ * one, never something in between. Versions only go up
+ * (until `clear()`).
+ *
+ *     LibraryStore library = new LibraryStore();
+ *
+ *     library.scan(new SyntheticLibrary(options), null);
+ *
+ *     LibrarySnapshot snapshot = library.get();
+ *
+ * @note Thread-safe.
+ * @see SongList, which keeps one for the whole app.
+ */
+public class LibraryStore {
+
+	private final AtomicReference<LibrarySnapshot> snapshot =
+			new AtomicReference<LibrarySnapshot>(LibrarySnapshot.EMPTY);
+
+	/**
+	 * If there's a scan going on, so we don't
+	 * start another at the same time.
+	 */
+	private final AtomicBoolean scanning = new AtomicBoolean(false);
+
+	/**
+	 * Everything found on the last scan.
+	 *
+	 * It never changes, so hold on to it to make several
+	 * queries over the same songs.
+	 */
+	public LibrarySnapshot get() {
+		return snapshot.get();
+	}
+
+	public boolean isScanning() {
+		return scanning.get();
+	}
+
+	/**
+	 * Scans `source`, replacing everything we had before.
+	 *
+	 * @param scanner Fills whatever the source couldn't give
+	 *                us from the files' tags (`null` to skip).
+	 * @return If it scanned - `false` if there was already
+	 *         a scan going on.
+	 */
+	public boolean scan(LibrarySource source, TagScanner scanner) {
+		if (! scanning.compareAndSet(false, true))
+			return false;
+
+		try {
+			LibraryBuilder builder = new LibraryBuilder();
+			source.scan(builder);
+
+			// Must be before `build()`, so genres from
+			// the source still take precedence
+			if (scanner != null)
+				scanner.scan(builder.getSongs());
+
+			LibrarySnapshot scanned = builder.build(0);
+
+			// Swapping it all at once - whoever is reading
+			// the old snapshot keeps reading it
+			LibrarySnapshot current;
+			do {
+				current = snapshot.get();
+			}
+			while (! snapshot.compareAndSet(current, scanned.withVersion(current.getVersion() + 1)));
+
+			return true;
+		}
+		finally {
+			scanning.set(false);
+		}
+	}
+
+	/**
+	 * Publishes a new snapshot with `playlist` on it
+	 * (replacing the one with the same ID).
+	 *
+	 * If a scan finishes in the meantime, it goes on
+	 * that one instead.
+	 *
+	 * @return The snapshot with it.
+	 */
+	public LibrarySnapshot putPlaylist(Playlist playlist) {
+		LibrarySnapshot current;
+		LibrarySnapshot changed;
+		do {
+			current = snapshot.get();
+			changed = current.withPlaylist(playlist);
+		}
+		while (! snapshot.compareAndSet(current, changed));
+
+		return changed;
+	}
+
+	/**
+	 * Goes back to `LibrarySnapshot.EMPTY` - versions
+	 * start over.
+	 */
+	public void clear() {
+		snapshot.set(LibrarySnapshot.EMPTY);
+	}
+}
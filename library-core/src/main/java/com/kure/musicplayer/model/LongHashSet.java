@@ -0,0 +1,148 @@
+package com.kure.musicplayer.model;
+
+/**
+ * A set of `long`s (like song IDs) without boxing them
+ * into `Long`s.
+ *
+ * It's a plain open-addressing hash table: a single `long[]`,
+ * where collisions go to the next free slot.
+ * Adding and checking are O(1) on average.
+ *
+ * @note Numbers can only be added, never removed.
+ *       Not thread-safe.
+ */
+public class LongHashSet {
+
+	/** Marks a free slot (0 itself is kept aside) */
+	private static final long FREE = 0;
+
+	private long[] slots;
+
+	private int size = 0;
+
+	private boolean hasZero = false;
+
+	public LongHashSet() {
+		this(16);
+	}
+
+	/**
+	 * @param expected How many numbers we expect - so it
+	 *                 doesn't need to grow while adding them.
+	 */
+	public LongHashSet(int expected) {
+		int capacity = 16;
+
+		// Keeping it at most half full
+		while (capacity < expected * 2)
+			capacity <<= 1;
+
+		slots = new long[capacity];
+	}
+
+	/**
+	 * Adds `value` to the set.
+	 *
+	 * @return If it wasn't there before.
+	 */
+	public boolean add(long value) {
+		if (value == FREE) {
+			if (hasZero)
+				return false;
+
+			hasZero = true;
+			size++;
+			return true;
+		}
+
+		int mask  = slots.length - 1;
+		int index = hash(value) & mask;
+
+		while (slots[index] != FREE) {
+			if (slots[index] == value)
+				return false;
+
+			index = (index + 1) & mask;
+		}
+
+		slots[index] = value;
+		size++;
+
+		if (size * 2 > slots.length)
+			grow();
+
+		return true;
+	}
+
+	/**
+	 * Tells if `value` is on the set.
+	 */
+	public boolean contains(long value) {
+		if (value == FREE)
+			return hasZero;
+
+		int mask  = slots.length - 1;
+		int index = hash(value) & mask;
+
+		while (slots[index] != FREE) {
+			if (slots[index] == value)
+				return true;
+
+			index = (index + 1) & mask;
+		}
+		return false;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * All numbers on the set, in no particular order.
+	 */
+	public long[] toArray() {
+		long[] values = new long[size];
+
+		int count = 0;
+
+		if (hasZero)
+			values[count++] = 0;
+
+		for (long value : slots)
+			if (value != FREE)
+				values[count++] = value;
+
+		return values;
+	}
+
+	private void grow() {
+		long[] old = slots;
+
+		slots = new long[old.length * 2];
+
+		int mask = slots.length - 1;
+
+		for (long value : old) {
+			if (value == FREE)
+				continue;
+
+			int index = hash(value) & mask;
+
+			while (slots[index] != FREE)
+				index = (index + 1) & mask;
+
+			slots[index] = value;
+		}
+	}
+
+	/**
+	 * Mixes all bits of `value`, since IDs are usually
+	 * sequential (and would pile up on the same slots).
+	 */
+	private static int hash(long value) {
+		value ^= (value >>> 33);
+		value *= 0xff51afd7ed558ccdL;
+		value ^= (value >>> 33);
+		return (int)value;
+	}
+}
@@ -0,0 +1,129 @@
+package com.kure.musicplayer.model;
+
+/**
+ * Maps `long`s (like song IDs) to `int`s (like positions)
+ * without boxing any of them.
+ *
+ * Same open-addressing table as `LongHashSet`, with the
+ * values on a parallel `int[]`.
+ *
+ * @note Keys can only be added (or replaced), never removed.
+ *       Not thread-safe.
+ */
+public class LongIntMap {
+
+	/** Marks a free slot (0 itself is kept aside) */
+	private static final long FREE = 0;
+
+	private long[] keys;
+	private int[]  values;
+
+	private int size = 0;
+
+	private boolean hasZero   = false;
+	private int     zeroValue = 0;
+
+	public LongIntMap() {
+		this(16);
+	}
+
+	/**
+	 * @param expected How many keys we expect - so it
+	 *                 doesn't need to grow while adding them.
+	 */
+	public LongIntMap(int expected) {
+		int capacity = 16;
+
+		// Keeping it at most half full
+		while (capacity < expected * 2)
+			capacity <<= 1;
+
+		keys   = new long[capacity];
+		values = new int[capacity];
+	}
+
+	/**
+	 * Maps `key` to `value`, replacing whatever
+	 * it had before.
+	 */
+	public void put(long key, int value) {
+		if (key == FREE) {
+			if (! hasZero)
+				size++;
+
+			hasZero   = true;
+			zeroValue = value;
+			return;
+		}
+
+		int index = indexOf(keys, key);
+
+		if (keys[index] == FREE) {
+			keys[index] = key;
+			size++;
+		}
+		values[index] = value;
+
+		if (size * 2 > keys.length)
+			grow();
+	}
+
+	/**
+	 * What `key` maps to, or `missing` if it's not here.
+	 */
+	public int get(long key, int missing) {
+		if (key == FREE)
+			return hasZero ? zeroValue : missing;
+
+		int index = indexOf(keys, key);
+
+		return (keys[index] == FREE) ? missing : values[index];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Slot where `key` is, or the free one where
+	 * it would go.
+	 */
+	private static int indexOf(long[] keys, long key) {
+		int mask  = keys.length - 1;
+		int index = hash(key) & mask;
+
+		while ((keys[index] != FREE) && (keys[index] != key))
+			index = (index + 1) & mask;
+
+		return index;
+	}
+
+	private void grow() {
+		long[] oldKeys   = keys;
+		int[]  oldValues = values;
+
+		keys   = new long[oldKeys.length * 2];
+		values = new int[oldKeys.length * 2];
+
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] == FREE)
+				continue;
+
+			int index = indexOf(keys, oldKeys[i]);
+
+			keys[index]   = oldKeys[i];
+			values[index] = oldValues[i];
+		}
+	}
+
+	/**
+	 * Mixes all bits of `key`, since IDs are usually
+	 * sequential (and would pile up on the same slots).
+	 */
+	private static int hash(long key) {
+		key ^= (key >>> 33);
+		key *= 0xff51afd7ed558ccdL;
+		key ^= (key >>> 33);
+		return (int)key;
+	}
+}
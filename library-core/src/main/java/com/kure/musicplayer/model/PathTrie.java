@@ -0,0 +1,341 @@
+package com.kure.musicplayer.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * All folders that have songs, as a tree - so we can
+ * browse the library by folder.
+ *
+ * Each folder knows its sub-folders and the songs directly
+ * inside it, so opening any of them never goes through the
+ * whole library.
+ *
+ * Each folder name is stored only once: songs on the same
+ * folder share it (see `Song#getFilePath()`), instead of
+ * each one having its own copy of the full path.
+ *
+ * It's built once (see `LibraryBuilder`) and never changes
+ * after `freeze()`.
+ */
+public class PathTrie {
+
+	/**
+	 * A single folder.
+	 */
+	public static class Folder {
+
+		private final String name;
+		private final Folder parent;
+
+		/** Only while building - see `freeze()` */
+		private HashMap<String, Folder> children = new HashMap<String, Folder>();
+		private ArrayList<Song>         files    = new ArrayList<Song>();
+
+		/** Sorted by name, after `freeze()` */
+		private List<Folder> folders = Collections.emptyList();
+		private List<Song>   songs   = Collections.emptyList();
+
+		/** Songs here and on all sub-folders */
+		private int totalSongs = 0;
+
+		Folder(String name, Folder parent) {
+			this.name   = name;
+			this.parent = parent;
+		}
+
+		/**
+		 * Just the name of the folder, like "Music".
+		 *
+		 * @note The root folder has an empty name.
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * The folder above this one, or `null` if
+		 * it's the root.
+		 */
+		public Folder getParent() {
+			return parent;
+		}
+
+		/**
+		 * Full path of this folder, like "/sdcard/Music".
+		 */
+		public String getPath() {
+			if (parent == null)
+				return "/";
+
+			StringBuilder path = new StringBuilder();
+			appendPath(path);
+			return path.toString();
+		}
+
+		/**
+		 * Full path of the file `name` inside this folder.
+		 */
+		public String getPath(String name) {
+			StringBuilder path = new StringBuilder();
+			appendPath(path);
+			path.append('/').append(name);
+			return path.toString();
+		}
+
+		private void appendPath(StringBuilder path) {
+			if (parent == null)
+				return;
+
+			parent.appendPath(path);
+			path.append('/').append(name);
+		}
+
+		/**
+		 * Folders directly inside this one, sorted by name.
+		 *
+		 * @note Read-only.
+		 */
+		public List<Folder> getFolders() {
+			return folders;
+		}
+
+		/**
+		 * Songs directly inside this folder, sorted by
+		 * file name.
+		 *
+		 * @note Read-only.
+		 */
+		public List<Song> getSongs() {
+			return songs;
+		}
+
+		/**
+		 * How many songs there are here and on all
+		 * sub-folders.
+		 */
+		public int getTotalSongs() {
+			return totalSongs;
+		}
+
+		/**
+		 * Returns the sub-folder called `name` or `null`
+		 * if there's none.
+		 */
+		public Folder getFolder(String name) {
+			int index = Collections.binarySearch(folders, new Folder(name, null), BY_NAME);
+			return (index < 0) ? null : folders.get(index);
+		}
+
+		/**
+		 * Returns the song with file `name` directly inside
+		 * this folder, or `null` if there's none.
+		 *
+		 * If there's no exact match, one that only differs
+		 * on upper/lower case will do.
+		 */
+		public Song getSong(String name) {
+			int low  = 0;
+			int high = songs.size() - 1;
+
+			while (low <= high) {
+				int middle = (low + high) >>> 1;
+				int result = songs.get(middle).getFileName().compareToIgnoreCase(name);
+
+				if (result < 0)
+					low = middle + 1;
+
+				else if (result > 0)
+					high = middle - 1;
+
+				else {
+					// Several might differ only on case
+					int first = middle;
+					while ((first > 0) && songs.get(first - 1).getFileName().equalsIgnoreCase(name))
+						first--;
+
+					for (int i = first; (i < songs.size()) && songs.get(i).getFileName().equalsIgnoreCase(name); i++)
+						if (songs.get(i).getFileName().equals(name))
+							return songs.get(i);
+
+					return songs.get(middle);
+				}
+			}
+			return null;
+		}
+
+		Folder child(String name) {
+			Folder child = children.get(name);
+			if (child == null) {
+				child = new Folder(name, this);
+				children.put(name, child);
+			}
+			return child;
+		}
+
+		/**
+		 * Turns the building maps into sorted lists,
+		 * for this folder and all below it.
+		 */
+		int freeze() {
+			Folder[] sorted = children.values().toArray(new Folder[children.size()]);
+			Arrays.sort(sorted, BY_NAME);
+
+			totalSongs = files.size();
+			for (Folder folder : sorted)
+				totalSongs += folder.freeze();
+
+			Collections.sort(files, BY_FILE_NAME);
+
+			folders = Collections.unmodifiableList(Arrays.asList(sorted));
+			songs   = Collections.unmodifiableList(files);
+
+			children = null;
+			files    = null;
+
+			return totalSongs;
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	private static final Comparator<Folder> BY_NAME = new Comparator<Folder>() {
+		@Override
+		public int compare(Folder a, Folder b) {
+			// Still telling "Music" and "music" apart,
+			// so we can binary search for the exact name.
+			int result = a.name.compareToIgnoreCase(b.name);
+			return (result != 0) ? result : a.name.compareTo(b.name);
+		}
+	};
+
+	private static final Comparator<Song> BY_FILE_NAME = new Comparator<Song>() {
+		@Override
+		public int compare(Song a, Song b) {
+			return a.getFileName().compareToIgnoreCase(b.getFileName());
+		}
+	};
+
+	private final Folder root = new Folder("", null);
+
+	private boolean frozen = false;
+
+	/**
+	 * Creates a tree with all `songs`.
+	 *
+	 * @note Doesn't touch the songs - see `LibraryBuilder`
+	 *       for the one that makes them share folder names.
+	 */
+	public static PathTrie of(Collection<Song> songs) {
+		PathTrie trie = new PathTrie();
+
+		for (Song song : songs)
+			trie.add(song);
+
+		trie.freeze();
+		return trie;
+	}
+
+	/**
+	 * Places `song` inside the folder of its file path.
+	 *
+	 * @return The folder it was placed on.
+	 */
+	public Folder add(Song song) {
+		if (frozen)
+			throw new IllegalStateException("Can't add songs after freeze()");
+
+		Folder folder = root;
+		String path   = song.getFilePath();
+
+		if (path == null)
+			path = "";
+
+		int start = 0;
+		int slash;
+
+		while ((slash = path.indexOf('/', start)) != -1) {
+			// Skipping repeated slashes
+			if (slash > start)
+				folder = folder.child(path.substring(start, slash));
+
+			start = slash + 1;
+		}
+
+		folder.files.add(song);
+		return folder;
+	}
+
+	/**
+	 * Sorts everything. Call it after adding all songs.
+	 */
+	public void freeze() {
+		if (frozen)
+			return;
+
+		root.freeze();
+		frozen = true;
+	}
+
+	/**
+	 * The root folder ("/").
+	 */
+	public Folder getRoot() {
+		return root;
+	}
+
+	/**
+	 * The first folder that's worth showing - going down
+	 * from the root while there's a single sub-folder and
+	 * no songs (like "/storage/emulated/0").
+	 */
+	public Folder getTop() {
+		Folder folder = root;
+
+		while ((folder.getSongs().isEmpty()) && (folder.getFolders().size() == 1))
+			folder = folder.getFolders().get(0);
+
+		return folder;
+	}
+
+	/**
+	 * Returns the folder at `path` (like "/sdcard/Music")
+	 * or `null` if it has no songs inside.
+	 */
+	public Folder find(String path) {
+		Folder folder = root;
+
+		for (String name : path.split("/")) {
+			if (name.isEmpty())
+				continue;
+
+			folder = folder.getFolder(name);
+			if (folder == null)
+				return null;
+		}
+		return folder;
+	}
+
+	/**
+	 * Returns the song at `path` (like "/sdcard/Music/song.mp3")
+	 * or `null` if there's none.
+	 */
+	public Song findSong(String path) {
+		int slash = path.lastIndexOf('/');
+
+		Folder folder = find(path.substring(0, Math.max(slash, 0)));
+
+		if (folder == null)
+			return null;
+
+		return folder.getSong(path.substring(slash + 1));
+	}
+}
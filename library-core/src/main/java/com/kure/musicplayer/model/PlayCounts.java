@@ -0,0 +1,52 @@
+package com.kure.musicplayer.model;
+
+import java.util.HashMap;
+
+/**
+ * How many times each song was played.
+ *
+ * It's what smart playlist rules like "never played"
+ * or "plays>=10" look at (see `SmartRule`).
+ * The counts come from wherever the app keeps its
+ * history - we just hold them in memory.
+ *
+ * @note Thread-safe.
+ */
+public class PlayCounts {
+
+	private final HashMap<Long, Integer> counts = new HashMap<Long, Integer>();
+
+	/**
+	 * How many times song `songId` was played
+	 * (0 if it never was).
+	 */
+	public synchronized int get(long songId) {
+		Integer count = counts.get(songId);
+
+		return (count == null) ? 0 : count;
+	}
+
+	/**
+	 * Sets how many times song `songId` was played.
+	 */
+	public synchronized void set(long songId, int count) {
+		if (count <= 0)
+			counts.remove(songId);
+		else
+			counts.put(songId, count);
+	}
+
+	/**
+	 * Song `songId` was just played once more.
+	 */
+	public synchronized void increase(long songId) {
+		set(songId, get(songId) + 1);
+	}
+
+	/**
+	 * How many different songs were played.
+	 */
+	public synchronized int size() {
+		return counts.size();
+	}
+}
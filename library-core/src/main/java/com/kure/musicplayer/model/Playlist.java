@@ -0,0 +1,182 @@
+package com.kure.musicplayer.model;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A named list of song IDs, without repetitions.
+ *
+ * IDs are kept on a plain `long[]` (in the order they were
+ * added) and on a `LongHashSet`, so adding a song and checking
+ * if it's already there don't depend on the Playlist's size.
+ *
+ * Songs might also be loaded only when someone asks for them
+ * (see `PlaylistMemberLoader`) - after that they stay here.
+ *
+ * @note Once it's on a `LibrarySnapshot`, only the loader
+ *       adds songs to it.
+ */
+public class Playlist {
+
+	private long id;
+	private String name;
+
+	private long[] songs = new long[16];
+
+	private int size = 0;
+
+	private LongHashSet members = new LongHashSet();
+
+	/**
+	 * Gets our songs when first needed.
+	 * It's `null` when they're already here.
+	 */
+	private PlaylistMemberLoader loader = null;
+
+	/**
+	 * Tells if the songs are here already.
+	 *
+	 * Set right after the loader finishes, so any Thread that
+	 * sees it as `true` also sees all the songs.
+	 */
+	private volatile boolean loaded = true;
+
+	public Playlist(long id, String name) {
+		this.id = id;
+		this.name = name;
+	}
+
+	/**
+	 * Creates a Playlist whose songs will be loaded by
+	 * `loader` the first time someone asks for them.
+	 */
+	public Playlist(long id, String name, PlaylistMemberLoader loader) {
+		this(id, name);
+
+		this.loader = loader;
+		this.loaded = false;
+	}
+
+	public long getID() {
+		return id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Inserts a song on this Playlist.
+	 *
+	 * @note Does nothing if it's already there.
+	 *
+	 * @param id Global song id.
+	 */
+	public synchronized void add(long id) {
+		if (! members.add(id))
+			return;
+
+		if (size == songs.length)
+			songs = Arrays.copyOf(songs, size * 2);
+
+		songs[size++] = id;
+	}
+
+	/**
+	 * Tells if the song with `id` is on this Playlist.
+	 */
+	public boolean contains(long id) {
+		load();
+		return members.contains(id);
+	}
+
+	/**
+	 * How many songs there are.
+	 */
+	public int size() {
+		load();
+		return size;
+	}
+
+	/**
+	 * Tells if the songs were loaded already (calling
+	 * any other method would be quick).
+	 */
+	public boolean isLoaded() {
+		return loaded;
+	}
+
+	/**
+	 * Makes sure all songs are here, calling the loader
+	 * if they're not.
+	 *
+	 * @note If the loader fails, the next call tries again.
+	 */
+	public void load() {
+		if (loaded)
+			return;
+
+		synchronized (this) {
+			if (loaded)
+				return;
+
+			try {
+				loader.load(this);
+			}
+			catch (RuntimeException e) {
+				// Throwing away whatever it added
+				songs   = new long[16];
+				size    = 0;
+				members = new LongHashSet();
+				throw e;
+			}
+
+			loader = null;
+			loaded = true;
+		}
+	}
+
+	/**
+	 * ID of the song at `index` (in the order they
+	 * were added).
+	 */
+	public long getSongId(int index) {
+		load();
+
+		if (index >= size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+
+		return songs[index];
+	}
+
+	/**
+	 * Returns a copy of all song IDs, in order.
+	 */
+	public long[] toArray() {
+		load();
+		return Arrays.copyOf(songs, size);
+	}
+
+	/**
+	 * Returns a list with all the songs inside this Playlist.
+	 *
+	 * @note It's a read-only view, not a copy - it changes
+	 *       if songs get added. Prefer `size()` and
+	 *       `getSongId()` when going through lots of songs
+	 *       (they don't create `Long`s).
+	 */
+	public List<Long> getSongIds() {
+		return new AbstractList<Long>() {
+			@Override
+			public Long get(int index) {
+				return getSongId(index);
+			}
+
+			@Override
+			public int size() {
+				return Playlist.this.size();
+			}
+		};
+	}
+}
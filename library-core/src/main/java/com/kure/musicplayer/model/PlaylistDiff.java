@@ -0,0 +1,327 @@
+package com.kure.musicplayer.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * The fewest changes that turn a Playlist's songs into
+ * another order (with songs added or removed).
+ *
+ * Used to save edits to a database that only knows how
+ * to insert, delete or move a single song at a time,
+ * without rewriting the whole Playlist.
+ *
+ * How it works:
+ *
+ * 1. Songs that are gone get deleted;
+ * 2. Of the songs that stay, the biggest group already
+ *    in the right order stays put (the "longest increasing
+ *    subsequence" of their new positions);
+ * 3. Every other song that stays is moved once, right
+ *    after the song that comes before it;
+ * 4. New songs are inserted the same way.
+ *
+ * Operations must be applied in the order they're given,
+ * since positions refer to the list as it is right
+ * before each one.
+ *
+ * @note Both lists must not have repeated songs
+ *       (as `Playlist`s don't).
+ */
+public class PlaylistDiff {
+
+	/** Adds `songId` at position `to` */
+	public static final int INSERT = 0;
+
+	/** Removes `songId`, that's at position `from` */
+	public static final int DELETE = 1;
+
+	/** Moves `songId` from position `from` to `to` */
+	public static final int MOVE = 2;
+
+	/**
+	 * A single change to a list of songs.
+	 */
+	public static class Operation {
+
+		public final int  type;
+		public final long songId;
+
+		/** Position before the change (unused on INSERT) */
+		public final int from;
+
+		/** Position after the change (unused on DELETE) */
+		public final int to;
+
+		Operation(int type, long songId, int from, int to) {
+			this.type   = type;
+			this.songId = songId;
+			this.from   = from;
+			this.to     = to;
+		}
+
+		@Override
+		public String toString() {
+			switch (type) {
+			case INSERT: return "insert " + songId + " at " + to;
+			case DELETE: return "delete " + songId + " at " + from;
+			default:     return "move " + songId + " from " + from + " to " + to;
+			}
+		}
+	}
+
+	private final List<Operation> operations;
+
+	private int inserts = 0;
+	private int deletes = 0;
+	private int moves   = 0;
+
+	private PlaylistDiff(List<Operation> operations) {
+		this.operations = Collections.unmodifiableList(operations);
+
+		for (Operation operation : operations) {
+			switch (operation.type) {
+			case INSERT: inserts++; break;
+			case DELETE: deletes++; break;
+			default:     moves++;   break;
+			}
+		}
+	}
+
+	/**
+	 * Finds what changes `before` into `after`.
+	 */
+	public static PlaylistDiff between(long[] before, long[] after) {
+		ArrayList<Operation> operations = new ArrayList<Operation>();
+
+		// Where each song is at the end
+		HashMap<Long, Integer> newPosition = new HashMap<Long, Integer>(after.length * 2);
+
+		for (int i = 0; i < after.length; i++)
+			newPosition.put(after[i], i);
+
+		// 1. Deleting songs that are gone.
+		//    From the end, so positions before it stay the same.
+		ArrayList<Long> current = new ArrayList<Long>(Math.max(before.length, after.length));
+
+		for (long id : before)
+			current.add(id);
+
+		for (int i = before.length - 1; i >= 0; i--)
+			if (! newPosition.containsKey(before[i])) {
+				operations.add(new Operation(DELETE, before[i], i, -1));
+				current.remove(i);
+			}
+
+		// 2. Which of the remaining ones stay put
+		int[] positions = new int[current.size()];
+
+		for (int i = 0; i < positions.length; i++)
+			positions[i] = newPosition.get(current.get(i));
+
+		LongHashSet stable = new LongHashSet(positions.length);
+
+		for (int position : longestIncreasing(positions))
+			stable.add(after[position]);
+
+		LongHashSet present = new LongHashSet(current.size());
+
+		for (long id : current)
+			present.add(id);
+
+		// 3 and 4. Placing everything else, one after
+		//          the other, in the final order.
+		for (int i = 0; i < after.length; i++) {
+			long id = after[i];
+
+			if (stable.contains(id))
+				continue;
+
+			int from = -1;
+
+			if (present.contains(id)) {
+				from = current.indexOf(id);
+				current.remove(from);
+			}
+
+			int to = (i == 0) ? 0 : current.indexOf(after[i - 1]) + 1;
+
+			current.add(to, id);
+
+			if (from == -1)
+				operations.add(new Operation(INSERT, id, -1, to));
+
+			else if (from != to)
+				operations.add(new Operation(MOVE, id, from, to));
+		}
+
+		return new PlaylistDiff(operations);
+	}
+
+	/**
+	 * Puts back on `edited` the songs of `original` that
+	 * were never given to whoever edited it.
+	 *
+	 * Like songs that aren't on the library - we don't show
+	 * them, so the user couldn't have removed them.
+	 * Each one goes right after the song that came before
+	 * it on `original` (or at the start).
+	 *
+	 * @param original All songs before the edit.
+	 * @param editable The songs that could be edited.
+	 * @param edited   Those songs, after the edit.
+	 */
+	public static long[] keepingOthers(long[] original, long[] editable, long[] edited) {
+		LongHashSet touched = new LongHashSet(editable.length + edited.length);
+
+		for (long id : editable)
+			touched.add(id);
+
+		for (long id : edited)
+			touched.add(id);
+
+		ArrayList<Long> result = new ArrayList<Long>(original.length + edited.length);
+
+		for (long id : edited)
+			result.add(id);
+
+		for (int i = 0; i < original.length; i++) {
+			if (touched.contains(original[i]))
+				continue;
+
+			int position = 0;
+
+			for (int j = i - 1; j >= 0; j--) {
+				int index = result.indexOf(original[j]);
+
+				if (index != -1) {
+					position = index + 1;
+					break;
+				}
+			}
+			result.add(position, original[i]);
+		}
+
+		long[] array = new long[result.size()];
+
+		for (int i = 0; i < array.length; i++)
+			array[i] = result.get(i);
+
+		return array;
+	}
+
+	/**
+	 * Returns the values of the longest strictly increasing
+	 * subsequence of `values`.
+	 *
+	 * The usual O(n log n) way - for each length we keep
+	 * the smallest value that ends a subsequence of it.
+	 */
+	private static int[] longestIncreasing(int[] values) {
+		// Index (on `values`) that ends a subsequence
+		// of each length
+		int[] ends = new int[values.length];
+
+		// Index of the one that comes before each one
+		int[] previous = new int[values.length];
+
+		int length = 0;
+
+		for (int i = 0; i < values.length; i++) {
+			int low  = 0;
+			int high = length;
+
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+
+				if (values[ends[middle]] < values[i])
+					low = middle + 1;
+				else
+					high = middle;
+			}
+
+			previous[i] = (low > 0) ? ends[low - 1] : -1;
+			ends[low]   = i;
+
+			if (low == length)
+				length++;
+		}
+
+		int[] result = new int[length];
+
+		for (int i = length - 1, index = (length > 0) ? ends[length - 1] : -1; i >= 0; i--) {
+			result[i] = values[index];
+			index     = previous[index];
+		}
+		return result;
+	}
+
+	/**
+	 * All changes, in the order they must be applied.
+	 */
+	public List<Operation> getOperations() {
+		return operations;
+	}
+
+	/**
+	 * Tells if both lists were the same.
+	 */
+	public boolean isEmpty() {
+		return operations.isEmpty();
+	}
+
+	public int getInsertCount() {
+		return inserts;
+	}
+
+	public int getDeleteCount() {
+		return deletes;
+	}
+
+	public int getMoveCount() {
+		return moves;
+	}
+
+	/**
+	 * Applies all changes to `list`, returning the result.
+	 *
+	 * It's what the database does - here so we can make
+	 * sure both sides end up the same.
+	 */
+	public long[] apply(long[] list) {
+		ArrayList<Long> current = new ArrayList<Long>(list.length);
+
+		for (long id : list)
+			current.add(id);
+
+		for (Operation operation : operations) {
+			switch (operation.type) {
+			case INSERT:
+				current.add(operation.to, operation.songId);
+				break;
+
+			case DELETE:
+				current.remove(operation.from);
+				break;
+
+			default:
+				current.add(operation.to, current.remove(operation.from));
+				break;
+			}
+		}
+
+		long[] result = new long[current.size()];
+
+		for (int i = 0; i < result.length; i++)
+			result[i] = current.get(i);
+
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return inserts + " inserts, " + deletes + " deletes, " + moves + " moves";
+	}
+}
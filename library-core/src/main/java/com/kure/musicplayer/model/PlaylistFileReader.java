@@ -0,0 +1,242 @@
+package com.kure.musicplayer.model;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Locale;
+
+/**
+ * Reads playlist files (M3U, M3U8 and PLS), one entry
+ * at a time.
+ *
+ * It never holds more than a line in memory, so huge
+ * playlists are fine:
+ *
+ *     PlaylistFileReader reader = PlaylistFileReader.open(file);
+ *     try {
+ *         PlaylistFileReader.Entry entry;
+ *         while ((entry = reader.next()) != null)
+ *             ...
+ *     }
+ *     finally {
+ *         reader.close();
+ *     }
+ *
+ * Entries are exactly what's on the file - to find which
+ * songs they are, see `SongPathResolver`.
+ *
+ * @note All files are read as UTF-8, even ".m3u"s (most
+ *       programs write them like that nowadays).
+ */
+public class PlaylistFileReader implements Closeable {
+
+	/** "#EXTM3U", one path per line */
+	public static final int M3U = 0;
+
+	/** "[playlist]", with "File1=", "Title1=" and such */
+	public static final int PLS = 1;
+
+	/**
+	 * A single song on the file.
+	 */
+	public static class Entry {
+
+		/** Just like it's on the file */
+		public final String path;
+
+		/** Might be `null` */
+		public final String title;
+
+		/** -1 if unknown */
+		public final int seconds;
+
+		Entry(String path, String title, int seconds) {
+			this.path    = path;
+			this.title   = title;
+			this.seconds = seconds;
+		}
+	}
+
+	private BufferedReader reader;
+
+	private int format;
+
+	private int lines = 0;
+
+	// What we know about the entry we're reading
+	// (they're spread over several lines)
+	private String title   = null;
+	private int    seconds = -1;
+
+	/** PLS only - the entry number and its path */
+	private int    number = -1;
+	private String path   = null;
+
+	public PlaylistFileReader(Reader reader, int format) {
+		this.reader = (reader instanceof BufferedReader) ?
+		              (BufferedReader)reader :
+		              new BufferedReader(reader);
+		this.format = format;
+	}
+
+	/**
+	 * Opens `file`, guessing its format from the name.
+	 */
+	public static PlaylistFileReader open(File file) throws IOException {
+		Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+
+		return new PlaylistFileReader(reader, formatOf(file.getName()));
+	}
+
+	/**
+	 * PLS if `fileName` ends with ".pls", M3U otherwise.
+	 */
+	public static int formatOf(String fileName) {
+		return fileName.toLowerCase(Locale.US).endsWith(".pls") ? PLS : M3U;
+	}
+
+	/**
+	 * Tells if we know how to read `fileName`.
+	 */
+	public static boolean isPlaylist(String fileName) {
+		String name = fileName.toLowerCase(Locale.US);
+
+		return name.endsWith(".m3u") || name.endsWith(".m3u8") || name.endsWith(".pls");
+	}
+
+	/**
+	 * Returns the next entry or `null` at the end.
+	 */
+	public Entry next() throws IOException {
+		return (format == PLS) ? nextPls() : nextM3u();
+	}
+
+	/**
+	 * How many lines we've read so far.
+	 */
+	public int getLineCount() {
+		return lines;
+	}
+
+	private Entry nextM3u() throws IOException {
+		String line;
+
+		while ((line = readLine()) != null) {
+			if (line.isEmpty())
+				continue;
+
+			if (line.startsWith("#")) {
+				// "#EXTINF:123,Artist - Title"
+				if (line.startsWith("#EXTINF:")) {
+					int comma = line.indexOf(',');
+
+					seconds = parseInt((comma == -1) ? line.substring(8) : line.substring(8, comma));
+					title   = (comma == -1) ? null : line.substring(comma + 1).trim();
+				}
+				continue;
+			}
+
+			Entry entry = new Entry(line, title, seconds);
+
+			title   = null;
+			seconds = -1;
+
+			return entry;
+		}
+		return null;
+	}
+
+	private Entry nextPls() throws IOException {
+		String line;
+
+		while ((line = readLine()) != null) {
+			int equals = line.indexOf('=');
+
+			if (equals == -1)
+				continue;
+
+			String key   = line.substring(0, equals).trim().toLowerCase(Locale.US);
+			String value = line.substring(equals + 1).trim();
+
+			int keyNumber;
+
+			if (key.startsWith("file"))
+				keyNumber = parseInt(key.substring(4));
+
+			else if (key.startsWith("title"))
+				keyNumber = parseInt(key.substring(5));
+
+			else if (key.startsWith("length"))
+				keyNumber = parseInt(key.substring(6));
+
+			else
+				continue;
+
+			// Keys of the next entry - the current one is done
+			Entry entry = null;
+
+			if ((keyNumber != number) && (path != null))
+				entry = new Entry(path, title, seconds);
+
+			if (keyNumber != number) {
+				number  = keyNumber;
+				path    = null;
+				title   = null;
+				seconds = -1;
+			}
+
+			if (key.startsWith("file"))
+				path = value;
+
+			else if (key.startsWith("title"))
+				title = value;
+
+			else
+				seconds = parseInt(value);
+
+			if (entry != null)
+				return entry;
+		}
+
+		// Last one
+		if (path != null) {
+			Entry entry = new Entry(path, title, seconds);
+			path = null;
+			return entry;
+		}
+		return null;
+	}
+
+	private String readLine() throws IOException {
+		String line = reader.readLine();
+
+		if (line == null)
+			return null;
+
+		// Byte Order Mark, that some editors put
+		// at the start of UTF-8 files
+		if ((lines == 0) && (line.length() > 0) && (line.charAt(0) == '\uFEFF'))
+			line = line.substring(1);
+
+		lines++;
+		return line.trim();
+	}
+
+	private static int parseInt(String string) {
+		try {
+			return Integer.parseInt(string.trim());
+		}
+		catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+}
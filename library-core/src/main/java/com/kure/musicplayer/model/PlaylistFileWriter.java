@@ -0,0 +1,113 @@
+package com.kure.musicplayer.model;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Writes playlist files (M3U8 or PLS), one song at a time.
+ *
+ * Songs inside the playlist file's folder are written with
+ * relative paths, so copying the folder somewhere else
+ * (like another device) keeps the playlist working.
+ *
+ * @note The file is only complete after `close()`.
+ * @see PlaylistFileReader
+ */
+public class PlaylistFileWriter implements Closeable {
+
+	private Writer writer;
+
+	private int format;
+
+	/** Folder of the playlist file, ending with '/' */
+	private String folder;
+
+	private int count = 0;
+
+	/**
+	 * @param format `PlaylistFileReader.M3U` or `PLS`.
+	 * @param folder Where the file is, for relative paths
+	 *               (`null` to always write full paths).
+	 */
+	public PlaylistFileWriter(Writer writer, int format, String folder) throws IOException {
+		this.writer = (writer instanceof BufferedWriter) ?
+		              writer :
+		              new BufferedWriter(writer);
+		this.format = format;
+		this.folder = (folder == null) ? null : (folder.endsWith("/") ? folder : folder + "/");
+
+		if (format == PlaylistFileReader.PLS)
+			this.writer.write("[playlist]\n");
+		else
+			this.writer.write("#EXTM3U\n");
+	}
+
+	/**
+	 * Creates `file`, picking the format from its name.
+	 */
+	public static PlaylistFileWriter open(File file) throws IOException {
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+
+		try {
+			return new PlaylistFileWriter(writer,
+			                              PlaylistFileReader.formatOf(file.getName()),
+			                              file.getAbsoluteFile().getParent());
+		}
+		catch (IOException e) {
+			writer.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Adds `song` at the end.
+	 */
+	public void write(Song song) throws IOException {
+		String path = song.getFilePath();
+
+		if ((folder != null) && path.startsWith(folder))
+			path = path.substring(folder.length());
+
+		String title   = song.getTitle();
+		String artist  = song.getArtist();
+		long   seconds = song.getDurationSeconds();
+
+		if ((artist != null) && (! artist.isEmpty()) && (title != null))
+			title = artist + " - " + title;
+
+		count++;
+
+		if (format == PlaylistFileReader.PLS) {
+			writer.write("File" + count + "=" + path + "\n");
+
+			if (title != null)
+				writer.write("Title" + count + "=" + title + "\n");
+
+			writer.write("Length" + count + "=" + ((seconds > 0) ? seconds : -1) + "\n");
+		}
+		else {
+			writer.write("#EXTINF:" + ((seconds > 0) ? seconds : -1) + "," + ((title != null) ? title : "") + "\n");
+			writer.write(path + "\n");
+		}
+	}
+
+	/**
+	 * How many songs we've written so far.
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (format == PlaylistFileReader.PLS)
+			writer.write("NumberOfEntries=" + count + "\nVersion=2\n");
+
+		writer.close();
+	}
+}
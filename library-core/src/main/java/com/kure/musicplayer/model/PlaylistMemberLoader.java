@@ -0,0 +1,21 @@
+package com.kure.musicplayer.model;
+
+/**
+ * Gets the songs of a Playlist only when someone asks for them.
+ *
+ * Scanning every playlist's songs is slow (one query each) and
+ * most people only open one or two, so sources can create
+ * Playlists with just their ID and name and give one of these.
+ *
+ * @see Playlist
+ */
+public interface PlaylistMemberLoader {
+
+	/**
+	 * Adds all songs of `playlist` to it, with `Playlist.add()`.
+	 *
+	 * @note Called at most once per Playlist, from whatever
+	 *       Thread asked for its songs first.
+	 */
+	public void load(Playlist playlist);
+}
@@ -0,0 +1,213 @@
+package com.kure.musicplayer.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers the songs the last `SongQuery`s found, so going
+ * back and forth between screens doesn't go through the
+ * whole library every time.
+ *
+ * Results are only valid for the snapshot version they
+ * came from - as soon as someone asks with another snapshot
+ * (after a rescan or a Playlist change), we forget them all.
+ *
+ * When full, the query used least recently goes away.
+ *
+ * Results that change without a new snapshot (smart playlists,
+ * as songs get played) must be dropped with `forget()`.
+ *
+ * @note Thread-safe.
+ */
+public class QueryCache implements CacheRegistry.Cache {
+
+	private final int capacity;
+
+	/** In access order - least recently used first */
+	private final LinkedHashMap<SongQuery, List<Song>> results;
+
+	/** Version of the snapshot `results` came from */
+	private long version = -1;
+
+	/** Goes up on every `forget()` */
+	private int forgets = 0;
+
+	/** Finds what the snapshot alone can't (see `setFinder()`) */
+	private SongQuery.Finder finder = null;
+
+	// Statistics since we were created
+	private int hits      = 0;
+	private int misses    = 0;
+	private int evictions = 0;
+
+	/**
+	 * @param capacity How many results to keep at most.
+	 */
+	public QueryCache(int capacity) {
+		this.capacity = capacity;
+
+		results = new LinkedHashMap<SongQuery, List<Song>>(capacity * 2, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<SongQuery, List<Song>> eldest) {
+				if (size() <= QueryCache.this.capacity)
+					return false;
+
+				evictions++;
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * Who finds the songs of queries the snapshot can't
+	 * answer by itself (see `SongQuery#run(LibrarySnapshot, Finder)`).
+	 */
+	public synchronized void setFinder(SongQuery.Finder finder) {
+		this.finder = finder;
+	}
+
+	/**
+	 * The songs `query` finds on `snapshot`, running it
+	 * only if we don't have them already.
+	 *
+	 * @note Returns a new list - feel free to change it.
+	 */
+	public ArrayList<Song> get(SongQuery query, LibrarySnapshot snapshot) {
+
+		SongQuery.Finder finder;
+		int              forgets;
+
+		synchronized (this) {
+			if (snapshot.getVersion() != version) {
+				results.clear();
+				version = snapshot.getVersion();
+			}
+
+			List<Song> songs = results.get(query);
+
+			if (songs != null) {
+				hits++;
+				return new ArrayList<Song>(songs);
+			}
+			misses++;
+
+			finder  = this.finder;
+			forgets = this.forgets;
+		}
+
+		// Not holding the lock while going through
+		// the library - queries might take a while
+		ArrayList<Song> songs = query.run(snapshot, finder);
+
+		synchronized (this) {
+			// Someone else might have seen another one,
+			// or made what we found old
+			if ((snapshot.getVersion() == version) && (forgets == this.forgets))
+				results.put(query, Collections.unmodifiableList(new ArrayList<Song>(songs)));
+		}
+		return songs;
+	}
+
+	/**
+	 * The songs `query` found on `snapshot` last time, without
+	 * running it - `null` if we don't have them.
+	 *
+	 * @note Returns a new list - feel free to change it.
+	 */
+	public synchronized ArrayList<Song> peek(SongQuery query, LibrarySnapshot snapshot) {
+		if (snapshot.getVersion() != version)
+			return null;
+
+		List<Song> songs = results.get(query);
+
+		if (songs == null)
+			return null;
+
+		hits++;
+		return new ArrayList<Song>(songs);
+	}
+
+	/**
+	 * Forgets the results of all queries of `type`
+	 * (one of `SongQuery.TYPE_*`).
+	 */
+	public synchronized void forget(int type) {
+		forgets++;
+
+		Iterator<SongQuery> queries = results.keySet().iterator();
+
+		while (queries.hasNext())
+			if (queries.next().getType() == type)
+				queries.remove();
+	}
+
+	/**
+	 * Forgets all results.
+	 *
+	 * @note Call it when versions start over (like when
+	 *       the library is destroyed).
+	 */
+	public synchronized void clear() {
+		results.clear();
+		version = -1;
+	}
+
+	/**
+	 * How many results we have right now.
+	 */
+	public synchronized int size() {
+		return results.size();
+	}
+
+	/**
+	 * Roughly how much memory the results take, in bytes
+	 * (only the lists - songs belong to the snapshot).
+	 */
+	@Override
+	public synchronized long getSize() {
+		long bytes = 0;
+
+		for (List<Song> songs : results.values())
+			bytes += 64 + (songs.size() * 8);
+
+		return bytes;
+	}
+
+	@Override
+	public void trim() {
+		clear();
+	}
+
+	/**
+	 * How many times we had the results already.
+	 */
+	public synchronized int getHits() {
+		return hits;
+	}
+
+	/**
+	 * How many times we had to run the query.
+	 */
+	public synchronized int getMisses() {
+		return misses;
+	}
+
+	/**
+	 * How many results went away for lack of space.
+	 */
+	public synchronized int getEvictions() {
+		return evictions;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return results.size() + "/" + capacity + " results, " + hits + " hits, " +
+		       misses + " misses, " + evictions + " evictions";
+	}
+}
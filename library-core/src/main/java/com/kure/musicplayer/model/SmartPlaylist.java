@@ -0,0 +1,276 @@
+package com.kure.musicplayer.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A Playlist made of all songs that follow a `SmartRule`,
+ * like "genre=Rock AND year>=1990 AND never played".
+ *
+ * Its songs are never saved anywhere - they're found again
+ * when the library changes. But not from scratch:
+ *
+ * - If it's the same snapshot (and nothing got played), we
+ *   give back what we found last time;
+ * - After a rescan, we only test songs that are new or had
+ *   some of the rule's fields changed (see `SmartRule#getFields()`).
+ *   The others keep whatever they were before;
+ * - When a song gets played (see `songPlayed()`), only that
+ *   song gets tested again.
+ *
+ * To know what changed we compare the rule's fields on
+ * the songs we've evaluated last and on the new ones (and
+ * their genres, since `Song#getGenre()` only has the first).
+ *
+ * @note Songs must not change once on a snapshot - a
+ *       rescan creates new ones.
+ *
+ * @note Thread-safe.
+ */
+public class SmartPlaylist {
+
+	private final String name;
+
+	private final SmartRule rule;
+
+	/**
+	 * Songs of the snapshot we've evaluated last
+	 * (`null` if we never did).
+	 */
+	private List<Song> evaluated = null;
+
+	/** Song IDs to their positions on `evaluated` */
+	private LongIntMap positions = new LongIntMap();
+
+	/**
+	 * All genres of each song on `evaluated` (`null` if
+	 * the rule doesn't look at genres).
+	 */
+	private String[][] genres = null;
+
+	/** If each song on `evaluated` follows the rule */
+	private boolean[] matched = new boolean[0];
+
+	/** All songs that follow the rule, in the snapshot's order */
+	private ArrayList<Song> songs = new ArrayList<Song>();
+
+	/**
+	 * Songs played since we've evaluated last.
+	 */
+	private LongHashSet played = new LongHashSet();
+
+	/** How many songs the last `getSongs()` had to test */
+	private int lastTested = 0;
+
+	public SmartPlaylist(String name, SmartRule rule) {
+		this.name = name;
+		this.rule = rule;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public SmartRule getRule() {
+		return rule;
+	}
+
+	/**
+	 * All songs of `snapshot` that follow the rule, in
+	 * the same order they're on it.
+	 *
+	 * @param plays How many times each song was played.
+	 * @note Returns a copy - feel free to change it.
+	 */
+	public synchronized ArrayList<Song> getSongs(LibrarySnapshot snapshot, PlayCounts plays) {
+		if (snapshot.getSongs() == evaluated)
+			retestPlayed(plays);
+		else
+			evaluate(snapshot, plays);
+
+		return new ArrayList<Song>(songs);
+	}
+
+	/**
+	 * Tells that song `songId` just got played, so it might
+	 * not follow the rule anymore (like "never played").
+	 */
+	public synchronized void songPlayed(long songId) {
+		if ((rule.getFields() & SmartRule.FIELD_PLAYS) != 0)
+			played.add(songId);
+	}
+
+	/**
+	 * Forgets everything, so the next `getSongs()`
+	 * tests all songs.
+	 */
+	public synchronized void reset() {
+		evaluated    = null;
+		positions    = new LongIntMap();
+		genres       = null;
+		matched      = new boolean[0];
+		songs        = new ArrayList<Song>();
+		played       = new LongHashSet();
+	}
+
+	/**
+	 * Roughly how much memory we keep between `getSongs()`,
+	 * in bytes (`reset()` lets go of it).
+	 */
+	public synchronized long sizeInBytes() {
+		return (positions.size() * 24) + ((genres == null) ? 0 : genres.length * 24) + matched.length +
+		       (songs.size() * 8) + (played.size() * 16);
+	}
+
+	/**
+	 * How many songs the last `getSongs()` had to test
+	 * (the others were the same as before).
+	 */
+	public synchronized int getLastTested() {
+		return lastTested;
+	}
+
+	/**
+	 * Same songs as last time, only testing again
+	 * the ones that got played.
+	 */
+	private void retestPlayed(PlayCounts plays) {
+		lastTested = 0;
+
+		if (played.size() == 0)
+			return;
+
+		boolean changed = false;
+
+		for (long songId : played.toArray()) {
+			int position = positions.get(songId, -1);
+
+			if (position == -1)
+				continue;
+
+			boolean matches = rule.matches(evaluated.get(position), genresAt(genres, position), plays);
+			lastTested++;
+
+			if (matches != matched[position]) {
+				matched[position] = matches;
+				changed = true;
+			}
+		}
+		played = new LongHashSet();
+
+		if (changed)
+			collectSongs();
+	}
+
+	/**
+	 * Goes through a new snapshot, only testing songs we
+	 * haven't seen or that have changed since last time.
+	 */
+	private void evaluate(LibrarySnapshot snapshot, PlayCounts plays) {
+		List<Song> all    = snapshot.getSongs();
+		int        fields = rule.getFields();
+
+		LongIntMap newPositions = new LongIntMap(all.size());
+		String[][] newGenres    = ((fields & SmartRule.FIELD_GENRE) != 0) ? genresOf(snapshot) : null;
+		boolean[]  newMatched   = new boolean[all.size()];
+
+		lastTested = 0;
+
+		for (int i = 0; i < all.size(); i++) {
+			Song song = all.get(i);
+			int  old  = positions.get(song.getId(), -1);
+
+			if ((old != -1) && (! played.contains(song.getId())) &&
+			    sameFields(evaluated.get(old), song, fields) &&
+			    ((newGenres == null) || Arrays.equals(genres[old], newGenres[i]))) {
+				newMatched[i] = matched[old];
+			}
+			else {
+				newMatched[i] = rule.matches(song, genresAt(newGenres, i), plays);
+				lastTested++;
+			}
+
+			newPositions.put(song.getId(), i);
+		}
+
+		evaluated = all;
+		positions = newPositions;
+		genres    = newGenres;
+		matched   = newMatched;
+		played    = new LongHashSet();
+
+		collectSongs();
+	}
+
+	private void collectSongs() {
+		songs = new ArrayList<Song>();
+
+		for (int i = 0; i < matched.length; i++)
+			if (matched[i])
+				songs.add(evaluated.get(i));
+	}
+
+	/**
+	 * Tells if `old` and `song` have the same values
+	 * on all `fields`.
+	 *
+	 * Play counts aren't here - they change without
+	 * the song changing (see `songPlayed()`). Neither are
+	 * genres other than the first (see `genresOf()`).
+	 */
+	static boolean sameFields(Song old, Song song, int fields) {
+		if (old == song)
+			return true;
+
+		return (((fields & SmartRule.FIELD_TITLE)        == 0) || same(old.getTitle(),       song.getTitle())) &&
+		       (((fields & SmartRule.FIELD_ARTIST)       == 0) || same(old.getArtist(),      song.getArtist())) &&
+		       (((fields & SmartRule.FIELD_ALBUM)        == 0) || same(old.getAlbum(),       song.getAlbum())) &&
+		       (((fields & SmartRule.FIELD_ALBUM_ARTIST) == 0) || same(old.getAlbumArtist(), song.getAlbumArtist())) &&
+		       (((fields & SmartRule.FIELD_GENRE)        == 0) || same(old.getGenre(),       song.getGenre())) &&
+		       (((fields & SmartRule.FIELD_PATH)         == 0) || same(old.getFilePath(),    song.getFilePath())) &&
+		       (((fields & SmartRule.FIELD_YEAR)         == 0) || (old.getYear()        == song.getYear())) &&
+		       (((fields & SmartRule.FIELD_TRACK)        == 0) || (old.getTrackNumber() == song.getTrackNumber())) &&
+		       (((fields & SmartRule.FIELD_DISC)         == 0) || (old.getDiscNumber()  == song.getDiscNumber())) &&
+		       (((fields & SmartRule.FIELD_DURATION)     == 0) || (old.getDuration()    == song.getDuration())) &&
+		       (((fields & SmartRule.FIELD_COMPILATION)  == 0) || (old.isCompilation()  == song.isCompilation()));
+	}
+
+	private static boolean same(String a, String b) {
+		return (a == null) ? (b == null) : a.equals(b);
+	}
+
+	/** For songs that aren't on any genre */
+	private static final String[] NO_GENRES = new String[0];
+
+	/**
+	 * All genres of each song on `snapshot`, by position
+	 * (in the genre index's order, so two lists of the
+	 * same genres are equal).
+	 */
+	static String[][] genresOf(LibrarySnapshot snapshot) {
+		FacetIndex index = snapshot.getGenreIndex();
+		int[]      count = new int[snapshot.getSongs().size()];
+
+		for (String name : index.getNames())
+			for (int position : index.get(name).toArray())
+				count[position]++;
+
+		String[][] genres = new String[count.length][];
+
+		for (int i = 0; i < count.length; i++) {
+			genres[i] = (count[i] == 0) ? NO_GENRES : new String[count[i]];
+			count[i]  = 0;
+		}
+
+		for (String name : index.getNames())
+			for (int position : index.get(name).toArray())
+				genres[position][count[position]++] = name;
+
+		return genres;
+	}
+
+	private static String[] genresAt(String[][] genres, int position) {
+		return (genres == null) ? null : genres[position];
+	}
+}
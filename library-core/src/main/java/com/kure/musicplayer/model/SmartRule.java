@@ -0,0 +1,616 @@
+package com.kure.musicplayer.model;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * What songs a smart playlist has, written like
+ *
+ *     genre=Rock AND year>=1990 AND never played
+ *
+ * It's compiled once by `parse()`, then `matches()` tells
+ * if a song follows it - without parsing anything again.
+ *
+ * Syntax:
+ * - Comparisons are "field operator value";
+ * - Text fields (title, artist, album, albumartist, genre,
+ *   path) take `=`, `!=`, `~` (contains) and `!~`, all
+ *   ignoring case;
+ * - Number fields (year, track, disc, duration and plays)
+ *   take `=`, `!=`, `<`, `<=`, `>` and `>=`. Durations are
+ *   in seconds, or like "3:30";
+ * - `compilation=yes` and `compilation=no`;
+ * - `played` and `never played`;
+ * - Values with spaces might be quoted ("Pink Floyd") or not;
+ * - `AND`, `OR`, `NOT` and parenthesis, with the usual
+ *   precedence (`NOT` first, then `AND`, then `OR`).
+ *
+ * Keywords and field names ignore case.
+ *
+ * @note Songs without a year (or track, disc, duration)
+ *       never match comparisons on it.
+ * @note Songs on several genres match `genre=` (and `~`) if
+ *       any of them does, and `genre!=` (and `!~`) if none
+ *       does - as long as we're given all of them (see
+ *       `matches(Song, String[], PlayCounts)`).
+ * @note Immutable.
+ */
+public abstract class SmartRule {
+
+	// What rules might look at (see `getFields()`)
+	public static final int FIELD_TITLE        = 1 << 0;
+	public static final int FIELD_ARTIST       = 1 << 1;
+	public static final int FIELD_ALBUM        = 1 << 2;
+	public static final int FIELD_ALBUM_ARTIST = 1 << 3;
+	public static final int FIELD_GENRE        = 1 << 4;
+	public static final int FIELD_PATH         = 1 << 5;
+	public static final int FIELD_YEAR         = 1 << 6;
+	public static final int FIELD_TRACK        = 1 << 7;
+	public static final int FIELD_DISC         = 1 << 8;
+	public static final int FIELD_DURATION     = 1 << 9;
+	public static final int FIELD_COMPILATION  = 1 << 10;
+
+	/** Not on the song itself - comes from `PlayCounts` */
+	public static final int FIELD_PLAYS        = 1 << 11;
+
+	private static final int TEXT_FIELDS = FIELD_TITLE | FIELD_ARTIST | FIELD_ALBUM |
+	                                       FIELD_ALBUM_ARTIST | FIELD_GENRE | FIELD_PATH;
+
+	// Operators
+	private static final int EQUALS         = 0;
+	private static final int NOT_EQUALS     = 1;
+	private static final int LESS           = 2;
+	private static final int LESS_EQUALS    = 3;
+	private static final int GREATER        = 4;
+	private static final int GREATER_EQUALS = 5;
+	private static final int CONTAINS       = 6;
+	private static final int NOT_CONTAINS   = 7;
+
+	private static final String[] OPERATORS = { "=", "!=", "<", "<=", ">", ">=", "~", "!~" };
+
+	/**
+	 * Fields this rule (and all inside it) look at.
+	 */
+	final int fields;
+
+	/**
+	 * What the user wrote - only on the rule `parse()`
+	 * gives back.
+	 */
+	private String expression = null;
+
+	SmartRule(int fields) {
+		this.fields = fields;
+	}
+
+	/**
+	 * Tells if `song` follows this rule, only knowing
+	 * its first genre (`Song#getGenre()`).
+	 *
+	 * @param plays How many times songs were played - only
+	 *              looked at if `getFields()` has `FIELD_PLAYS`.
+	 */
+	public boolean matches(Song song, PlayCounts plays) {
+		return matches(song, null, plays);
+	}
+
+	/**
+	 * Tells if `song` follows this rule.
+	 *
+	 * @param genres All genres the song is on (see
+	 *               `LibrarySnapshot#getGenreIndex()`) - only
+	 *               looked at if `getFields()` has `FIELD_GENRE`.
+	 *               If `null` or empty we use `Song#getGenre()`.
+	 * @param plays  How many times songs were played - only
+	 *               looked at if `getFields()` has `FIELD_PLAYS`.
+	 */
+	public abstract boolean matches(Song song, String[] genres, PlayCounts plays);
+
+	/**
+	 * All `FIELD_*` this rule looks at, OR'ed.
+	 *
+	 * If none of them changed on a song, it still
+	 * matches (or not) just like before.
+	 */
+	public int getFields() {
+		return fields;
+	}
+
+	/**
+	 * The expression it came from.
+	 */
+	@Override
+	public String toString() {
+		return expression;
+	}
+
+	/**
+	 * Compiles `expression` into a rule.
+	 *
+	 * @throws ParseException If it's not valid - the offset
+	 *                        is where we found the error.
+	 */
+	public static SmartRule parse(String expression) throws ParseException {
+		Parser parser = new Parser(expression);
+
+		SmartRule rule = parser.parseOr();
+
+		if (parser.peek().type != Token.END)
+			throw parser.error("Expected AND or OR");
+
+		rule.expression = expression.trim();
+		return rule;
+	}
+
+	// The rules themselves
+
+	private static class And extends SmartRule {
+		private final SmartRule[] rules;
+
+		And(SmartRule[] rules) {
+			super(fieldsOf(rules));
+			this.rules = rules;
+		}
+
+		@Override
+		public boolean matches(Song song, String[] genres, PlayCounts plays) {
+			for (SmartRule rule : rules)
+				if (! rule.matches(song, genres, plays))
+					return false;
+
+			return true;
+		}
+	}
+
+	private static class Or extends SmartRule {
+		private final SmartRule[] rules;
+
+		Or(SmartRule[] rules) {
+			super(fieldsOf(rules));
+			this.rules = rules;
+		}
+
+		@Override
+		public boolean matches(Song song, String[] genres, PlayCounts plays) {
+			for (SmartRule rule : rules)
+				if (rule.matches(song, genres, plays))
+					return true;
+
+			return false;
+		}
+	}
+
+	private static class Not extends SmartRule {
+		private final SmartRule rule;
+
+		Not(SmartRule rule) {
+			super(rule.fields);
+			this.rule = rule;
+		}
+
+		@Override
+		public boolean matches(Song song, String[] genres, PlayCounts plays) {
+			return ! rule.matches(song, genres, plays);
+		}
+	}
+
+	private static class TextComparison extends SmartRule {
+		private final int    operator;
+		private final String value;
+
+		TextComparison(int field, int operator, String value) {
+			super(field);
+			this.operator = operator;
+			this.value    = value;
+		}
+
+		@Override
+		public boolean matches(Song song, String[] genres, PlayCounts plays) {
+			if ((fields != FIELD_GENRE) || (genres == null) || (genres.length == 0))
+				return test(text(song, fields));
+
+			// "genre=Rock" if any of them is Rock,
+			// "genre!=Rock" if none of them is
+			boolean negated = (operator == NOT_EQUALS) || (operator == NOT_CONTAINS);
+
+			for (String genre : genres)
+				if (test(genre) != negated)
+					return ! negated;
+
+			return negated;
+		}
+
+		private boolean test(String text) {
+			switch (operator) {
+			case EQUALS:       return text.equalsIgnoreCase(value);
+			case NOT_EQUALS:   return ! text.equalsIgnoreCase(value);
+			case CONTAINS:     return containsIgnoreCase(text, value);
+			case NOT_CONTAINS: return ! containsIgnoreCase(text, value);
+			}
+			return false;
+		}
+	}
+
+	private static class NumberComparison extends SmartRule {
+		private final int  operator;
+		private final long value;
+
+		NumberComparison(int field, int operator, long value) {
+			super(field);
+			this.operator = operator;
+			this.value    = value;
+		}
+
+		@Override
+		public boolean matches(Song song, String[] genres, PlayCounts plays) {
+			long number = number(song, fields, plays);
+
+			// Unknown
+			if (number < 0)
+				return false;
+
+			switch (operator) {
+			case EQUALS:         return number == value;
+			case NOT_EQUALS:     return number != value;
+			case LESS:           return number <  value;
+			case LESS_EQUALS:    return number <= value;
+			case GREATER:        return number >  value;
+			case GREATER_EQUALS: return number >= value;
+			}
+			return false;
+		}
+	}
+
+	private static int fieldsOf(SmartRule[] rules) {
+		int fields = 0;
+
+		for (SmartRule rule : rules)
+			fields |= rule.fields;
+
+		return fields;
+	}
+
+	private static String text(Song song, int field) {
+		String text;
+
+		switch (field) {
+		case FIELD_TITLE:        text = song.getTitle();       break;
+		case FIELD_ARTIST:       text = song.getArtist();      break;
+		case FIELD_ALBUM:        text = song.getAlbum();       break;
+		case FIELD_ALBUM_ARTIST: text = song.getAlbumArtist(); break;
+		case FIELD_GENRE:        text = song.getGenre();       break;
+		case FIELD_PATH:         text = song.getFilePath();    break;
+		default:                 text = null;
+		}
+		return (text == null) ? "" : text;
+	}
+
+	private static long number(Song song, int field, PlayCounts plays) {
+		switch (field) {
+		// The MediaStore says 0 when it doesn't know
+		case FIELD_YEAR:        return known(song.getYear());
+		case FIELD_TRACK:       return known(song.getTrackNumber());
+		case FIELD_DISC:        return known(song.getDiscNumber());
+		case FIELD_DURATION:    return (song.getDuration() < 0) ? -1 : song.getDurationSeconds();
+		case FIELD_COMPILATION: return song.isCompilation() ? 1 : 0;
+		case FIELD_PLAYS:       return plays.get(song.getId());
+		}
+		return -1;
+	}
+
+	/**
+	 * -1 (unknown) for years, tracks and discs that
+	 * aren't positive.
+	 */
+	private static long known(int number) {
+		return (number <= 0) ? -1 : number;
+	}
+
+	/**
+	 * Like `String#contains()`, but ignoring case
+	 * (and without creating lower case copies).
+	 */
+	private static boolean containsIgnoreCase(String text, String part) {
+		int last = text.length() - part.length();
+
+		for (int i = 0; i <= last; i++)
+			if (text.regionMatches(true, i, part, 0, part.length()))
+				return true;
+
+		return false;
+	}
+
+	/**
+	 * The field called `name`, or 0 if there's none.
+	 */
+	private static int fieldNamed(String name) {
+		String field = name.toLowerCase(Locale.US);
+
+		if (field.equals("title"))        return FIELD_TITLE;
+		if (field.equals("artist"))       return FIELD_ARTIST;
+		if (field.equals("album"))        return FIELD_ALBUM;
+		if (field.equals("albumartist") ||
+		    field.equals("album_artist")) return FIELD_ALBUM_ARTIST;
+		if (field.equals("genre"))        return FIELD_GENRE;
+		if (field.equals("path"))         return FIELD_PATH;
+		if (field.equals("year"))         return FIELD_YEAR;
+		if (field.equals("track"))        return FIELD_TRACK;
+		if (field.equals("disc"))         return FIELD_DISC;
+		if (field.equals("duration"))     return FIELD_DURATION;
+		if (field.equals("compilation"))  return FIELD_COMPILATION;
+		if (field.equals("plays"))        return FIELD_PLAYS;
+
+		return 0;
+	}
+
+	// Parsing
+
+	private static class Token {
+		static final int WORD     = 0;
+		static final int STRING   = 1;
+		static final int OPERATOR = 2;
+		static final int OPEN     = 3;
+		static final int CLOSE    = 4;
+		static final int END      = 5;
+
+		final int    type;
+		final String text;
+		final int    offset;
+
+		Token(int type, String text, int offset) {
+			this.type   = type;
+			this.text   = text;
+			this.offset = offset;
+		}
+
+		boolean isKeyword(String keyword) {
+			return (type == WORD) && text.equalsIgnoreCase(keyword);
+		}
+	}
+
+	/**
+	 * Recursive descent parser over the expression's tokens.
+	 */
+	private static class Parser {
+
+		private final ArrayList<Token> tokens = new ArrayList<Token>();
+
+		private int next = 0;
+
+		Parser(String expression) throws ParseException {
+			int i = 0;
+
+			while (i < expression.length()) {
+				char c = expression.charAt(i);
+
+				if (Character.isWhitespace(c)) {
+					i++;
+				}
+				else if ((c == '(') || (c == ')')) {
+					tokens.add(new Token((c == '(') ? Token.OPEN : Token.CLOSE, String.valueOf(c), i));
+					i++;
+				}
+				else if (c == '"') {
+					int end = expression.indexOf('"', i + 1);
+
+					if (end == -1)
+						throw new ParseException("Missing closing quote", i);
+
+					tokens.add(new Token(Token.STRING, expression.substring(i + 1, end), i));
+					i = end + 1;
+				}
+				else if (isOperator(c)) {
+					int start = i++;
+
+					if ((i < expression.length()) && ((c == '!') || (c == '<') || (c == '>')) &&
+					    ((expression.charAt(i) == '=') || ((c == '!') && (expression.charAt(i) == '~'))))
+						i++;
+
+					String operator = expression.substring(start, i);
+
+					if (operator.equals("!"))
+						throw new ParseException("Expected != or !~", start);
+
+					tokens.add(new Token(Token.OPERATOR, operator, start));
+				}
+				else {
+					int start = i;
+
+					while ((i < expression.length()) &&
+					       (! Character.isWhitespace(expression.charAt(i))) &&
+					       ("()\"".indexOf(expression.charAt(i)) == -1) &&
+					       (! isOperator(expression.charAt(i))))
+						i++;
+
+					tokens.add(new Token(Token.WORD, expression.substring(start, i), start));
+				}
+			}
+			tokens.add(new Token(Token.END, "", expression.length()));
+		}
+
+		private static boolean isOperator(char c) {
+			return "=!<>~".indexOf(c) != -1;
+		}
+
+		Token peek() {
+			return tokens.get(next);
+		}
+
+		Token take() {
+			Token token = tokens.get(next);
+
+			if (token.type != Token.END)
+				next++;
+
+			return token;
+		}
+
+		ParseException error(String message) {
+			return new ParseException(message, peek().offset);
+		}
+
+		// or := and ("OR" and)*
+		SmartRule parseOr() throws ParseException {
+			ArrayList<SmartRule> rules = new ArrayList<SmartRule>();
+			rules.add(parseAnd());
+
+			while (peek().isKeyword("OR")) {
+				take();
+				rules.add(parseAnd());
+			}
+			return (rules.size() == 1) ? rules.get(0) : new Or(rules.toArray(new SmartRule[rules.size()]));
+		}
+
+		// and := not ("AND" not)*
+		SmartRule parseAnd() throws ParseException {
+			ArrayList<SmartRule> rules = new ArrayList<SmartRule>();
+			rules.add(parseNot());
+
+			while (peek().isKeyword("AND")) {
+				take();
+				rules.add(parseNot());
+			}
+			return (rules.size() == 1) ? rules.get(0) : new And(rules.toArray(new SmartRule[rules.size()]));
+		}
+
+		// not := "NOT" not | primary
+		SmartRule parseNot() throws ParseException {
+			if (peek().isKeyword("NOT")) {
+				take();
+				return new Not(parseNot());
+			}
+			return parsePrimary();
+		}
+
+		// primary := "(" or ")" | "played" | "never" "played" | comparison
+		SmartRule parsePrimary() throws ParseException {
+			Token token = peek();
+
+			if (token.type == Token.OPEN) {
+				take();
+				SmartRule rule = parseOr();
+
+				if (peek().type != Token.CLOSE)
+					throw error("Expected )");
+
+				take();
+				return rule;
+			}
+
+			if (token.type != Token.WORD)
+				throw error("Expected a field name");
+
+			if (token.isKeyword("played")) {
+				take();
+				return new NumberComparison(FIELD_PLAYS, GREATER, 0);
+			}
+
+			if (token.isKeyword("never")) {
+				take();
+				if (! peek().isKeyword("played"))
+					throw error("Expected \"played\"");
+
+				take();
+				return new NumberComparison(FIELD_PLAYS, EQUALS, 0);
+			}
+			return parseComparison();
+		}
+
+		// comparison := field operator value
+		SmartRule parseComparison() throws ParseException {
+			Token name = take();
+
+			int field = fieldNamed(name.text);
+
+			if (field == 0)
+				throw new ParseException("Unknown field \"" + name.text + "\"", name.offset);
+
+			Token operatorToken = peek();
+
+			if (operatorToken.type != Token.OPERATOR)
+				throw error("Expected an operator after \"" + name.text + "\"");
+
+			take();
+
+			int operator = 0;
+			while (! OPERATORS[operator].equals(operatorToken.text))
+				operator++;
+
+			Token  valueToken = peek();
+			String value      = parseValue();
+
+			if ((field & TEXT_FIELDS) != 0) {
+				if ((operator != EQUALS) && (operator != NOT_EQUALS) &&
+				    (operator != CONTAINS) && (operator != NOT_CONTAINS))
+					throw new ParseException("Text fields only take =, !=, ~ and !~", operatorToken.offset);
+
+				return new TextComparison(field, operator, value);
+			}
+
+			if ((operator == CONTAINS) || (operator == NOT_CONTAINS))
+				throw new ParseException("Only text fields take ~ and !~", operatorToken.offset);
+
+			if (field == FIELD_COMPILATION) {
+				if ((operator != EQUALS) && (operator != NOT_EQUALS))
+					throw new ParseException("\"compilation\" only takes = and !=", operatorToken.offset);
+
+				if (value.equalsIgnoreCase("yes") || value.equalsIgnoreCase("true") || value.equals("1"))
+					return new NumberComparison(field, operator, 1);
+
+				if (value.equalsIgnoreCase("no") || value.equalsIgnoreCase("false") || value.equals("0"))
+					return new NumberComparison(field, operator, 0);
+
+				throw new ParseException("Expected yes or no", valueToken.offset);
+			}
+
+			try {
+				return new NumberComparison(field, operator, parseNumber(field, value));
+			}
+			catch (NumberFormatException e) {
+				throw new ParseException("Expected a number", valueToken.offset);
+			}
+		}
+
+		/**
+		 * A quoted string or all words up until a keyword,
+		 * parenthesis or the end.
+		 */
+		String parseValue() throws ParseException {
+			Token token = peek();
+
+			if (token.type == Token.STRING) {
+				take();
+				return token.text;
+			}
+
+			StringBuilder value = new StringBuilder();
+
+			while ((peek().type == Token.WORD) &&
+			       (! peek().isKeyword("AND")) &&
+			       (! peek().isKeyword("OR"))) {
+				if (value.length() > 0)
+					value.append(' ');
+
+				value.append(take().text);
+			}
+
+			if (value.length() == 0)
+				throw error("Expected a value");
+
+			return value.toString();
+		}
+
+		/**
+		 * Durations might be "210" or "3:30".
+		 */
+		private static long parseNumber(int field, String value) {
+			int colon = value.indexOf(':');
+
+			if ((field == FIELD_DURATION) && (colon != -1))
+				return Long.parseLong(value.substring(0, colon)) * 60 + Long.parseLong(value.substring(colon + 1));
+
+			return Long.parseLong(value);
+		}
+	}
+}
@@ -0,0 +1,248 @@
+package com.kure.musicplayer.model;
+
+
+/**
+ * Represents a single audio file on the Android system.
+ *
+ * It's a simple data container, filled with setters/getters.
+ *
+ * Only mandatory fields are:
+ * - id (which is a unique Android identified for a media file
+ *       anywhere on the system)
+ * - filePath (full path for the file on the filesystem).
+ */
+public class Song {
+
+	private long id;
+
+	/**
+	 * Full path of the file - or `null` after `setFolder()`,
+	 * when we keep only the folder and file name.
+	 */
+	private String filePath;
+
+	private PathTrie.Folder folder   = null;
+	private String          fileName = null;
+
+	/**
+	 * Creates a new Song, with specified `songID` and `filePath`.
+	 *
+	 * @note It's a unique Android identifier for a media file
+	 *       anywhere on the system.
+	 */
+	public Song(long id, String filePath) {
+		this.id        = id;
+		this.filePath  = filePath;
+	}
+
+	/**
+	 * Identifier for the song on the Android system.
+	 * (so we can locate the file anywhere)
+	 */
+	public long getId() {
+		return id;
+	}
+
+	/**
+	 * Full path for the music file within the filesystem.
+	 */
+	public String getFilePath() {
+		if (folder != null)
+			return folder.getPath(fileName);
+
+		return filePath;
+	}
+
+	/**
+	 * Just the name of the file, like "01 - Song.mp3".
+	 */
+	public String getFileName() {
+		if (fileName != null)
+			return fileName;
+
+		if (filePath == null)
+			return "";
+
+		return filePath.substring(filePath.lastIndexOf('/') + 1);
+	}
+
+	/**
+	 * The folder this song is on, if we're browsing
+	 * by folder (see `PathTrie`) - otherwise `null`.
+	 */
+	public PathTrie.Folder getFolder() {
+		return folder;
+	}
+
+	/**
+	 * Makes this song share `folder`'s path instead of keeping
+	 * its own copy - from now on we only keep the file name.
+	 *
+	 * Does nothing if `folder` isn't really where the file is
+	 * (so the path we give back is always the original one).
+	 */
+	void setFolder(PathTrie.Folder folder) {
+		if ((filePath == null) || (this.folder != null))
+			return;
+
+		String name = getFileName();
+
+		if (! folder.getPath(name).equals(filePath))
+			return;
+
+		this.folder   = folder;
+		this.fileName = name;
+		this.filePath = null;
+	}
+
+	/**
+	 * Tells if this song was found by walking folders
+	 * (see `FolderLibrarySource`) instead of coming from
+	 * the Android media database.
+	 *
+	 * Those have negative ids, so they never clash with
+	 * real ones - but you can't use them on the media
+	 * database (to play or add to playlists, for instance).
+	 */
+	public boolean isDiscovered() {
+		return id < 0;
+	}
+
+	// optional metadata
+
+	private String title       = "";
+	private String artist      = "";
+	private String album       = "";
+	private int    year        = -1;
+	private String genre       = "";
+	private int    track_no    = -1;
+	private long   duration_ms = -1;
+
+	// metadata that only comes from the file's tags
+	// (see `com.kure.musicplayer.tags`)
+
+	private String  album_artist     = "";
+	private int     disc_no          = -1;
+	private boolean compilation      = false;
+	private float   replaygain_track = Float.NaN;
+	private float   replaygain_album = Float.NaN;
+
+
+	public String getTitle() {
+		return title;
+	}
+	public void setTitle(String title) {
+		this.title = title;
+	}
+
+
+	public String getArtist() {
+		return artist;
+	}
+	public void setArtist(String artist) {
+		this.artist = artist;
+	}
+
+
+	public String getAlbum() {
+		return album;
+	}
+	public void setAlbum(String album) {
+		this.album = album;
+	}
+
+
+	public int getYear() {
+		return year;
+	}
+	public void setYear(int year) {
+		this.year = year;
+	}
+
+
+	public String getGenre() {
+		return genre;
+	}
+	public void setGenre(String genre) {
+		this.genre = genre;
+	}
+
+
+	public int getTrackNumber() {
+		return track_no;
+	}
+	public void setTrackNumber(int track_no) {
+		this.track_no = track_no;
+	}
+
+	/**
+	 * Sets the duration of the song, in miliseconds.
+	 */
+	public void setDuration(long duration_ms) {
+		this.duration_ms = duration_ms;
+	}
+	/**
+	 * Returns the duration of the song, in miliseconds.
+	 */
+	public long getDuration() {
+		return duration_ms;
+	}
+	public long getDurationSeconds() {
+		return getDuration() / 1000;
+	}
+	public long getDurationMinutes() {
+		return getDurationSeconds() / 60;
+	}
+
+
+	public String getAlbumArtist() {
+		return album_artist;
+	}
+	public void setAlbumArtist(String album_artist) {
+		this.album_artist = album_artist;
+	}
+
+
+	public int getDiscNumber() {
+		return disc_no;
+	}
+	public void setDiscNumber(int disc_no) {
+		this.disc_no = disc_no;
+	}
+
+
+	/**
+	 * Tells if this song is part of a compilation
+	 * ("Various Artists" album).
+	 */
+	public boolean isCompilation() {
+		return compilation;
+	}
+	public void setCompilation(boolean compilation) {
+		this.compilation = compilation;
+	}
+
+
+	/**
+	 * Sets the ReplayGain adjustments, in dB.
+	 * Use `Float.NaN` for the ones the song doesn't have.
+	 */
+	public void setReplayGain(float track, float album) {
+		this.replaygain_track = track;
+		this.replaygain_album = album;
+	}
+	/**
+	 * Returns the track's ReplayGain adjustment in dB,
+	 * or `Float.NaN` if it has none.
+	 */
+	public float getReplayGainTrack() {
+		return replaygain_track;
+	}
+	/**
+	 * Returns the album's ReplayGain adjustment in dB,
+	 * or `Float.NaN` if it has none.
+	 */
+	public float getReplayGainAlbum() {
+		return replaygain_album;
+	}
+}
@@ -0,0 +1,87 @@
+package com.kure.musicplayer.model;
+
+import java.util.Comparator;
+
+/**
+ * All the ways we know how to sort songs.
+ *
+ * Songs without a title/artist/album go first.
+ */
+public class SongComparators {
+
+	/**
+	 * Alphabetically by song title.
+	 */
+	public static final Comparator<Song> BY_TITLE = new Comparator<Song>() {
+		public int compare(Song a, Song b) {
+			return compareStrings(a.getTitle(), b.getTitle());
+		}
+	};
+
+	/**
+	 * Alphabetically by artist name.
+	 */
+	public static final Comparator<Song> BY_ARTIST = new Comparator<Song>() {
+		public int compare(Song a, Song b) {
+			return compareStrings(a.getArtist(), b.getArtist());
+		}
+	};
+
+	/**
+	 * Alphabetically by album name.
+	 */
+	public static final Comparator<Song> BY_ALBUM = new Comparator<Song>() {
+		public int compare(Song a, Song b) {
+			return compareStrings(a.getAlbum(), b.getAlbum());
+		}
+	};
+
+	/**
+	 * By track number.
+	 */
+	public static final Comparator<Song> BY_TRACK = new Comparator<Song>() {
+		public int compare(Song a, Song b) {
+			int left  = a.getTrackNumber();
+			int right = b.getTrackNumber();
+
+			if (left == right)
+				return 0;
+
+			return ((left < right) ?
+			         -1 :
+			         1);
+		}
+	};
+
+	/**
+	 * Returns the comparator for a `rule`:
+	 * "title", "artist", "album" or "track".
+	 *
+	 * @return The comparator or `null` if we don't know it.
+	 */
+	public static Comparator<Song> forRule(String rule) {
+		if (rule.equals("title"))
+			return BY_TITLE;
+
+		if (rule.equals("artist"))
+			return BY_ARTIST;
+
+		if (rule.equals("album"))
+			return BY_ALBUM;
+
+		if (rule.equals("track"))
+			return BY_TRACK;
+
+		return null;
+	}
+
+	private static int compareStrings(String a, String b) {
+		if (a == null)
+			return (b == null) ? 0 : -1;
+
+		if (b == null)
+			return 1;
+
+		return a.compareTo(b);
+	}
+}
@@ -0,0 +1,328 @@
+package com.kure.musicplayer.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Several facets combined, like "Jazz or Blues, from
+ * 1960 to 1969, except songs by Someone".
+ *
+ * Rules:
+ * - Values of the same facet are OR'ed (any of the genres);
+ * - Different facets are AND'ed (genre and year);
+ * - Excluded artists are removed at the end.
+ *
+ * Facets without any value don't filter anything.
+ *
+ * It's all done over the snapshot's `FacetIndex`es, so it
+ * never looks at the songs themselves - fast enough to run
+ * every time the user changes something.
+ *
+ * Create it with `SongFilter.Builder`:
+ *
+ *     SongFilter filter = new SongFilter.Builder()
+ *         .genre("Jazz")
+ *         .years(1960, 1969)
+ *         .excludeArtist("Someone")
+ *         .build();
+ *
+ *     int count = filter.count(kMP.songs.getSnapshot());
+ *
+ * It fits on a single line (see `toString()` and `parse()`),
+ * so it can go on a `SongQuery`.
+ *
+ * @note Immutable.
+ */
+public class SongFilter {
+
+	/** Means there's no limit on that side of `years()` */
+	public static final int ANY_YEAR = -1;
+
+	// Keys of each part on `toString()`
+	private static final String KEY_GENRE   = "genre";
+	private static final String KEY_ARTIST  = "artist";
+	private static final String KEY_EXCLUDE = "exclude";
+	private static final String KEY_FROM    = "from";
+	private static final String KEY_TO      = "to";
+
+	private final List<String> genres;
+	private final List<String> artists;
+	private final List<String> excludedArtists;
+
+	private final int fromYear;
+	private final int toYear;
+
+	private SongFilter(Builder builder) {
+		this.genres          = Collections.unmodifiableList(new ArrayList<String>(builder.genres));
+		this.artists         = Collections.unmodifiableList(new ArrayList<String>(builder.artists));
+		this.excludedArtists = Collections.unmodifiableList(new ArrayList<String>(builder.excludedArtists));
+		this.fromYear        = builder.fromYear;
+		this.toYear          = builder.toYear;
+	}
+
+	/**
+	 * Positions (on `snapshot.getSongs()`) of all songs
+	 * that pass the filter.
+	 */
+	public CompressedBitSet evaluate(LibrarySnapshot snapshot) {
+
+		// `null` means "everything" up until now
+		CompressedBitSet result = null;
+
+		if (! genres.isEmpty())
+			result = and(result, anyOf(snapshot.getGenreIndex(), genres));
+
+		if (hasYears())
+			result = and(result, anyYear(snapshot.getYearIndex()));
+
+		if (! artists.isEmpty())
+			result = and(result, anyOf(snapshot.getArtistIndex(), artists));
+
+		if (result == null)
+			result = snapshot.getAllPositions();
+
+		if (! excludedArtists.isEmpty())
+			result = result.andNot(anyOf(snapshot.getArtistIndex(), excludedArtists));
+
+		return result;
+	}
+
+	/**
+	 * How many songs pass the filter.
+	 */
+	public int count(LibrarySnapshot snapshot) {
+		return evaluate(snapshot).cardinality();
+	}
+
+	/**
+	 * All songs that pass the filter, in the
+	 * snapshot's order.
+	 */
+	public ArrayList<Song> getSongs(LibrarySnapshot snapshot) {
+		return snapshot.getSongsAt(evaluate(snapshot));
+	}
+
+	/**
+	 * Tells if this filter lets everything through.
+	 */
+	public boolean isEmpty() {
+		return genres.isEmpty() && artists.isEmpty() && excludedArtists.isEmpty() && (! hasYears());
+	}
+
+	private boolean hasYears() {
+		return (fromYear != ANY_YEAR) || (toYear != ANY_YEAR);
+	}
+
+	private static CompressedBitSet and(CompressedBitSet a, CompressedBitSet b) {
+		return (a == null) ? b : a.and(b);
+	}
+
+	/**
+	 * Songs that have any of `values` on `index`.
+	 */
+	private static CompressedBitSet anyOf(FacetIndex index, List<String> values) {
+		CompressedBitSet result = new CompressedBitSet();
+
+		for (String value : values) {
+			CompressedBitSet songs = index.get(value);
+
+			if (songs != null)
+				result = result.or(songs);
+		}
+		return result;
+	}
+
+	/**
+	 * Songs from any year between `fromYear` and `toYear`.
+	 *
+	 * There are only a few dozen years, so we simply go
+	 * through all of them.
+	 */
+	private CompressedBitSet anyYear(FacetIndex index) {
+		CompressedBitSet result = new CompressedBitSet();
+
+		for (String name : index.getNames()) {
+			int year = Integer.parseInt(name);
+
+			if ((fromYear != ANY_YEAR) && (year < fromYear))
+				continue;
+
+			if ((toYear != ANY_YEAR) && (year > toYear))
+				continue;
+
+			result = result.or(index.get(name));
+		}
+		return result;
+	}
+
+	public List<String> getGenres() {
+		return genres;
+	}
+
+	public List<String> getArtists() {
+		return artists;
+	}
+
+	public List<String> getExcludedArtists() {
+		return excludedArtists;
+	}
+
+	public int getFromYear() {
+		return fromYear;
+	}
+
+	public int getToYear() {
+		return toYear;
+	}
+
+	/**
+	 * Everything on this filter, like
+	 * "genre:Jazz|genre:Blues|from:1960|to:1969|exclude:Someone".
+	 *
+	 * '|' and '\' inside names are escaped with a '\'.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder();
+
+		for (String genre : genres)
+			append(text, KEY_GENRE, genre);
+
+		for (String artist : artists)
+			append(text, KEY_ARTIST, artist);
+
+		if (fromYear != ANY_YEAR)
+			append(text, KEY_FROM, Integer.toString(fromYear));
+
+		if (toYear != ANY_YEAR)
+			append(text, KEY_TO, Integer.toString(toYear));
+
+		for (String artist : excludedArtists)
+			append(text, KEY_EXCLUDE, artist);
+
+		return text.toString();
+	}
+
+	private static void append(StringBuilder text, String key, String value) {
+		if (text.length() > 0)
+			text.append('|');
+
+		text.append(key).append(':');
+
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+
+			if ((c == '|') || (c == '\\'))
+				text.append('\\');
+
+			text.append(c);
+		}
+	}
+
+	/**
+	 * Creates the filter `toString()` gave us.
+	 *
+	 * Parts it doesn't understand are left out.
+	 */
+	public static SongFilter parse(String text) {
+		Builder builder = new Builder();
+
+		int fromYear = ANY_YEAR;
+		int toYear   = ANY_YEAR;
+
+		StringBuilder part = new StringBuilder();
+
+		for (int i = 0; i <= text.length(); i++) {
+			char c = (i < text.length()) ? text.charAt(i) : '|';
+
+			if ((c == '\\') && (i + 1 < text.length())) {
+				part.append(text.charAt(++i));
+				continue;
+			}
+
+			if (c != '|') {
+				part.append(c);
+				continue;
+			}
+
+			int colon = part.indexOf(":");
+
+			if (colon != -1) {
+				String key   = part.substring(0, colon);
+				String value = part.substring(colon + 1);
+
+				if (key.equals(KEY_GENRE))   builder.genre(value);
+				if (key.equals(KEY_ARTIST))  builder.artist(value);
+				if (key.equals(KEY_EXCLUDE)) builder.excludeArtist(value);
+				if (key.equals(KEY_FROM))    fromYear = parseYear(value);
+				if (key.equals(KEY_TO))      toYear   = parseYear(value);
+			}
+			part.setLength(0);
+		}
+		return builder.years(fromYear, toYear).build();
+	}
+
+	private static int parseYear(String text) {
+		try {
+			return Integer.parseInt(text);
+		}
+		catch (NumberFormatException e) {
+			return ANY_YEAR;
+		}
+	}
+
+	/**
+	 * Creates a `SongFilter` step by step.
+	 */
+	public static class Builder {
+
+		private ArrayList<String> genres          = new ArrayList<String>();
+		private ArrayList<String> artists         = new ArrayList<String>();
+		private ArrayList<String> excludedArtists = new ArrayList<String>();
+
+		private int fromYear = ANY_YEAR;
+		private int toYear   = ANY_YEAR;
+
+		/**
+		 * Keeps songs on genre `name` (or any other
+		 * genre given here).
+		 */
+		public Builder genre(String name) {
+			genres.add(name);
+			return this;
+		}
+
+		/**
+		 * Keeps songs by artist `name` (or any other
+		 * artist given here).
+		 */
+		public Builder artist(String name) {
+			artists.add(name);
+			return this;
+		}
+
+		/**
+		 * Removes songs by artist `name`.
+		 */
+		public Builder excludeArtist(String name) {
+			excludedArtists.add(name);
+			return this;
+		}
+
+		/**
+		 * Keeps songs from `from` up until `to` (both included).
+		 *
+		 * @note Use `ANY_YEAR` to leave a side open.
+		 */
+		public Builder years(int from, int to) {
+			fromYear = from;
+			toYear   = to;
+			return this;
+		}
+
+		public SongFilter build() {
+			return new SongFilter(this);
+		}
+	}
+}
@@ -0,0 +1,229 @@
+package com.kure.musicplayer.model;
+
+import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Finds which song of the library a playlist file
+ * entry points to.
+ *
+ * Entries might be absolute paths, paths relative to the
+ * playlist file, "file://" URLs or even Windows paths.
+ * We first look for the exact path on the snapshot's folders
+ * (see `PathTrie`), without going through all songs.
+ *
+ * Playlists that came from other devices have paths that
+ * don't exist here (like "/mnt/sdcard" instead of
+ * "/storage/emulated/0"). Then we look for songs with the
+ * same file name and pick the one whose path ends the most
+ * like the entry - as long as at least the folder it's in
+ * has the same name, or it's the only song with that name.
+ * Names like "01 - Intro.mp3" are everywhere, and a wrong
+ * song is worse than a missing one.
+ *
+ * @note Not thread-safe - create one for each file.
+ */
+public class SongPathResolver {
+
+	private final LibrarySnapshot snapshot;
+
+	/**
+	 * Songs by their file name (lower case).
+	 * Only created if some entry needs it.
+	 */
+	private HashMap<String, ArrayList<Song>> byFileName = null;
+
+	public SongPathResolver(LibrarySnapshot snapshot) {
+		this.snapshot = snapshot;
+	}
+
+	/**
+	 * Returns the song `entry` points to, or `null` if
+	 * there's none on the library.
+	 *
+	 * @param folder Folder of the playlist file, for relative
+	 *               paths (`null` if there's none).
+	 */
+	public Song resolve(String entry, String folder) {
+		String path = normalize(entry, folder);
+
+		if (path == null)
+			return null;
+
+		Song song = snapshot.getFolders().findSong(path);
+
+		if (song != null)
+			return song;
+
+		return closestByFileName(path);
+	}
+
+	/**
+	 * Turns `entry` into an absolute path, or `null` if
+	 * it's not a file (like a "http://" stream).
+	 */
+	static String normalize(String entry, String folder) {
+		String path = entry.trim().replace('\\', '/');
+
+		if (path.isEmpty())
+			return null;
+
+		if (path.regionMatches(true, 0, "file://", 0, 7))
+			path = decodeUrl(path.substring(7));
+
+		// Some other kind of URL
+		else if (path.matches("^[A-Za-z][A-Za-z0-9+.-]+://.*"))
+			return null;
+
+		// Windows drive ("C:/Music/...") - the folders
+		// after it might still match
+		if ((path.length() > 1) && (path.charAt(1) == ':'))
+			path = path.substring(2);
+
+		else if ((! path.startsWith("/")) && (folder != null))
+			path = folder + "/" + path;
+
+		// Getting rid of "." and ".."
+		ArrayList<String> names = new ArrayList<String>();
+
+		for (String name : path.split("/")) {
+			if (name.isEmpty() || name.equals("."))
+				continue;
+
+			if (name.equals("..")) {
+				if (! names.isEmpty())
+					names.remove(names.size() - 1);
+				continue;
+			}
+			names.add(name);
+		}
+
+		StringBuilder result = new StringBuilder(path.length());
+
+		for (String name : names)
+			result.append('/').append(name);
+
+		return result.toString();
+	}
+
+	/**
+	 * Of all songs with the same file name as `path`, the
+	 * one whose folders match it the most (from the end).
+	 *
+	 * @return `null` if none has the same parent folder
+	 *         (unless there's only one candidate), or if
+	 *         several match equally well.
+	 */
+	private Song closestByFileName(String path) {
+		if (byFileName == null) {
+			byFileName = new HashMap<String, ArrayList<Song>>(snapshot.size() * 2);
+
+			for (Song song : snapshot.getSongs()) {
+				String name = song.getFileName().toLowerCase(Locale.US);
+
+				ArrayList<Song> songs = byFileName.get(name);
+
+				if (songs == null) {
+					songs = new ArrayList<Song>(1);
+					byFileName.put(name, songs);
+				}
+				songs.add(song);
+			}
+		}
+
+		String name = path.substring(path.lastIndexOf('/') + 1);
+
+		List<Song> candidates = byFileName.get(name.toLowerCase(Locale.US));
+
+		if (candidates == null)
+			return null;
+
+		if (candidates.size() == 1)
+			return candidates.get(0);
+
+		Song    best      = null;
+		int     bestMatch = -1;
+		boolean tie       = false;
+
+		for (Song song : candidates) {
+			int match = matchingFolders(path, song.getFilePath());
+
+			if (match > bestMatch) {
+				best      = song;
+				bestMatch = match;
+				tie       = false;
+			}
+			else if (match == bestMatch)
+				tie = true;
+		}
+
+		// Only the file name itself matched
+		if ((bestMatch < 2) || tie)
+			return null;
+
+		return best;
+	}
+
+	/**
+	 * How many folders both paths have in common,
+	 * counting from the end.
+	 *
+	 * @note Counts separators, so the same file name alone
+	 *       is 1 and the same parent folder is 2.
+	 */
+	private static int matchingFolders(String a, String b) {
+		int count = 0;
+
+		int i = a.length() - 1;
+		int j = b.length() - 1;
+
+		while ((i >= 0) && (j >= 0) && (Character.toLowerCase(a.charAt(i)) == Character.toLowerCase(b.charAt(j)))) {
+			if (a.charAt(i) == '/')
+				count++;
+			i--;
+			j--;
+		}
+		return count;
+	}
+
+	/**
+	 * Turns "%20" and friends back into characters.
+	 *
+	 * @note Not `URLDecoder` - it also turns '+' into
+	 *       spaces, which file URLs don't do.
+	 */
+	private static String decodeUrl(String url) {
+		if (url.indexOf('%') == -1)
+			return url;
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(url.length());
+
+		try {
+			for (int i = 0; i < url.length(); i++) {
+				char c = url.charAt(i);
+
+				if ((c == '%') && (i + 2 < url.length())) {
+					try {
+						bytes.write(Integer.parseInt(url.substring(i + 1, i + 3), 16));
+						i += 2;
+						continue;
+					}
+					catch (NumberFormatException e) {
+						// Not an escape - keeping the '%'
+					}
+				}
+				byte[] raw = String.valueOf(c).getBytes("UTF-8");
+				bytes.write(raw, 0, raw.length);
+			}
+			return bytes.toString("UTF-8");
+		}
+		catch (UnsupportedEncodingException e) {
+			// Every Java has UTF-8
+			return url;
+		}
+	}
+}
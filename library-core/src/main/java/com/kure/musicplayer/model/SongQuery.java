@@ -0,0 +1,201 @@
+package com.kure.musicplayer.model;
+
+import java.util.ArrayList;
+
+/**
+ * Describes a list of songs without holding them, like
+ * "songs by artist X", "songs on playlist P" or "songs on
+ * folder F".
+ *
+ * Since it's only a type and a value, it can go inside an
+ * Intent (instead of the songs themselves) and be used as
+ * a key on `QueryCache`.
+ *
+ *     SongQuery query = SongQuery.byAlbum("Kind of Blue");
+ *
+ *     ArrayList<Song> songs = query.run(kMP.songs.getSnapshot());
+ *
+ * Smart playlists need more than the snapshot (play counts),
+ * so they're found by a `Finder` (see `run(LibrarySnapshot, Finder)`).
+ *
+ * @note Immutable.
+ */
+public final class SongQuery {
+
+	// What the query goes after
+	public static final int TYPE_ALL      = 0;
+	public static final int TYPE_ARTIST   = 1;
+	public static final int TYPE_ALBUM    = 2;
+	public static final int TYPE_GENRE    = 3;
+	public static final int TYPE_YEAR     = 4;
+	public static final int TYPE_PLAYLIST = 5;
+	public static final int TYPE_FOLDER   = 6;
+	public static final int TYPE_FILTER   = 7;
+	public static final int TYPE_SMART    = 8;
+
+	private static final String[] TYPE_NAMES = {
+		"all", "artist", "album", "genre", "year", "playlist", "folder", "filter", "smart_playlist"
+	};
+
+	/**
+	 * Finds the songs of queries the snapshot alone
+	 * can't answer (`TYPE_SMART`).
+	 */
+	public interface Finder {
+		public ArrayList<Song> find(SongQuery query, LibrarySnapshot snapshot);
+	}
+
+	private final int    type;
+	private final String value;
+
+	private SongQuery(int type, String value) {
+		this.type  = type;
+		this.value = (type == TYPE_ALL) ? "" : value;
+	}
+
+	/**
+	 * Creates a query from what `getType()` and
+	 * `getValue()` returned.
+	 *
+	 * @throws IllegalArgumentException If `type` isn't one
+	 *         of the `TYPE_*` or `value` is `null`.
+	 */
+	public static SongQuery of(int type, String value) {
+		if ((type < TYPE_ALL) || (type > TYPE_SMART))
+			throw new IllegalArgumentException("Unknown query type " + type);
+
+		if ((value == null) && (type != TYPE_ALL))
+			throw new IllegalArgumentException("Query without a value");
+
+		return new SongQuery(type, value);
+	}
+
+	public static SongQuery all() {
+		return new SongQuery(TYPE_ALL, "");
+	}
+
+	public static SongQuery byArtist(String artist) {
+		return of(TYPE_ARTIST, artist);
+	}
+
+	public static SongQuery byAlbum(String album) {
+		return of(TYPE_ALBUM, album);
+	}
+
+	public static SongQuery byGenre(String genre) {
+		return of(TYPE_GENRE, genre);
+	}
+
+	public static SongQuery byYear(int year) {
+		return of(TYPE_YEAR, Integer.toString(year));
+	}
+
+	public static SongQuery byPlaylist(String playlistName) {
+		return of(TYPE_PLAYLIST, playlistName);
+	}
+
+	/**
+	 * Songs directly inside the folder at `path`
+	 * (see `PathTrie#find()`).
+	 */
+	public static SongQuery byFolder(String path) {
+		return of(TYPE_FOLDER, path);
+	}
+
+	/**
+	 * Songs that pass `filter` (kept as `SongFilter#toString()`).
+	 */
+	public static SongQuery byFilter(SongFilter filter) {
+		return of(TYPE_FILTER, filter.toString());
+	}
+
+	/**
+	 * Songs on the smart playlist called `name` - only
+	 * found with a `Finder`.
+	 */
+	public static SongQuery bySmartPlaylist(String name) {
+		return of(TYPE_SMART, name);
+	}
+
+	public int getType() {
+		return type;
+	}
+
+	public String getValue() {
+		return value;
+	}
+
+	/**
+	 * Finds the songs on `snapshot`.
+	 *
+	 * @note Returns a new list - feel free to change it.
+	 */
+	public ArrayList<Song> run(LibrarySnapshot snapshot) {
+		return run(snapshot, null);
+	}
+
+	/**
+	 * Same as `run(LibrarySnapshot)`, asking `finder` for
+	 * the queries the snapshot can't answer.
+	 *
+	 * @param finder Might be `null` - then those queries
+	 *               find nothing.
+	 */
+	public ArrayList<Song> run(LibrarySnapshot snapshot, Finder finder) {
+		switch (type) {
+		case TYPE_ARTIST:   return snapshot.getSongsByArtist(value);
+		case TYPE_ALBUM:    return snapshot.getSongsByAlbum(value);
+		case TYPE_GENRE:    return snapshot.getSongsByGenre(value);
+		case TYPE_PLAYLIST: return snapshot.getSongsByPlaylist(value);
+		case TYPE_FILTER:   return SongFilter.parse(value).getSongs(snapshot);
+
+		case TYPE_FOLDER:
+			PathTrie.Folder folder = snapshot.getFolders().find(value);
+
+			return (folder == null) ? new ArrayList<Song>() : new ArrayList<Song>(folder.getSongs());
+
+		case TYPE_SMART:
+			return (finder == null) ? new ArrayList<Song>() : finder.find(this, snapshot);
+
+		case TYPE_YEAR:
+			try {
+				return snapshot.getSongsByYear(Integer.parseInt(value));
+			}
+			catch (NumberFormatException e) {
+				return new ArrayList<Song>();
+			}
+
+		default:
+			return new ArrayList<Song>(snapshot.getSongs());
+		}
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (this == other)
+			return true;
+
+		if (! (other instanceof SongQuery))
+			return false;
+
+		SongQuery query = (SongQuery)other;
+
+		return (type == query.type) && value.equals(query.value);
+	}
+
+	@Override
+	public int hashCode() {
+		return (31 * type) + value.hashCode();
+	}
+
+	/**
+	 * Like "artist=Miles Davis".
+	 */
+	@Override
+	public String toString() {
+		if (type == TYPE_ALL)
+			return TYPE_NAMES[type];
+
+		return TYPE_NAMES[type] + "=" + value;
+	}
+}
@@ -0,0 +1,314 @@
+package com.kure.musicplayer.model;
+
+import java.util.Random;
+
+/**
+ * A fake library, made up from a handful of numbers.
+ *
+ * It's meant for performance tests - we can't put 100k
+ * real songs on every device, but we can make them up.
+ * The same `Options` always make the same library.
+ *
+ * It can be scanned directly (it's a `LibrarySource`) or
+ * through a fake media database on Android
+ * (see `SyntheticMediaStore` on the app).
+ */
+public class SyntheticLibrary implements LibrarySource {
+
+	/**
+	 * Everything that can be configured on a fake library.
+	 * Change whatever you want before creating it.
+	 */
+	public static class Options {
+
+		/** How many songs */
+		public int songs = 1000;
+
+		/** How many different artists, albums and genres */
+		public int artists = 50;
+		public int albums  = 100;
+		public int genres  = 30;
+
+		/** Songs are from `firstYear` up until `lastYear` */
+		public int firstYear = 1960;
+		public int lastYear  = 2014;
+
+		/** How many playlists and how many songs each has */
+		public int playlists    = 10;
+		public int playlistSize = 50;
+
+		/**
+		 * Only gives playlist songs when someone asks for
+		 * them (like the media database does).
+		 */
+		public boolean lazyPlaylists = false;
+
+		/**
+		 * Chance (0 to 1) of each song having `null` on
+		 * a field (title, artist, album, genre or year).
+		 */
+		public double nullRatio = 0.0;
+
+		/**
+		 * Chance (0 to 1) of each song having an empty
+		 * string on a field (title, artist or album).
+		 */
+		public double emptyRatio = 0.0;
+
+		/** Seed for all random numbers */
+		public long seed = 42;
+
+		/**
+		 * Usual proportions for a library with `songs` songs.
+		 */
+		public static Options withSongs(int songs) {
+			Options options = new Options();
+
+			options.songs     = songs;
+			options.artists   = Math.max(1, songs / 50);
+			options.albums    = Math.max(1, songs / 10);
+			options.playlists = Math.max(1, songs / 100);
+
+			return options;
+		}
+	}
+
+	/** What we use instead of a genre when the song has none */
+	public static final int NO_GENRE = -1;
+
+	/** What we use instead of a year when the song has none */
+	public static final int NO_YEAR = -1;
+
+	private Options options;
+
+	private String[] titles;
+	private String[] artists;
+	private String[] albums;
+	private int[]    years;
+	private int[]    tracks;
+	private long[]   durations;
+	private int[]    genres;
+
+	private long[][] playlists;
+
+	/**
+	 * Makes up the whole library.
+	 *
+	 * @note Takes a while for big libraries, so do it
+	 *       before starting the clock.
+	 */
+	public SyntheticLibrary(Options options) {
+		this.options = options;
+
+		Random random = new Random(options.seed);
+
+		int size = options.songs;
+
+		titles    = new String[size];
+		artists   = new String[size];
+		albums    = new String[size];
+		years     = new int[size];
+		tracks    = new int[size];
+		durations = new long[size];
+		genres    = new int[size];
+
+		int yearSpan = Math.max(1, options.lastYear - options.firstYear + 1);
+
+		for (int i = 0; i < size; i++) {
+
+			// Every album belongs to a single artist
+			// and has a single year and genre.
+			int album = random.nextInt(options.albums);
+
+			titles[i]    = "Song " + Integer.toHexString(random.nextInt());
+			albums[i]    = "Album " + album;
+			artists[i]   = "Artist " + (album % options.artists);
+			years[i]     = options.firstYear + (album % yearSpan);
+			tracks[i]    = 1 + random.nextInt(15);
+			durations[i] = 60000 + random.nextInt(300000);
+			genres[i]    = (options.genres > 0) ? (album % options.genres) : NO_GENRE;
+
+			if (random.nextDouble() < options.nullRatio) {
+				switch (random.nextInt(5)) {
+				case 0: titles[i]  = null;     break;
+				case 1: artists[i] = null;     break;
+				case 2: albums[i]  = null;     break;
+				case 3: genres[i]  = NO_GENRE; break;
+				case 4: years[i]   = NO_YEAR;  break;
+				}
+			}
+
+			if (random.nextDouble() < options.emptyRatio) {
+				switch (random.nextInt(3)) {
+				case 0: titles[i]  = ""; break;
+				case 1: artists[i] = ""; break;
+				case 2: albums[i]  = ""; break;
+				}
+			}
+		}
+
+		playlists = new long[options.playlists][];
+
+		for (int p = 0; p < playlists.length; p++) {
+			playlists[p] = new long[(size > 0) ? options.playlistSize : 0];
+
+			for (int i = 0; i < playlists[p].length; i++)
+				playlists[p][i] = songId(random.nextInt(size));
+		}
+	}
+
+	public Options getOptions() {
+		return options;
+	}
+
+	/**
+	 * How many songs there are.
+	 *
+	 * Songs are accessed by their index, from 0 up to this.
+	 */
+	public int size() {
+		return titles.length;
+	}
+
+	/**
+	 * ID of the song at `index` (never 0, like on Android).
+	 */
+	public long songId(int index) {
+		return index + 1;
+	}
+
+	public String getFilePath(int index) {
+		return "/sdcard/Music/" + albums[index] + "/" + index + ".mp3";
+	}
+
+	public String getTitle(int index) {
+		return titles[index];
+	}
+
+	public String getArtist(int index) {
+		return artists[index];
+	}
+
+	public String getAlbum(int index) {
+		return albums[index];
+	}
+
+	public int getYear(int index) {
+		return years[index];
+	}
+
+	public int getTrackNumber(int index) {
+		return tracks[index];
+	}
+
+	public long getDuration(int index) {
+		return durations[index];
+	}
+
+	/**
+	 * Index of the song's genre or `NO_GENRE`.
+	 */
+	public int getGenre(int index) {
+		return genres[index];
+	}
+
+	public int getGenreCount() {
+		return options.genres;
+	}
+
+	/**
+	 * ID of the genre at `genre`.
+	 */
+	public long genreId(int genre) {
+		return genre + 1;
+	}
+
+	public String getGenreName(int genre) {
+		return "Genre " + genre;
+	}
+
+	public int getPlaylistCount() {
+		return playlists.length;
+	}
+
+	/**
+	 * ID of the playlist at `playlist`.
+	 */
+	public long playlistId(int playlist) {
+		return playlist + 1;
+	}
+
+	public String getPlaylistName(int playlist) {
+		return "Playlist " + playlist;
+	}
+
+	/**
+	 * IDs of all songs on a playlist (might repeat).
+	 */
+	public long[] getPlaylistMembers(int playlist) {
+		return playlists[playlist];
+	}
+
+	/**
+	 * Creates the song at `index`, just like it'd be read
+	 * from the media database.
+	 */
+	public Song createSong(int index) {
+		Song song = new Song(songId(index), getFilePath(index));
+
+		song.setTitle      (titles[index]);
+		song.setArtist     (artists[index]);
+		song.setAlbum      (albums[index]);
+		song.setYear       (years[index]);
+		song.setTrackNumber(tracks[index]);
+		song.setDuration   (durations[index]);
+
+		return song;
+	}
+
+	@Override
+	public void scan(LibraryBuilder builder) {
+
+		for (int genre = 0; genre < getGenreCount(); genre++)
+			builder.addGenre(genreId(genre), getGenreName(genre));
+
+		for (int i = 0; i < size(); i++) {
+			if (genres[i] != NO_GENRE)
+				builder.addGenreMember(genreId(genres[i]), songId(i));
+
+			builder.addSong(createSong(i));
+		}
+
+		for (int p = 0; p < playlists.length; p++) {
+			if (options.lazyPlaylists) {
+				builder.addPlaylist(new Playlist(playlistId(p), getPlaylistName(p), new MemberLoader(p)));
+				continue;
+			}
+
+			Playlist playlist = new Playlist(playlistId(p), getPlaylistName(p));
+
+			for (long id : playlists[p])
+				playlist.add(id);
+
+			builder.addPlaylist(playlist);
+		}
+	}
+
+	/**
+	 * Gives the songs of the playlist at `index`.
+	 */
+	private class MemberLoader implements PlaylistMemberLoader {
+
+		private int index;
+
+		MemberLoader(int index) {
+			this.index = index;
+		}
+
+		@Override
+		public void load(Playlist playlist) {
+			for (long id : playlists[index])
+				playlist.add(id);
+		}
+	}
+}
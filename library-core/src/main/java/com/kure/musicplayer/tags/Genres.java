@@ -0,0 +1,77 @@
+package com.kure.musicplayer.tags;
+
+/**
+ * Old-school numbered genres, from ID3v1.
+ *
+ * ID3v2 and MP4 files sometimes refer to genres by these
+ * numbers instead of writing their names.
+ */
+class Genres {
+
+	private static final String[] ID3V1 = {
+		"Blues", "Classic Rock", "Country", "Dance", "Disco", "Funk", "Grunge",
+		"Hip-Hop", "Jazz", "Metal", "New Age", "Oldies", "Other", "Pop", "R&B",
+		"Rap", "Reggae", "Rock", "Techno", "Industrial", "Alternative", "Ska",
+		"Death Metal", "Pranks", "Soundtrack", "Euro-Techno", "Ambient",
+		"Trip-Hop", "Vocal", "Jazz+Funk", "Fusion", "Trance", "Classical",
+		"Instrumental", "Acid", "House", "Game", "Sound Clip", "Gospel", "Noise",
+		"AlternRock", "Bass", "Soul", "Punk", "Space", "Meditative",
+		"Instrumental Pop", "Instrumental Rock", "Ethnic", "Gothic", "Darkwave",
+		"Techno-Industrial", "Electronic", "Pop-Folk", "Eurodance", "Dream",
+		"Southern Rock", "Comedy", "Cult", "Gangsta", "Top 40", "Christian Rap",
+		"Pop/Funk", "Jungle", "Native American", "Cabaret", "New Wave",
+		"Psychadelic", "Rave", "Showtunes", "Trailer", "Lo-Fi", "Tribal",
+		"Acid Punk", "Acid Jazz", "Polka", "Retro", "Musical", "Rock & Roll",
+		"Hard Rock"
+	};
+
+	/**
+	 * Returns the name of the genre number `index`
+	 * or `null` if we don't know it.
+	 */
+	static String byIndex(int index) {
+		if ((index < 0) || (index >= ID3V1.length))
+			return null;
+
+		return ID3V1[index];
+	}
+
+	/**
+	 * Converts an ID3v2 genre to its name.
+	 *
+	 * It might be "Rock", "17", "(17)" or "(17)Rock" -
+	 * all of them become "Rock".
+	 */
+	static String fromId3(String value) {
+		value = value.trim();
+
+		if (value.startsWith("(")) {
+			int close = value.indexOf(')');
+
+			if (close != -1) {
+				String rest = value.substring(close + 1).trim();
+
+				// "(17)Rock" - the name is right there
+				if (! rest.isEmpty())
+					return rest;
+
+				String inside = value.substring(1, close);
+
+				if (inside.equals("RX"))
+					return "Remix";
+				if (inside.equals("CR"))
+					return "Cover";
+
+				String name = byIndex(Tags.parseInt(inside));
+				return (name == null) ? value : name;
+			}
+		}
+
+		int number = Tags.parseInt(value);
+		if (number != -1) {
+			String name = byIndex(number);
+			return (name == null) ? value : name;
+		}
+		return value;
+	}
+}
@@ -0,0 +1,322 @@
+package com.kure.musicplayer.tags;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+
+/**
+ * Reads ID3v2 tags (versions 2.2, 2.3 and 2.4), found at
+ * the beginning of MP3 files (and sometimes FLAC ones).
+ *
+ * We only read the headers of each frame - frames we don't
+ * care about (like big embedded pictures) are skipped
+ * without reading them.
+ *
+ * Frames we understand:
+ *
+ * | 2.2 | 2.3/2.4 | Meaning                           |
+ * |-----|---------|-----------------------------------|
+ * | TT2 | TIT2    | Title                             |
+ * | TP1 | TPE1    | Artist                            |
+ * | TAL | TALB    | Album                             |
+ * | TRK | TRCK    | Track number ("3/12")             |
+ * | TYE | TYER    | Year (2.4 has TDRC instead)       |
+ * | TP2 | TPE2    | Album artist                      |
+ * | TPA | TPOS    | Disc number ("1/2")               |
+ * | TCO | TCON    | Genre (maybe "(17)" or "17")      |
+ * | TCP | TCMP    | Compilation ("1")                 |
+ * | TXX | TXXX    | ReplayGain (user-defined text)    |
+ *
+ * See http://id3.org/id3v2.3.0 and http://id3.org/id3v2.4.0-structure
+ */
+class Id3v2Reader {
+
+	/** Size of the tag header (and footer) */
+	static final int HEADER_SIZE = 10;
+
+	/**
+	 * Frames bigger than this are never read.
+	 * Text frames are way smaller.
+	 */
+	private static final int MAXIMUM_FRAME_SIZE = 64 * 1024;
+
+	/**
+	 * If the whole tag needs to be loaded into memory
+	 * (see `read()`), we load at most this much.
+	 */
+	private static final int MAXIMUM_TAG_SIZE = 1024 * 1024;
+
+	/**
+	 * Tells if there's an ID3v2 tag at the input's current
+	 * position and, if so, its total size (header and
+	 * footer included).
+	 *
+	 * @return The size or 0 if there's no tag.
+	 * @note Doesn't move the input.
+	 */
+	static long tagSize(TagInput input) throws IOException {
+		long start = input.position();
+
+		if (input.remaining() < HEADER_SIZE)
+			return 0;
+
+		byte[] header = input.read(HEADER_SIZE);
+		input.seek(start);
+
+		if ((header[0] != 'I') || (header[1] != 'D') || (header[2] != '3'))
+			return 0;
+
+		boolean hasFooter = (header[5] & 0x10) != 0;
+
+		return HEADER_SIZE + syncsafe(header, 6) + (hasFooter ? HEADER_SIZE : 0);
+	}
+
+	/**
+	 * Reads the tag at the input's current position.
+	 *
+	 * @return If there was a tag.
+	 */
+	static boolean read(TagInput input, Tags tags) throws IOException {
+		if (input.remaining() < HEADER_SIZE)
+			return false;
+
+		byte[] header = input.read(HEADER_SIZE);
+
+		if ((header[0] != 'I') || (header[1] != 'D') || (header[2] != '3'))
+			return false;
+
+		int  version = header[3];
+		int  flags   = header[5];
+		long size    = syncsafe(header, 6);
+
+		if ((version < 2) || (version > 4))
+			return true;
+
+		long end = Math.min(input.position() + size, input.length());
+
+		// When "unsynchronisation" is applied to the whole tag
+		// (only on 2.2 and 2.3) we need to undo it before
+		// reading any frame - so we load it all at once.
+		if (((flags & 0x80) != 0) && (version < 4)) {
+			int length = (int)Math.min(end - input.position(), MAXIMUM_TAG_SIZE);
+
+			byte[] data = resynchronise(input.read(length));
+
+			input = new TagInput.ArrayInput(data, data.length);
+			end   = data.length;
+		}
+
+		// Skipping the extended header
+		if (((flags & 0x40) != 0) && (version > 2)) {
+			byte[] extended = input.read(4);
+
+			if (version == 3)
+				input.skip(int32(extended, 0));
+			else
+				input.skip(syncsafe(extended, 0) - 4);
+		}
+
+		int idLength    = (version == 2) ? 3 : 4;
+		int frameHeader = (version == 2) ? 6 : 10;
+
+		while (input.position() + frameHeader <= end) {
+
+			byte[] frame = input.read(frameHeader);
+
+			// Reached the padding
+			if (frame[0] == 0)
+				break;
+
+			String id = new String(frame, 0, idLength, "ISO-8859-1");
+
+			long frameSize;
+
+			if (version == 2)
+				frameSize = ((frame[3] & 0xFF) << 16) | ((frame[4] & 0xFF) << 8) | (frame[5] & 0xFF);
+			else if (version == 3)
+				frameSize = int32(frame, 4);
+			else
+				frameSize = syncsafe(frame, 4);
+
+			if ((frameSize <= 0) || (input.position() + frameSize > end))
+				break;
+
+			long next = input.position() + frameSize;
+
+			if (isInteresting(id) && (frameSize <= MAXIMUM_FRAME_SIZE)) {
+
+				int formatFlags = (version == 2) ? 0 : (frame[9] & 0xFF);
+
+				boolean compressed, encrypted, unsynchronised, hasDataLength;
+
+				if (version == 3) {
+					compressed     = (formatFlags & 0x80) != 0;
+					encrypted      = (formatFlags & 0x40) != 0;
+					unsynchronised = false;
+					hasDataLength  = false;
+				}
+				else {
+					compressed     = (formatFlags & 0x08) != 0;
+					encrypted      = (formatFlags & 0x04) != 0;
+					unsynchronised = (formatFlags & 0x02) != 0;
+					hasDataLength  = (formatFlags & 0x01) != 0;
+				}
+
+				if (! compressed && ! encrypted) {
+					byte[] content = input.read((int)frameSize);
+
+					int offset = hasDataLength ? 4 : 0;
+
+					if (unsynchronised)
+						content = resynchronise(content);
+
+					readFrame(id, content, offset, tags);
+				}
+			}
+			input.seek(next);
+		}
+		return true;
+	}
+
+	private static boolean isInteresting(String id) {
+		return id.equals("TT2") || id.equals("TIT2") ||
+		       id.equals("TP1") || id.equals("TPE1") ||
+		       id.equals("TAL") || id.equals("TALB") ||
+		       id.equals("TRK") || id.equals("TRCK") ||
+		       id.equals("TYE") || id.equals("TYER") || id.equals("TDRC") ||
+		       id.equals("TP2") || id.equals("TPE2") ||
+		       id.equals("TPA") || id.equals("TPOS") ||
+		       id.equals("TCO") || id.equals("TCON") ||
+		       id.equals("TCP") || id.equals("TCMP") ||
+		       id.equals("TXX") || id.equals("TXXX");
+	}
+
+	private static void readFrame(String id, byte[] content, int offset, Tags tags) throws UnsupportedEncodingException {
+		if (content.length <= offset)
+			return;
+
+		int encoding = content[offset];
+
+		// User-defined text: "description\0value"
+		if (id.startsWith("TXX")) {
+			String[] parts = decode(content, offset + 1, encoding);
+
+			if (parts.length >= 2)
+				tags.set(parts[0], parts[1]);
+			return;
+		}
+
+		String[] values = decode(content, offset + 1, encoding);
+		if (values.length == 0)
+			return;
+
+		String value = values[0];
+
+		if (id.equals("TT2") || id.equals("TIT2"))
+			tags.set("TITLE", value);
+
+		else if (id.equals("TP1") || id.equals("TPE1"))
+			tags.set("ARTIST", value);
+
+		else if (id.equals("TAL") || id.equals("TALB"))
+			tags.set("ALBUM", value);
+
+		else if (id.equals("TRK") || id.equals("TRCK"))
+			tags.set("TRACKNUMBER", value);
+
+		else if (id.equals("TYE") || id.equals("TYER") || id.equals("TDRC"))
+			tags.set("YEAR", value);
+
+		else if (id.equals("TP2") || id.equals("TPE2"))
+			tags.set("ALBUMARTIST", value);
+
+		else if (id.equals("TPA") || id.equals("TPOS"))
+			tags.set("DISCNUMBER", value);
+
+		else if (id.equals("TCO") || id.equals("TCON"))
+			tags.set("GENRE", Genres.fromId3(value));
+
+		else if (id.equals("TCP") || id.equals("TCMP"))
+			tags.set("COMPILATION", value);
+	}
+
+	/**
+	 * Decodes a text frame, splitting it on the separators
+	 * ('\0' for most encodings and "\0\0" for UTF-16).
+	 */
+	private static String[] decode(byte[] data, int offset, int encoding) throws UnsupportedEncodingException {
+		String charset;
+		boolean wide = false;
+
+		switch (encoding) {
+		case 1:  charset = "UTF-16";     wide = true; break;
+		case 2:  charset = "UTF-16BE";   wide = true; break;
+		case 3:  charset = "UTF-8";      break;
+		default: charset = "ISO-8859-1"; break;
+		}
+
+		ArrayList<String> parts = new ArrayList<String>();
+
+		int start = offset;
+		int i     = offset;
+
+		while (i < data.length) {
+			boolean separator = wide ?
+					((i + 1 < data.length) && (data[i] == 0) && (data[i + 1] == 0)) :
+					(data[i] == 0);
+
+			if (separator) {
+				parts.add(new String(data, start, i - start, charset));
+
+				i    += wide ? 2 : 1;
+				start = i;
+			}
+			else
+				i += wide ? 2 : 1;
+		}
+		if (start < data.length)
+			parts.add(new String(data, start, data.length - start, charset));
+
+		return parts.toArray(new String[parts.size()]);
+	}
+
+	/**
+	 * Undoes "unsynchronisation" - every 0xFF 0x00
+	 * becomes a single 0xFF.
+	 */
+	private static byte[] resynchronise(byte[] data) {
+		byte[] result = new byte[data.length];
+		int size = 0;
+
+		for (int i = 0; i < data.length; i++) {
+			result[size++] = data[i];
+
+			if (((data[i] & 0xFF) == 0xFF) && (i + 1 < data.length) && (data[i + 1] == 0))
+				i++;
+		}
+
+		if (size == data.length)
+			return result;
+
+		byte[] trimmed = new byte[size];
+		System.arraycopy(result, 0, trimmed, 0, size);
+		return trimmed;
+	}
+
+	/**
+	 * Integer where only the lower 7 bits of each byte count.
+	 */
+	static long syncsafe(byte[] data, int offset) {
+		return ((data[offset]     & 0x7F) << 21) |
+		       ((data[offset + 1] & 0x7F) << 14) |
+		       ((data[offset + 2] & 0x7F) << 7)  |
+		        (data[offset + 3] & 0x7F);
+	}
+
+	static long int32(byte[] data, int offset) {
+		return ((long)(data[offset] & 0xFF) << 24) |
+		       ((data[offset + 1] & 0xFF) << 16)   |
+		       ((data[offset + 2] & 0xFF) << 8)    |
+		        (data[offset + 3] & 0xFF);
+	}
+}
@@ -0,0 +1,251 @@
+package com.kure.musicplayer.tags;
+
+import java.io.IOException;
+
+/**
+ * Reads iTunes-style metadata from MP4/M4A files.
+ *
+ * MP4 files are made of nested "atoms" (size + type + content).
+ * Metadata lives on `moov.udta.meta.ilst`, so we go down that
+ * path skipping everything else - including the audio itself,
+ * which might be before it.
+ *
+ * Items we understand:
+ *
+ * - `(c)nam`, `(c)ART`, `(c)alb`, `(c)day`: Title, artist,
+ *   album and year (the "(c)" is really a single 0xA9 byte);
+ * - `trkn`: Track number and total;
+ * - `aART`: Album artist;
+ * - `disk`: Disc number and total;
+ * - `cpil`: Compilation flag;
+ * - `(c)gen`: Genre name;
+ * - `gnre`: Genre number (ID3v1 + 1);
+ * - `----`: Free-form items, like ReplayGain
+ *           ("com.apple.iTunes:replaygain_track_gain").
+ */
+class Mp4Reader {
+
+	/**
+	 * Items bigger than this (like cover art)
+	 * are never read.
+	 */
+	private static final int MAXIMUM_ITEM_SIZE = 64 * 1024;
+
+	/**
+	 * Tells if the input has an MP4 file - the first
+	 * atom must be "ftyp".
+	 *
+	 * @note Doesn't move the input.
+	 */
+	static boolean isMp4(TagInput input) throws IOException {
+		if (input.remaining() < 8)
+			return false;
+
+		long start = input.position();
+		byte[] header = input.read(8);
+		input.seek(start);
+
+		return (header[4] == 'f') && (header[5] == 't') && (header[6] == 'y') && (header[7] == 'p');
+	}
+
+	static void read(TagInput input, Tags tags) throws IOException {
+
+		long end = input.length();
+
+		long[] moov = find(input, input.position(), end, "moov");
+		if (moov == null)
+			return;
+
+		long[] udta = find(input, moov[0], moov[1], "udta");
+		if (udta == null)
+			return;
+
+		long[] meta = find(input, udta[0], udta[1], "meta");
+		if (meta == null)
+			return;
+
+		// "meta" usually has 4 bytes of version and flags
+		// before its children - but not always.
+		long metaStart = meta[0];
+		input.seek(metaStart);
+
+		if ((meta[1] - metaStart >= 4) && (Id3v2Reader.int32(input.read(4), 0) == 0))
+			metaStart += 4;
+
+		long[] ilst = find(input, metaStart, meta[1], "ilst");
+		if (ilst == null)
+			return;
+
+		readItems(input, ilst[0], ilst[1], tags);
+	}
+
+	/**
+	 * Finds a child atom with `type` between `start`
+	 * and `end`.
+	 *
+	 * @return Where its content starts and ends, or
+	 *         `null` if not found.
+	 */
+	private static long[] find(TagInput input, long start, long end, String type) throws IOException {
+
+		long position = start;
+
+		while (position + 8 <= end) {
+			input.seek(position);
+
+			byte[] header = input.read(8);
+
+			long size       = Id3v2Reader.int32(header, 0);
+			long headerSize = 8;
+
+			// 64-bit size
+			if (size == 1) {
+				if (position + 16 > end)
+					return null;
+
+				byte[] large = input.read(8);
+				size = (Id3v2Reader.int32(large, 0) << 32) | Id3v2Reader.int32(large, 4);
+				headerSize = 16;
+			}
+			// Goes up until the end
+			else if (size == 0)
+				size = end - position;
+
+			if (size < headerSize)
+				return null;
+
+			if (typeIs(header, type))
+				return new long[] { position + headerSize, Math.min(position + size, end) };
+
+			position += size;
+		}
+		return null;
+	}
+
+	private static void readItems(TagInput input, long start, long end, Tags tags) throws IOException {
+
+		long position = start;
+
+		while (position + 8 <= end) {
+			input.seek(position);
+
+			byte[] header = input.read(8);
+			long size = Id3v2Reader.int32(header, 0);
+
+			if ((size < 8) || (position + size > end))
+				return;
+
+			if ((size <= MAXIMUM_ITEM_SIZE) && isInteresting(header)) {
+				byte[] content = input.read((int)size - 8);
+				readItem(header, content, tags);
+			}
+			position += size;
+		}
+	}
+
+	private static boolean isInteresting(byte[] header) {
+		return typeIs(header, "aART") ||
+		       typeIs(header, "trkn") ||
+		       typeIs(header, "disk") ||
+		       typeIs(header, "cpil") ||
+		       typeIs(header, "gnre") ||
+		       typeIs(header, "----") ||
+		       (copyrightName(header) != null);
+	}
+
+	/**
+	 * Reads an item. Its content is a list of atoms,
+	 * where "data" has the value:
+	 *
+	 *     size, "data", type (4 bytes), locale (4 bytes), value
+	 */
+	private static void readItem(byte[] header, byte[] content, Tags tags) throws IOException {
+
+		String name = null;
+		byte[] data = null;
+
+		int position = 0;
+
+		while (position + 8 <= content.length) {
+			int size = (int)Id3v2Reader.int32(content, position);
+
+			if ((size < 8) || (position + size > content.length))
+				break;
+
+			String type = new String(content, position + 4, 4, "ISO-8859-1");
+
+			if (type.equals("data") && (size >= 16)) {
+				data = new byte[size - 16];
+				System.arraycopy(content, position + 16, data, 0, data.length);
+			}
+			// Free-form items have "mean" and "name", both
+			// with 4 bytes of flags before the text.
+			else if (type.equals("name") && (size >= 12))
+				name = new String(content, position + 12, size - 12, "UTF-8");
+
+			position += size;
+		}
+
+		if (data == null)
+			return;
+
+		if (typeIs(header, "aART"))
+			tags.set("ALBUMARTIST", new String(data, "UTF-8"));
+
+		else if (typeIs(header, "trkn")) {
+			// Same layout as "disk"
+			if (data.length >= 4)
+				tags.trackNumber = ((data[2] & 0xFF) << 8) | (data[3] & 0xFF);
+		}
+		else if (typeIs(header, "disk")) {
+			// 2 bytes of padding, then disc and total
+			if (data.length >= 6) {
+				tags.discNumber = ((data[2] & 0xFF) << 8) | (data[3] & 0xFF);
+				tags.discTotal  = ((data[4] & 0xFF) << 8) | (data[5] & 0xFF);
+			}
+		}
+		else if (typeIs(header, "cpil")) {
+			if (data.length >= 1)
+				tags.compilation = (data[0] != 0);
+		}
+		else if (typeIs(header, "gnre")) {
+			if (data.length >= 2)
+				tags.set("GENRE", Genres.byIndex((((data[0] & 0xFF) << 8) | (data[1] & 0xFF)) - 1));
+		}
+		else if (typeIs(header, "----")) {
+			if (name != null)
+				tags.set(name, new String(data, "UTF-8"));
+		}
+		else
+			// One of the "(c)" ones
+			tags.set(copyrightName(header), new String(data, "UTF-8"));
+	}
+
+	/**
+	 * Items whose type starts with 0xA9 (the copyright
+	 * sign), with the tag name each one means.
+	 *
+	 * @return The name or `null` if it's not one we know.
+	 */
+	private static String copyrightName(byte[] header) {
+		if ((header[4] & 0xFF) != 0xA9)
+			return null;
+
+		String rest = new String(header, 5, 3);
+
+		if (rest.equals("nam")) return "TITLE";
+		if (rest.equals("ART")) return "ARTIST";
+		if (rest.equals("alb")) return "ALBUM";
+		if (rest.equals("day")) return "YEAR";
+		if (rest.equals("gen")) return "GENRE";
+
+		return null;
+	}
+
+	private static boolean typeIs(byte[] header, String type) {
+		return (header[4] == type.charAt(0)) &&
+		       (header[5] == type.charAt(1)) &&
+		       (header[6] == type.charAt(2)) &&
+		       (header[7] == type.charAt(3));
+	}
+}
@@ -0,0 +1,180 @@
+package com.kure.musicplayer.tags;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers the tags of files we've already read.
+ *
+ * Entries are keyed by path and only valid while the
+ * file keeps the same modification time and size - if
+ * the file changes, we read it again.
+ *
+ * It can be saved to (and loaded from) a file, so we
+ * don't need to read everything on every scan.
+ *
+ * @note Thread-safe.
+ */
+public class TagCache {
+
+	/**
+	 * Changes every time the file format changes
+	 * (old files are simply ignored).
+	 */
+	private static final int FORMAT = 0x6B4D5402;
+
+	private static class Entry {
+		final long modified;
+		final long length;
+		final Tags tags;
+
+		Entry(long modified, long length, Tags tags) {
+			this.modified = modified;
+			this.length   = length;
+			this.tags     = tags;
+		}
+	}
+
+	private ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+	/**
+	 * Returns the tags for `path`, if they're still valid.
+	 *
+	 * @return The tags or `null` if we don't have them.
+	 */
+	public Tags get(String path, long modified, long length) {
+		Entry entry = entries.get(path);
+
+		if ((entry == null) || (entry.modified != modified) || (entry.length != length))
+			return null;
+
+		return entry.tags;
+	}
+
+	public void put(String path, long modified, long length, Tags tags) {
+		entries.put(path, new Entry(modified, length, tags));
+	}
+
+	/**
+	 * Forgets all files that are not on `paths`
+	 * (probably because they were removed).
+	 */
+	public void retainAll(Collection<String> paths) {
+		entries.keySet().retainAll(new HashSet<String>(paths));
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Forgets everything (what's saved on the file stays).
+	 */
+	public void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * Roughly how much memory it takes, in bytes.
+	 */
+	public long sizeInBytes() {
+		long bytes = 0;
+
+		for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+			Tags tags = entry.getValue().tags;
+
+			bytes += 160 + (entry.getKey().length() * 2) +
+				(length(tags.title) + length(tags.artist) + length(tags.album) +
+				 length(tags.albumArtist) + length(tags.genre)) * 2;
+		}
+		return bytes;
+	}
+
+	private static int length(String string) {
+		return (string == null) ? 0 : string.length();
+	}
+
+	/**
+	 * Loads entries from `file`, keeping the ones we
+	 * already have.
+	 *
+	 * @note A missing or broken file is ignored.
+	 */
+	public void load(File file) {
+		if (! file.exists())
+			return;
+
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+			try {
+				if (in.readInt() != FORMAT)
+					return;
+
+				int count = in.readInt();
+
+				for (int i = 0; i < count; i++) {
+					String path     = in.readUTF();
+					long   modified = in.readLong();
+					long   length   = in.readLong();
+
+					entries.putIfAbsent(path, new Entry(modified, length, Tags.read(in)));
+				}
+			}
+			finally {
+				in.close();
+			}
+		}
+		catch (IOException e) {
+			// We'll just read the files again
+		}
+	}
+
+	/**
+	 * Saves all entries to `file`.
+	 *
+	 * Writes to a temporary file first, so we never end
+	 * up with half a cache.
+	 */
+	public void save(File file) throws IOException {
+		File temporary = new File(file.getPath() + ".tmp");
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+
+		try {
+			// Copying first, since other Threads might add
+			// entries while we're writing.
+			ArrayList<Map.Entry<String, Entry>> snapshot =
+					new ArrayList<Map.Entry<String, Entry>>(entries.entrySet());
+
+			out.writeInt(FORMAT);
+			out.writeInt(snapshot.size());
+
+			for (Map.Entry<String, Entry> item : snapshot) {
+				Entry entry = item.getValue();
+
+				out.writeUTF (item.getKey());
+				out.writeLong(entry.modified);
+				out.writeLong(entry.length);
+				entry.tags.write(out);
+			}
+		}
+		finally {
+			out.close();
+		}
+
+		if (! temporary.renameTo(file))
+			throw new IOException("Couldn't save tag cache");
+	}
+}
@@ -0,0 +1,98 @@
+package com.kure.musicplayer.tags;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Where tag readers get their bytes from - either a file
+ * (so we can skip over big chunks without reading them)
+ * or something already in memory.
+ */
+abstract class TagInput {
+
+	abstract long position() throws IOException;
+
+	abstract long length() throws IOException;
+
+	abstract void seek(long position) throws IOException;
+
+	abstract void readFully(byte[] buffer, int offset, int length) throws IOException;
+
+	byte[] read(int length) throws IOException {
+		byte[] buffer = new byte[length];
+		readFully(buffer, 0, length);
+		return buffer;
+	}
+
+	void skip(long bytes) throws IOException {
+		seek(position() + bytes);
+	}
+
+	long remaining() throws IOException {
+		return length() - position();
+	}
+
+	/**
+	 * Over a file.
+	 */
+	static class FileInput extends TagInput {
+
+		private RandomAccessFile file;
+
+		FileInput(RandomAccessFile file) {
+			this.file = file;
+		}
+
+		long position() throws IOException {
+			return file.getFilePointer();
+		}
+
+		long length() throws IOException {
+			return file.length();
+		}
+
+		void seek(long position) throws IOException {
+			file.seek(position);
+		}
+
+		void readFully(byte[] buffer, int offset, int length) throws IOException {
+			file.readFully(buffer, offset, length);
+		}
+	}
+
+	/**
+	 * Over a byte array.
+	 */
+	static class ArrayInput extends TagInput {
+
+		private byte[] data;
+		private int    length;
+		private int    position = 0;
+
+		ArrayInput(byte[] data, int length) {
+			this.data   = data;
+			this.length = length;
+		}
+
+		long position() {
+			return position;
+		}
+
+		long length() {
+			return length;
+		}
+
+		void seek(long position) {
+			this.position = (int)Math.min(position, length);
+		}
+
+		void readFully(byte[] buffer, int offset, int count) throws IOException {
+			if (position + count > length)
+				throw new EOFException();
+
+			System.arraycopy(data, position, buffer, offset, count);
+			position += count;
+		}
+	}
+}
@@ -0,0 +1,135 @@
+package com.kure.musicplayer.tags;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Reads tags straight from audio files, way faster than
+ * Android's `MediaMetadataRetriever`.
+ *
+ * We figure out the format by its first bytes (not by
+ * the file extension) and only read the few bytes we need:
+ *
+ * - MP3 (and others): ID3v2 tag at the beginning;
+ * - FLAC: Vorbis comments block;
+ * - Ogg Vorbis/Opus: the comments packet;
+ * - MP4/M4A: iTunes metadata atoms.
+ *
+ * Big things, like embedded pictures or the audio itself,
+ * are skipped over without being read.
+ *
+ * @note Thread-safe - it has no state.
+ */
+public class TagReader {
+
+	/**
+	 * Reads the tags of `file`.
+	 *
+	 * @return The tags found (maybe all empty, if the format
+	 *         is unknown or it has no tags).
+	 * @throws IOException If the file couldn't be read.
+	 */
+	public static Tags read(File file) throws IOException {
+
+		Tags tags = new Tags();
+
+		RandomAccessFile random = new RandomAccessFile(file, "r");
+		try {
+			read(new TagInput.FileInput(random), tags);
+		}
+		finally {
+			random.close();
+		}
+		return tags;
+	}
+
+	/**
+	 * Tells if `file` looks like an audio file we can play,
+	 * judging by its first bytes.
+	 *
+	 * Knows ID3-tagged files, MPEG audio (MP3), FLAC, Ogg,
+	 * MP4/M4A and WAVE.
+	 *
+	 * @note Reads only a few bytes - cheap enough to call
+	 *       for every file on a folder.
+	 */
+	public static boolean isAudio(File file) {
+		byte[] header = new byte[12];
+
+		try {
+			RandomAccessFile random = new RandomAccessFile(file, "r");
+			try {
+				if (random.read(header) < header.length)
+					return false;
+			}
+			finally {
+				random.close();
+			}
+		}
+		catch (IOException e) {
+			return false;
+		}
+		return isAudio(header);
+	}
+
+	/**
+	 * Same as `isAudio(File)`, with the first 12 bytes
+	 * of the file.
+	 */
+	static boolean isAudio(byte[] header) {
+
+		if (startsWith(header, 0, "ID3")  ||
+		    startsWith(header, 0, "fLaC") ||
+		    startsWith(header, 0, "OggS") ||
+		    startsWith(header, 4, "ftyp"))
+			return true;
+
+		if (startsWith(header, 0, "RIFF") && startsWith(header, 8, "WAVE"))
+			return true;
+
+		// MPEG audio frame sync - 11 bits set
+		return ((header[0] & 0xFF) == 0xFF) && ((header[1] & 0xE0) == 0xE0);
+	}
+
+	private static boolean startsWith(byte[] data, int offset, String text) {
+		for (int i = 0; i < text.length(); i++)
+			if (data[offset + i] != text.charAt(i))
+				return false;
+
+		return true;
+	}
+
+	static void read(TagInput input, Tags tags) throws IOException {
+
+		// Some FLAC files have an ID3v2 tag before
+		// the "fLaC" marker, so we read it and keep going.
+		long id3Size = Id3v2Reader.tagSize(input);
+
+		if (id3Size > 0) {
+			Id3v2Reader.read(input, tags);
+			input.seek(id3Size);
+		}
+
+		if (input.remaining() < 4)
+			return;
+
+		long start = input.position();
+		byte[] magic = input.read(4);
+
+		if ((magic[0] == 'f') && (magic[1] == 'L') && (magic[2] == 'a') && (magic[3] == 'C')) {
+			VorbisCommentReader.readFlac(input, tags);
+			return;
+		}
+
+		input.seek(start);
+
+		if ((magic[0] == 'O') && (magic[1] == 'g') && (magic[2] == 'g') && (magic[3] == 'S')) {
+			VorbisCommentReader.readOgg(input, tags);
+			return;
+		}
+
+		if (Mp4Reader.isMp4(input))
+			Mp4Reader.read(input, tags);
+	}
+}
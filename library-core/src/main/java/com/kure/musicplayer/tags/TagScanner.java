@@ -0,0 +1,219 @@
+package com.kure.musicplayer.tags;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.kure.musicplayer.model.Song;
+
+/**
+ * Reads the tags of lots of songs at once, using all
+ * processor cores, and fills the extra `Song` fields
+ * (album artist, disc number, ReplayGain...).
+ *
+ * Files already on the `TagCache` (and not changed since)
+ * aren't read again. If a cache file is given, it's loaded
+ * on the first scan and saved after every scan.
+ */
+public class TagScanner {
+
+	/**
+	 * How many songs each task reads - big enough so
+	 * we don't waste time creating tasks.
+	 */
+	private static final int CHUNK_SIZE = 64;
+
+	private TagCache cache = new TagCache();
+
+	private File cacheFile;
+
+	private boolean cacheLoaded = false;
+
+	private int threads;
+
+	// Statistics from the last scan
+	private volatile int  filesRead    = 0;
+	private volatile int  cacheHits    = 0;
+	private volatile int  failures     = 0;
+	private volatile long lastScanTime = 0;
+
+	/**
+	 * @param cacheFile Where to keep the cache between scans
+	 *                  (or `null` to keep it only in memory).
+	 * @param threads   How many files to read at the same time
+	 *                  (0 to use one per processor core).
+	 */
+	public TagScanner(File cacheFile, int threads) {
+		this.cacheFile = cacheFile;
+		this.threads   = (threads > 0) ? threads : Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Reads the tags of all `songs`, filling their fields.
+	 *
+	 * Songs whose files can't be read are left as they are.
+	 *
+	 * @note Blocks until it's done - don't call it on the UI Thread.
+	 */
+	public synchronized void scan(final List<Song> songs) {
+
+		long start = System.nanoTime();
+
+		if ((cacheFile != null) && (! cacheLoaded)) {
+			cache.load(cacheFile);
+			cacheLoaded = true;
+		}
+
+		final AtomicInteger read   = new AtomicInteger(0);
+		final AtomicInteger hits   = new AtomicInteger(0);
+		final AtomicInteger failed = new AtomicInteger(0);
+
+		ArrayList<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+
+		for (int chunk = 0; chunk < songs.size(); chunk += CHUNK_SIZE) {
+			final int from = chunk;
+			final int to   = Math.min(chunk + CHUNK_SIZE, songs.size());
+
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					for (int i = from; i < to; i++) {
+						Song song = songs.get(i);
+
+						Tags tags = readTags(song.getFilePath(), read, hits, failed);
+						if (tags != null)
+							tags.applyTo(song);
+					}
+					return null;
+				}
+			});
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			// Waiting for all of them - after this, all
+			// changes they made to the songs are visible.
+			for (Future<Void> future : executor.invokeAll(tasks))
+				future.get();
+		}
+		catch (Exception e) {
+			failed.incrementAndGet();
+		}
+		finally {
+			executor.shutdown();
+		}
+
+		// Forgetting files that are gone
+		ArrayList<String> paths = new ArrayList<String>(songs.size());
+		for (Song song : songs)
+			paths.add(song.getFilePath());
+
+		cache.retainAll(paths);
+
+		if ((cacheFile != null) && (read.get() > 0)) {
+			try {
+				cache.save(cacheFile);
+			}
+			catch (IOException e) {
+				failed.incrementAndGet();
+			}
+		}
+
+		filesRead    = read.get();
+		cacheHits    = hits.get();
+		failures     = failed.get();
+		lastScanTime = (System.nanoTime() - start) / 1000000;
+	}
+
+	/**
+	 * Returns the tags of the file at `path`, from the
+	 * cache or reading it.
+	 *
+	 * @return The tags or `null` if the file couldn't be read.
+	 */
+	private Tags readTags(String path, AtomicInteger read, AtomicInteger hits, AtomicInteger failed) {
+		if (path == null)
+			return null;
+
+		File file = new File(path);
+
+		long modified = file.lastModified();
+		long length   = file.length();
+
+		// File doesn't exist
+		if (modified == 0)
+			return null;
+
+		Tags tags = cache.get(path, modified, length);
+		if (tags != null) {
+			hits.incrementAndGet();
+			return tags;
+		}
+
+		try {
+			tags = TagReader.read(file);
+		}
+		catch (IOException e) {
+			failed.incrementAndGet();
+			return null;
+		}
+		catch (RuntimeException e) {
+			// Broken files shouldn't stop the whole scan
+			failed.incrementAndGet();
+			return null;
+		}
+
+		cache.put(path, modified, length, tags);
+		read.incrementAndGet();
+		return tags;
+	}
+
+	public TagCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * Lets go of the tags we're keeping in memory - the
+	 * next scan loads them from the cache file again.
+	 *
+	 * @note Waits for the current scan to finish.
+	 */
+	public synchronized void trim() {
+		cache.clear();
+		cacheLoaded = false;
+	}
+
+	/**
+	 * How many files were actually read on the last scan.
+	 */
+	public int getFilesRead() {
+		return filesRead;
+	}
+
+	/**
+	 * How many files came from the cache on the last scan.
+	 */
+	public int getCacheHits() {
+		return cacheHits;
+	}
+
+	/**
+	 * How many files couldn't be read on the last scan.
+	 */
+	public int getFailures() {
+		return failures;
+	}
+
+	/**
+	 * How long the last scan took, in milliseconds.
+	 */
+	public long getLastScanTime() {
+		return lastScanTime;
+	}
+}
@@ -0,0 +1,224 @@
+package com.kure.musicplayer.tags;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import com.kure.musicplayer.model.Song;
+
+/**
+ * The extra information we read straight from a song's
+ * file - things the Android media database doesn't have.
+ *
+ * We also read the basic ones (title, artist...) for files
+ * the media database doesn't know about at all.
+ *
+ * Fields that weren't found keep their default values
+ * (`null`, -1, `false` or `NaN`).
+ */
+public class Tags {
+
+	public String  title       = null;
+	public String  artist      = null;
+	public String  album       = null;
+	public int     year        = -1;
+	public int     trackNumber = -1;
+
+	public String  albumArtist = null;
+	public String  genre       = null;
+	public int     discNumber  = -1;
+	public int     discTotal   = -1;
+	public boolean compilation = false;
+
+	/** ReplayGain adjustments, in dB */
+	public float trackGain = Float.NaN;
+	public float albumGain = Float.NaN;
+
+	/**
+	 * Sets a field from a textual tag, like the ones on Vorbis
+	 * comments ("ALBUMARTIST=Someone", "DISCNUMBER=1/2").
+	 *
+	 * Every format ends up here, so they all understand
+	 * the same names. Unknown names are ignored.
+	 *
+	 * @param name  Tag name (case doesn't matter).
+	 * @param value Its value, as text.
+	 */
+	public void set(String name, String value) {
+		if ((name == null) || (value == null))
+			return;
+
+		value = value.trim();
+		if (value.isEmpty())
+			return;
+
+		name = name.toUpperCase();
+
+		if (name.equals("TITLE"))
+			title = value;
+
+		else if (name.equals("ARTIST"))
+			artist = value;
+
+		else if (name.equals("ALBUM"))
+			album = value;
+
+		else if (name.equals("DATE") || name.equals("YEAR")) {
+			// Usually "2001" or "2001-09-11"
+			if (value.length() >= 4)
+				year = parseInt(value.substring(0, 4));
+		}
+		else if (name.equals("TRACKNUMBER")) {
+			// Usually "3" or "3/12"
+			int slash = value.indexOf('/');
+			trackNumber = parseInt((slash == -1) ? value : value.substring(0, slash));
+		}
+		else if (name.equals("ALBUMARTIST") || name.equals("ALBUM ARTIST") || name.equals("ALBUM_ARTIST"))
+			albumArtist = value;
+
+		else if (name.equals("GENRE"))
+			genre = value;
+
+		else if (name.equals("DISCNUMBER")) {
+			// Usually "1" or "1/2"
+			int slash = value.indexOf('/');
+
+			if (slash == -1)
+				discNumber = parseInt(value);
+			else {
+				discNumber = parseInt(value.substring(0, slash));
+				discTotal  = parseInt(value.substring(slash + 1));
+			}
+		}
+		else if (name.equals("DISCTOTAL") || name.equals("TOTALDISCS"))
+			discTotal = parseInt(value);
+
+		else if (name.equals("COMPILATION"))
+			compilation = value.equals("1") || value.equalsIgnoreCase("true");
+
+		else if (name.equals("REPLAYGAIN_TRACK_GAIN"))
+			trackGain = parseGain(value);
+
+		else if (name.equals("REPLAYGAIN_ALBUM_GAIN"))
+			albumGain = parseGain(value);
+	}
+
+	/**
+	 * Places everything we've found on `song`.
+	 *
+	 * @note The basic fields (title, artist, album, year,
+	 *       track and genre) only replace empty ones - the
+	 *       media database has priority.
+	 */
+	public void applyTo(Song song) {
+		if ((title != null) && isEmpty(song.getTitle()))
+			song.setTitle(title);
+
+		if ((artist != null) && isEmpty(song.getArtist()))
+			song.setArtist(artist);
+
+		if ((album != null) && isEmpty(song.getAlbum()))
+			song.setAlbum(album);
+
+		if ((year > 0) && (song.getYear() <= 0))
+			song.setYear(year);
+
+		if ((trackNumber > 0) && (song.getTrackNumber() <= 0))
+			song.setTrackNumber(trackNumber);
+
+		if (albumArtist != null)
+			song.setAlbumArtist(albumArtist);
+
+		if ((genre != null) && isEmpty(song.getGenre()))
+			song.setGenre(genre);
+
+		song.setDiscNumber (discNumber);
+		song.setCompilation(compilation);
+		song.setReplayGain (trackGain, albumGain);
+	}
+
+	private static boolean isEmpty(String value) {
+		return (value == null) || value.isEmpty();
+	}
+
+	/**
+	 * Parses numbers like "1", " 02" and "3 ", returning -1
+	 * if it's not a number.
+	 */
+	static int parseInt(String value) {
+		try {
+			return Integer.parseInt(value.trim());
+		}
+		catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Parses gains like "-6.54 dB" or "+1.2 dB".
+	 */
+	static float parseGain(String value) {
+		value = value.trim();
+
+		if (value.toLowerCase().endsWith("db"))
+			value = value.substring(0, value.length() - 2).trim();
+
+		if (value.startsWith("+"))
+			value = value.substring(1);
+
+		try {
+			return Float.parseFloat(value);
+		}
+		catch (NumberFormatException e) {
+			return Float.NaN;
+		}
+	}
+
+	/**
+	 * Saves all fields to `out` (see `TagCache`).
+	 */
+	void write(DataOutputStream out) throws IOException {
+		out.writeUTF    ((title       == null) ? "" : title);
+		out.writeUTF    ((artist      == null) ? "" : artist);
+		out.writeUTF    ((album       == null) ? "" : album);
+		out.writeInt    (year);
+		out.writeInt    (trackNumber);
+		out.writeUTF    ((albumArtist == null) ? "" : albumArtist);
+		out.writeUTF    ((genre       == null) ? "" : genre);
+		out.writeInt    (discNumber);
+		out.writeInt    (discTotal);
+		out.writeBoolean(compilation);
+		out.writeFloat  (trackGain);
+		out.writeFloat  (albumGain);
+	}
+
+	/**
+	 * Reads all fields saved with `write()`.
+	 */
+	static Tags read(DataInputStream in) throws IOException {
+		Tags tags = new Tags();
+
+		String title       = in.readUTF();
+		String artist      = in.readUTF();
+		String album       = in.readUTF();
+
+		tags.title       = title.isEmpty()  ? null : title;
+		tags.artist      = artist.isEmpty() ? null : artist;
+		tags.album       = album.isEmpty()  ? null : album;
+		tags.year        = in.readInt();
+		tags.trackNumber = in.readInt();
+
+		String albumArtist = in.readUTF();
+		String genre       = in.readUTF();
+
+		tags.albumArtist = albumArtist.isEmpty() ? null : albumArtist;
+		tags.genre       = genre.isEmpty()       ? null : genre;
+		tags.discNumber  = in.readInt();
+		tags.discTotal   = in.readInt();
+		tags.compilation = in.readBoolean();
+		tags.trackGain   = in.readFloat();
+		tags.albumGain   = in.readFloat();
+
+		return tags;
+	}
+}
@@ -0,0 +1,174 @@
+package com.kure.musicplayer.tags;
+
+import java.io.IOException;
+
+/**
+ * Reads Vorbis comments ("NAME=value" pairs), used by
+ * FLAC, Ogg Vorbis and Opus files.
+ *
+ * See https://xiph.org/vorbis/doc/v-comment.html
+ */
+class VorbisCommentReader {
+
+	/**
+	 * Comments bigger than this (like embedded pictures)
+	 * are skipped without reading them.
+	 */
+	private static final int MAXIMUM_COMMENT_SIZE = 64 * 1024;
+
+	/** FLAC metadata block with Vorbis comments */
+	private static final int FLAC_VORBIS_COMMENT = 4;
+
+	/**
+	 * Packets bigger than this are cut when reading Ogg
+	 * files, since we need to load them into memory.
+	 */
+	private static final int MAXIMUM_OGG_PACKET = 256 * 1024;
+
+	/**
+	 * Reads all comments starting at the input's current
+	 * position, up until `end`.
+	 *
+	 * Stops quietly if the comments are cut short.
+	 */
+	static void readComments(TagInput input, long end, Tags tags) throws IOException {
+
+		if (input.position() + 4 > end)
+			return;
+
+		// Skipping the vendor string
+		input.skip(int32le(input.read(4), 0));
+
+		if (input.position() + 4 > end)
+			return;
+
+		long count = int32le(input.read(4), 0);
+
+		for (long i = 0; i < count; i++) {
+			if (input.position() + 4 > end)
+				return;
+
+			long length = int32le(input.read(4), 0);
+
+			if (input.position() + length > end)
+				return;
+
+			if (length > MAXIMUM_COMMENT_SIZE) {
+				input.skip(length);
+				continue;
+			}
+
+			String comment = new String(input.read((int)length), "UTF-8");
+
+			int equals = comment.indexOf('=');
+			if (equals > 0)
+				tags.set(comment.substring(0, equals), comment.substring(equals + 1));
+		}
+	}
+
+	/**
+	 * Reads a FLAC file, with the input right after
+	 * the "fLaC" marker.
+	 *
+	 * Goes through the metadata blocks, skipping
+	 * everything but the comments.
+	 */
+	static void readFlac(TagInput input, Tags tags) throws IOException {
+
+		boolean last = false;
+
+		while ((! last) && (input.remaining() >= 4)) {
+			byte[] header = input.read(4);
+
+			last = (header[0] & 0x80) != 0;
+
+			int  type   = header[0] & 0x7F;
+			long length = ((header[1] & 0xFF) << 16) | ((header[2] & 0xFF) << 8) | (header[3] & 0xFF);
+
+			long next = input.position() + length;
+
+			if (type == FLAC_VORBIS_COMMENT) {
+				readComments(input, Math.min(next, input.length()), tags);
+				return;
+			}
+			input.seek(next);
+		}
+	}
+
+	/**
+	 * Reads an Ogg file (Vorbis or Opus), with the input
+	 * at the first page.
+	 *
+	 * The comments are on the second packet, which might
+	 * be split across several pages - so we glue it back
+	 * together first.
+	 *
+	 * See https://xiph.org/ogg/doc/framing.html
+	 */
+	static void readOgg(TagInput input, Tags tags) throws IOException {
+
+		byte[] packet = new byte[4096];
+		int    size   = 0;
+
+		// Which packet we're on
+		int     packetNumber = 0;
+		boolean done         = false;
+
+		while ((! done) && (input.remaining() >= 27)) {
+			byte[] header = input.read(27);
+
+			if ((header[0] != 'O') || (header[1] != 'g') || (header[2] != 'g') || (header[3] != 'S'))
+				return;
+
+			int segments = header[26] & 0xFF;
+			byte[] lacing = input.read(segments);
+
+			for (int s = 0; (s < segments) && (! done); s++) {
+				int lace = lacing[s] & 0xFF;
+
+				if (packetNumber == 1) {
+					int wanted = Math.min(lace, MAXIMUM_OGG_PACKET - size);
+
+					if (size + wanted > packet.length) {
+						byte[] bigger = new byte[Math.min(MAXIMUM_OGG_PACKET, Math.max(packet.length * 2, size + wanted))];
+						System.arraycopy(packet, 0, bigger, 0, size);
+						packet = bigger;
+					}
+					input.readFully(packet, size, wanted);
+					input.skip(lace - wanted);
+					size += wanted;
+				}
+				else
+					input.skip(lace);
+
+				// A lace smaller than 255 ends the packet
+				if (lace < 255) {
+					packetNumber++;
+					done = (packetNumber > 1);
+				}
+			}
+		}
+
+		if (size == 0)
+			return;
+
+		TagInput comments = new TagInput.ArrayInput(packet, size);
+
+		// Vorbis: "\3vorbis", Opus: "OpusTags"
+		if ((size > 7) && (packet[0] == 3) && (packet[1] == 'v'))
+			comments.seek(7);
+		else if ((size > 8) && (packet[0] == 'O') && (packet[4] == 'T'))
+			comments.seek(8);
+		else
+			return;
+
+		readComments(comments, size, tags);
+	}
+
+	static long int32le(byte[] data, int offset) {
+		return ((long)(data[offset + 3] & 0xFF) << 24) |
+		       ((data[offset + 2] & 0xFF) << 16)       |
+		       ((data[offset + 1] & 0xFF) << 8)        |
+		        (data[offset]     & 0xFF);
+	}
+}
@@ -0,0 +1,506 @@
+package com.kure.musicplayer.tasks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+
+/**
+ * Runs everything the app does in the background on a
+ * single pool of Threads, by priority.
+ *
+ * Each task goes on one of three lanes - whatever the music
+ * is waiting on, then whatever the user is looking at, then
+ * scans and analysis. Threads always take from the most
+ * important lane that has something, and each lane leaves
+ * Threads for the ones above it: one Thread is only ever
+ * used for playback, and background tasks never take the
+ * last one left for the UI. So a long scan can't make the
+ * UI wait, and nothing can make the music wait.
+ *
+ * Tasks may have a key: if a task with the same key is still
+ * waiting, we don't add another one (like the user tapping
+ * "rescan" twice).
+ *
+ *     TaskScheduler.Task task = tasks.submit(TaskScheduler.PRIORITY_UI, null, new Runnable() {
+ *         public void run() { ... }
+ *     });
+ *
+ *     task.cancel();
+ *
+ * We also keep how long tasks wait and run on each lane.
+ *
+ * Whatever a task throws - even an `Error` - stays on it
+ * (see `Task#getFailure()`) and goes to the `FailureListener`,
+ * while its Thread goes on to the next task.
+ *
+ * @note Thread-safe.
+ */
+public class TaskScheduler {
+
+	// The lanes, most important first
+	public static final int PRIORITY_PLAYBACK   = 0;
+	public static final int PRIORITY_UI         = 1;
+	public static final int PRIORITY_BACKGROUND = 2;
+
+	private static final int PRIORITIES = 3;
+
+	private static final String[] PRIORITY_NAMES = { "playback", "ui", "background" };
+
+	// What a task is doing right now
+	private static final int WAITING   = 0;
+	private static final int RUNNING   = 1;
+	private static final int DONE      = 2;
+	private static final int CANCELLED = 3;
+
+	/**
+	 * Hears about tasks that threw something.
+	 */
+	public interface FailureListener {
+
+		/**
+		 * @note Runs on the task's Thread.
+		 */
+		public void onTaskFailed(Task task, Throwable failure);
+	}
+
+	/**
+	 * Something given to `submit()`.
+	 */
+	public class Task {
+
+		private final String   key;
+		private final Runnable action;
+
+		/** When it got on the lane, in nanoseconds */
+		private final long submitted = System.nanoTime();
+
+		/** Might become more important (see `submit()`) */
+		private int lane;
+
+		// Guarded by the scheduler
+		private int state = WAITING;
+
+		private volatile boolean cancelled = false;
+
+		private volatile Throwable failure = null;
+
+		private Task(int priority, String key, Runnable action) {
+			this.key    = key;
+			this.action = action;
+			this.lane   = priority;
+		}
+
+		/**
+		 * Makes sure it won't run - or, if it's already
+		 * running, marks it so it can stop early (see
+		 * `isCancelled()`).
+		 *
+		 * @return If it never got to start.
+		 */
+		public boolean cancel() {
+			cancelled = true;
+
+			return TaskScheduler.this.remove(this);
+		}
+
+		/**
+		 * What it runs - if `submit()` found the same task
+		 * waiting, not the one given to it.
+		 */
+		public Runnable getAction() {
+			return action;
+		}
+
+		/**
+		 * If someone called `cancel()` - long tasks
+		 * should check it from time to time.
+		 */
+		public boolean isCancelled() {
+			return cancelled;
+		}
+
+		/**
+		 * What it threw, or `null` if it didn't
+		 * (or didn't finish yet).
+		 */
+		public Throwable getFailure() {
+			return failure;
+		}
+
+		/**
+		 * If it ran until the end (or was cancelled
+		 * before starting).
+		 */
+		public boolean isDone() {
+			synchronized (TaskScheduler.this) {
+				return (state == DONE) || (state == CANCELLED);
+			}
+		}
+	}
+
+	private final String name;
+
+	private final int threads;
+
+	/** Tasks waiting on each lane, oldest first */
+	private final ArrayList<LinkedList<Task>> lanes = new ArrayList<LinkedList<Task>>();
+
+	/** Waiting tasks that have a key */
+	private final HashMap<String, Task> waitingByKey = new HashMap<String, Task>();
+
+	private final ArrayList<Thread> workers = new ArrayList<Thread>();
+
+	/** How many tasks of each lane are running */
+	private final int[] running = new int[PRIORITIES];
+
+	private boolean shutdown = false;
+
+	private volatile FailureListener failureListener = null;
+
+	// Statistics of each lane
+	private final long[] submitted    = new long[PRIORITIES];
+	private final long[] completed    = new long[PRIORITIES];
+	private final long[] cancelled    = new long[PRIORITIES];
+	private final long[] deduplicated = new long[PRIORITIES];
+	private final long[] failed       = new long[PRIORITIES];
+	private final long[] totalWait    = new long[PRIORITIES];
+	private final long[] maxWait      = new long[PRIORITIES];
+	private final long[] totalRun     = new long[PRIORITIES];
+
+	/**
+	 * @param name    Given to the Threads, to find them
+	 *                when debugging.
+	 * @param threads How many tasks run at the same time
+	 *                (0 to use one per processor core).
+	 *                At least 3 - one kept for playback, one
+	 *                more kept for the UI and the rest.
+	 *
+	 * @note Threads are only created on the first `submit()`.
+	 */
+	public TaskScheduler(String name, int threads) {
+		this.name    = name;
+		this.threads = Math.max(3, (threads > 0) ? threads : Runtime.getRuntime().availableProcessors());
+
+		for (int i = 0; i < PRIORITIES; i++)
+			lanes.add(new LinkedList<Task>());
+	}
+
+	/**
+	 * Who hears about tasks that threw something
+	 * (`null` for no one).
+	 */
+	public void setFailureListener(FailureListener listener) {
+		failureListener = listener;
+	}
+
+	/**
+	 * Runs `action` as soon as there's a Thread for it.
+	 *
+	 * @param priority One of the `PRIORITY_*` constants.
+	 * @param key      If there's a task with this key still
+	 *                 waiting, it's returned instead (and moved
+	 *                 to `priority` if it's more important).
+	 *                 `null` to always add a new task.
+	 * @throws IllegalStateException After `shutdown()`.
+	 */
+	public synchronized Task submit(int priority, String key, Runnable action) {
+		if ((priority < 0) || (priority >= PRIORITIES))
+			throw new IllegalArgumentException("Unknown priority " + priority);
+
+		if (shutdown)
+			throw new IllegalStateException("TaskScheduler was shut down");
+
+		if (key != null) {
+			Task same = waitingByKey.get(key);
+
+			if (same != null) {
+				deduplicated[priority]++;
+
+				if (priority < same.lane) {
+					lanes.get(same.lane).remove(same);
+					submitted[same.lane]--;
+					submitted[priority]++;
+
+					same.lane = priority;
+					lanes.get(priority).add(same);
+				}
+				return same;
+			}
+		}
+
+		Task task = new Task(priority, key, action);
+
+		lanes.get(priority).add(task);
+
+		if (key != null)
+			waitingByKey.put(key, task);
+
+		submitted[priority]++;
+
+		if (workers.isEmpty())
+			startWorkers();
+
+		notify();
+		return task;
+	}
+
+	/**
+	 * Takes `task` out of its lane, if it's still there.
+	 */
+	private synchronized boolean remove(Task task) {
+		if (task.state != WAITING)
+			return false;
+
+		lanes.get(task.lane).remove(task);
+
+		if (task.key != null)
+			waitingByKey.remove(task.key);
+
+		task.state = CANCELLED;
+		cancelled[task.lane]++;
+		return true;
+	}
+
+	/**
+	 * Forgets all tasks still waiting and lets the Threads
+	 * die once they finish the ones running.
+	 */
+	public synchronized void shutdown() {
+		shutdown = true;
+
+		for (LinkedList<Task> lane : lanes) {
+			for (Task task : lane) {
+				task.state     = CANCELLED;
+				task.cancelled = true;
+
+				cancelled[task.lane]++;
+			}
+			lane.clear();
+		}
+		waitingByKey.clear();
+
+		notifyAll();
+	}
+
+	private void startWorkers() {
+		for (int i = 0; i < threads; i++) {
+			Thread worker = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					work();
+				}
+			}, name + "-" + (i + 1));
+
+			worker.setDaemon(true);
+			worker.start();
+
+			workers.add(worker);
+		}
+	}
+
+	/**
+	 * The next task to run, or `null` if there's none
+	 * we're allowed to run right now.
+	 */
+	private Task next() {
+		for (int priority = 0; priority < PRIORITIES; priority++) {
+			LinkedList<Task> lane = lanes.get(priority);
+
+			if (lane.isEmpty())
+				continue;
+
+			// Always leaving Threads for the lanes above
+			if ((priority != PRIORITY_PLAYBACK) && (running[PRIORITY_UI] + running[PRIORITY_BACKGROUND] >= threads - 1))
+				continue;
+
+			if ((priority == PRIORITY_BACKGROUND) && (running[PRIORITY_BACKGROUND] >= threads - 2))
+				continue;
+
+			Task task = lane.removeFirst();
+
+			if (task.key != null)
+				waitingByKey.remove(task.key);
+
+			return task;
+		}
+		return null;
+	}
+
+	/**
+	 * What each Thread does until `shutdown()`.
+	 */
+	private void work() {
+		while (true) {
+			Task task;
+
+			synchronized (this) {
+				while ((task = next()) == null) {
+					if (shutdown)
+						return;
+
+					try {
+						wait();
+					}
+					catch (InterruptedException e) {
+						return;
+					}
+				}
+
+				long waited = System.nanoTime() - task.submitted;
+
+				totalWait[task.lane] += waited;
+				maxWait[task.lane]    = Math.max(maxWait[task.lane], waited);
+
+				task.state = RUNNING;
+
+				running[task.lane]++;
+			}
+
+			long start = System.nanoTime();
+
+			try {
+				task.action.run();
+			}
+			catch (Throwable e) {
+				// One broken task shouldn't take the Thread
+				// with it - not even on an `Error`, or its
+				// lane would be one Thread short forever
+				task.failure = e;
+			}
+			finally {
+				synchronized (this) {
+					task.state = DONE;
+
+					completed[task.lane]++;
+					totalRun[task.lane] += System.nanoTime() - start;
+
+					if (task.failure != null)
+						failed[task.lane]++;
+
+					running[task.lane]--;
+
+					// Some task might be waiting for a free slot
+					if (task.lane != PRIORITY_PLAYBACK)
+						notifyAll();
+				}
+			}
+
+			if (task.failure != null)
+				reportFailure(task);
+		}
+	}
+
+	private void reportFailure(Task task) {
+		FailureListener listener = failureListener;
+
+		if (listener == null)
+			return;
+
+		try {
+			listener.onTaskFailed(task, task.failure);
+		}
+		catch (RuntimeException e) {
+			// Not its problem either
+		}
+	}
+
+	/**
+	 * How many Threads run tasks.
+	 */
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * How many tasks are waiting on lane `priority`.
+	 */
+	public synchronized int getQueueDepth(int priority) {
+		return lanes.get(priority).size();
+	}
+
+	/**
+	 * How many tasks are waiting on all lanes.
+	 */
+	public synchronized int getQueueDepth() {
+		int depth = 0;
+
+		for (LinkedList<Task> lane : lanes)
+			depth += lane.size();
+
+		return depth;
+	}
+
+	public synchronized long getSubmitted(int priority) {
+		return submitted[priority];
+	}
+
+	public synchronized long getCompleted(int priority) {
+		return completed[priority];
+	}
+
+	public synchronized long getCancelled(int priority) {
+		return cancelled[priority];
+	}
+
+	/**
+	 * How many tasks weren't added because the same
+	 * one was already waiting.
+	 */
+	public synchronized long getDeduplicated(int priority) {
+		return deduplicated[priority];
+	}
+
+	/**
+	 * How many tasks threw something.
+	 */
+	public synchronized long getFailed(int priority) {
+		return failed[priority];
+	}
+
+	/**
+	 * How long tasks that already started waited for a
+	 * Thread, on average (nanoseconds).
+	 */
+	public synchronized long getAverageWaitNanos(int priority) {
+		long started = completed[priority] + running[priority];
+
+		return (started == 0) ? 0 : (totalWait[priority] / started);
+	}
+
+	/**
+	 * The longest any task waited for a Thread (nanoseconds).
+	 */
+	public synchronized long getMaxWaitNanos(int priority) {
+		return maxWait[priority];
+	}
+
+	/**
+	 * How long finished tasks ran, on average (nanoseconds).
+	 */
+	public synchronized long getAverageRunNanos(int priority) {
+		return (completed[priority] == 0) ? 0 : (totalRun[priority] / completed[priority]);
+	}
+
+	/**
+	 * All lanes, like "ui: 0 waiting, 12 done, waited 1/4ms (avg/max), ran 30ms".
+	 */
+	@Override
+	public synchronized String toString() {
+		StringBuilder string = new StringBuilder();
+
+		for (int priority = 0; priority < PRIORITIES; priority++) {
+			if (priority > 0)
+				string.append("; ");
+
+			string.append(PRIORITY_NAMES[priority]).append(": ")
+			      .append(lanes.get(priority).size()).append(" waiting, ")
+			      .append(completed[priority]).append(" done, ")
+			      .append(cancelled[priority]).append(" cancelled, ")
+			      .append(deduplicated[priority]).append(" deduplicated, waited ")
+			      .append(getAverageWaitNanos(priority) / 1000000).append('/')
+			      .append(maxWait[priority] / 1000000).append("ms (avg/max), ran ")
+			      .append(getAverageRunNanos(priority) / 1000000).append("ms");
+		}
+		return string.toString();
+	}
+}
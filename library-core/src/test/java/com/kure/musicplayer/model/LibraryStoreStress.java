@@ -0,0 +1,227 @@
+package com.kure.musicplayer.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Scans over and over while other Threads read the library,
+ * checking nobody ever sees a half-built snapshot or one
+ * mixing two scans.
+ *
+ * Each scan alternates between a few `SyntheticLibrary`s of
+ * different sizes, so we know exactly what every snapshot
+ * should have. Meanwhile, another Thread keeps adding
+ * Playlists (racing with the scans to publish snapshots).
+ *
+ * Readers check, on every snapshot they get:
+ *
+ * - Versions never go back;
+ * - There are as many songs as some library has, and all
+ *   of them came from that library (IDs and titles);
+ * - Songs are found by ID and sorted by title;
+ * - Genres only have songs of that genre;
+ * - Playlists of the library find all their songs.
+ *
+ * Run it with:
+ *
+ *     ./gradlew :library-core:stress
+ *
+ * Optional arguments: how many seconds (default 10) and
+ * how many reader Threads (default one per core, at least 2).
+ *
+ * @note Exits with 1 if something went wrong.
+ */
+public class LibraryStoreStress {
+
+	/** How many different libraries we scan */
+	private static final int LIBRARIES = 4;
+
+	/** Songs of the smallest library - each one has a few more */
+	private static final int SONGS = 3000;
+
+	private final LibraryStore store = new LibraryStore();
+
+	private final SyntheticLibrary[] libraries = new SyntheticLibrary[LIBRARIES];
+
+	/** Which library has each size */
+	private final HashMap<Integer, SyntheticLibrary> bySize = new HashMap<Integer, SyntheticLibrary>();
+
+	private final AtomicBoolean done = new AtomicBoolean(false);
+
+	// What happened, for the report
+	private final AtomicLong scans     = new AtomicLong(0);
+	private final AtomicLong playlists = new AtomicLong(0);
+	private final AtomicLong checked   = new AtomicLong(0);
+	private final AtomicLong failures  = new AtomicLong(0);
+
+	private volatile String firstFailure = null;
+
+	public static void main(String[] args) throws InterruptedException {
+		int seconds = (args.length > 0) ? Integer.parseInt(args[0]) : 10;
+		int readers = (args.length > 1) ? Integer.parseInt(args[1]) : Math.max(2, Runtime.getRuntime().availableProcessors());
+
+		boolean ok = new LibraryStoreStress().run(seconds, Math.max(readers, 1));
+
+		System.exit(ok ? 0 : 1);
+	}
+
+	private LibraryStoreStress() {
+		for (int i = 0; i < LIBRARIES; i++) {
+			SyntheticLibrary.Options options = SyntheticLibrary.Options.withSongs(SONGS + (i * 101));
+
+			options.seed = i;
+
+			// Half of them load Playlists only when asked
+			options.lazyPlaylists = (i % 2 == 1);
+
+			libraries[i] = new SyntheticLibrary(options);
+			bySize.put(libraries[i].size(), libraries[i]);
+		}
+	}
+
+	private boolean run(int seconds, int readers) throws InterruptedException {
+		ArrayList<Thread> threads = new ArrayList<Thread>();
+
+		// Otherwise Playlists would go on an empty library
+		store.scan(libraries[LIBRARIES - 1], null);
+
+		threads.add(new Thread(new Runnable() {
+			@Override
+			public void run() {
+				for (int i = 0; ! done.get(); i++) {
+					if (store.scan(libraries[i % LIBRARIES], null))
+						scans.incrementAndGet();
+				}
+			}
+		}, "scanner"));
+
+		threads.add(new Thread(new Runnable() {
+			@Override
+			public void run() {
+				for (long id = 1000; ! done.get(); id++) {
+					Playlist playlist = new Playlist(id, "Stress " + id);
+					playlist.add(1);
+
+					LibrarySnapshot published = store.putPlaylist(playlist);
+
+					if (published.getPlaylistById(id) != playlist)
+						fail("Playlist " + id + " isn't on the snapshot that got it");
+
+					playlists.incrementAndGet();
+					Thread.yield();
+				}
+			}
+		}, "playlists"));
+
+		for (int i = 0; i < readers; i++)
+			threads.add(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					long lastVersion = 0;
+
+					while (! done.get()) {
+						LibrarySnapshot snapshot = store.get();
+
+						if (snapshot.getVersion() < lastVersion)
+							fail("Version went from " + lastVersion + " back to " + snapshot.getVersion());
+
+						lastVersion = snapshot.getVersion();
+
+						check(snapshot);
+						checked.incrementAndGet();
+					}
+				}
+			}, "reader-" + (i + 1)));
+
+		long start = System.currentTimeMillis();
+
+		for (Thread thread : threads)
+			thread.start();
+
+		Thread.sleep(seconds * 1000L);
+		done.set(true);
+
+		for (Thread thread : threads)
+			thread.join();
+
+		System.out.println(readers + " readers, " + (System.currentTimeMillis() - start) + "ms: " +
+		                   scans.get() + " scans, " + playlists.get() + " playlists added, " +
+		                   checked.get() + " snapshots checked, " + failures.get() + " failures");
+
+		if (firstFailure != null)
+			System.out.println("First failure: " + firstFailure);
+
+		if (scans.get() == 0)
+			System.out.println("No scan finished - nothing was tested");
+
+		return (failures.get() == 0) && (scans.get() > 0);
+	}
+
+	/**
+	 * Everything a reader checks on a single snapshot.
+	 */
+	private void check(LibrarySnapshot snapshot) {
+		int size = snapshot.getSongs().size();
+
+		SyntheticLibrary library = bySize.get(size);
+
+		if ((library == null) || (snapshot.size() != size)) {
+			fail("Version " + snapshot.getVersion() + " has " + size + " songs, no library has that");
+			return;
+		}
+
+		boolean[] seen = new boolean[size];
+		Song      last = null;
+
+		for (Song song : snapshot.getSongs()) {
+			int index = (int)song.getId() - 1;
+
+			if ((index < 0) || (index >= size) || seen[index]) {
+				fail("Version " + snapshot.getVersion() + " has an unexpected song " + song.getId());
+				return;
+			}
+			seen[index] = true;
+
+			if (! library.getTitle(index).equals(song.getTitle()))
+				fail("Song " + song.getId() + " of version " + snapshot.getVersion() + " came from another scan");
+
+			if (snapshot.getSongById(song.getId()) != song)
+				fail("Song " + song.getId() + " of version " + snapshot.getVersion() + " isn't found by its ID");
+
+			if ((last != null) && (SongComparators.BY_TITLE.compare(last, song) > 0))
+				fail("Version " + snapshot.getVersion() + " isn't sorted by title");
+
+			last = song;
+		}
+
+		// Only a few, they're slower
+		String genre = library.getGenreName((int)(snapshot.getVersion() % library.getGenreCount()));
+
+		for (Song song : snapshot.getSongsByGenre(genre))
+			if (! genre.equals(song.getGenre()))
+				fail("Song " + song.getId() + " is on \"" + genre + "\" but has \"" + song.getGenre() + "\"");
+
+		int playlist = (int)(snapshot.getVersion() % library.getPlaylistCount());
+
+		// Playlists don't keep repeated songs
+		HashSet<Long> members = new HashSet<Long>();
+
+		for (long id : library.getPlaylistMembers(playlist))
+			members.add(id);
+
+		int found    = snapshot.getSongsByPlaylist(library.getPlaylistName(playlist)).size();
+		int expected = members.size();
+
+		if (found != expected)
+			fail("\"" + library.getPlaylistName(playlist) + "\" of version " + snapshot.getVersion() +
+			     " found " + found + " of its " + expected + " songs");
+	}
+
+	private void fail(String message) {
+		if (failures.incrementAndGet() == 1)
+			firstFailure = message;
+	}
+}